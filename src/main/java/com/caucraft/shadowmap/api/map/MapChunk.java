@@ -1,5 +1,6 @@
 package com.caucraft.shadowmap.api.map;
 
+import com.caucraft.shadowmap.api.util.MemorySizes;
 import com.caucraft.shadowmap.api.util.MergeResult;
 import net.minecraft.nbt.NbtCompound;
 import net.minecraft.nbt.NbtLong;
@@ -34,8 +35,12 @@ public abstract class MapChunk<NbtContext> implements ChunkUpdateConsumer {
 
     private long lastModified;
 
+    /**
+     * @return the heap memory used by this chunk. Subclasses should add the
+     * size of their own fields and any arrays or objects they own.
+     */
     public int estimateMemoryUsage() {
-        return 24;
+        return MemorySizes.object(0, 8);
     }
 
     /**
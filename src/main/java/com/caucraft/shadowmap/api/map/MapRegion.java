@@ -1,6 +1,7 @@
 package com.caucraft.shadowmap.api.map;
 
 import com.caucraft.shadowmap.api.util.ChunkCache;
+import com.caucraft.shadowmap.api.util.MemorySizes;
 import com.caucraft.shadowmap.api.util.MergeResult;
 import net.minecraft.block.BlockState;
 import net.minecraft.nbt.NbtCompound;
@@ -35,29 +36,69 @@ public abstract class MapRegion<ChunkType extends MapChunk<ChunkNbtContext>, Chu
         implements ChunkUpdateConsumer {
 
     public static final int NBT_VERSION = 3; // TODO increase after save format change
+    /**
+     * Number of chunks above which a region switches from a compact array of
+     * present chunks to a full 1024-slot array.
+     */
+    private static final int DENSE_THRESHOLD = 256;
 
     private int loadedNbtVersion;
 
     protected transient final RegionContainer regionContainer;
+    /**
+     * Full 1024-slot chunk array for regions that do not
+     * {@link #useCompactChunks() use compact storage}, null otherwise.
+     * @deprecated read chunks through {@link #getChunk(int, int, boolean)} instead,
+     * which works for both storage layouts.
+     */
+    @Deprecated
     protected final ChunkType[] chunkArray;
+    private volatile ChunkSlots<ChunkType> chunkSlots;
     private transient long lastSaved;
     private long lastModified;
 
     protected MapRegion(RegionContainer regionContainer) {
         this.regionContainer = regionContainer;
-        this.chunkArray = supplyChunkArray(1024);
+        if (useCompactChunks()) {
+            this.chunkArray = null;
+            this.chunkSlots = new ChunkSlots<>(new long[16], supplyChunkArray(0));
+        } else {
+            this.chunkArray = supplyChunkArray(1024);
+            this.chunkSlots = chunkArray == null ? null : new ChunkSlots<>(null, chunkArray);
+        }
         this.loadedNbtVersion = NBT_VERSION;
     }
 
     /**
-     * Called in the constructor to create an array of chunks. This should ONLY
-     * create the new array, its contents should remain null until initialized
-     * by a chunk update.
+     * Called in the constructor to choose how chunks are stored. Compact
+     * regions keep only the chunks present in a small array until the region
+     * fills up, and leave {@link #chunkArray} null.
+     * @return true to store chunks compactly, false (the default) to store
+     * them in a full 1024-slot array exposed through {@link #chunkArray}.
+     */
+    protected boolean useCompactChunks() {
+        return false;
+    }
+
+    /**
+     * Called to create an array of chunks, either a compact array holding only
+     * the chunks present in a sparsely populated region or a full 1024-slot
+     * array. This should ONLY create the new array, its contents are managed
+     * by the region.
+     * @param size the length of the array to create
      * @return the new chunk array, or null if this region does not need chunk-
      * specific data.
      */
     protected abstract ChunkType[] supplyChunkArray(int size);
 
+    /**
+     * Called after a chunk is removed from this region or replaced by another,
+     * so the region can reclaim anything the chunk held. Readers that got the
+     * chunk before it was removed may still be using it.
+     * @param chunk the chunk no longer in this region
+     */
+    protected void onChunkRemoved(ChunkType chunk) {}
+
     /**
      * Called during a chunk update to create a new chunk if one did not already
      * exist.
@@ -74,15 +115,25 @@ public abstract class MapRegion<ChunkType extends MapChunk<ChunkNbtContext>, Chu
      */
     protected abstract ChunkNbtContext supplyNbtContext();
 
+    /**
+     * @return the heap memory used by this region and its chunks. Subclasses
+     * should add the size of their own fields and any other data they own.
+     */
     public int estimateMemoryUsage() {
-        int usage = 68;
-        ChunkType[] chunks = this.chunkArray;
-        for (int i = 0; i < chunks.length; i++) {
-            ChunkType chunk = chunks[i];
-            if (chunk == null) {
-                continue;
+        int usage = MemorySizes.object(3, 20);
+        ChunkSlots<ChunkType> slots = this.chunkSlots;
+        if (slots == null) {
+            return usage;
+        }
+        usage += MemorySizes.object(2, 0) + MemorySizes.objectArray(slots.chunks.length);
+        if (slots.occupancy != null) {
+            usage += MemorySizes.longArray(slots.occupancy.length);
+        }
+        for (int i = nextChunkIndex(0); i != -1; i = nextChunkIndex(i + 1)) {
+            ChunkType chunk = getChunkAt(i);
+            if (chunk != null) {
+                usage += chunk.estimateMemoryUsage();
             }
-            usage += 16 + chunk.estimateMemoryUsage();
         }
         return usage;
     }
@@ -112,21 +163,155 @@ public abstract class MapRegion<ChunkType extends MapChunk<ChunkNbtContext>, Chu
     }
 
     public final ChunkType getChunk(int chunkX, int chunkZ, boolean create) {
-        if (chunkArray == null) {
+        if (chunkSlots == null) {
             return null;
         }
         int index = getChunkIndex(chunkX, chunkZ);
-        ChunkType chunk = chunkArray[index];
+        ChunkType chunk = getChunkAt(index);
         if (chunk == null && create) {
-            return chunkArray[index] = supplyChunk();
+            chunk = supplyChunk();
+            setChunkAt(index, chunk);
         }
         return chunk;
     }
 
+    /**
+     * Removes a chunk from this region, e.g. one created for an update that
+     * turned out not to change anything.
+     * @param chunkX the chunk's x coordinate, only the low 5 bits are used
+     * @param chunkZ the chunk's z coordinate, only the low 5 bits are used
+     */
+    public final void removeChunk(int chunkX, int chunkZ) {
+        if (chunkSlots != null) {
+            setChunkAt(getChunkIndex(chunkX, chunkZ), null);
+        }
+    }
+
     protected final int getChunkIndex(int chunkX, int chunkZ) {
         return (chunkZ & 0x1F) << 5 | (chunkX & 0x1F);
     }
 
+    /**
+     * @param index the chunk's index in the region, see {@link #getChunkIndex(int, int)}
+     * @return the chunk at the provided index, or null if not present.
+     */
+    protected final ChunkType getChunkAt(int index) {
+        ChunkSlots<ChunkType> slots = chunkSlots;
+        if (slots == null) {
+            return null;
+        }
+        long[] occupancy = slots.occupancy;
+        if (occupancy == null) {
+            return slots.chunks[index];
+        }
+        if ((occupancy[index >>> 6] & 1L << index) == 0) {
+            return null;
+        }
+        return slots.chunks[rank(occupancy, index)];
+    }
+
+    /**
+     * Finds the next index holding a chunk, for iterating only the chunks
+     * present in this region.
+     * @param fromIndex the index to start searching from, inclusive
+     * @return the index of the next present chunk, or -1 if there is none.
+     */
+    protected final int nextChunkIndex(int fromIndex) {
+        ChunkSlots<ChunkType> slots = chunkSlots;
+        if (slots == null || fromIndex >= 1024) {
+            return -1;
+        }
+        long[] occupancy = slots.occupancy;
+        if (occupancy == null) {
+            ChunkType[] chunks = slots.chunks;
+            for (int i = fromIndex; i < chunks.length; i++) {
+                if (chunks[i] != null) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+        int wordIndex = fromIndex >>> 6;
+        long word = occupancy[wordIndex] & -1L << fromIndex;
+        while (word == 0) {
+            if (++wordIndex == occupancy.length) {
+                return -1;
+            }
+            word = occupancy[wordIndex];
+        }
+        return wordIndex << 6 | Long.numberOfTrailingZeros(word);
+    }
+
+    /**
+     * Places a chunk at the provided index. Sparse regions publish a new
+     * compact array rather than modifying the current one, so concurrent
+     * readers always see a consistent occupancy bitmap and array.
+     */
+    private synchronized void setChunkAt(int index, ChunkType chunk) {
+        ChunkSlots<ChunkType> slots = chunkSlots;
+        long[] occupancy = slots.occupancy;
+        if (occupancy == null) {
+            ChunkType oldChunk = slots.chunks[index];
+            slots.chunks[index] = chunk;
+            if (oldChunk != null && oldChunk != chunk) {
+                onChunkRemoved(oldChunk);
+            }
+            return;
+        }
+        ChunkType[] chunks = slots.chunks;
+        long bit = 1L << index;
+        if ((occupancy[index >>> 6] & bit) != 0) {
+            int rank = rank(occupancy, index);
+            ChunkType oldChunk = chunks[rank];
+            if (chunk != null) {
+                chunks[rank] = chunk;
+            } else {
+                long[] newOccupancy = occupancy.clone();
+                newOccupancy[index >>> 6] &= ~bit;
+                ChunkType[] newChunks = supplyChunkArray(chunks.length - 1);
+                System.arraycopy(chunks, 0, newChunks, 0, rank);
+                System.arraycopy(chunks, rank + 1, newChunks, rank, chunks.length - rank - 1);
+                chunkSlots = new ChunkSlots<>(newOccupancy, newChunks);
+            }
+            if (oldChunk != chunk) {
+                onChunkRemoved(oldChunk);
+            }
+            return;
+        }
+        if (chunk == null) {
+            return;
+        }
+        if (chunks.length >= DENSE_THRESHOLD) {
+            ChunkType[] dense = supplyChunkArray(1024);
+            for (int i = nextChunkIndex(0); i != -1; i = nextChunkIndex(i + 1)) {
+                dense[i] = getChunkAt(i);
+            }
+            dense[index] = chunk;
+            chunkSlots = new ChunkSlots<>(null, dense);
+            return;
+        }
+        int rank = rank(occupancy, index);
+        long[] newOccupancy = occupancy.clone();
+        newOccupancy[index >>> 6] |= bit;
+        ChunkType[] newChunks = supplyChunkArray(chunks.length + 1);
+        System.arraycopy(chunks, 0, newChunks, 0, rank);
+        newChunks[rank] = chunk;
+        System.arraycopy(chunks, rank, newChunks, rank + 1, chunks.length - rank);
+        chunkSlots = new ChunkSlots<>(newOccupancy, newChunks);
+    }
+
+    /**
+     * @return the number of occupied indices before the provided index.
+     */
+    private static int rank(long[] occupancy, int index) {
+        int wordIndex = index >>> 6;
+        int rank = Long.bitCount(occupancy[wordIndex] & (1L << index) - 1);
+        for (int i = 0; i < wordIndex; i++) {
+            rank += Long.bitCount(occupancy[i]);
+        }
+        return rank;
+    }
+
     public boolean updateChunk(World world, Chunk chunk, ChunkCache adjChunkCache, CeilingType ceilingType,
             long curTimeMs) {
         return false;
@@ -159,14 +344,13 @@ public abstract class MapRegion<ChunkType extends MapChunk<ChunkNbtContext>, Chu
         if (this == other) {
             return result;
         }
-        if (chunkArray == null) {
+        if (chunkSlots == null) {
             return result;
         }
-        long newLastModified = 0;
-        for (int i = 0; i < chunkArray.length; i++) {
-            ChunkType myChunk = chunkArray[i];
-            ChunkType otherChunk = other.chunkArray[i];
-            if (otherChunk != null && myChunk != null) {
+        for (int i = other.nextChunkIndex(0); i != -1; i = other.nextChunkIndex(i + 1)) {
+            ChunkType myChunk = getChunkAt(i);
+            ChunkType otherChunk = other.getChunkAt(i);
+            if (myChunk != null) {
                 MergeResult chunkResult = myChunk.mergeFrom(otherChunk);
                 if (chunkResult.isUsedBoth()) {
                     myChunk.setLastModified(Math.max(myChunk.getLastModified(), other.getLastModified()));
@@ -174,15 +358,17 @@ public abstract class MapRegion<ChunkType extends MapChunk<ChunkNbtContext>, Chu
                     myChunk.setLastModified(other.getLastModified());
                 }
                 result = result.includeResult(chunkResult);
-            } else if (otherChunk != null) {
-                chunkArray[i] = myChunk = otherChunk;
+            } else {
+                setChunkAt(i, otherChunk);
                 result = result.usedOther();
-            } else if (myChunk != null) {
-                result = result.usedThis();
             }
-            if (myChunk != null) {
-                newLastModified = Math.max(newLastModified, myChunk.getLastModified());
+        }
+        long newLastModified = 0;
+        for (int i = nextChunkIndex(0); i != -1; i = nextChunkIndex(i + 1)) {
+            if (other.getChunkAt(i) == null) {
+                result = result.usedThis();
             }
+            newLastModified = Math.max(newLastModified, getChunkAt(i).getLastModified());
         }
         if (!result.isUsedThis()) {
             setLastSaved(other.getLastSaved());
@@ -208,7 +394,7 @@ public abstract class MapRegion<ChunkType extends MapChunk<ChunkNbtContext>, Chu
         }
 
         long modified = 0;
-        if (chunkArray != null && root.contains("chunks", NbtElement.COMPOUND_TYPE)) {
+        if (chunkSlots != null && root.contains("chunks", NbtElement.COMPOUND_TYPE)) {
             NbtCompound chunks = root.getCompound("chunks");
             for (int z = 0; z < 32; z++) {
                 for (int x = 0; x < 32; x++) {
@@ -224,11 +410,8 @@ public abstract class MapRegion<ChunkType extends MapChunk<ChunkNbtContext>, Chu
                 }
             }
 
-            for (int i = 0; i < chunkArray.length; i++) {
-                ChunkType chunk = chunkArray[i];
-                if (chunk != null) {
-                    modified = Math.max(modified, chunk.getLastModified());
-                }
+            for (int i = nextChunkIndex(0); i != -1; i = nextChunkIndex(i + 1)) {
+                modified = Math.max(modified, getChunkAt(i).getLastModified());
             }
         }
 
@@ -246,18 +429,12 @@ public abstract class MapRegion<ChunkType extends MapChunk<ChunkNbtContext>, Chu
 
         ChunkNbtContext chunkContext = supplyNbtContext();
 
-        if (chunkArray != null) {
+        if (chunkSlots != null) {
             NbtCompound chunks = new NbtCompound();
-            for (int z = 0; z < 32; z++) {
-                for (int x = 0; x < 32; x++) {
-                    ChunkType chunk = getChunk(x, z, false);
-                    if (chunk == null) {
-                        continue;
-                    }
-                    NbtCompound chunkNbt = chunk.saveToNbt(chunkContext);
-                    if (chunkNbt != null) {
-                        chunks.put(x + "," + z, chunkNbt);
-                    }
+            for (int i = nextChunkIndex(0); i != -1; i = nextChunkIndex(i + 1)) {
+                NbtCompound chunkNbt = getChunkAt(i).saveToNbt(chunkContext);
+                if (chunkNbt != null) {
+                    chunks.put((i & 0x1F) + "," + (i >>> 5), chunkNbt);
                 }
             }
             root.put("chunks", chunks);
@@ -278,4 +455,10 @@ public abstract class MapRegion<ChunkType extends MapChunk<ChunkNbtContext>, Chu
     protected abstract void loadNbtContext(NbtCompound contextRoot, ChunkNbtContext context) throws IOException;
 
     protected abstract NbtCompound saveNbtContext(ChunkNbtContext context);
+
+    /**
+     * A region's chunks, either a compact array in index order with a bitmap
+     * of which indices are present, or a full array when occupancy is null.
+     */
+    private record ChunkSlots<C>(long[] occupancy, C[] chunks) {}
 }
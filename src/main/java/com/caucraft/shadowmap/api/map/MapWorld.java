@@ -31,7 +31,7 @@ public interface MapWorld {
             int flags = 0;
             LoadLevel[] values = values();
             for (int i = 0; i < values.length; i++) {
-                flags |= values[0].loadFlag.flag;
+                flags |= values[i].loadFlag.flag;
             }
             LOAD_FLAGS_MASK = flags;
         }
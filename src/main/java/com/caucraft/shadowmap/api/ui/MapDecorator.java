@@ -29,4 +29,38 @@ public interface MapDecorator {
      * @param context render context after rendering the map
      */
     default void renderDecorations(MapRenderContext context) {}
+
+    /**
+     * Determines how {@link #preRenderMap(MapRenderContext)} and
+     * {@link #postRenderMap(MapRenderContext)} are drawn on the minimap, which
+     * keeps its map image between frames and only redraws it when the view or
+     * a visible region's texture changes. Called every frame.
+     * @return the minimap layer the decorator draws on
+     */
+    default MinimapLayer getMinimapLayer() {
+        return MinimapLayer.ALWAYS_REDRAW;
+    }
+
+    /**
+     * Minimap layers a decorator's map decorations can be drawn on.
+     */
+    enum MinimapLayer {
+        /**
+         * Drawn into the minimap's cached image, only when it is redrawn.
+         * Suited to decorations that only change with the map view, ex.
+         * claim borders.
+         */
+        BASE,
+        /**
+         * Drawn every frame on a separate image over the cached one, so both
+         * pre- and post-render decorations are drawn over the map. Suited to
+         * decorations that move on their own, ex. entity markers.
+         */
+        OVERLAY,
+        /**
+         * Drawn into the minimap's image like {@link #BASE}, but forces the
+         * whole image to be redrawn every frame.
+         */
+        ALWAYS_REDRAW
+    }
 }
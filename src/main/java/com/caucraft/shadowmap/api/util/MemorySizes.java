@@ -0,0 +1,68 @@
+package com.caucraft.shadowmap.api.util;
+
+import com.sun.management.HotSpotDiagnosticMXBean;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Shallow sizes of objects and arrays on the running JVM's heap, for use in
+ * memory accounting such as {@link com.caucraft.shadowmap.api.map.MapRegion#estimateMemoryUsage()}.
+ * Array sizes are exact for HotSpot's layout, object sizes assume fields are
+ * packed without gaps, which is close enough for small field counts.
+ */
+public final class MemorySizes {
+    /** Size of an object reference, 4 with compressed oops or 8 without. */
+    public static final int REFERENCE;
+    /** Size of an object header. */
+    public static final int OBJECT_HEADER;
+    /** Size of an array header, including the length field. */
+    public static final int ARRAY_HEADER;
+
+    static {
+        boolean compressedOops = Runtime.getRuntime().maxMemory() < (32L << 30);
+        boolean compressedClassPointers = compressedOops;
+        try {
+            HotSpotDiagnosticMXBean bean = ManagementFactory.getPlatformMXBean(HotSpotDiagnosticMXBean.class);
+            compressedOops = Boolean.parseBoolean(bean.getVMOption("UseCompressedOops").getValue());
+            compressedClassPointers = Boolean.parseBoolean(bean.getVMOption("UseCompressedClassPointers").getValue());
+        } catch (RuntimeException | LinkageError ignore) {}
+        REFERENCE = compressedOops ? 4 : 8;
+        OBJECT_HEADER = compressedClassPointers ? 12 : 16;
+        ARRAY_HEADER = compressedClassPointers ? 16 : 20;
+    }
+
+    private MemorySizes() {}
+
+    private static long align(long size) {
+        return size + 7 & ~7L;
+    }
+
+    /**
+     * @param references number of reference fields in the object
+     * @param primitiveBytes total size of primitive fields in the object
+     * @return shallow size of the object
+     */
+    public static int object(int references, int primitiveBytes) {
+        return (int) align(OBJECT_HEADER + (long) references * REFERENCE + primitiveBytes);
+    }
+
+    public static int byteArray(int length) {
+        return (int) align(ARRAY_HEADER + (long) length);
+    }
+
+    public static int shortArray(int length) {
+        return (int) align(ARRAY_HEADER + 2L * length);
+    }
+
+    public static int intArray(int length) {
+        return (int) align(ARRAY_HEADER + 4L * length);
+    }
+
+    public static int longArray(int length) {
+        return (int) align(ARRAY_HEADER + 8L * length);
+    }
+
+    public static int objectArray(int length) {
+        return (int) align(ARRAY_HEADER + (long) REFERENCE * length);
+    }
+}
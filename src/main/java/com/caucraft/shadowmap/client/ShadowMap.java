@@ -406,6 +406,8 @@ public class ShadowMap implements ClientModInitializer, MapApi {
         if (client.player != null && client.world != null) {
             BlockPos cameraPos = client.player.getBlockPos();
             mapManager.setPlayerPosition(cameraPos.getX(), cameraPos.getZ());
+            Vec3d velocity = client.player.getRootVehicle().getVelocity();
+            mapManager.setPlayerVelocity(cameraPos.getX(), cameraPos.getZ(), velocity.x * 20, velocity.z * 20);
             Entity cameraEntity = client.getCameraEntity();
             if (cameraEntity == null) {
                 cameraEntity = client.player;
@@ -1,5 +1,6 @@
 package com.caucraft.shadowmap.client.config;
 
+import com.caucraft.shadowmap.client.config.values.BooleanValue;
 import com.caucraft.shadowmap.client.config.values.ConfigSection;
 import com.caucraft.shadowmap.client.config.values.EnumValue;
 import com.caucraft.shadowmap.client.config.values.IntValue;
@@ -12,6 +13,11 @@ public class PerformanceConfig {
     public final IntValue metaTimeoutS;
     public final IntValue textureMemoryMB;
     public final IntValue textureTimeoutS;
+    public final IntValue blockCacheMemoryMB;
+    public final IntValue prefetchLookaheadS;
+    public final BooleanValue regionPalette;
+    public final BooleanValue offHeapColumns;
+    public final BooleanValue stateIdStorage;
 
     public PerformanceConfig(ConfigSection section) {
         this.performanceMode = section.getEnum("performanceMode", PerformanceMode.BALANCED, PerformanceMode.class);
@@ -21,6 +27,11 @@ public class PerformanceConfig {
         this.metaTimeoutS = section.getInt("metaTimeout", 900);
         this.textureMemoryMB = section.getInt("textureMemory", 512);
         this.textureTimeoutS = section.getInt("textureTimeout", 300);
+        this.blockCacheMemoryMB = section.getInt("blockCacheMemory", 64);
+        this.prefetchLookaheadS = section.getInt("prefetchLookahead", 60);
+        this.regionPalette = section.getBoolean("regionPalette", true);
+        this.offHeapColumns = section.getBoolean("offHeapColumns", true);
+        this.stateIdStorage = section.getBoolean("stateIdStorage", false);
     }
 
     public enum PerformanceMode {
@@ -21,8 +21,8 @@ import com.caucraft.shadowmap.client.map.BlocksChunk;
 import com.caucraft.shadowmap.client.map.BlocksRegion;
 import com.caucraft.shadowmap.client.map.MapWorldImpl;
 import com.caucraft.shadowmap.client.map.RegionContainerImpl;
+import com.caucraft.shadowmap.client.render.RegionDrawBatch;
 import com.caucraft.shadowmap.client.util.ApiUser;
-import com.caucraft.shadowmap.client.util.MapFramebuffer;
 import com.caucraft.shadowmap.client.util.MapUtils;
 import com.caucraft.shadowmap.client.util.TextHelper;
 import com.mojang.blaze3d.systems.RenderSystem;
@@ -83,6 +83,7 @@ public class MapScreen extends MapScreenApi {
 
     private final Int2ObjectMap<MouseClickData> mouseConsumers;
     private final Int2ObjectMap<FullscreenMapEventHandler> keyConsumers;
+    private final RegionDrawBatch regionBatch;
 
     public MapScreen(ShadowMap shadowMap, Screen previousScreen) {
         super(Text.of("ShadowMap"));
@@ -91,6 +92,7 @@ public class MapScreen extends MapScreenApi {
         this.previousScreen = previousScreen;
         this.map = shadowMap.getMapManager().getCurrentWorld();
         this.mapZoom = 1.0F;
+        this.regionBatch = new RegionDrawBatch();
 
         MinecraftClient client = MinecraftClient.getInstance();
         IconAtlas atlas = shadowMap.getIconAtlas();
@@ -450,39 +452,6 @@ public class MapScreen extends MapScreenApi {
         int mouseBlockX = MathHelper.floor(context.mouseXWorld);
         int mouseBlockZ = MathHelper.floor(context.mouseZWorld);
 
-        MapRenderContext.RectangleI regionBounds = context.regionBounds;
-        int regionMinX = regionBounds.x1;
-        int regionMinZ = regionBounds.z1;
-        int regionMaxX = regionBounds.x2;
-        int regionMaxZ = regionBounds.z2;
-        Function<RegionContainerImpl, MapFramebuffer> framebufferFunction;
-        if (zoom <= 0.25) {
-            // Zoomed out, only use low-res
-            framebufferFunction = (region) -> {
-                MapFramebuffer lowRes = region.getLowResTexture();
-                if (lowRes != null && lowRes.getColorAttachment() > 0) {
-                    return lowRes;
-                }
-                MapFramebuffer highRes = region.getHighResTexture();
-                if (highRes != null && highRes.getColorAttachment() > 0) {
-                    return highRes;
-                }
-                return null;
-            };
-        } else {
-            framebufferFunction = (region) -> {
-                MapFramebuffer highRes = region.getHighResTexture();
-                if (highRes != null && highRes.getColorAttachment() > 0) {
-                    return highRes;
-                }
-                MapFramebuffer lowRes = region.getLowResTexture();
-                if (lowRes != null && lowRes.getColorAttachment() > 0) {
-                    return lowRes;
-                }
-                return null;
-            };
-        }
-
         // Decorator pre-render
         for (ApiUser<MapDecorator> evtHandler : shadowMap.getApiFullscreenMapDecorators()) {
             try {
@@ -500,28 +469,8 @@ public class MapScreen extends MapScreenApi {
         GL20.glBlendEquationSeparate(GL14.GL_FUNC_ADD, GL14.GL_MAX);
 
         // Draw map regions.
-        for (int rz = regionMinZ; rz <= regionMaxZ; rz++) {
-            for (int rx = regionMinX; rx <= regionMaxX; rx++) {
-                RegionContainerImpl region = map.getRegion(rx, rz, false, false);
-                if (region == null) {
-                    continue;
-                }
-                double drawX = rx << 9;
-                double drawZ = rz << 9;
-                MapFramebuffer framebuffer = framebufferFunction.apply(region);
-                if (framebuffer != null && framebuffer.getColorAttachment() > 0) {
-                    framebuffer.beginRead();
-                    RenderSystem.setShaderTexture(0, framebuffer.getColorAttachment());
-                    buffer.begin(VertexFormat.DrawMode.QUADS, VertexFormats.POSITION_TEXTURE);
-                    context.worldVertex(drawX, drawZ + 512, 0).texture(0.0F, 1.0F).next();
-                    context.worldVertex(drawX + 512, drawZ + 512, 0).texture(1.0F, 1.0F).next();
-                    context.worldVertex(drawX + 512, drawZ, 0).texture(1.0F, 0.0F).next();
-                    context.worldVertex(drawX, drawZ, 0).texture(0.0F, 0.0F).next();
-                    tess.draw();
-                    framebuffer.endRead();
-                }
-            }
-        }
+        regionBatch.collect(map, context.regionBounds, zoom <= 0.25);
+        regionBatch.draw(context);
 
         // Decorator post-render
         for (ApiUser<MapDecorator> evtHandler : shadowMap.getApiFullscreenMapDecorators()) {
@@ -677,12 +626,22 @@ public class MapScreen extends MapScreenApi {
             return;
         }
         BlocksRegion hoverLayer = hoverRegion.getBlocks();
-        if (hoverLayer == null) {
+        // Read without the region's lock, keep its columns from being freed.
+        if (hoverLayer == null || !hoverLayer.retainColumns()) {
             if (config.showInfoCoords.get() && (!privacy || !privacyConfig.hideCoords.get())) {
                 hoverText.add(mouseBlockX + "  " + mouseBlockZ);
             }
             return;
         }
+        try {
+            addHoverBlockInfo(config, hoverText, hoverLayer, mouseBlockX, mouseBlockZ, privacy, privacyConfig);
+        } finally {
+            hoverLayer.releaseRetainedColumns();
+        }
+    }
+
+    private void addHoverBlockInfo(MapScreenConfig config, List<String> hoverText, BlocksRegion hoverLayer,
+            int mouseBlockX, int mouseBlockZ, boolean privacy, PrivacyConfig privacyConfig) {
         BlocksChunk hoverChunk = hoverLayer.getChunk(mouseBlockX >> 4, mouseBlockZ >> 4, false);
         if (hoverChunk == null) {
             if (config.showInfoCoords.get() && (!privacy || !privacyConfig.hideCoords.get())) {
@@ -10,9 +10,8 @@ import com.caucraft.shadowmap.client.config.InfoConfig;
 import com.caucraft.shadowmap.client.config.MinimapConfig;
 import com.caucraft.shadowmap.client.config.PrivacyConfig;
 import com.caucraft.shadowmap.client.map.MapWorldImpl;
-import com.caucraft.shadowmap.client.map.RegionContainerImpl;
+import com.caucraft.shadowmap.client.render.RegionDrawBatch;
 import com.caucraft.shadowmap.client.util.ApiUser;
-import com.caucraft.shadowmap.client.util.MapFramebuffer;
 import com.caucraft.shadowmap.client.util.TextHelper;
 import com.mojang.blaze3d.platform.GlConst;
 import com.mojang.blaze3d.systems.RenderSystem;
@@ -46,7 +45,6 @@ import org.lwjgl.opengl.GL20;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
-import java.util.function.Function;
 
 public class MinimapHud {
     private static final int ANGLE_INCREMENT;
@@ -69,10 +67,15 @@ public class MinimapHud {
     private final ShadowMap shadowMap;
     private Matrix3x2d tempMatrix;
     private Framebuffer minimapFramebuffer;
+    private Framebuffer overlayFramebuffer;
+    private final RegionDrawBatch regionBatch;
+    /** What the minimap framebuffer currently shows, null if nothing. */
+    private CompositeKey compositeKey;
 
     public MinimapHud(ShadowMap shadowMap) {
         this.shadowMap = shadowMap;
         this.tempMatrix = new Matrix3x2d();
+        this.regionBatch = new RegionDrawBatch();
     }
 
     public void render(float tickDelta) {
@@ -177,37 +180,37 @@ public class MinimapHud {
         }
         if (minimapFramebuffer.textureWidth != diameter || minimapFramebuffer.textureHeight != diameter || minimapFramebuffer.getColorAttachment() == -1) {
             minimapFramebuffer.resize(diameter, diameter, MinecraftClient.IS_SYSTEM_MAC);
+            compositeKey = null;
         }
 
-        Matrix4f originalMatrix = RenderSystem.getProjectionMatrix();
-        Function<RegionContainerImpl, MapFramebuffer> framebufferFunction;
-        if (zoom <= 0.25) {
-            // Zoomed out, only use low-res
-            framebufferFunction = (region) -> {
-                MapFramebuffer lowRes = region.getLowResTexture();
-                if (lowRes != null && lowRes.getColorAttachment() > 0) {
-                    return lowRes;
-                }
-                MapFramebuffer highRes = region.getHighResTexture();
-                if (highRes != null && highRes.getColorAttachment() > 0) {
-                    return highRes;
-                }
-                return null;
-            };
-        } else {
-            framebufferFunction = (region) -> {
-                MapFramebuffer highRes = region.getHighResTexture();
-                if (highRes != null && highRes.getColorAttachment() > 0) {
-                    return highRes;
-                }
-                MapFramebuffer lowRes = region.getLowResTexture();
-                if (lowRes != null && lowRes.getColorAttachment() > 0) {
-                    return lowRes;
-                }
-                return null;
-            };
+        boolean alwaysRedraw = false;
+        boolean hasOverlay = false;
+        List<ApiUser<MapDecorator>> decorators = shadowMap.getApiMinimapDecorators();
+        MapDecorator.MinimapLayer[] layers = new MapDecorator.MinimapLayer[decorators.size()];
+        for (int i = 0; i < layers.length; i++) {
+            ApiUser<MapDecorator> evtHandler = decorators.get(i);
+            try {
+                layers[i] = evtHandler.user.getMinimapLayer();
+            } catch (Exception ex) {
+                ShadowMap.getLogger().error("Exception in " + evtHandler.mod.meta.getName() + " map decorator", ex);
+            }
+            if (layers[i] == null) {
+                layers[i] = MapDecorator.MinimapLayer.ALWAYS_REDRAW;
+            }
+            alwaysRedraw |= layers[i] == MapDecorator.MinimapLayer.ALWAYS_REDRAW;
+            hasOverlay |= layers[i] == MapDecorator.MinimapLayer.OVERLAY;
+        }
+        if (hasOverlay) {
+            if (overlayFramebuffer == null) {
+                overlayFramebuffer = new SimpleFramebuffer(diameter, diameter, false, MinecraftClient.IS_SYSTEM_MAC);
+            }
+            if (overlayFramebuffer.textureWidth != diameter || overlayFramebuffer.textureHeight != diameter || overlayFramebuffer.getColorAttachment() == -1) {
+                overlayFramebuffer.resize(diameter, diameter, MinecraftClient.IS_SYSTEM_MAC);
+            }
         }
 
+        Matrix4f originalMatrix = RenderSystem.getProjectionMatrix();
+
         // Build render context for minimap framebuffer render
         MapRenderContext context;
 
@@ -238,72 +241,88 @@ public class MinimapHud {
         Tessellator tess = context.tessellator;
         BufferBuilder buffer = context.buffer;
 
-        // Set up for minimap framebuffer render
+        // Only recompose the map when something visible on it changed
+        regionBatch.collect(mapWorld, context.regionBounds, zoom <= 0.25);
+        GridConfig gridConfig = shadowMap.getConfig().gridConfig;
+        CompositeKey newKey = new CompositeKey(mapWorld, config.shape.get(), diameter, scaleFactor,
+                context.centerX, context.centerZ, context.zoom, context.rotation, regionBatch.getStamp(),
+                config.showGrid.get(), gridConfig.showGridChunks.get(), gridConfig.showGridRegions.get(),
+                gridConfig.gridColorChunk.get(), gridConfig.gridColorRegion.get(), gridConfig.gridColorRegion32.get());
         Matrix4f newMatrix = new Matrix4f().setOrtho(0.0f, diameter, diameter, 0.0f, -1000.0f, 1000.0f);
-        RenderSystem.setProjectionMatrix(newMatrix, VertexSorter.BY_Z);
-        minimapFramebuffer.beginWrite(true);
-        RenderSystem.enableBlend();
-        RenderSystem.defaultBlendFunc();
-        GL20.glBlendEquationSeparate(GL14.GL_FUNC_ADD, GL14.GL_MAX);
-        RenderSystem.clearColor(0.0F, 0.0F, 0.0F, 0.5F);
-        RenderSystem.clear(GlConst.GL_COLOR_BUFFER_BIT, true);
-        RenderSystem.clearColor(0.0F, 0.0F, 0.0F, 0.0F);
-
-        // Decorator pre-render
-        for (ApiUser<MapDecorator> evtHandler : shadowMap.getApiMinimapDecorators()) {
-            try {
-                evtHandler.user.preRenderMap(context);
-            } catch (Exception ex) {
-                ShadowMap.getLogger().error("Exception in " + evtHandler.mod.meta.getName() + " map decorator", ex);
+        if (alwaysRedraw || !newKey.equals(compositeKey)) {
+            compositeKey = newKey;
+
+            // Set up for minimap framebuffer render
+            RenderSystem.setProjectionMatrix(newMatrix, VertexSorter.BY_Z);
+            minimapFramebuffer.beginWrite(true);
+            RenderSystem.enableBlend();
+            RenderSystem.defaultBlendFunc();
+            GL20.glBlendEquationSeparate(GL14.GL_FUNC_ADD, GL14.GL_MAX);
+            RenderSystem.clearColor(0.0F, 0.0F, 0.0F, 0.5F);
+            RenderSystem.clear(GlConst.GL_COLOR_BUFFER_BIT, true);
+            RenderSystem.clearColor(0.0F, 0.0F, 0.0F, 0.0F);
+
+            // Decorator pre-render
+            for (int i = 0; i < layers.length; i++) {
+                if (layers[i] == MapDecorator.MinimapLayer.OVERLAY) {
+                    continue;
+                }
+                ApiUser<MapDecorator> evtHandler = decorators.get(i);
+                try {
+                    evtHandler.user.preRenderMap(context);
+                } catch (Exception ex) {
+                    ShadowMap.getLogger().error("Exception in " + evtHandler.mod.meta.getName() + " map decorator", ex);
+                }
             }
-        }
 
-        // Render region textures to minimap texture
-        RenderSystem.setShader(GameRenderer::getPositionTexProgram);
-        MapRenderContext.RectangleI regionBounds = context.regionBounds;
-        int regionMinX = regionBounds.x1;
-        int regionMinZ = regionBounds.z1;
-        int regionMaxX = regionBounds.x2;
-        int regionMaxZ = regionBounds.z2;
-        for (int rz = regionMinZ; rz <= regionMaxZ; rz++) {
-            for (int rx = regionMinX; rx <= regionMaxX; rx++) {
-                RegionContainerImpl region = mapWorld.getRegion(rx, rz, false, false);
-                if (region == null) {
+            // Render region textures to minimap texture
+            RenderSystem.setShader(GameRenderer::getPositionTexProgram);
+            regionBatch.draw(context);
+
+            // Decorator post-render
+            for (int i = 0; i < layers.length; i++) {
+                if (layers[i] == MapDecorator.MinimapLayer.OVERLAY) {
                     continue;
                 }
-                double drawX = rx << 9;
-                double drawZ = rz << 9;
-                MapFramebuffer framebuffer = framebufferFunction.apply(region);
-                if (framebuffer != null && framebuffer.getColorAttachment() > 0) {
-                    framebuffer.beginRead();
-                    RenderSystem.setShaderTexture(0, framebuffer.getColorAttachment());
-                    buffer.begin(VertexFormat.DrawMode.QUADS, VertexFormats.POSITION_TEXTURE);
-                    context.worldVertex(drawX, drawZ + 512, 0).texture(0.0F, 1.0F).next();
-                    context.worldVertex(drawX + 512, drawZ + 512, 0).texture(1.0F, 1.0F).next();
-                    context.worldVertex(drawX + 512, drawZ, 0).texture(1.0F, 0.0F).next();
-                    context.worldVertex(drawX, drawZ, 0).texture(0.0F, 0.0F).next();
-                    tess.draw();
-                    framebuffer.endRead();
+                ApiUser<MapDecorator> evtHandler = decorators.get(i);
+                try {
+                    evtHandler.user.postRenderMap(context);
+                } catch (Exception ex) {
+                    ShadowMap.getLogger().error("Exception in " + evtHandler.mod.meta.getName() + " map decorator", ex);
                 }
             }
-        }
 
-        // Decorator post-render
-        for (ApiUser<MapDecorator> evtHandler : shadowMap.getApiMinimapDecorators()) {
-            try {
-                evtHandler.user.postRenderMap(context);
-            } catch (Exception ex) {
-                ShadowMap.getLogger().error("Exception in " + evtHandler.mod.meta.getName() + " map decorator", ex);
+            // Gridlines
+            if (config.showGrid.get()) {
+                drawGrid(context);
             }
-        }
 
-        // Gridlines
-        if (config.showGrid.get()) {
-            drawGrid(context);
+            GL20.glBlendEquationSeparate(GL14.GL_FUNC_ADD, GL14.GL_FUNC_ADD);
+            minimapFramebuffer.endWrite();
         }
 
-        GL20.glBlendEquationSeparate(GL14.GL_FUNC_ADD, GL14.GL_FUNC_ADD);
-        minimapFramebuffer.endWrite();
+        // Overlay decorators draw every frame on their own framebuffer
+        if (hasOverlay) {
+            RenderSystem.setProjectionMatrix(newMatrix, VertexSorter.BY_Z);
+            overlayFramebuffer.beginWrite(true);
+            RenderSystem.enableBlend();
+            RenderSystem.defaultBlendFunc();
+            RenderSystem.clearColor(0.0F, 0.0F, 0.0F, 0.0F);
+            RenderSystem.clear(GlConst.GL_COLOR_BUFFER_BIT, true);
+            for (int i = 0; i < layers.length; i++) {
+                if (layers[i] != MapDecorator.MinimapLayer.OVERLAY) {
+                    continue;
+                }
+                ApiUser<MapDecorator> evtHandler = decorators.get(i);
+                try {
+                    evtHandler.user.preRenderMap(context);
+                    evtHandler.user.postRenderMap(context);
+                } catch (Exception ex) {
+                    ShadowMap.getLogger().error("Exception in " + evtHandler.mod.meta.getName() + " map decorator", ex);
+                }
+            }
+            overlayFramebuffer.endWrite();
+        }
 
         {
             int xPos = switch (config.horizontalAlignment.get()) {
@@ -332,6 +351,15 @@ public class MinimapHud {
             case SQUARE -> drawTexturedSquare(context, radius);
         }
         minimapFramebuffer.endRead();
+        if (hasOverlay) {
+            overlayFramebuffer.beginRead();
+            RenderSystem.setShaderTexture(0, overlayFramebuffer.getColorAttachment());
+            switch (config.shape.get()) {
+                case CIRCLE -> drawTexturedCircle(context, radius);
+                case SQUARE -> drawTexturedSquare(context, radius);
+            }
+            overlayFramebuffer.endRead();
+        }
 
         Matrix3x2dc tempMatrix;
         if (config.lockNorth.get()) {
@@ -364,7 +392,7 @@ public class MinimapHud {
         }
 
         // Decorator decor render
-        for (ApiUser<MapDecorator> evtHandler : shadowMap.getApiMinimapDecorators()) {
+        for (ApiUser<MapDecorator> evtHandler : decorators) {
             try {
                 evtHandler.user.renderDecorations(context);
             } catch (Exception ex) {
@@ -375,6 +403,15 @@ public class MinimapHud {
         RenderSystem.setProjectionMatrix(originalMatrix, VertexSorter.BY_Z);
     }
 
+    /**
+     * Everything the cached minimap image depends on. The view center is
+     * already snapped to the map's pixel grid, so the image is only redrawn
+     * when the camera moves onto a different pixel.
+     */
+    private record CompositeKey(MapWorldImpl world, MinimapConfig.Shape shape, int diameter, double uiScale,
+            double centerX, double centerZ, double zoom, double rotation, long regionStamp,
+            boolean showGrid, boolean gridChunks, boolean gridRegions, int chunkColor, int regionColor, int region32Color) {}
+
     private void drawGrid(MapRenderContext context) {
         GridConfig gridConfig = shadowMap.getConfig().gridConfig;
         boolean chunks = gridConfig.showGridChunks.get();
@@ -4,8 +4,16 @@ import com.caucraft.shadowmap.client.ShadowMap;
 import com.caucraft.shadowmap.client.config.DebugConfig;
 import com.caucraft.shadowmap.client.gui.component.RecustomIconButtonWidget;
 import com.caucraft.shadowmap.client.gui.component.RecustomTextFieldWidget;
+import com.caucraft.shadowmap.client.map.BlocksRegionCache;
+import com.caucraft.shadowmap.client.map.MapManagerImpl;
+import com.caucraft.shadowmap.client.map.MapWorldImpl;
+import com.caucraft.shadowmap.client.map.MemoryReport;
+import com.caucraft.shadowmap.client.map.RegionPrefetcher;
+import com.caucraft.shadowmap.client.render.RegionTextureAtlas;
+import com.caucraft.shadowmap.client.util.TextHelper;
 import net.minecraft.client.MinecraftClient;
 import net.minecraft.client.font.TextRenderer;
+import net.minecraft.client.gui.DrawContext;
 import net.minecraft.client.gui.screen.Screen;
 import net.minecraft.text.Text;
 
@@ -100,4 +108,53 @@ public class DebugConfigScreen extends Screen {
         y = (height - 240) / 3 + 210;
         done.setPosition(midX - 75, y);
     }
+
+    @Override
+    public void render(DrawContext context, int mouseX, int mouseY, float delta) {
+        super.render(context, mouseX, mouseY, delta);
+        TextHelper text = TextHelper.get(textRenderer, context.getMatrices()).shadow(true);
+        int x = width / 2 - 150;
+        int y = (height - 240) / 3 + 234;
+        MapManagerImpl mapManager = ShadowMap.getInstance().getMapManager();
+        MapWorldImpl world = mapManager.getCurrentWorld();
+        if (world != null) {
+            RegionPrefetcher prefetcher = world.getPrefetcher();
+            long hits = prefetcher.getHitCount();
+            long total = hits + prefetcher.getMissCount();
+            text.drawLeftAlign(String.format("Prefetch: %d scheduled, %d cancelled, %d/%d hits (%.1f%%)",
+                    prefetcher.getScheduledCount(), prefetcher.getCancelledCount(), hits, total,
+                    total == 0 ? 0.0 : hits * 100.0 / total), x, y);
+            y += 10;
+        }
+        text.drawLeftAlign(String.format("Memory: %.1f MB texture total%s", RegionTextureAtlas.getTotalGlBytes() / 1048576.0,
+                mapManager.isUnderHeapPressure() ? ", heap pressure, budgets shrunk" : ""), x, y);
+        y += 10;
+        drawTexturePool(text, "High-res", mapManager.getHighResAtlas(), x, y);
+        y += 10;
+        drawTexturePool(text, "Low-res", mapManager.getLowResAtlas(), x, y);
+        y += 10;
+        BlocksRegionCache blocksCache = mapManager.getBlocksRegionCache();
+        long hits = blocksCache.getHitCount();
+        long total = hits + blocksCache.getMissCount();
+        text.drawLeftAlign(String.format("Blocks cache: %d regions, %.1f MB, %d/%d hits (%.1f%%)",
+                blocksCache.getEntryCount(), blocksCache.getUsedBytes() / 1048576.0, hits, total,
+                total == 0 ? 0.0 : hits * 100.0 / total), x, y);
+        y += 10;
+        for (MapWorldImpl loadedWorld : mapManager.getLoadedWorlds()) {
+            MemoryReport report = loadedWorld.getMemoryReport();
+            text.drawLeftAlign(String.format("%s: %d regions, blocks %.1f MB, meta %.1f MB, textures %.1f + %.1f MB",
+                    loadedWorld.getWorldKey(), report.regions(),
+                    report.blockBytes() / 1048576.0, report.metaBytes() / 1048576.0,
+                    report.highResTextureBytes() / 1048576.0, report.lowResTextureBytes() / 1048576.0), x, y);
+            y += 10;
+        }
+    }
+
+    private void drawTexturePool(TextHelper text, String name, RegionTextureAtlas atlas, int x, int y) {
+        long hits = atlas.getHitCount();
+        long total = hits + atlas.getMissCount();
+        text.drawLeftAlign(String.format("%s pool: %d/%d slots used, %d/%d hits (%.1f%%)",
+                name, atlas.getUsedSlots(), atlas.getTotalSlots(), hits, total,
+                total == 0 ? 0.0 : hits * 100.0 / total), x, y);
+    }
 }
@@ -5,6 +5,7 @@ import com.caucraft.shadowmap.client.config.PerformanceConfig;
 import com.caucraft.shadowmap.client.gui.component.RecustomCycleButtonWidget;
 import com.caucraft.shadowmap.client.gui.component.RecustomIconButtonWidget;
 import com.caucraft.shadowmap.client.gui.component.RecustomTextFieldWidget;
+import com.caucraft.shadowmap.client.gui.component.RecustomToggleButtonWidget;
 import net.minecraft.client.MinecraftClient;
 import net.minecraft.client.font.TextRenderer;
 import net.minecraft.client.gui.DrawContext;
@@ -31,6 +32,13 @@ public class PerformanceConfigScreen extends Screen {
     private final RecustomTextFieldWidget textureMemory;
     private final TextWidget textureTimeoutLabel;
     private final RecustomTextFieldWidget textureTimeout;
+    private final TextWidget prefetchLookaheadLabel;
+    private final RecustomTextFieldWidget prefetchLookahead;
+    private final TextWidget blockCacheMemoryLabel;
+    private final RecustomTextFieldWidget blockCacheMemory;
+    private final RecustomToggleButtonWidget regionPalette;
+    private final RecustomToggleButtonWidget offHeapColumns;
+    private final RecustomToggleButtonWidget stateIdStorage;
     private final RecustomIconButtonWidget done;
 
     public PerformanceConfigScreen(Screen parentScreen) {
@@ -59,6 +67,15 @@ public class PerformanceConfigScreen extends Screen {
         this.textureTimeoutLabel = new TextWidget(100, 20, Text.of("Texture Timeout (s)"), textRenderer);
         this.textureTimeout = new RecustomTextFieldWidget(textRenderer, 0, 0, 46, 16, null);
         this.textureTimeout.setTypedChangeListener(this::textureTimeoutChanged);
+        this.prefetchLookaheadLabel = new TextWidget(100, 20, Text.of("Prefetch Lookahead (s)"), textRenderer);
+        this.prefetchLookahead = new RecustomTextFieldWidget(textRenderer, 0, 0, 46, 16, null);
+        this.prefetchLookahead.setTypedChangeListener(this::prefetchLookaheadChanged);
+        this.blockCacheMemoryLabel = new TextWidget(100, 20, Text.of("Blocks Cache (MB)"), textRenderer);
+        this.blockCacheMemory = new RecustomTextFieldWidget(textRenderer, 0, 0, 46, 16, null);
+        this.blockCacheMemory.setTypedChangeListener(this::blockCacheMemoryChanged);
+        this.regionPalette = new RecustomToggleButtonWidget(0, 0, 148, 20, "Region Palettes", this::regionPaletteClicked, config.regionPalette.get());
+        this.offHeapColumns = new RecustomToggleButtonWidget(0, 0, 148, 20, "Off-heap Columns", this::offHeapColumnsClicked, config.offHeapColumns.get());
+        this.stateIdStorage = new RecustomToggleButtonWidget(0, 0, 148, 20, "State ID Storage", this::stateIdStorageClicked, config.stateIdStorage.get());
         this.done = new RecustomIconButtonWidget(0, 0, 150, 20, "Done", this::doneClicked);
 
         this.blockMemory.setTextPredicate(RecustomTextFieldWidget.INTEGER_FILTER);
@@ -76,6 +93,12 @@ public class PerformanceConfigScreen extends Screen {
         this.textureTimeout.setTextPredicate(RecustomTextFieldWidget.INTEGER_FILTER);
         this.textureTimeout.setText(Integer.toString(config.textureTimeoutS.get()));
 
+        this.prefetchLookahead.setTextPredicate(RecustomTextFieldWidget.INTEGER_FILTER);
+        this.prefetchLookahead.setText(Integer.toString(config.prefetchLookaheadS.get()));
+
+        this.blockCacheMemory.setTextPredicate(RecustomTextFieldWidget.INTEGER_FILTER);
+        this.blockCacheMemory.setText(Integer.toString(config.blockCacheMemoryMB.get()));
+
     }
 
     @Override
@@ -93,6 +116,13 @@ public class PerformanceConfigScreen extends Screen {
         addDrawableChild(textureMemory);
         addDrawable(textureTimeoutLabel);
         addDrawableChild(textureTimeout);
+        addDrawable(prefetchLookaheadLabel);
+        addDrawableChild(prefetchLookahead);
+        addDrawable(blockCacheMemoryLabel);
+        addDrawableChild(blockCacheMemory);
+        addDrawableChild(regionPalette);
+        addDrawableChild(offHeapColumns);
+        addDrawableChild(stateIdStorage);
         addDrawableChild(done);
 
         resize(client, width, height);
@@ -127,6 +157,19 @@ public class PerformanceConfigScreen extends Screen {
         textureTimeout.setPosition(midX + 104, y + 2);
         y += 22;
 
+        prefetchLookaheadLabel.setPosition(midX - 152, y);
+        prefetchLookahead.setPosition(midX - 50, y + 2);
+        regionPalette.setPosition(midX + 2, y);
+        y += 22;
+
+        blockCacheMemoryLabel.setPosition(midX - 152, y);
+        blockCacheMemory.setPosition(midX - 50, y + 2);
+        offHeapColumns.setPosition(midX + 2, y);
+        y += 22;
+
+        stateIdStorage.setPosition(midX - 150, y);
+        y += 22;
+
         y = (height - 240) / 3 + 210;
         done.setPosition(midX - 75, y);
     }
@@ -176,6 +219,30 @@ public class PerformanceConfigScreen extends Screen {
         } catch (NumberFormatException ignore) {}
     }
 
+    private void prefetchLookaheadChanged(String text) {
+        try {
+            config.prefetchLookaheadS.set(Integer.parseInt(text));
+        } catch (NumberFormatException ignore) {}
+    }
+
+    private void blockCacheMemoryChanged(String text) {
+        try {
+            config.blockCacheMemoryMB.set(Integer.parseInt(text));
+        } catch (NumberFormatException ignore) {}
+    }
+
+    private void regionPaletteClicked(ButtonWidget btn) {
+        config.regionPalette.set(regionPalette.isToggled());
+    }
+
+    private void offHeapColumnsClicked(ButtonWidget btn) {
+        config.offHeapColumns.set(offHeapColumns.isToggled());
+    }
+
+    private void stateIdStorageClicked(ButtonWidget btn) {
+        config.stateIdStorage.set(stateIdStorage.isToggled());
+    }
+
     private void doneClicked(ButtonWidget btn) {
         client.setScreen(parentScreen);
     }
@@ -0,0 +1,91 @@
+package com.caucraft.shadowmap.client.importer;
+
+import com.caucraft.shadowmap.api.util.ServerKey;
+import net.minecraft.util.Identifier;
+import net.minecraft.world.dimension.DimensionTypes;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Stream;
+
+public class AnvilImportScanner extends ImportScanner {
+    public AnvilImportScanner() {
+        super();
+    }
+
+    public AnvilImportScanner(Path scanDir) {
+        super(scanDir);
+    }
+
+    @Override
+    public List<ImportSupplier> scanForImports() throws IOException {
+        List<ImportSupplier> list = new ArrayList<>();
+        Path scanDir = this.scanDir;
+        if (scanDir == null) {
+            scanDir = Paths.get("./saves");
+        }
+        if (!Files.isDirectory(scanDir)) {
+            return new ArrayList<>();
+        }
+        try (Stream<Path> saves = Files.list(scanDir)) {
+            Iterator<Path> saveIterator = saves
+                    .filter((path) -> Files.isRegularFile(path.resolve("level.dat")))
+                    .iterator();
+            while (saveIterator.hasNext()) {
+                Path savePath = saveIterator.next();
+                String save = savePath.getFileName().toString();
+                String overworld = DimensionTypes.OVERWORLD.getValue().getPath();
+                String nether = DimensionTypes.THE_NETHER.getValue().getPath();
+                String end = DimensionTypes.THE_END.getValue().getPath();
+                addImporter(list, save, savePath.resolve("region"), overworld, overworld);
+                addImporter(list, save, savePath.resolve("DIM-1/region"), nether, nether);
+                addImporter(list, save, savePath.resolve("DIM1/region"), end, end);
+
+                // Datapack dimensions, in dimensions/namespace/path/region
+                Path dimensionsPath = savePath.resolve("dimensions");
+                if (Files.isDirectory(dimensionsPath)) {
+                    addDimensionImporters(list, save, dimensionsPath);
+                }
+            }
+        }
+        return list;
+    }
+
+    private void addDimensionImporters(List<ImportSupplier> list, String save, Path dimensionsPath) throws IOException {
+        try (Stream<Path> namespaces = Files.list(dimensionsPath)) {
+            Iterator<Path> namespaceIterator = namespaces
+                    .filter(Files::isDirectory)
+                    .iterator();
+            while (namespaceIterator.hasNext()) {
+                Path namespacePath = namespaceIterator.next();
+                String namespace = namespacePath.getFileName().toString();
+                try (Stream<Path> worlds = Files.list(namespacePath)) {
+                    Iterator<Path> worldIterator = worlds
+                            .filter(Files::isDirectory)
+                            .iterator();
+                    while (worldIterator.hasNext()) {
+                        Path worldPath = worldIterator.next();
+                        // Keyed the same way as live worlds, the dimension type
+                        // isn't known without loading the save's datapacks.
+                        String worldId = namespace.equals(Identifier.DEFAULT_NAMESPACE)
+                                ? worldPath.getFileName().toString()
+                                : namespace + ':' + worldPath.getFileName();
+                        addImporter(list, save, worldPath.resolve("region"), worldId, worldId);
+                    }
+                }
+            }
+        }
+    }
+
+    private void addImporter(List<ImportSupplier> list, String save, Path regionPath, String world, String dimension) {
+        if (!Files.isDirectory(regionPath)) {
+            return;
+        }
+        list.add(new ImportSupplier(regionPath, ImportType.ANVIL, true, ServerKey.ServerType.SINGLEPLAYER, save, -1, world, dimension, "Vanilla Region Files"));
+    }
+}
@@ -0,0 +1,82 @@
+package com.caucraft.shadowmap.client.importer;
+
+import com.caucraft.shadowmap.api.map.CeilingType;
+import com.caucraft.shadowmap.api.util.WorldKey;
+import com.caucraft.shadowmap.client.map.BlocksRegion;
+import com.caucraft.shadowmap.client.map.MapManagerImpl;
+import net.minecraft.world.dimension.DimensionTypes;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.UUID;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+public class AnvilImportTask extends RegionImportTask<AnvilImportTask.AnvilImportOp> {
+
+    private static final Pattern MCA_PATTERN = Pattern.compile("r\\.(?<x>-?\\d+)\\.(?<z>-?\\d+)\\.mca");
+
+    public AnvilImportTask(UUID id, WorldKey worldKey, File regionFolder) {
+        super(id, worldKey, regionFolder);
+    }
+
+    @Override
+    protected Stream<Path> getPathStream() throws IOException {
+        return Files.list(importFile.toPath()).filter((path) -> MCA_PATTERN.matcher(path.getFileName().toString()).matches());
+    }
+
+    @Override
+    public AnvilImportOp getImportOp(Path path) {
+        File file = path.toFile();
+        Matcher nameMatcher = MCA_PATTERN.matcher(file.getName().toLowerCase(Locale.ROOT));
+        if (!nameMatcher.matches()) {
+            return null;
+        }
+
+        int regionX = Integer.parseInt(nameMatcher.group("x"));
+        int regionZ = Integer.parseInt(nameMatcher.group("z"));
+        return new AnvilImportOp(file, regionX, regionZ);
+    }
+
+    @Override
+    public ImportType getType() {
+        return ImportType.ANVIL;
+    }
+
+    private CeilingType getCeilingType() {
+        // Worlds imported with default datapacks aren't loaded in the game,
+        // so they don't know their dimension's ceiling.
+        if (world.getCeilingType() == CeilingType.ROOFED
+                || DimensionTypes.THE_NETHER.getValue().getPath().equals(getWorldKey().dimensionName())) {
+            return CeilingType.ROOFED;
+        }
+        return CeilingType.OPEN;
+    }
+
+    class AnvilImportOp extends RegionImportOp {
+        private byte[] mcaData;
+
+        public AnvilImportOp(File importFile, int regionX, int regionZ) {
+            super(AnvilImportTask.this.world, importFile, regionX, regionZ);
+            this.whenComplete((val, ex) -> mcaData = null);
+        }
+
+        @Override
+        void readFile(MapManagerImpl mapManager) throws IOException {
+            mcaData = AnvilImporter.readRegionFile(importFile);
+        }
+
+        @Override
+        boolean decodeInto(BlocksRegion blocks) throws IOException {
+            try {
+                return AnvilImporter.decodeRegion(importFile, mcaData, blocks, getCeilingType());
+            } finally {
+                mcaData = null;
+            }
+        }
+    }
+}
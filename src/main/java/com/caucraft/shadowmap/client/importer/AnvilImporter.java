@@ -0,0 +1,356 @@
+package com.caucraft.shadowmap.client.importer;
+
+import com.caucraft.shadowmap.api.map.CeilingType;
+import com.caucraft.shadowmap.api.map.MapWorld;
+import com.caucraft.shadowmap.api.map.RegionContainer;
+import com.caucraft.shadowmap.api.util.RegistryWrapper;
+import com.caucraft.shadowmap.client.ShadowMap;
+import com.caucraft.shadowmap.client.map.BlocksChunk;
+import com.caucraft.shadowmap.client.map.BlocksRegion;
+import com.caucraft.shadowmap.client.util.MapUtils;
+import net.minecraft.block.Block;
+import net.minecraft.block.BlockState;
+import net.minecraft.block.Blocks;
+import net.minecraft.nbt.NbtCompound;
+import net.minecraft.nbt.NbtElement;
+import net.minecraft.nbt.NbtIo;
+import net.minecraft.nbt.NbtList;
+import net.minecraft.registry.Registry;
+import net.minecraft.util.Identifier;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.world.biome.Biome;
+import net.minecraft.world.biome.BiomeKeys;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Reads vanilla Anvil region files (1.18 and later) into blocks layers. Each
+ * chunk's NBT is parsed whole, but block sections are only unpacked as column
+ * updates scan down into them, which for most columns is just the top one or
+ * two.
+ */
+public class AnvilImporter {
+    private static final int SECTOR_BYTES = 4096;
+    private static final int HEADER_BYTES = SECTOR_BYTES * 2;
+    private static final int COMPRESSION_GZIP = 1;
+    private static final int COMPRESSION_ZLIB = 2;
+    private static final int COMPRESSION_NONE = 3;
+    private static final int COMPRESSION_EXTERNAL = 0x80;
+
+    /**
+     * Reads a whole region file. Runs on the import read threads.
+     * @param mcaFile the region file to read
+     * @return the file's contents
+     * @throws IOException if the file can't be read
+     */
+    public static byte[] readRegionFile(File mcaFile) throws IOException {
+        return Files.readAllBytes(mcaFile.toPath());
+    }
+
+    /**
+     * Decodes every fully generated chunk in a region file read by
+     * {@link #readRegionFile(File)}. Chunks that can't be decoded are logged
+     * and skipped, the rest of the region is still imported.
+     * @param mcaFile the file the data was read from, to find chunks stored
+     * outside it
+     * @param data the region file's contents
+     * @param blocksRegion the region to decode blocks into
+     * @param ceilingType how the imported dimension is roofed
+     * @return true if at least one chunk was decoded.
+     * @throws IOException if the region file's header is cut off
+     */
+    public static boolean decodeRegion(File mcaFile, byte[] data, BlocksRegion blocksRegion, CeilingType ceilingType)
+            throws IOException {
+        if (data.length == 0) {
+            return false;
+        }
+        if (data.length < HEADER_BYTES) {
+            throw new IOException("Region file header is cut off in " + mcaFile);
+        }
+        RegionContainer region = blocksRegion.getRegionContainer();
+        MapWorld world = region.getWorld();
+        ImportContext context = new ImportContext(
+                blocksRegion, ceilingType,
+                world.getBlockRegistry(), world.getBiomeRegistry(),
+                new HashMap<>(), new HashMap<>());
+        ByteBuffer header = ByteBuffer.wrap(data, 0, HEADER_BYTES);
+        int decodedChunks = 0;
+        int failedChunks = 0;
+        IOException firstFailure = null;
+
+        for (int i = 0; i < 1024; i++) {
+            int location = header.getInt(i << 2);
+            int sectorOffset = location >>> 8;
+            if (sectorOffset < 2 || (location & 0xFF) == 0) {
+                // Chunk not present
+                continue;
+            }
+            int chunkX = i & 31;
+            int chunkZ = i >> 5;
+            try {
+                NbtCompound chunkNbt = readChunkNbt(mcaFile, data, (long) sectorOffset * SECTOR_BYTES,
+                        region.getRegionX() << 5 | chunkX, region.getRegionZ() << 5 | chunkZ);
+                if (readChunk(context, chunkNbt, chunkX, chunkZ)) {
+                    decodedChunks++;
+                }
+            } catch (IOException | RuntimeException ex) {
+                failedChunks++;
+                if (firstFailure == null) {
+                    firstFailure = ex instanceof IOException ioEx ? ioEx : new IOException(ex);
+                }
+            }
+        }
+        if (firstFailure != null) {
+            ShadowMap.getLogger().warn("Skipped " + failedChunks + " unreadable chunks in " + mcaFile, firstFailure);
+        }
+
+        if (decodedChunks == 0) {
+            return false;
+        }
+        blocksRegion.setLastModified(1);
+        return true;
+    }
+
+    private static NbtCompound readChunkNbt(File mcaFile, byte[] data, long start, int worldChunkX, int worldChunkZ)
+            throws IOException {
+        if (start + 5 > data.length) {
+            throw new IOException("Chunk " + worldChunkX + " " + worldChunkZ + " starts past the end of the file");
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        int length = buffer.getInt((int) start);
+        int compression = data[(int) start + 4] & 0xFF;
+        InputStream in;
+        if ((compression & COMPRESSION_EXTERNAL) != 0) {
+            // Chunks too large for the region file are kept next to it
+            File mccFile = new File(mcaFile.getParentFile(), "c." + worldChunkX + "." + worldChunkZ + ".mcc");
+            in = new ByteArrayInputStream(Files.readAllBytes(mccFile.toPath()));
+            compression &= ~COMPRESSION_EXTERNAL;
+        } else {
+            if (length < 1 || start + 4 + length > data.length) {
+                throw new IOException("Chunk " + worldChunkX + " " + worldChunkZ + " runs past the end of the file");
+            }
+            in = new ByteArrayInputStream(data, (int) start + 5, length - 1);
+        }
+        in = switch (compression) {
+            case COMPRESSION_GZIP -> new GZIPInputStream(in, 65536);
+            case COMPRESSION_ZLIB -> new InflaterInputStream(in);
+            case COMPRESSION_NONE -> in;
+            default -> throw new IOException("Unsupported compression " + compression + " for chunk " + worldChunkX + " " + worldChunkZ);
+        };
+        try (DataInputStream dataIn = new DataInputStream(new BufferedInputStream(in, 65536))) {
+            return NbtIo.readCompound(dataIn);
+        }
+    }
+
+    private static boolean readChunk(ImportContext context, NbtCompound chunkNbt, int chunkX, int chunkZ) {
+        // Older chunks keep everything under "Level" and would need the
+        // game's data fixers, partially generated ones aren't worth mapping.
+        String status = chunkNbt.getString("Status");
+        if (!chunkNbt.contains("sections", NbtElement.LIST_TYPE)
+                || !status.equals("full") && !status.equals("minecraft:full")) {
+            return false;
+        }
+        AnvilColumnSource source = new AnvilColumnSource(context, chunkNbt.getList("sections", NbtElement.COMPOUND_TYPE));
+        if (!source.hasBlocks) {
+            return false;
+        }
+        RegionContainer region = context.blocksRegion.getRegionContainer();
+        ChunkPos chunkPos = new ChunkPos(region.getRegionX() << 5 | chunkX, region.getRegionZ() << 5 | chunkZ);
+        BlocksChunk chunk = context.blocksRegion.getChunk(chunkX, chunkZ, true);
+        chunk.updateColumns(source, chunkPos, context.ceilingType, source.bottomY, source.topY);
+        if (source.canProvideBiomes()) {
+            chunk.markBiomesCurrent();
+        }
+        chunk.setLastModified(1);
+        return true;
+    }
+
+    private static int bitsFor(int paletteSize) {
+        return paletteSize <= 1 ? 0 : 32 - Integer.numberOfLeadingZeros(paletteSize - 1);
+    }
+
+    /**
+     * Unpacks palette indices packed the way 1.16 and later store them, with
+     * no entry split across two longs.
+     */
+    private static <T> T[] unpack(T[] palette, long[] packed, int bits, T[] out) {
+        if (bits == 0) {
+            Arrays.fill(out, palette[0]);
+            return out;
+        }
+        int perLong = 64 / bits;
+        long mask = (1L << bits) - 1;
+        if (packed.length < (out.length + perLong - 1) / perLong) {
+            throw new IllegalArgumentException("Packed palette data is too short");
+        }
+        for (int i = 0; i < out.length; i++) {
+            int index = (int) (packed[i / perLong] >>> (i % perLong) * bits & mask);
+            out[i] = index < palette.length ? palette[index] : palette[0];
+        }
+        return out;
+    }
+
+    /**
+     * A chunk's sections as read from its NBT, unpacked on first use.
+     */
+    private static class AnvilColumnSource implements BlocksChunk.ColumnSource {
+        private final ImportContext context;
+        private final int minSectionY;
+        private final NbtCompound[] sections;
+        private final BlockState[][] blocks;
+        private final Biome[][] biomes;
+        private boolean hasBiomes;
+        final boolean hasBlocks;
+        final int bottomY;
+        final int topY;
+
+        AnvilColumnSource(ImportContext context, NbtList sectionsNbt) {
+            this.context = context;
+            int minY = Integer.MAX_VALUE;
+            int maxY = Integer.MIN_VALUE;
+            for (int i = 0; i < sectionsNbt.size(); i++) {
+                int y = sectionsNbt.getCompound(i).getByte("Y");
+                minY = Math.min(minY, y);
+                maxY = Math.max(maxY, y);
+            }
+            if (minY > maxY) {
+                minY = maxY = 0;
+            }
+            this.minSectionY = minY;
+            this.sections = new NbtCompound[maxY - minY + 1];
+            this.blocks = new BlockState[sections.length][];
+            this.biomes = new Biome[sections.length][];
+
+            int bottomSection = Integer.MAX_VALUE;
+            int topSection = Integer.MIN_VALUE;
+            for (int i = 0; i < sectionsNbt.size(); i++) {
+                NbtCompound section = sectionsNbt.getCompound(i);
+                int y = section.getByte("Y");
+                sections[y - minY] = section;
+                // Light-only sections above and below the world have no blocks
+                if (!section.contains("block_states", NbtElement.COMPOUND_TYPE)) {
+                    continue;
+                }
+                bottomSection = Math.min(bottomSection, y);
+                hasBiomes |= section.contains("biomes", NbtElement.COMPOUND_TYPE);
+                if (!isEmpty(section.getCompound("block_states"))) {
+                    topSection = Math.max(topSection, y);
+                }
+            }
+            this.hasBlocks = bottomSection != Integer.MAX_VALUE;
+            this.bottomY = hasBlocks ? bottomSection << 4 : 0;
+            this.topY = topSection == Integer.MIN_VALUE ? bottomY - 1 : (topSection << 4) + 16;
+        }
+
+        private boolean isEmpty(NbtCompound blockStates) {
+            NbtList palette = blockStates.getList("palette", NbtElement.COMPOUND_TYPE);
+            return palette.size() == 1 && getState(palette.getCompound(0)).isAir();
+        }
+
+        private BlockState getState(NbtCompound stateNbt) {
+            return context.stateCache.computeIfAbsent(stateNbt, (key) -> MapUtils.blockStateFromNbt(context.blockRegistry, key));
+        }
+
+        private NbtCompound getSection(int blockY) {
+            int index = (blockY >> 4) - minSectionY;
+            return index < 0 || index >= sections.length ? null : sections[index];
+        }
+
+        private BlockState[] getBlocks(int blockY) {
+            int index = (blockY >> 4) - minSectionY;
+            if (index < 0 || index >= sections.length) {
+                return null;
+            }
+            BlockState[] sectionBlocks = blocks[index];
+            if (sectionBlocks == null && sections[index] != null
+                    && sections[index].contains("block_states", NbtElement.COMPOUND_TYPE)) {
+                NbtCompound blockStates = sections[index].getCompound("block_states");
+                NbtList paletteNbt = blockStates.getList("palette", NbtElement.COMPOUND_TYPE);
+                BlockState[] palette = new BlockState[Math.max(1, paletteNbt.size())];
+                palette[0] = Blocks.AIR.getDefaultState();
+                for (int i = 0; i < paletteNbt.size(); i++) {
+                    palette[i] = getState(paletteNbt.getCompound(i));
+                }
+                int bits = palette.length == 1 ? 0 : Math.max(4, bitsFor(palette.length));
+                sectionBlocks = blocks[index] = unpack(palette, blockStates.getLongArray("data"), bits, new BlockState[4096]);
+            }
+            return sectionBlocks;
+        }
+
+        @Override
+        public BlockState getBlockState(BlockPos pos) {
+            BlockState[] sectionBlocks = getBlocks(pos.getY());
+            if (sectionBlocks == null) {
+                return Blocks.AIR.getDefaultState();
+            }
+            return sectionBlocks[(pos.getY() & 15) << 8 | (pos.getZ() & 15) << 4 | pos.getX() & 15];
+        }
+
+        @Override
+        public int getBlockLight(BlockPos pos) {
+            NbtCompound section = getSection(pos.getY());
+            if (section == null || !section.contains("BlockLight", NbtElement.BYTE_ARRAY_TYPE)) {
+                return 0;
+            }
+            byte[] light = section.getByteArray("BlockLight");
+            int index = (pos.getY() & 15) << 8 | (pos.getZ() & 15) << 4 | pos.getX() & 15;
+            return index >> 1 < light.length ? light[index >> 1] >> ((index & 1) << 2) & 0x0F : 0;
+        }
+
+        @Override
+        public boolean canProvideBiomes() {
+            return hasBiomes;
+        }
+
+        @Override
+        public Biome getBiome(BlockPos pos) {
+            int index = (pos.getY() >> 4) - minSectionY;
+            if (index < 0 || index >= sections.length || sections[index] == null
+                    || !sections[index].contains("biomes", NbtElement.COMPOUND_TYPE)) {
+                return null;
+            }
+            Biome[] sectionBiomes = biomes[index];
+            if (sectionBiomes == null) {
+                NbtCompound biomesNbt = sections[index].getCompound("biomes");
+                NbtList paletteNbt = biomesNbt.getList("palette", NbtElement.STRING_TYPE);
+                Biome[] palette = new Biome[Math.max(1, paletteNbt.size())];
+                palette[0] = getBiome(BiomeKeys.PLAINS.getValue().toString());
+                for (int i = 0; i < paletteNbt.size(); i++) {
+                    palette[i] = getBiome(paletteNbt.getString(i));
+                }
+                sectionBiomes = biomes[index] = unpack(palette, biomesNbt.getLongArray("data"), bitsFor(palette.length), new Biome[64]);
+            }
+            return sectionBiomes[((pos.getY() & 15) >> 2) << 4 | ((pos.getZ() & 15) >> 2) << 2 | (pos.getX() & 15) >> 2];
+        }
+
+        private Biome getBiome(String biomeId) {
+            return context.biomeCache.computeIfAbsent(biomeId, (key) -> {
+                Identifier id = Identifier.tryParse(key);
+                Optional<Biome> biome = id == null ? Optional.empty() : context.biomeRegistry.getValueOrEmpty(id);
+                return biome.orElse(context.biomeRegistry.getValue(BiomeKeys.PLAINS.getValue()));
+            });
+        }
+    }
+
+    private record ImportContext(
+            BlocksRegion blocksRegion,
+            CeilingType ceilingType,
+            Registry<Block> blockRegistry,
+            RegistryWrapper<Biome> biomeRegistry,
+            Map<NbtCompound, BlockState> stateCache,
+            Map<String, Biome> biomeCache) {}
+}
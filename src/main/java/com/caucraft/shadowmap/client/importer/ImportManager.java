@@ -22,10 +22,10 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Phaser;
-import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicReference;
@@ -34,7 +34,7 @@ import java.util.concurrent.locks.LockSupport;
 public class ImportManager implements Closeable {
 
     private transient final MapManagerImpl mapManager;
-    private transient final Semaphore activeImportLimiter;
+    private transient final ImportPipeline pipeline;
     private DeletableLiveDataMap<ImportTask<?>> importTasks;
     private transient final Phaser shutdownPhaser;
     private transient final Thread importManagerThread;
@@ -45,7 +45,7 @@ public class ImportManager implements Closeable {
 
     public ImportManager(MapManagerImpl mapManager) {
         this.mapManager = mapManager;
-        this.activeImportLimiter = new Semaphore(4);
+        this.pipeline = new ImportPipeline(mapManager, this::onImportFinished);
         this.importTasks = new DeletableLiveDataMap<ImportTask<?>>(ImportType::fromNbt).setMergeFunction((oldVal, newVal) -> {
             if (oldVal.isSameTask(newVal)) {
                 oldVal.mergeProgress(newVal);
@@ -112,16 +112,11 @@ public class ImportManager implements Closeable {
         } catch (TimeoutException ex) {
             ShadowMap.getLogger().info("Importer timed out while waiting for shut down");
         }
+        pipeline.close();
         scheduleSave();
     }
 
     private <T extends ImportTask.ImportOp> void importNextRegion(ImportTask<T> task) {
-        try {
-            activeImportLimiter.acquire();
-        } catch (InterruptedException ex) {
-            Thread.currentThread().interrupt();
-            return;
-        }
         // TODO clean this up, it's too messy
         if (!task.isReady()) {
             MapWorldImpl world = mapManager.getWorld(task.getWorldKey());
@@ -130,7 +125,6 @@ public class ImportManager implements Closeable {
                 if (!task.isUsingDefaultDatapacks()) {
                     currentTask.compareAndSet(task, null);
                     LockSupport.unpark(importManagerThread);
-                    activeImportLimiter.release();
                     return;
                 }
                 world = mapManager.loadWorld(task.getWorldKey());
@@ -139,7 +133,6 @@ public class ImportManager implements Closeable {
                     world.waitForLoad();
                 } catch (InterruptedException ex) {
                     Thread.currentThread().interrupt();
-                    activeImportLimiter.release();
                     return;
                 }
             }
@@ -164,11 +157,9 @@ public class ImportManager implements Closeable {
                 ShadowMap.getLogger().warn("Could not initialize import task", ex);
                 currentTask.compareAndSet(task, null);
                 LockSupport.unpark(importManagerThread);
-                activeImportLimiter.release();
                 return;
             } catch (InterruptedException ex) {
                 Thread.currentThread().interrupt();
-                activeImportLimiter.release();
                 return;
             }
         }
@@ -178,24 +169,26 @@ public class ImportManager implements Closeable {
                 currentTask.compareAndSet(task, null);
                 LockSupport.unpark(importManagerThread);
             }
-            activeImportLimiter.release();
             return;
         }
-        CompletableFuture<Void> ioFuture = mapManager.executeNonLockingIOTask(() -> {
-            nextOp.loadFile(mapManager);
-            return null;
-        });
-        CompletableFuture<?> mergeFuture = ioFuture.thenCompose((v) -> nextOp.scheduleMerge(mapManager));
-        mergeFuture.whenComplete((val, ex) -> {
-            if (ex != null) {
-                ShadowMap.getLogger().info("Import task failed for file: " + nextOp.getImportFile(), ex);
-                nextOp.completeExceptionally(ex);
-                task.addError();
-            }
-            dirty = true;
-            activeImportLimiter.release();
-            nextOp.complete(null);
-        });
+        // Blocks while the pipeline is full
+        try {
+            pipeline.submit(task, nextOp);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            nextOp.cancel(false);
+        }
+    }
+
+    private void onImportFinished(ImportPipeline.Job job, Throwable ex) {
+        ImportTask.ImportOp op = job.op();
+        if (ex != null && !(ex instanceof CancellationException)) {
+            ShadowMap.getLogger().info("Import task failed for file: " + op.getImportFile(), ex);
+            op.completeExceptionally(ex);
+            job.task().addError();
+        }
+        dirty = true;
+        op.complete(null);
     }
 
     public boolean isDirty() {
@@ -319,6 +312,9 @@ public class ImportManager implements Closeable {
 
                 MapUtils.writeFileFromBuffer(importsChannel, buffer);
                 lastSaved = Files.getLastModifiedTime(importsPath).toMillis();
+                for (ImportTask<?> task : getTasks()) {
+                    task.saveProgress();
+                }
                 ShadowMap.getLogger().info("Imports saved");
             } catch (IOException | CrashException ex) {
                 ShadowMap.getLogger().error("Couldn't save imports", ex);
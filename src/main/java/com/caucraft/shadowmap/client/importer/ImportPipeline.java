@@ -0,0 +1,160 @@
+package com.caucraft.shadowmap.client.importer;
+
+import com.caucraft.shadowmap.client.ShadowMap;
+import com.caucraft.shadowmap.client.map.MapManagerImpl;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.function.BiConsumer;
+
+/**
+ * Runs import ops through three bounded stages: a few threads reading or
+ * opening files, a decode thread per spare core, and merges on the map's
+ * modify threads, or its IO threads behind any region loads for regions that
+ * aren't loaded.
+ * Each stage only takes on as much as the next one can keep up with, so a
+ * full stage blocks the one before it, and submitting blocks once the read
+ * queue is full. Reads wait for live region loads to finish first, so
+ * importing doesn't hold up what the player is looking at.
+ */
+class ImportPipeline implements Closeable {
+    private static final int READ_THREADS = 2;
+    /** How long a read waits at most for live region loads before going ahead. */
+    private static final int MAX_YIELD_MS = 500;
+    private static final int YIELD_STEP_MS = 10;
+
+    private final MapManagerImpl mapManager;
+    private final BiConsumer<Job, Throwable> onFinish;
+    private final BlockingQueue<Job> readQueue;
+    private final BlockingQueue<Job> decodeQueue;
+    private final Semaphore mergeSlots;
+    private final List<Thread> threads;
+    private volatile boolean shutdown;
+
+    /**
+     * @param mapManager the map manager to import into
+     * @param onFinish called with each job once its merge finishes, with the
+     * exception if any stage failed
+     */
+    ImportPipeline(MapManagerImpl mapManager, BiConsumer<Job, Throwable> onFinish) {
+        this.mapManager = mapManager;
+        this.onFinish = onFinish;
+        // Leave a couple cores for the game and the map's own threads.
+        int decodeThreads = Math.max(1, Runtime.getRuntime().availableProcessors() - 2);
+        this.readQueue = new ArrayBlockingQueue<>(READ_THREADS * 2);
+        this.decodeQueue = new ArrayBlockingQueue<>(decodeThreads * 2);
+        this.mergeSlots = new Semaphore(decodeThreads * 2);
+        this.threads = new ArrayList<>();
+        for (int i = 0; i < READ_THREADS; i++) {
+            startThread(this::runReader, "SM-ImportReadThread-" + (i + 1));
+        }
+        for (int i = 0; i < decodeThreads; i++) {
+            startThread(this::runDecoder, "SM-ImportDecodeThread-" + (i + 1));
+        }
+    }
+
+    private void startThread(Runnable runnable, String name) {
+        Thread t = new Thread(runnable, name);
+        t.setUncaughtExceptionHandler((thread, ex) -> ShadowMap.getLogger().error("Uncaught exception in " + thread.getName(), ex));
+        t.setDaemon(true);
+        t.setPriority(Thread.MIN_PRIORITY);
+        threads.add(t);
+        t.start();
+    }
+
+    /**
+     * Queues an op to be read, decoded, and merged, blocking while the read
+     * queue is full.
+     * @param task the task the op belongs to
+     * @param op the op to run
+     * @throws InterruptedException if interrupted while waiting for room
+     */
+    void submit(ImportTask<?> task, ImportTask.ImportOp op) throws InterruptedException {
+        readQueue.put(new Job(task, op));
+    }
+
+    private void runReader() {
+        try {
+            while (!shutdown) {
+                Job job = readQueue.take();
+                try {
+                    yieldToLiveLoads();
+                    job.op.readFile(mapManager);
+                    decodeQueue.put(job);
+                } catch (InterruptedException ex) {
+                    job.op.cancel(false);
+                    throw ex;
+                } catch (Exception ex) {
+                    onFinish.accept(job, ex);
+                }
+            }
+        } catch (InterruptedException ignored) {}
+    }
+
+    private void runDecoder() {
+        try {
+            while (!shutdown) {
+                Job job = decodeQueue.take();
+                try {
+                    job.op.decode(mapManager);
+                } catch (Exception ex) {
+                    onFinish.accept(job, ex);
+                    continue;
+                }
+                try {
+                    mergeSlots.acquire();
+                } catch (InterruptedException ex) {
+                    job.op.cancel(false);
+                    throw ex;
+                }
+                CompletableFuture<?> mergeFuture;
+                try {
+                    mergeFuture = job.op.scheduleMerge(mapManager);
+                } catch (RuntimeException ex) {
+                    mergeSlots.release();
+                    onFinish.accept(job, ex);
+                    continue;
+                }
+                mergeFuture.whenComplete((val, ex) -> {
+                    mergeSlots.release();
+                    onFinish.accept(job, ex);
+                });
+            }
+        } catch (InterruptedException ignored) {}
+    }
+
+    /**
+     * Waits a little while region loads are pending, so import reads don't
+     * compete with them for the disk.
+     */
+    private void yieldToLiveLoads() throws InterruptedException {
+        for (int waited = 0; waited < MAX_YIELD_MS && mapManager.getPendingLoadCount() > 0; waited += YIELD_STEP_MS) {
+            Thread.sleep(YIELD_STEP_MS);
+        }
+    }
+
+    /**
+     * Stops every stage. Queued ops are cancelled, merges already scheduled
+     * still finish.
+     */
+    @Override
+    public void close() {
+        shutdown = true;
+        for (Thread thread : threads) {
+            thread.interrupt();
+        }
+        List<Job> dropped = new ArrayList<>();
+        readQueue.drainTo(dropped);
+        decodeQueue.drainTo(dropped);
+        for (Job job : dropped) {
+            job.op.cancel(false);
+        }
+    }
+
+    record Job(ImportTask<?> task, ImportTask.ImportOp op) {}
+}
@@ -0,0 +1,163 @@
+package com.caucraft.shadowmap.client.importer;
+
+import com.caucraft.shadowmap.api.util.WorldKey;
+import com.caucraft.shadowmap.client.ShadowMap;
+import com.caucraft.shadowmap.client.util.MapUtils;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import net.minecraft.nbt.NbtCompound;
+import net.minecraft.nbt.NbtElement;
+import net.minecraft.nbt.NbtLongArray;
+import net.minecraft.nbt.NbtString;
+import net.minecraft.util.crash.CrashException;
+import net.minecraft.util.math.ChunkPos;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Locale;
+
+/**
+ * Remembers the size and modified time of each source file as it was when it
+ * was last imported successfully, so importing the same folder again only
+ * opens files that changed since. Kept per source folder in the target
+ * world's map directory, so deleting the world's map also forgets what was
+ * imported into it.
+ */
+class ImportSourceIndex {
+    private static final int FILE_VERSION = 1;
+
+    private final Path indexPath;
+    private final String sourceDir;
+    private final Long2ObjectOpenHashMap<Stamp> stamps;
+    private boolean dirty;
+
+    /**
+     * @param mapsDirectory the root directory map data is stored in
+     * @param worldKey the world being imported into
+     * @param type the kind of files being imported
+     * @param sourceDir the folder being imported from
+     */
+    ImportSourceIndex(File mapsDirectory, WorldKey worldKey, ImportType type, File sourceDir) {
+        this.sourceDir = sourceDir.getAbsolutePath();
+        String name = type.name().toLowerCase(Locale.ROOT) + '-' + Integer.toHexString(this.sourceDir.hashCode()) + ".dat";
+        this.indexPath = MapUtils.getWorldDirectory(mapsDirectory, worldKey).toPath().resolve("imports").resolve(name);
+        this.stamps = new Long2ObjectOpenHashMap<>();
+    }
+
+    /**
+     * Reads a source file's size and modified time without opening it.
+     * @param path the source file
+     * @return the file's current stamp, or null if it can't be read.
+     */
+    static Stamp stampOf(Path path) {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            return new Stamp(attributes.size(), attributes.lastModifiedTime().toMillis());
+        } catch (IOException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * @param regionX the source region's x coordinate
+     * @param regionZ the source region's z coordinate
+     * @param stamp the source file's current stamp
+     * @return true if the source was imported before and hasn't changed since.
+     */
+    synchronized boolean isUnchanged(int regionX, int regionZ, Stamp stamp) {
+        return stamp != null && stamp.equals(stamps.get(ChunkPos.toLong(regionX, regionZ)));
+    }
+
+    /**
+     * Records a source file as imported, as it was before it was read.
+     * @param regionX the source region's x coordinate
+     * @param regionZ the source region's z coordinate
+     * @param stamp the source file's stamp from before it was read
+     */
+    synchronized void markImported(int regionX, int regionZ, Stamp stamp) {
+        if (stamp == null) {
+            return;
+        }
+        stamps.put(ChunkPos.toLong(regionX, regionZ), stamp);
+        dirty = true;
+    }
+
+    /**
+     * Reads the index from disk, replacing anything recorded so far. A missing
+     * or unreadable index, or one for another folder, leaves it empty.
+     */
+    synchronized void load() {
+        stamps.clear();
+        dirty = false;
+        NbtCompound root;
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(indexPath))) {
+            root = MapUtils.readCompressedNbt(in);
+        } catch (NoSuchFileException ex) {
+            return;
+        } catch (IOException | CrashException ex) {
+            ShadowMap.getLogger().warn("Could not read import source index, every file will be imported", ex);
+            return;
+        }
+        if (root.getInt("version") != FILE_VERSION || !sourceDir.equals(root.getString("dir"))
+                || !root.contains("stamps", NbtElement.LONG_ARRAY_TYPE)) {
+            return;
+        }
+        long[] packed = root.getLongArray("stamps");
+        for (int i = 0; i + 2 < packed.length; i += 3) {
+            stamps.put(packed[i], new Stamp(packed[i + 1], packed[i + 2]));
+        }
+    }
+
+    /**
+     * Writes the index to disk if anything was recorded since it was last
+     * loaded or saved.
+     */
+    void save() {
+        NbtCompound root;
+        synchronized (this) {
+            if (!dirty) {
+                return;
+            }
+            dirty = false;
+            long[] packed = new long[stamps.size() * 3];
+            int i = 0;
+            for (Long2ObjectMap.Entry<Stamp> entry : stamps.long2ObjectEntrySet()) {
+                Stamp stamp = entry.getValue();
+                packed[i++] = entry.getLongKey();
+                packed[i++] = stamp.size;
+                packed[i++] = stamp.modified;
+            }
+            root = new NbtCompound();
+            root.putInt("version", FILE_VERSION);
+            root.put("dir", NbtString.of(sourceDir));
+            root.put("stamps", new NbtLongArray(packed));
+        }
+        Path tempPath = indexPath.resolveSibling(indexPath.getFileName() + ".tmp");
+        try {
+            Files.createDirectories(indexPath.getParent());
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(tempPath))) {
+                MapUtils.writeCompressedNbt("index", root, out);
+            }
+            Files.move(tempPath, indexPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | CrashException ex) {
+            ShadowMap.getLogger().warn("Could not write import source index", ex);
+            synchronized (this) {
+                dirty = true;
+            }
+        }
+    }
+
+    /**
+     * A source file's size and modified time in milliseconds.
+     */
+    record Stamp(long size, long modified) {}
+}
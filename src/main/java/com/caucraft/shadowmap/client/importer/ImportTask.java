@@ -128,6 +128,12 @@ public abstract class ImportTask<T extends ImportTask.ImportOp> extends Deletabl
 
     public void mergeProgress(ImportTask<?> other) {}
 
+    /**
+     * Saves progress kept outside the task's own NBT. Runs on an IO thread
+     * whenever imports are saved.
+     */
+    void saveProgress() {}
+
     public boolean isSameTask(ImportTask<?> other) {
         return worldKey.equals(other.worldKey) && importFile.equals(other.importFile) && getType() == other.getType();
     }
@@ -195,7 +201,17 @@ public abstract class ImportTask<T extends ImportTask.ImportOp> extends Deletabl
             return importFile;
         }
 
-        abstract void loadFile(MapManagerImpl mapManager) throws IOException;
+        /**
+         * Reads or opens the op's file. Runs on the import read threads.
+         */
+        abstract void readFile(MapManagerImpl mapManager) throws IOException, InterruptedException;
+
+        /**
+         * Decodes what {@link #readFile(MapManagerImpl)} read or opened. Runs
+         * on the import decode threads.
+         */
+        void decode(MapManagerImpl mapManager) throws IOException {}
+
         abstract CompletableFuture<?> scheduleMerge(MapManagerImpl mapManager);
     }
 }
@@ -10,7 +10,8 @@ import java.util.function.Supplier;
 
 public enum ImportType {
     XAERO(XImportTask::new, XImportScanner::new),
-    XAERO_WP(XWaypointImportTask::new, XWaypointImportScanner::new);
+    XAERO_WP(XWaypointImportTask::new, XWaypointImportScanner::new),
+    ANVIL(AnvilImportTask::new, AnvilImportScanner::new);
 
     private final TriFunction<UUID, WorldKey, File, ImportTask<?>> createTaskFunction;
     private final Supplier<ImportScanner> scannerSupplier;
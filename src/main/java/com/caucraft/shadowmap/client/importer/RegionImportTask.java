@@ -1,26 +1,34 @@
 package com.caucraft.shadowmap.client.importer;
 
+import com.caucraft.shadowmap.api.map.RegionFlags;
+import com.caucraft.shadowmap.api.util.MergeResult;
 import com.caucraft.shadowmap.api.util.WorldKey;
 import com.caucraft.shadowmap.client.ShadowMap;
+import com.caucraft.shadowmap.client.map.BlocksRegion;
+import com.caucraft.shadowmap.client.map.MapManagerImpl;
 import com.caucraft.shadowmap.client.map.MapWorldImpl;
-import com.caucraft.shadowmap.client.util.data.RegionBitSet;
+import com.caucraft.shadowmap.client.map.RegionContainerImpl;
+import com.caucraft.shadowmap.client.util.data.RegionSet;
 import net.minecraft.nbt.NbtCompound;
 import net.minecraft.nbt.NbtElement;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Path;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.atomic.AtomicInteger;
 
 public abstract class RegionImportTask<T extends RegionImportTask.RegionImportOp> extends ImportTask<T> {
 
-    private final RegionBitSet progressBitSet;
+    private final RegionSet progressSet;
     private transient final AtomicInteger totalCount;
     private transient final AtomicInteger importedCount;
+    private transient ImportSourceIndex sourceIndex;
 
     public RegionImportTask(UUID id, WorldKey worldKey, File importFile) {
         super(id, worldKey, importFile);
-        this.progressBitSet = new RegionBitSet();
+        this.progressSet = new RegionSet();
         this.totalCount = new AtomicInteger(-1);
         this.importedCount = new AtomicInteger(0);
     }
@@ -41,6 +49,9 @@ public abstract class RegionImportTask<T extends RegionImportTask.RegionImportOp
             return;
         }
         super.init(world, forceLoader);
+        sourceIndex = new ImportSourceIndex(ShadowMap.getInstance().getMapManager().getMapsDirectory(),
+                getWorldKey(), getType(), importFile);
+        sourceIndex.load();
         importedCount.set(0);
         totalCount.set((int) getPathStream().count());
     }
@@ -51,18 +62,27 @@ public abstract class RegionImportTask<T extends RegionImportTask.RegionImportOp
             return null;
         }
         while (iterator.hasNext()) {
-            T nextOp = getImportOp(iterator.next());
+            Path path = iterator.next();
+            T nextOp = getImportOp(path);
             if (nextOp == null) {
                 continue;
             }
-            if (progressBitSet.getRegion(nextOp.getRegionX(), nextOp.getRegionZ())) {
+            if (progressSet.contains(nextOp.getRegionX(), nextOp.getRegionZ())) {
+                importedCount.getAndIncrement();
+                continue;
+            }
+            // Stamped before reading, so a file changed while it is imported
+            // is imported again next time.
+            ImportSourceIndex.Stamp stamp = ImportSourceIndex.stampOf(path);
+            if (sourceIndex.isUnchanged(nextOp.getRegionX(), nextOp.getRegionZ(), stamp)) {
                 importedCount.getAndIncrement();
                 continue;
             }
             nextOp.whenComplete((val, ex) -> {
                 importedCount.getAndIncrement();
                 if (ex == null) {
-                    progressBitSet.setRegion(nextOp.getRegionX(), nextOp.getRegionZ(), true);
+                    progressSet.add(nextOp.getRegionX(), nextOp.getRegionZ());
+                    sourceIndex.markImported(nextOp.getRegionX(), nextOp.getRegionZ(), stamp);
                 }
             });
             return nextOp;
@@ -70,11 +90,19 @@ public abstract class RegionImportTask<T extends RegionImportTask.RegionImportOp
         return null;
     }
 
+    @Override
+    void saveProgress() {
+        ImportSourceIndex index = sourceIndex;
+        if (index != null) {
+            index.save();
+        }
+    }
+
     @Override
     public void mergeProgress(ImportTask<?> other) {
         super.mergeProgress(other);
         if (other instanceof RegionImportTask<?> regionOther) {
-            progressBitSet.merge(regionOther.progressBitSet);
+            progressSet.addAll(regionOther.progressSet);
         }
     }
 
@@ -82,7 +110,7 @@ public abstract class RegionImportTask<T extends RegionImportTask.RegionImportOp
     public NbtCompound toNbt() {
         NbtCompound root = super.toNbt();
         if (!isDone()) {
-            root.put("progress", progressBitSet.toNbt());
+            root.put("progress", progressSet.toNbt());
         }
         return root;
     }
@@ -92,7 +120,7 @@ public abstract class RegionImportTask<T extends RegionImportTask.RegionImportOp
         super.loadNbt(root);
         if (!root.contains("finish", NbtElement.LONG_TYPE) && root.contains("progress", NbtElement.COMPOUND_TYPE)) {
             try {
-                progressBitSet.loadNbt(root.getCompound("progress"));
+                progressSet.loadNbt(root.getCompound("progress"));
             } catch (IOException ex) {
                 ShadowMap.getLogger().warn("Progress could not be loaded for import task and will be reset", ex);
             }
@@ -100,12 +128,24 @@ public abstract class RegionImportTask<T extends RegionImportTask.RegionImportOp
     }
 
     public static abstract class RegionImportOp extends ImportOp {
+        protected final MapWorldImpl world;
         protected final int regionX, regionZ;
+        private RegionContainerImpl regionContainer;
+        /** Whether the region wasn't loaded, so it is merged on disk instead. */
+        private boolean cold;
+        private BlocksRegion importedBlocks;
 
-        protected RegionImportOp(File importFile, int regionX, int regionZ) {
+        protected RegionImportOp(MapWorldImpl world, File importFile, int regionX, int regionZ) {
             super(importFile);
+            this.world = world;
             this.regionX = regionX;
             this.regionZ = regionZ;
+            this.whenComplete((val, ex) -> {
+                RegionContainerImpl rc = regionContainer;
+                if (rc != null) {
+                    rc.clearFlag(RegionFlags.IMPORTING);
+                }
+            });
         }
 
         public int getRegionX() {
@@ -115,5 +155,65 @@ public abstract class RegionImportTask<T extends RegionImportTask.RegionImportOp
         public int getRegionZ() {
             return regionZ;
         }
+
+        /**
+         * Decodes the op's file into blocks for the loaded region, or into a
+         * region container that is never added to the world if the region
+         * isn't loaded, to be merged straight into its file.
+         */
+        @Override
+        void decode(MapManagerImpl mapManager) throws IOException {
+            regionContainer = world.getRegion(regionX, regionZ, false, false);
+            cold = regionContainer == null;
+            if (cold) {
+                regionContainer = new RegionContainerImpl(world, regionX, regionZ);
+            }
+            regionContainer.setFlag(RegionFlags.IMPORTING);
+            BlocksRegion blocks = new BlocksRegion(regionContainer);
+            boolean decoded;
+            try {
+                decoded = decodeInto(blocks);
+            } catch (IOException | RuntimeException ex) {
+                blocks.releaseColumns();
+                throw ex;
+            }
+            if (!decoded) {
+                // Nothing to merge, don't write an empty region to disk.
+                blocks.releaseColumns();
+                return;
+            }
+            blocks.setLastSaved(0);
+            importedBlocks = blocks;
+        }
+
+        /**
+         * Decodes what {@link #readFile(MapManagerImpl)} read or opened into
+         * the provided blocks. Runs on the import decode threads.
+         * @return true if anything was decoded, false to skip the merge.
+         */
+        abstract boolean decodeInto(BlocksRegion blocks) throws IOException;
+
+        @Override
+        CompletableFuture<?> scheduleMerge(MapManagerImpl mapManager) {
+            BlocksRegion blocks = importedBlocks;
+            if (blocks == null) {
+                return CompletableFuture.completedFuture(null);
+            }
+            if (cold) {
+                return world.scheduleImportMerge(blocks).whenComplete((val, ex) -> blocks.releaseColumns());
+            }
+            return regionContainer.scheduleUpdate(() -> {
+                BlocksRegion other = regionContainer.getOrUseBlocks(blocks);
+                MergeResult mergeResult = other.mergeFrom(blocks);
+                if (other != blocks) {
+                    blocks.releaseColumns();
+                }
+                if (other == blocks || mergeResult.isUsedOther()) {
+                    regionContainer.setFlag(RegionFlags.FORCE_SAVE);
+                    world.scheduleRegionSave(regionContainer, null);
+                    regionContainer.scheduleRerenderAll(true);
+                }
+            });
+        }
     }
 }
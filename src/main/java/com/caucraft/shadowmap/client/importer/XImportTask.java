@@ -1,11 +1,9 @@
 package com.caucraft.shadowmap.client.importer;
 
-import com.caucraft.shadowmap.api.map.RegionFlags;
-import com.caucraft.shadowmap.api.util.MergeResult;
 import com.caucraft.shadowmap.api.util.WorldKey;
+import com.caucraft.shadowmap.client.ShadowMap;
 import com.caucraft.shadowmap.client.map.BlocksRegion;
 import com.caucraft.shadowmap.client.map.MapManagerImpl;
-import com.caucraft.shadowmap.client.map.RegionContainerImpl;
 
 import java.io.File;
 import java.io.IOException;
@@ -13,7 +11,6 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Locale;
 import java.util.UUID;
-import java.util.concurrent.CompletableFuture;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Stream;
@@ -50,39 +47,38 @@ public class XImportTask extends RegionImportTask<XImportTask.XImportOp> {
     }
 
     class XImportOp extends RegionImportOp {
-        private RegionContainerImpl regionContainer;
-        private BlocksRegion xBlocks;
+        private XImporter.RegionZip regionZip;
 
         public XImportOp(File importFile, int regionX, int regionZ) {
-            super(importFile, regionX, regionZ);
-            this.whenComplete((val, ex) -> {
-                RegionContainerImpl rc = regionContainer;
-                if (rc != null) {
-                    rc.clearFlag(RegionFlags.IMPORTING);
-                }
-            });
+            super(XImportTask.this.world, importFile, regionX, regionZ);
+            this.whenComplete((val, ex) -> closeZip());
         }
 
         @Override
-        public void loadFile(MapManagerImpl mapManager) throws IOException {
-            regionContainer = world.getRegion(regionX, regionZ, true, true);
-            regionContainer.setFlag(RegionFlags.IMPORTING);
-            xBlocks = new BlocksRegion(regionContainer);
-            XImporter.importRegionsFromX(importFile, mapManager, xBlocks);
-            xBlocks.setLastSaved(0);
+        void readFile(MapManagerImpl mapManager) throws IOException, InterruptedException {
+            regionZip = XImporter.openRegionZip(importFile);
         }
 
         @Override
-        public CompletableFuture<?> scheduleMerge(MapManagerImpl mapManager) {
-            return regionContainer.scheduleUpdate(() -> {
-                BlocksRegion other = regionContainer.getOrUseBlocks(xBlocks);
-                MergeResult mergeResult = other.mergeFrom(xBlocks);
-                if (other == xBlocks || mergeResult.isUsedOther()) {
-                    regionContainer.setFlag(RegionFlags.FORCE_SAVE);
-                    world.scheduleRegionSave(regionContainer, null);
-                    regionContainer.scheduleRerenderAll(true);
+        boolean decodeInto(BlocksRegion blocks) throws IOException {
+            try {
+                XImporter.decodeRegionZip(regionZip, blocks);
+                return true;
+            } finally {
+                closeZip();
+            }
+        }
+
+        private synchronized void closeZip() {
+            XImporter.RegionZip zip = regionZip;
+            regionZip = null;
+            if (zip != null) {
+                try {
+                    zip.close();
+                } catch (IOException ex) {
+                    ShadowMap.getLogger().warn("Couldn't close file for import: " + importFile, ex);
                 }
-            });
+            }
         }
     }
 }
@@ -8,7 +8,6 @@ import com.caucraft.shadowmap.client.map.MapManagerImpl;
 import com.caucraft.shadowmap.client.util.MapBlockStateMutable;
 import com.caucraft.shadowmap.client.util.MapUtils;
 import com.caucraft.shadowmap.client.util.io.ByteBufferInputStream;
-import com.caucraft.shadowmap.client.util.io.ByteBufferOutputStream;
 import com.caucraft.shadowmap.client.waypoint.Waypoint;
 import com.caucraft.shadowmap.client.waypoint.WaypointGroup;
 import com.caucraft.shadowmap.client.waypoint.WorldWaypointManager;
@@ -28,22 +27,26 @@ import net.minecraft.world.biome.BiomeKeys;
 import org.apache.commons.io.IOUtils;
 import org.joml.Vector3d;
 
+import java.io.BufferedInputStream;
+import java.io.Closeable;
 import java.io.DataInputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.channels.OverlappingFileLockException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Enumeration;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
 import java.util.zip.ZipEntry;
-import java.util.zip.ZipInputStream;
+import java.util.zip.ZipFile;
 
 public class XImporter {
     private static final int IS_FUCKING_GRASS_OR_WATER  = 0x0000_0001;
@@ -177,16 +180,24 @@ public class XImporter {
         return true;
     }
 
-    public static boolean importRegionsFromX(File xZipFile, MapManagerImpl mapManager, BlocksRegion blocksRegion) {
-        ByteBuffer[] buffers = new ByteBuffer[2];
-        FileChannel zipChannel = null;
-
+    /**
+     * Opens a Xaero region zip and finds its region entry from the zip's
+     * central directory, holding a shared lock on the file until closed in
+     * case Xaero's map is writing to it.
+     * @param xZipFile the zip to open
+     * @return the opened zip
+     * @throws IOException if the file can't be locked or opened, or has no
+     * region entry
+     * @throws InterruptedException if interrupted while waiting to retry the
+     * lock
+     */
+    public static RegionZip openRegionZip(File xZipFile) throws IOException, InterruptedException {
+        FileChannel lockChannel = FileChannel.open(xZipFile.toPath(), StandardOpenOption.READ);
+        ZipFile zipFile = null;
         try {
-            mapManager.getIOBufferPool().bulkTake(buffers);
-            zipChannel = FileChannel.open(xZipFile.toPath(), StandardOpenOption.READ);
             for (int i = 0; i < 5; i++) {
                 try {
-                    zipChannel.lock(0, Long.MAX_VALUE, true);
+                    lockChannel.lock(0, Long.MAX_VALUE, true);
                     break;
                 } catch (OverlappingFileLockException lockException) {
                     if (i == 4) {
@@ -196,37 +207,42 @@ public class XImporter {
                     }
                 }
             }
-            try {
-                long zipSize = zipChannel.size();
-                buffers[0] = MapUtils.readFileToBuffer(zipChannel, buffers[0], zipSize);
-                buffers[0].flip();
-                zipChannel.close();
-            } catch (IOException ex) {
-                ShadowMap.getLogger().warn("Couldn't read file for import: " + xZipFile, ex);
-                return false;
-            }
-
-            {
-                ZipInputStream xZipIn = new ZipInputStream(new ByteBufferInputStream(buffers[0]));
-                ByteBufferOutputStream decompressedBuffer = new ByteBufferOutputStream(buffers[1]);
-                ZipEntry xentry;
-                while ((xentry = xZipIn.getNextEntry()) != null && !xentry.getName().startsWith("region")) {}
-                if (xentry == null) {
-                    ShadowMap.getLogger().warn("Couldn't find region in " + xZipFile);
-                    return false;
+            zipFile = new ZipFile(xZipFile);
+            ZipEntry regionEntry = null;
+            for (Enumeration<? extends ZipEntry> entries = zipFile.entries(); entries.hasMoreElements();) {
+                ZipEntry entry = entries.nextElement();
+                if (entry.getName().startsWith("region")) {
+                    regionEntry = entry;
+                    break;
                 }
-                xZipIn.transferTo(decompressedBuffer);
-                buffers[1] = decompressedBuffer.getBuffer();
             }
-            ByteBuffer buffer = buffers[1];
-            buffer.flip();
+            if (regionEntry == null) {
+                throw new IOException("Couldn't find region in " + xZipFile);
+            }
+            return new RegionZip(xZipFile, lockChannel, zipFile, regionEntry);
+        } catch (IOException | InterruptedException | RuntimeException ex) {
+            if (zipFile != null) {
+                zipFile.close();
+            }
+            lockChannel.close();
+            throw ex;
+        }
+    }
 
-            ByteBufferInputStream bufferedIn = new ByteBufferInputStream(buffer);
+    /**
+     * Decodes the region of a zip opened by {@link #openRegionZip(File)},
+     * inflating it as it is parsed.
+     * @param regionZip the zip to decode
+     * @param blocksRegion the region to decode blocks into
+     * @throws IOException if the region can't be decoded
+     */
+    public static void decodeRegionZip(RegionZip regionZip, BlocksRegion blocksRegion) throws IOException {
+        File xZipFile = regionZip.file;
+        try (InputStream bufferedIn = new BufferedInputStream(regionZip.zipFile.getInputStream(regionZip.regionEntry), 65536)) {
             DataInputStream dataIn = new DataInputStream(bufferedIn);
 
             if (dataIn.read() != 0xFF) {
-                ShadowMap.getLogger().warn("Region file header was not 0xFF in " + xZipFile);
-                return false;
+                throw new IOException("Region file header was not 0xFF in " + xZipFile);
             }
             int version = dataIn.readInt();
 
@@ -252,31 +268,13 @@ public class XImporter {
                 tileZ &= 0x0F;
                 readTile(context, tileX, tileZ);
             }
-
-            blocksRegion.setLastModified(1);
-        } catch (IOException ex) {
-            ShadowMap.getLogger().error("Couldn't load region for import: " + xZipFile, ex);
-            return false;
-        } catch (InterruptedException ex) {
-            Thread.currentThread().interrupt();
-            return false;
-        } finally {
-            mapManager.getIOBufferPool().bulkRelease(buffers);
-            if (zipChannel != null) {
-                try {
-                    zipChannel.close();
-                } catch (IOException ex) {
-                    ShadowMap.getLogger().error("Couldn't close channel for import: " + xZipFile, ex);
-                    return false;
-                }
-            }
         }
 
-        return true;
+        blocksRegion.setLastModified(1);
     }
 
     private static void readTile(ImportContext context, int tileX, int tileZ) throws IOException {
-        ByteBufferInputStream bufferedIn = context.bufferedIn;
+        InputStream bufferedIn = context.bufferedIn;
         DataInputStream dataIn = context.dataIn;
         for (int subChunkX = 0; subChunkX < 4; subChunkX++) {
             for (int subChunkZ = 0; subChunkZ < 4; subChunkZ++) {
@@ -305,64 +303,69 @@ public class XImporter {
         List<BlockState> blockStack = new ArrayList<>();
         IntList lightStack = new IntArrayList();
 
-        for (int blockX = 0; blockX < 16; blockX++) {
-            for (int blockZ = 0; blockZ < 16; blockZ++) {
-                int flags = dataIn.readInt();
-                blockStack.clear();
-
-                // Determine block state
-                BlockState state = readBlockState(context, flags);
-
-                // Determine height and light
-                int height = ((flags & HEIGHT1_MASK) >>> HEIGHT1_SHIFT | (flags & HEIGHT2_MASK) >>> HEIGHT2_SHIFT) << 20 >> 20;
-                if ((flags & HAS_REDUNDANT_HEIGHT) != 0) {
-                    dataIn.read();
-                }
-                if ((flags & HAS_MORE_REDUNDANT_HEIGHT ) != 0) {
-                    dataIn.read();
-                }
-                int light = (flags & LIGHT_MASK) >>> LIGHT_SHIFT;
+        chunk.beginBulk();
+        try {
+            for (int blockX = 0; blockX < 16; blockX++) {
+                for (int blockZ = 0; blockZ < 16; blockZ++) {
+                    int flags = dataIn.readInt();
+                    blockStack.clear();
+
+                    // Determine block state
+                    BlockState state = readBlockState(context, flags);
+
+                    // Determine height and light
+                    int height = ((flags & HEIGHT1_MASK) >>> HEIGHT1_SHIFT | (flags & HEIGHT2_MASK) >>> HEIGHT2_SHIFT) << 20 >> 20;
+                    if ((flags & HAS_REDUNDANT_HEIGHT) != 0) {
+                        dataIn.read();
+                    }
+                    if ((flags & HAS_MORE_REDUNDANT_HEIGHT ) != 0) {
+                        dataIn.read();
+                    }
+                    int light = (flags & LIGHT_MASK) >>> LIGHT_SHIFT;
 
-                if (!state.isAir()) {
-                    blockStack.add(state);
-                    lightStack.add(light);
-                }
+                    if (!state.isAir()) {
+                        blockStack.add(state);
+                        lightStack.add(light);
+                    }
 
-                // Load layers (transparent/liquid?)
-                if ((flags & HAS_LAYERS) != 0) {
-                    int layerCount = dataIn.read();
-                    for (int i = 0; i < layerCount; i++) {
-                        int layerFlags = dataIn.readInt();
-                        // Determine block state
-                        BlockState layerState =  readLayerBlockState(context, layerFlags);
-
-                        // Dunno
-                        if (versionMinor < 1 && (layerFlags & HAS_LAYERS) != 0) {
-                            dataIn.readInt();
-                        }
-                        if ((layerFlags & HAS_EXTRA_INT) != 0) {
-                            dataIn.readInt();
+                    // Load layers (transparent/liquid?)
+                    if ((flags & HAS_LAYERS) != 0) {
+                        int layerCount = dataIn.read();
+                        for (int i = 0; i < layerCount; i++) {
+                            int layerFlags = dataIn.readInt();
+                            // Determine block state
+                            BlockState layerState =  readLayerBlockState(context, layerFlags);
+
+                            // Dunno
+                            if (versionMinor < 1 && (layerFlags & HAS_LAYERS) != 0) {
+                                dataIn.readInt();
+                            }
+                            if ((layerFlags & HAS_EXTRA_INT) != 0) {
+                                dataIn.readInt();
+                            }
+
+                            int layerLight = (layerFlags & LAYER_LIGHT_MASK) >>> LAYER_LIGHT_SHIFT;
+
+                            if (!layerState.isAir()) {
+                                blockStack.add(layerState);
+                                lightStack.add(layerLight);
+                            }
                         }
+                    }
 
-                        int layerLight = (layerFlags & LAYER_LIGHT_MASK) >>> LAYER_LIGHT_SHIFT;
+                    // Determine biome, if present.
+                    Biome biome = readBiome(context, flags);
 
-                        if (!layerState.isAir()) {
-                            blockStack.add(layerState);
-                            lightStack.add(layerLight);
-                        }
+                    if (context.versionMinor == 2 && (flags & HAS_EXTRA_BYTE) != 0) {
+                        dataIn.read();
                     }
-                }
-
-                // Determine biome, if present.
-                Biome biome = readBiome(context, flags);
 
-                if (context.versionMinor == 2 && (flags & HAS_EXTRA_BYTE) != 0) {
-                    dataIn.read();
+                    setBlockStack(chunk, blockX, blockZ, height, blockStack, lightStack);
+                    chunk.setBiome(blockX, blockZ, biome);
                 }
-
-                setBlockStack(chunk, blockX, blockZ, height, blockStack, lightStack);
-                chunk.setBiome(blockX, blockZ, biome);
             }
+        } finally {
+            chunk.commitBulk();
         }
         if (versionMinor >= 4) {
             dataIn.read(); // Dunno.
@@ -491,7 +494,7 @@ public class XImporter {
 
     private static record ImportContext(
             BlocksRegion blocksRegion,
-            ByteBufferInputStream bufferedIn,
+            InputStream bufferedIn,
             DataInputStream dataIn,
             int versionMajor,
             int versionMinor,
@@ -500,4 +503,31 @@ public class XImporter {
             List<BlockState> blockPalette,
             List<Biome> biomePalette
     ) {}
+
+    /**
+     * A Xaero region zip opened by {@link #openRegionZip(File)}, locked until
+     * closed.
+     */
+    public static final class RegionZip implements Closeable {
+        private final File file;
+        private final FileChannel lockChannel;
+        private final ZipFile zipFile;
+        private final ZipEntry regionEntry;
+
+        private RegionZip(File file, FileChannel lockChannel, ZipFile zipFile, ZipEntry regionEntry) {
+            this.file = file;
+            this.lockChannel = lockChannel;
+            this.zipFile = zipFile;
+            this.regionEntry = regionEntry;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                zipFile.close();
+            } finally {
+                lockChannel.close();
+            }
+        }
+    }
 }
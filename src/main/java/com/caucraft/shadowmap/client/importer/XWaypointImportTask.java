@@ -78,7 +78,7 @@ public class XWaypointImportTask extends ImportTask<XWaypointImportTask.XWaypoin
         }
 
         @Override
-        void loadFile(MapManagerImpl mapManager) throws IOException {
+        void readFile(MapManagerImpl mapManager) throws IOException {
             XImporter.importWaypointsFromX(importFile, mapManager, world.getWaypointManager(), groupMap, pointList, groupNameList, deathPointSet);
         }
 
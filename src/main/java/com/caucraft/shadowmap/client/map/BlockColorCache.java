@@ -0,0 +1,273 @@
+package com.caucraft.shadowmap.client.map;
+
+import com.caucraft.shadowmap.client.ShadowMap;
+import com.caucraft.shadowmap.client.mixin.NativeImageAccess;
+import com.caucraft.shadowmap.client.mixin.SpriteContentsAccess;
+import net.fabricmc.loader.api.FabricLoader;
+import net.fabricmc.loader.api.ModContainer;
+import net.minecraft.SharedConstants;
+import net.minecraft.block.Block;
+import net.minecraft.block.BlockState;
+import net.minecraft.client.texture.NativeImage;
+import net.minecraft.client.texture.Sprite;
+import net.minecraft.client.texture.SpriteContents;
+import net.minecraft.client.texture.TextureManager;
+import net.minecraft.resource.ResourceManager;
+import net.minecraft.resource.ResourcePack;
+import net.minecraft.util.Identifier;
+import org.lwjgl.BufferUtils;
+import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL12;
+import org.lwjgl.system.MemoryUtil;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.IntBuffer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.IntStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Computes the average sprite color of every block state and keeps the result
+ * on disk, keyed by a fingerprint of the game version, loaded mods, resource
+ * pack stack, and the sprite each state uses down to its pixels, so a launch
+ * with the same packs can skip reading the block atlases back from the GPU
+ * entirely.
+ */
+public class BlockColorCache {
+    private static final int FILE_VERSION = 1;
+    private static final String FILE_NAME = "block_colors.dat";
+
+    private final File cacheFile;
+
+    /**
+     * @param directory the directory to keep the cache file in
+     */
+    public BlockColorCache(File directory) {
+        this.cacheFile = new File(directory, FILE_NAME);
+    }
+
+    /**
+     * Gets the average color of each state's sprite, from the cache file if it
+     * was written for the same fingerprint, otherwise by reading the sprites'
+     * atlases and averaging them in parallel. Must be called on the render
+     * thread.
+     * @param textureManager the texture manager holding the block atlases
+     * @param resourceManager the resource manager that was just reloaded
+     * @param states every block state
+     * @param sprites the sprite to color each state with
+     * @return each state's average ARGB sprite color, at the state's index.
+     * Alpha is the share of the sprite's opaque bounds covered, not limited to
+     * the state's max opacity.
+     */
+    public int[] getColors(TextureManager textureManager, ResourceManager resourceManager, List<BlockState> states, Sprite[] sprites) {
+        byte[] fingerprint = fingerprint(resourceManager, states, sprites);
+        int[] colors = load(fingerprint, states.size());
+        if (colors != null) {
+            ShadowMap.getLogger().info("Loaded " + colors.length + " block colors from cache");
+            return colors;
+        }
+        long start = System.nanoTime();
+        colors = computeColors(textureManager, states, sprites);
+        ShadowMap.getLogger().info(String.format("Computed %d block colors in %.1f ms", colors.length, (System.nanoTime() - start) / 1_000_000.0));
+        save(fingerprint, colors);
+        return colors;
+    }
+
+    private static byte[] fingerprint(ResourceManager resourceManager, List<BlockState> states, Sprite[] sprites) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+        try (DataOutputStream out = new DataOutputStream(new DigestOutputStream(OutputStream.nullOutputStream(), digest))) {
+            out.writeUTF(SharedConstants.getGameVersion().getId());
+            ModContainer[] mods = FabricLoader.getInstance().getAllMods().toArray(new ModContainer[0]);
+            Arrays.sort(mods, Comparator.comparing((mod) -> mod.getMetadata().getId()));
+            for (ModContainer mod : mods) {
+                out.writeUTF(mod.getMetadata().getId());
+                out.writeUTF(mod.getMetadata().getVersion().getFriendlyString());
+            }
+            for (ResourcePack pack : (Iterable<ResourcePack>) resourceManager.streamResourcePacks()::iterator) {
+                out.writeUTF(pack.getName());
+            }
+            // Pack names don't change with their contents, so hash the pixels
+            // each sprite was loaded with, and where they sit in the atlas.
+            Set<SpriteContents> hashedContents = Collections.newSetFromMap(new IdentityHashMap<>());
+            for (int i = 0; i < sprites.length; i++) {
+                Sprite sprite = sprites[i];
+                SpriteContents contents = sprite.getContents();
+                out.writeInt(Block.getRawIdFromState(states.get(i)));
+                out.writeUTF(sprite.getAtlasId().toString());
+                out.writeUTF(contents.getId().toString());
+                out.writeInt(sprite.getX());
+                out.writeInt(sprite.getY());
+                out.writeInt(contents.getWidth());
+                out.writeInt(contents.getHeight());
+                if (hashedContents.add(contents)) {
+                    hashPixels(((SpriteContentsAccess) contents).shadowMap$getImage(), out, digest);
+                }
+            }
+        } catch (IOException ex) {
+            // The null stream doesn't throw
+            throw new IllegalStateException(ex);
+        }
+        return digest.digest();
+    }
+
+    private static void hashPixels(NativeImage image, DataOutputStream out, MessageDigest digest) throws IOException {
+        if (image == null) {
+            out.writeInt(-1);
+            return;
+        }
+        out.writeInt(image.getWidth());
+        out.writeInt(image.getHeight());
+        // Digest the image's native buffer directly, reading it back pixel by
+        // pixel costs more than computing the colors.
+        NativeImageAccess access = (NativeImageAccess) (Object) image;
+        long pointer = access.shadowMap$getPointer();
+        if (pointer == 0) {
+            out.writeInt(-1);
+            return;
+        }
+        digest.update(MemoryUtil.memByteBuffer(pointer, (int) access.shadowMap$getSizeBytes()));
+    }
+
+    private int[] load(byte[] fingerprint, int stateCount) {
+        try (DataInputStream in = new DataInputStream(new GZIPInputStream(new BufferedInputStream(new FileInputStream(cacheFile))))) {
+            if (in.readInt() != FILE_VERSION) {
+                return null;
+            }
+            byte[] savedFingerprint = new byte[in.readUnsignedByte()];
+            in.readFully(savedFingerprint);
+            if (!Arrays.equals(fingerprint, savedFingerprint) || in.readInt() != stateCount) {
+                return null;
+            }
+            int[] colors = new int[stateCount];
+            for (int i = 0; i < stateCount; i++) {
+                colors[i] = in.readInt();
+            }
+            return colors;
+        } catch (FileNotFoundException ex) {
+            return null;
+        } catch (IOException ex) {
+            ShadowMap.getLogger().warn("Could not read block color cache", ex);
+            return null;
+        }
+    }
+
+    private void save(byte[] fingerprint, int[] colors) {
+        File tempFile = new File(cacheFile.getParentFile(), FILE_NAME + ".tmp");
+        try {
+            Files.createDirectories(cacheFile.getParentFile().toPath());
+            try (DataOutputStream out = new DataOutputStream(new GZIPOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile))))) {
+                out.writeInt(FILE_VERSION);
+                out.writeByte(fingerprint.length);
+                out.write(fingerprint);
+                out.writeInt(colors.length);
+                for (int color : colors) {
+                    out.writeInt(color);
+                }
+            }
+            Files.move(tempFile.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException ex) {
+            ShadowMap.getLogger().warn("Could not write block color cache", ex);
+        }
+    }
+
+    private static int[] computeColors(TextureManager textureManager, List<BlockState> states, Sprite[] sprites) {
+        // Read each atlas once on the render thread, then average sprites
+        // from the plain arrays on every core.
+        Map<Identifier, AtlasPixels> atlases = new HashMap<>();
+        for (Sprite sprite : sprites) {
+            atlases.computeIfAbsent(sprite.getAtlasId(), (atlasId) -> readAtlas(textureManager, atlasId));
+        }
+        int[] colors = new int[sprites.length];
+        IntStream.range(0, sprites.length).parallel().forEach((i) -> {
+            Sprite sprite = sprites[i];
+            colors[i] = averageColor(states.get(i), atlases.get(sprite.getAtlasId()), sprite);
+        });
+        return colors;
+    }
+
+    private static AtlasPixels readAtlas(TextureManager textureManager, Identifier atlasId) {
+        textureManager.bindTexture(atlasId);
+        int width = GL11.glGetTexLevelParameteri(GL11.GL_TEXTURE_2D, 0, GL11.GL_TEXTURE_WIDTH);
+        int height = GL11.glGetTexLevelParameteri(GL11.GL_TEXTURE_2D, 0, GL11.GL_TEXTURE_HEIGHT);
+        IntBuffer pixelBuffer = BufferUtils.createIntBuffer(width * height);
+        GL11.glGetTexImage(GL11.GL_TEXTURE_2D, 0, GL12.GL_BGRA, GL12.GL_UNSIGNED_INT_8_8_8_8_REV, pixelBuffer);
+        int[] pixels = new int[width * height];
+        pixelBuffer.get(pixels);
+        return new AtlasPixels(width, pixels);
+    }
+
+    private static int averageColor(BlockState state, AtlasPixels atlas, Sprite sprite) {
+        SpriteContents contents = sprite.getContents();
+        int minx = sprite.getX();
+        int miny = sprite.getY();
+        int maxx = minx + contents.getWidth();
+        int maxy = miny + contents.getHeight();
+        int minTexX = maxx;
+        int minTexY = maxy;
+        int maxTexX = minx;
+        int maxTexY = miny;
+        int r = 0;
+        int g = 0;
+        int b = 0;
+        int a = 0;
+        int count = 0;
+        int[] pixels = atlas.pixels;
+        for (int y = miny; y < maxy; y++) {
+            for (int x = minx, index = y * atlas.width + minx; x < maxx; x++, index++) {
+                int argb = pixels[index];
+                int nextA = (argb >>> 24 & 0xFF);
+                if (nextA > 8) {
+                    a += nextA;
+                    r += (argb >>> 16 & 0xFF);
+                    g += (argb >>> 8 & 0xFF);
+                    b += (argb & 0xFF);
+                    count++;
+                    minTexX = Math.min(minTexX, x);
+                    minTexY = Math.min(minTexY, y);
+                    maxTexX = Math.max(maxTexX, x);
+                    maxTexY = Math.max(maxTexY, y);
+                }
+            }
+        }
+        if (minTexX > maxTexX | minTexY > maxTexY) {
+            return 0;
+        }
+        r /= count;
+        g /= count;
+        b /= count;
+        a /= (maxTexX - minTexX + 1) * (maxTexY - minTexY + 1);
+        if (r > 255 | g > 255 | b > 255 | a > 255) {
+            ShadowMap.getLogger().error(String.format("Invalid ARGB for block %s: %d %d %d %d (c: %d, tex: %d %d %d %d)", state, a, r, g, b, count, minTexX, minTexY, maxTexX, maxTexY));
+        }
+        return a << 24 | r << 16 | g << 8 | b;
+    }
+
+    private record AtlasPixels(int width, int[] pixels) {}
+}
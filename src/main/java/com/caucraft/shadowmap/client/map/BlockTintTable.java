@@ -0,0 +1,134 @@
+package com.caucraft.shadowmap.client.map;
+
+import com.caucraft.shadowmap.client.util.MapBlockStateMutable;
+import com.caucraft.shadowmap.client.util.MapUtils;
+import it.unimi.dsi.fastutil.objects.Reference2IntOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ReferenceOpenHashSet;
+import net.minecraft.block.BlockState;
+import net.minecraft.client.MinecraftClient;
+import net.minecraft.client.color.block.BlockColors;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.world.biome.Biome;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Biome tints for every tinted block state, computed for the default and
+ * current world's biome registries when resources reload or the world
+ * changes, so the region renderer doesn't go through {@link BlockColors} for
+ * every pixel. Block states are indexed by the tint index stored in them when
+ * resources were reloaded, biomes by a column looked up once per pixel.
+ * Tables are immutable and safe to read from any thread.
+ */
+public class BlockTintTable {
+    public static final BlockTintTable EMPTY = new BlockTintTable(new BlockState[0], new ArrayList<>());
+
+    private final BlockState[] states;
+    private final List<Biome> biomes;
+    private final Reference2IntOpenHashMap<Biome> biomeColumns;
+    private final int columns;
+    private final int[] tints;
+
+    /**
+     * @param states tinted states, each at the index set by
+     * {@link MapBlockStateMutable#shadowMap$setTintIndex(int)}.
+     * @param biomes biomes to compute tints for. Column 0 is used for blocks
+     * with no biome.
+     */
+    private BlockTintTable(BlockState[] states, List<Biome> biomes) {
+        this.states = states;
+        this.biomes = biomes;
+        this.biomeColumns = new Reference2IntOpenHashMap<>(biomes.size());
+        this.biomeColumns.defaultReturnValue(-1);
+        for (int i = 0; i < biomes.size(); i++) {
+            biomeColumns.put(biomes.get(i), i + 1);
+        }
+        this.columns = biomes.size() + 1;
+        this.tints = new int[states.length * columns];
+        for (int i = 0; i < states.length; i++) {
+            BlockState state = states[i];
+            int row = i * columns;
+            tints[row] = computeTint(state, null);
+            for (int j = 0; j < biomes.size(); j++) {
+                tints[row + j + 1] = computeTint(state, biomes.get(j));
+            }
+        }
+    }
+
+    /**
+     * Builds a table for the provided tinted states, assigning each its tint
+     * index, with tints for the provided biomes. Must be called from the
+     * client thread.
+     */
+    public static BlockTintTable build(List<BlockState> tintedStates, Iterable<Biome> biomes) {
+        BlockState[] states = tintedStates.toArray(new BlockState[0]);
+        for (int i = 0; i < states.length; i++) {
+            ((MapBlockStateMutable) states[i]).shadowMap$setTintIndex(i);
+        }
+        return new BlockTintTable(states, distinctBiomes(biomes));
+    }
+
+    /**
+     * Biomes left out, like those of a registry from a server that was left,
+     * are dropped so the table doesn't grow with every registry seen.
+     * @return this table if it covers exactly the provided biomes, otherwise a
+     * new table covering only them. Must be called from the client thread.
+     */
+    public BlockTintTable withBiomes(Iterable<Biome> newBiomes) {
+        List<Biome> distinct = distinctBiomes(newBiomes);
+        if (distinct.size() == biomes.size()) {
+            boolean same = true;
+            for (Biome biome : distinct) {
+                if (!biomeColumns.containsKey(biome)) {
+                    same = false;
+                    break;
+                }
+            }
+            if (same) {
+                return this;
+            }
+        }
+        return new BlockTintTable(states, distinct);
+    }
+
+    private static List<Biome> distinctBiomes(Iterable<Biome> biomes) {
+        ReferenceOpenHashSet<Biome> seen = new ReferenceOpenHashSet<>();
+        List<Biome> list = new ArrayList<>();
+        for (Biome biome : biomes) {
+            if (seen.add(biome)) {
+                list.add(biome);
+            }
+        }
+        return list;
+    }
+
+    /**
+     * @param biome the biome to look up, may be null.
+     * @return the biome's column in this table, or -1 if it isn't covered.
+     */
+    public int getBiomeColumn(Biome biome) {
+        return biome == null ? 0 : biomeColumns.getInt(biome);
+    }
+
+    /**
+     * Gets the tint for a block state in a biome, falling back to computing it
+     * directly if either isn't covered by this table.
+     * @param state the tinted block state
+     * @param biome the biome the block is in, may be null
+     * @param biomeColumn the biome's column from {@link #getBiomeColumn(Biome)}
+     * @return the tint color in the format {@code 0xRRGGBB}
+     */
+    public int getTint(BlockState state, Biome biome, int biomeColumn) {
+        int tintIndex = ((MapBlockStateMutable) state).shadowMap$getTintIndex();
+        if (biomeColumn >= 0 && tintIndex >= 0 && tintIndex < states.length && states[tintIndex] == state) {
+            return tints[tintIndex * columns + biomeColumn];
+        }
+        return computeTint(state, biome);
+    }
+
+    private static int computeTint(BlockState state, Biome biome) {
+        return MinecraftClient.getInstance().getBlockColors()
+                .getColor(state, MapUtils.EMPTY_WORLD1.get().setBlockAndBiome(state, biome), BlockPos.ORIGIN, 0);
+    }
+}
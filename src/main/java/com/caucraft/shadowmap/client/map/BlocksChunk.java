@@ -4,18 +4,19 @@ import com.caucraft.shadowmap.api.map.CeilingType;
 import com.caucraft.shadowmap.api.map.MapChunk;
 import com.caucraft.shadowmap.api.util.ChunkCache;
 import com.caucraft.shadowmap.api.util.MapBlockState;
+import com.caucraft.shadowmap.api.util.MemorySizes;
 import com.caucraft.shadowmap.api.util.MergeResult;
 import com.caucraft.shadowmap.api.util.RegistryWrapper;
 import com.caucraft.shadowmap.client.render.RegionRenderContextImpl;
 import com.caucraft.shadowmap.client.util.MapBlockStateMutable;
 import com.caucraft.shadowmap.client.util.MapUtils;
-import com.caucraft.shadowmap.client.util.data.CompactIntArray;
+import com.caucraft.shadowmap.client.util.data.DirectShortArena;
+import com.caucraft.shadowmap.client.util.data.DirectShortArray;
+import com.caucraft.shadowmap.client.util.data.IdPalette;
 import com.caucraft.shadowmap.client.util.data.PaletteMap;
 import com.caucraft.shadowmap.client.util.data.PaletteStorage;
-import com.caucraft.shadowmap.client.util.sim.SingleBlockWorld;
 import net.minecraft.block.BlockState;
 import net.minecraft.block.Blocks;
-import net.minecraft.client.MinecraftClient;
 import net.minecraft.fluid.FluidState;
 import net.minecraft.nbt.NbtCompound;
 import net.minecraft.nbt.NbtElement;
@@ -24,7 +25,6 @@ import net.minecraft.nbt.NbtString;
 import net.minecraft.util.Identifier;
 import net.minecraft.util.math.BlockPos;
 import net.minecraft.util.math.ChunkPos;
-import net.minecraft.util.math.MathHelper;
 import net.minecraft.world.LightType;
 import net.minecraft.world.World;
 import net.minecraft.world.biome.Biome;
@@ -76,7 +76,9 @@ public class BlocksChunk extends MapChunk<BlocksNbtContext> {
     private final AtomicInteger flags;
     private PaletteStorage<Biome> biomes;
     private PaletteStorage<BlockState> blocks;
-    private CompactIntArray heightAndLight;
+    private DirectShortArray heightAndLight;
+    private PaletteStorage<BlockState>.BulkWriter blockWriter;
+    private PaletteStorage<Biome>.BulkWriter biomeWriter;
 
     /*
     TODO: Re-implement lighting.
@@ -91,15 +93,121 @@ public class BlocksChunk extends MapChunk<BlocksNbtContext> {
      */
 
     public BlocksChunk() {
+        this(null, null, null);
+    }
+
+    /**
+     * @param blockPalette region-wide block palette, or null for per-chunk
+     * palettes.
+     * @param biomePalette region-wide biome palette, or null for per-chunk
+     * palettes.
+     * @param columns region-wide off-heap arena for height and light, or null
+     * for a per-chunk heap array.
+     */
+    public BlocksChunk(IdPalette<BlockState> blockPalette, IdPalette<Biome> biomePalette, DirectShortArena columns) {
         this.flags = new AtomicInteger();
-        this.biomes = new PaletteStorage<>(256, Biome.class);
-        this.blocks = new PaletteStorage<>(256 * 3, BlockState.class);
-        this.heightAndLight = new CompactIntArray(HEIGHT_BITS + LIGHT_BITS, 256 * 3);
+        this.biomes = new PaletteStorage<>(256, Biome.class, biomePalette);
+        this.blocks = new PaletteStorage<>(256 * 3, BlockState.class, blockPalette);
+        this.heightAndLight = columns == null ? new DirectShortArray(256 * 3) : columns.allocate();
+    }
+
+    /**
+     * Moves this chunk's storages onto the provided palettes if they are not
+     * already using them, e.g. after adopting storages from another region in
+     * {@link #mergeFrom(MapChunk)}.
+     */
+    void usePalettes(IdPalette<BlockState> blockPalette, IdPalette<Biome> biomePalette) {
+        blocks = blocks.withSharedPalette(blockPalette);
+        biomes = biomes.withSharedPalette(biomePalette);
+    }
+
+    /**
+     * Copies this chunk's height and light into the provided arena if it is
+     * not already allocated there, e.g. after this chunk was adopted from
+     * another region in {@link BlocksRegion#mergeFrom}.
+     */
+    void useColumns(DirectShortArena columns) {
+        DirectShortArray oldColumns = heightAndLight;
+        if (oldColumns.getArena() == columns) {
+            return;
+        }
+        DirectShortArray newColumns = columns == null ? new DirectShortArray(256 * 3) : columns.allocate();
+        newColumns.copyFrom(oldColumns);
+        heightAndLight = newColumns;
+    }
+
+    /**
+     * Gives this chunk's height and light back to the provided arena so the
+     * slot can be reused, once the chunk has been removed from its region.
+     * Does nothing if they weren't allocated there.
+     * @param columns the region's arena
+     * @param deferred whether readers may still be using the chunk, so the
+     * slot must not be reused until they are done
+     */
+    void freeColumns(DirectShortArena columns, boolean deferred) {
+        if (columns != null && heightAndLight.getArena() == columns) {
+            columns.free(heightAndLight, deferred);
+        }
+    }
+
+    /**
+     * Starts collecting block and biome writes from this chunk's setters and
+     * updates so each storage is rebuilt at most once, in
+     * {@link #commitBulk()}. Getters keep returning the committed contents
+     * until then. External locking should be used while the edit is open.
+     */
+    public void beginBulk() {
+        blockWriter = blocks.beginBulk();
+        biomeWriter = biomes.beginBulk();
+    }
+
+    /**
+     * Applies writes collected since {@link #beginBulk()}.
+     */
+    public void commitBulk() {
+        PaletteStorage<BlockState>.BulkWriter localBlockWriter = blockWriter;
+        PaletteStorage<Biome>.BulkWriter localBiomeWriter = biomeWriter;
+        blockWriter = null;
+        biomeWriter = null;
+        if (localBlockWriter != null) {
+            localBlockWriter.commit();
+        }
+        if (localBiomeWriter != null) {
+            localBiomeWriter.commit();
+        }
+    }
+
+    private BlockState readBlock(int index) {
+        PaletteStorage<BlockState>.BulkWriter writer = blockWriter;
+        return writer == null ? blocks.get(index) : writer.get(index);
+    }
+
+    private void writeBlock(int index, BlockState block) {
+        PaletteStorage<BlockState>.BulkWriter writer = blockWriter;
+        if (writer == null) {
+            blocks.set(index, block);
+        } else {
+            writer.set(index, block);
+        }
+    }
+
+    private Biome readBiome(int index) {
+        PaletteStorage<Biome>.BulkWriter writer = biomeWriter;
+        return writer == null ? biomes.get(index) : writer.get(index);
+    }
+
+    private void writeBiome(int index, Biome biome) {
+        PaletteStorage<Biome>.BulkWriter writer = biomeWriter;
+        if (writer == null) {
+            biomes.set(index, biome);
+        } else {
+            writer.set(index, biome);
+        }
     }
 
     @Override
     public int estimateMemoryUsage() {
-        int usage = super.estimateMemoryUsage() + 20;
+        int usage = super.estimateMemoryUsage() + 6 * MemorySizes.REFERENCE + MemorySizes.object(0, 4);
         if (biomes != null) {
             usage += biomes.estimateMemoryUsage();
         }
@@ -124,12 +232,21 @@ public class BlocksChunk extends MapChunk<BlocksNbtContext> {
         return (flags.get() & flag.flag) != 0;
     }
 
+    /**
+     * Marks every column's biome as known and current, ex. after a new chunk
+     * was updated from a source that provides biomes everywhere.
+     */
+    public void markBiomesCurrent() {
+        setFlag(Flags.HAS_BIOMES);
+        setFlag(Flags.HAS_CURRENT_BIOMES);
+    }
+
     public Biome getBiome(int blockX, int blockZ) {
         return biomes.get(getBlockIndex(blockX, blockZ));
     }
 
     public void setBiome(int blockX, int blockZ, Biome biome) {
-        biomes.set(getBlockIndex(blockX, blockZ), biome);
+        writeBiome(getBlockIndex(blockX, blockZ), biome);
     }
 
     public BlockState getBlock(BlockType blockType, int blockX, int blockZ) {
@@ -154,7 +271,7 @@ public class BlocksChunk extends MapChunk<BlocksNbtContext> {
 
     public void setBlock(BlockType blockType, int blockX, int blockZ, BlockState block, int height, int light) {
         int index = getBlockIndex(blockX, blockZ) + blockType.offset;
-        blocks.set(index, block);
+        writeBlock(index, block);
         setHeightAndLight(index, height, light);
     }
 
@@ -173,8 +290,6 @@ public class BlocksChunk extends MapChunk<BlocksNbtContext> {
     @Override
     public boolean updateChunk(World world, Chunk chunk, ChunkCache chunkCache, CeilingType ceilingType,
             long curTimeMs) {
-        boolean changed = false;
-
         int topSectionIndex = chunk.getHighestNonEmptySection();
         int bottomY = world.getBottomY();
         int topY;
@@ -185,18 +300,39 @@ public class BlocksChunk extends MapChunk<BlocksNbtContext> {
             topY = topNonEmptySection == null ? bottomY - 1 : bottomY + (topSectionIndex << 4) + 16;
         }
 
-        ChunkPos chunkPos = chunk.getPos();
-        for (int localZ = 0; localZ < 16; localZ++) {
-            for (int localX = 0; localX < 16; localX++) {
-                changed |= update(
-                        world, chunk, chunkCache, ceilingType,
-                        chunkPos.getStartX() + localX,
-                        chunkPos.getStartZ() + localZ,
-                        bottomY, topY,
-                        new BlockPos.Mutable(),
-                        new BlockPos.Mutable()
-                );
+        return updateColumns(new LiveColumnSource(world, chunk, chunkCache), chunk.getPos(), ceilingType, bottomY, topY);
+    }
+
+    /**
+     * Updates every column of this chunk from a column source, the same way
+     * chunks loaded in the world are.
+     * @param source the blocks, light, and biomes to read
+     * @param chunkPos the chunk's position in the world
+     * @param ceilingType how the source's dimension is roofed
+     * @param bottomY the lowest block Y to scan down to
+     * @param topY the block Y to start scanning down from
+     * @return true if any column changed.
+     */
+    public boolean updateColumns(ColumnSource source, ChunkPos chunkPos, CeilingType ceilingType, int bottomY,
+            int topY) {
+        boolean changed = false;
+        BlockPos.Mutable pos = new BlockPos.Mutable();
+        BlockPos.Mutable posPlusOne = new BlockPos.Mutable();
+        beginBulk();
+        try {
+            for (int localZ = 0; localZ < 16; localZ++) {
+                for (int localX = 0; localX < 16; localX++) {
+                    changed |= update(
+                            source, ceilingType,
+                            chunkPos.getStartX() + localX,
+                            chunkPos.getStartZ() + localZ,
+                            bottomY, topY,
+                            pos, posPlusOne
+                    );
+                }
             }
+        } finally {
+            commitBulk();
         }
 
         return changed;
@@ -222,14 +358,19 @@ public class BlocksChunk extends MapChunk<BlocksNbtContext> {
         boolean changed = false;
         int bottomY = world.getBottomY();
         ChunkPos chunkPos = chunk.getPos();
-        for (int localZ = 0; localZ < 16; localZ++) {
-            for (int localX = 0; localX < 16; localX++) {
-                changed |= updateBiomes(chunkCache, chunkPos.getStartX() + localX,
-                        chunkPos.getStartZ() + localZ,
-                        bottomY,
-                        new BlockPos.Mutable()
-                );
+        beginBulk();
+        try {
+            for (int localZ = 0; localZ < 16; localZ++) {
+                for (int localX = 0; localX < 16; localX++) {
+                    changed |= updateBiomes(chunkCache, chunkPos.getStartX() + localX,
+                            chunkPos.getStartZ() + localZ,
+                            bottomY,
+                            new BlockPos.Mutable()
+                    );
+                }
             }
+        } finally {
+            commitBulk();
         }
 
         setFlag(Flags.HAS_CURRENT_BIOMES);
@@ -251,10 +392,11 @@ public class BlocksChunk extends MapChunk<BlocksNbtContext> {
             topY = topNonEmptySection == null ? bottomY - 1 : bottomY + (topSectionIndex << 4) + 16;
         }
 
-        return update(world, chunk, chunkCache, ceilingType, pos.getX(), pos.getZ(), bottomY, topY, new BlockPos.Mutable(), new BlockPos.Mutable());
+        return update(new LiveColumnSource(world, chunk, chunkCache), ceilingType, pos.getX(), pos.getZ(), bottomY, topY,
+                new BlockPos.Mutable(), new BlockPos.Mutable());
     }
 
-    private boolean update(World world, Chunk chunk, ChunkCache chunkCache, CeilingType ceilingType, int worldX, int worldZ, int minY, int maxY, BlockPos.Mutable pos, BlockPos.Mutable posPlusOne) {
+    private boolean update(ColumnSource source, CeilingType ceilingType, int worldX, int worldZ, int minY, int maxY, BlockPos.Mutable pos, BlockPos.Mutable posPlusOne) {
         pos.set(worldX, maxY, worldZ);
         posPlusOne.set(pos).setY(maxY + 1);
 
@@ -276,18 +418,18 @@ public class BlocksChunk extends MapChunk<BlocksNbtContext> {
         if (ceilingType == CeilingType.ROOFED) {
             // find first non-air block
             BlockState topBlock;
-            for (; (topBlock = chunk.getBlockState(pos.setY(y))).isAir() && y >= minY; y--) {}
+            for (; (topBlock = source.getBlockState(pos.setY(y))).isAir() && y >= minY; y--) {}
 
             // if bedrock, and if at the top of a chunk section, scan through it for non-opaque
             if (topBlock.getBlock() == Blocks.BEDROCK && (y == -1 || y > 0 && Integer.bitCount(y + 1) == 1 || y < 0 && Integer.bitCount(-y - 1) == 1)) {
                 posPlusOne.setY(y + 1);
                 bedrockState = topBlock;
                 bedrockHeight = y;
-                bedrockLight = world.getLightLevel(LightType.BLOCK, posPlusOne);
+                bedrockLight = source.getBlockLight(posPlusOne);
 
                 for (; y >= minY; y--) {
                     pos.setY(y);
-                    topBlock = chunk.getBlockState(pos);
+                    topBlock = source.getBlockState(pos);
                     MapBlockStateMutable mapState = (MapBlockStateMutable) topBlock;
                     if (!mapState.shadowMap$isOpacitySet()) {
                         MapUtils.updateOpacity(topBlock);
@@ -302,7 +444,7 @@ public class BlocksChunk extends MapChunk<BlocksNbtContext> {
         for (; y >= minY && needSolid; y--) {
             pos.setY(y);
             posPlusOne.setY(y + 1);
-            BlockState newBlock = chunk.getBlockState(pos);
+            BlockState newBlock = source.getBlockState(pos);
             FluidState newFluid = newBlock.getFluidState();
             if (newBlock.isAir()) {
                 continue;
@@ -310,12 +452,12 @@ public class BlocksChunk extends MapChunk<BlocksNbtContext> {
 
             if (needLiquid && !newFluid.isEmpty()) { // is the condition isAir() or newFluid != Fluids.EMPTY?
                 int subIndex = index + OFF_LIQUID;
-                BlockState oldBlock = blocks.get(subIndex);
-                blocks.set(subIndex, newBlock);
+                BlockState oldBlock = readBlock(subIndex);
+                writeBlock(subIndex, newBlock);
                 int oldHeight = getHeight(subIndex);
                 setHeight(subIndex, y);
 //                int oldLight = getLight(subIndex);
-                int newLight = world.getLightLevel(LightType.BLOCK, posPlusOne);
+                int newLight = source.getBlockLight(posPlusOne);
                 setLight(subIndex, newLight);
                 needLiquid = false;
                 changedLiquid = (oldBlock != newBlock) | (oldHeight != y);// | (oldLight != newLight);
@@ -325,23 +467,23 @@ public class BlocksChunk extends MapChunk<BlocksNbtContext> {
                 MapUtils.updateOpacity(newBlock);
             }
             if (mapState.shadowMap$isOpaque()) {
-                BlockState oldBlock = blocks.get(index);
-                blocks.set(index, newBlock);
+                BlockState oldBlock = readBlock(index);
+                writeBlock(index, newBlock);
                 int oldHeight = getHeight(index);
                 setHeight(index, y);
 //                int oldLight = getLight(index);
-                int newLight = world.getLightLevel(LightType.BLOCK, posPlusOne);
+                int newLight = source.getBlockLight(posPlusOne);
                 setLight(index, newLight);
                 needSolid = false;
                 changedSolid = (oldBlock != newBlock) | (oldHeight != y);// | (oldLight != newLight);
             } else if (needTransparent && (newFluid.isEmpty() || newBlock.getBlock() != newFluid.getBlockState().getBlock())) {
                 int subIndex = index + OFF_TRANSPARENT;
-                BlockState oldBlock = blocks.get(subIndex);
-                blocks.set(subIndex, newBlock);
+                BlockState oldBlock = readBlock(subIndex);
+                writeBlock(subIndex, newBlock);
                 int oldHeight = getHeight(subIndex);
                 setHeight(subIndex, y);
 //                int oldLight = getLight(subIndex);
-                int newLight = world.getLightLevel(LightType.BLOCK, posPlusOne);
+                int newLight = source.getBlockLight(posPlusOne);
                 setLight(subIndex, newLight);
                 needTransparent = false;
                 changedTransparent = (oldBlock != newBlock) | (oldHeight != y);// | (oldLight != newLight);
@@ -349,45 +491,45 @@ public class BlocksChunk extends MapChunk<BlocksNbtContext> {
         }
 
 //        if (needSolid && bedrockState != null) {
-//            BlockState oldBlock = blocks.get(index);
+//            BlockState oldBlock = readBlock(index);
 //            int oldHeight = getHeight(index);
 ////            int oldLight = getLight(index);
-//            blocks.set(index, bedrockState);
+//            writeBlock(index, bedrockState);
 //            setHeight(index, bedrockHeight);
 ////            setLight(index, bedrockLight);
 //            needSolid = false;
 //            changedSolid = (oldBlock != bedrockState) | (oldHeight != bedrockHeight);// | (oldLight != bedrockLight);
 //        }
         if (needSolid) {
-            changedSolid = blocks.get(index) != null;
-            blocks.set(index, null);
+            changedSolid = readBlock(index) != null;
+            writeBlock(index, null);
             setHeight(index, minY);
             setLight(index, 0);
         }
         if (needTransparent) {
             int subIndex = index + OFF_TRANSPARENT;
-            changedTransparent = blocks.get(subIndex) != null;
-            blocks.set(subIndex, null);
+            changedTransparent = readBlock(subIndex) != null;
+            writeBlock(subIndex, null);
             setHeight(subIndex, minY);
             setLight(subIndex, 0);
         }
         if (needLiquid) {
             int subIndex = index + OFF_LIQUID;
-            changedLiquid = blocks.get(subIndex) != null;
-            blocks.set(subIndex, null);
+            changedLiquid = readBlock(subIndex) != null;
+            writeBlock(subIndex, null);
             setHeight(subIndex, minY);
             setLight(subIndex, 0);
         }
         int highestBiome = Math.max(getHeight(index), Math.max(getHeight(index + OFF_TRANSPARENT), getHeight(index + OFF_LIQUID)));
         if (needSolid & needTransparent & needLiquid) {
-            Biome oldBiome = biomes.get(index);
-            biomes.set(index, null);
+            Biome oldBiome = readBiome(index);
+            writeBiome(index, null);
             changedBiome = oldBiome != null;
         } else if (highestBiome != oldHighestBiome) {
-            if (chunkCache.canProvideBiomes()) {
-                Biome oldBiome = biomes.get(index);
-                Biome newBiome = chunkCache.getBiome(pos.setY(highestBiome));
-                biomes.set(index, newBiome);
+            if (source.canProvideBiomes()) {
+                Biome oldBiome = readBiome(index);
+                Biome newBiome = source.getBiome(pos.setY(highestBiome));
+                writeBiome(index, newBiome);
                 changedBiome = oldBiome != newBiome;
             } else {
                 clearFlag(Flags.HAS_CURRENT_BIOMES);
@@ -403,13 +545,13 @@ public class BlocksChunk extends MapChunk<BlocksNbtContext> {
         int index = getBlockIndex(worldX, worldZ);
         int highestBiome = Math.max(getHeight(index), Math.max(getHeight(index + OFF_TRANSPARENT), getHeight(index + OFF_LIQUID)));
         if (highestBiome < minY) {
-            Biome oldBiome = biomes.get(index);
-            biomes.set(index, null);
+            Biome oldBiome = readBiome(index);
+            writeBiome(index, null);
             return oldBiome != null;
         } else if (chunkCache.canProvideBiomes()) {
-            Biome oldBiome = biomes.get(index);
+            Biome oldBiome = readBiome(index);
             Biome newBiome = chunkCache.getBiome(pos.setY(highestBiome));
-            biomes.set(index, newBiome);
+            writeBiome(index, newBiome);
             return oldBiome != newBiome;
         } else {
             clearFlag(Flags.HAS_CURRENT_BIOMES);
@@ -419,30 +561,41 @@ public class BlocksChunk extends MapChunk<BlocksNbtContext> {
     }
 
     void render(RegionRenderContextImpl renderContext) {
-        for (int z = 0; z < 16; z++) {
-            for (int x = 0; x < 16; x++) {
+        render(renderContext, 0, 0, 16, 16);
+    }
+
+    /**
+     * Renders a rectangle of the chunk's columns.
+     * @param renderContext the region's render context, set up for this chunk
+     * @param minX the first column X, inclusive
+     * @param minZ the first column Z, inclusive
+     * @param maxX the last column X, exclusive
+     * @param maxZ the last column Z, exclusive
+     */
+    void render(RegionRenderContextImpl renderContext, int minX, int minZ, int maxX, int maxZ) {
+        for (int z = minZ; z < maxZ; z++) {
+            for (int x = minX; x < maxX; x++) {
                 renderBlock(renderContext, x, z);
             }
         }
     }
 
     private void renderBlock(RegionRenderContextImpl renderContext, int x, int z) {
-        HeightLightCache cache = renderContext.heightLightCache();
         int[] argbBuffer = renderContext.argbBuffer;
 
         int index = getBlockIndex(x, z);
         int transparentIndex = index + OFF_TRANSPARENT;
         int liquidIndex = index + OFF_LIQUID;
-        SingleBlockWorld simWorld = MapUtils.EMPTY_WORLD1.get();
 
         BlockState solid = blocks.get(index);
         BlockState transparent = blocks.get(index + BlockType.TRANSPARENT.offset);
         BlockState liquid = blocks.get(index + BlockType.LIQUID.offset);
         Biome biome = biomes.get(index);
+        int biomeColumn = renderContext.tintTable.getBiomeColumn(biome);
 
-        int solidHeight = cache.getHeight(BlockType.OPAQUE, x, z);
-        int transparentHeight = cache.getHeight(BlockType.TRANSPARENT, x, z);
-        int liquidHeight = cache.getHeight(BlockType.LIQUID, x, z);
+        int solidHeight = getHeight(index);
+        int transparentHeight = getHeight(transparentIndex);
+        int liquidHeight = getHeight(liquidIndex);
 //        int solidLight = 255;
 //        int transparentLight = 255;
 //        int liquidLight = 255;
@@ -472,7 +625,7 @@ public class BlocksChunk extends MapChunk<BlocksNbtContext> {
             upperHeight = Integer.MIN_VALUE;
 //            upperLight = 0;
             upperType = null;
-        } else if (getHeight(transparentIndex) > getHeight(liquidIndex)) {
+        } else if (transparentHeight > liquidHeight) {
             lower = liquid;
             lowerHeight = liquidHeight;
 //            lowerLight = liquidLight;
@@ -494,7 +647,7 @@ public class BlocksChunk extends MapChunk<BlocksNbtContext> {
         }
         int dstA = 0, dstR = 0, dstG = 0, dstB = 0;
         if (solid != null) {
-            renderBlock(renderContext, argbBuffer, simWorld, biome, solid, x, solidHeight, z, cache, BlockType.OPAQUE);
+            renderBlock(renderContext, argbBuffer, biome, biomeColumn, solid, x, solidHeight, z, BlockType.OPAQUE);
             dstA = argbBuffer[0];
             dstR = argbBuffer[1];
             dstG = argbBuffer[2];
@@ -504,7 +657,7 @@ public class BlocksChunk extends MapChunk<BlocksNbtContext> {
 //            dstB = dstB * solidLight / 255;
         }
         if (lower != null) {
-            renderBlock(renderContext, argbBuffer, simWorld, biome, lower, x, lowerHeight, z, cache, lowerType);
+            renderBlock(renderContext, argbBuffer, biome, biomeColumn, lower, x, lowerHeight, z, lowerType);
             int srcA = argbBuffer[0];
             int srcR = argbBuffer[1];
             int srcG = argbBuffer[2];
@@ -522,7 +675,7 @@ public class BlocksChunk extends MapChunk<BlocksNbtContext> {
             }
         }
         if (upper != null) {
-            renderBlock(renderContext, argbBuffer, simWorld, biome, upper, x, upperHeight, z, cache, upperType);
+            renderBlock(renderContext, argbBuffer, biome, biomeColumn, upper, x, upperHeight, z, upperType);
             int srcA = argbBuffer[0];
             int srcR = argbBuffer[1];
             int srcG = argbBuffer[2];
@@ -543,15 +696,16 @@ public class BlocksChunk extends MapChunk<BlocksNbtContext> {
         renderContext.setColor(x, z, dstA << 24 | dstR << 16 | dstG << 8 | dstB);
     }
 
-    private void renderBlock(RegionRenderContextImpl renderContext, int[] argbBuffer, SingleBlockWorld simWorld,
-            Biome biome, BlockState block, int localX, int y, int localZ, HeightLightCache cache, BlockType blockType) {
+    private void renderBlock(RegionRenderContextImpl renderContext, int[] argbBuffer,
+            Biome biome, int biomeColumn, BlockState block, int localX, int y, int localZ, BlockType blockType) {
         int color = ((MapBlockState) block).shadowMap$getColorARGB();
         int a = color >>> 24 & 0xFF;
         int r = color >>> 16 & 0xFF;
         int g = color >>> 8 & 0xFF;
         int b = color & 0xFF;
 
-        int slopeShade = getSlopeShade(renderContext.world.getCeilingType(), cache, localX, y, localZ, blockType);
+        int slopeShade = renderContext.heightField().getSlope(blockType, renderContext.regionBlockX(localX),
+                renderContext.regionBlockZ(localZ), y, renderContext.slopeKernel);
         if (slopeShade >= 0) {
             slopeShade = 255 - slopeShade;
             r = 255 - ((255 - r) * slopeShade / 255);
@@ -565,7 +719,7 @@ public class BlocksChunk extends MapChunk<BlocksNbtContext> {
         }
 
         if (((MapBlockState) block).shadowMap$isTinted() || block.getBlock() == Blocks.WATER) {
-            int tintColor = MinecraftClient.getInstance().getBlockColors().getColor(block, simWorld.setBlockAndBiome(block, biome), BlockPos.ORIGIN, 0);
+            int tintColor = renderContext.tintTable.getTint(block, biome, biomeColumn);
             r = (tintColor >> 16 & 255) * r / 255;
             g = (tintColor >> 8 & 255) * g / 255;
             b = (tintColor & 255) * b / 255;
@@ -576,53 +730,6 @@ public class BlocksChunk extends MapChunk<BlocksNbtContext> {
         argbBuffer[3] = b;
     }
 
-    private int getSlopeShade(CeilingType ceilingType, HeightLightCache cache, int localX, int height, int localZ, BlockType blockType) {
-        // Higher Neighbor for Simulated AO Shading
-        int higher = getHigherBlocks(cache, localX, height, localZ, blockType);
-        // Difference * Direction for Slope Shading.
-        int slope;
-        if (ceilingType == CeilingType.OPEN) {
-            slope = getSlope(cache, localX, height, localZ, blockType, SURFACE_SLOPE_POINTS, SURFACE_SLOPE_MAX);
-        } else {
-            slope = getSlope(cache, localX, height, localZ, blockType, CAVE_SLOPE_POINTS, CAVE_SLOPE_MAX);
-        }
-
-//        return (slope * 5 + AO_SIMULATED_SHADE[higher]) / 6;
-        return slope;
-    }
-
-    private int getHigherBlocks(HeightLightCache cache, int localX, int height, int localZ, BlockType blockType) {
-        return (cache.getHighest(localX - 1, localZ, blockType) > height ? 1 : 0)
-                + (cache.getHighest(localX + 1, localZ, blockType) > height ? 1 : 0)
-                + (cache.getHighest(localX, localZ - 1, blockType) > height ? 1 : 0)
-                + (cache.getHighest(localX, localZ + 1, blockType) > height ? 1 : 0)
-                + (cache.getHighest(localX - 1, localZ - 1, blockType) > height ? 1 : 0)
-                + (cache.getHighest(localX - 1, localZ + 1, blockType) > height ? 1 : 0)
-                + (cache.getHighest(localX + 1, localZ - 1, blockType) > height ? 1 : 0)
-                + (cache.getHighest(localX + 1, localZ + 1, blockType) > height ? 1 : 0);
-    }
-
-    private int getSlope(HeightLightCache cache, int localX, int height, int localZ, BlockType blockType, int[][] slopePoints, int maxSlope) {
-        int ax = 0, az = 0, bx = 0, bz = 0, above = 0, below = 1;
-        for (int i = slopePoints.length - 1; i >= 0; i--) {
-            int[] point = slopePoints[i];
-            int relativeHeight = cache.getHighest(localX + point[1], localZ + point[2], blockType) - height;
-            if (relativeHeight > 0) {
-                above++;
-                ax += point[0] * point[1] * relativeHeight;
-                az += point[0] * point[2] * relativeHeight;
-            } else {
-                below++;
-                bx += point[0] * point[1] * relativeHeight;
-                bz += point[0] * point[2] * relativeHeight;
-            }
-        }
-        int x = ax + bx / 32;
-        int z = az + bz / 32;
-
-        return MathHelper.clamp((x + x + z) * 2 / 3, -maxSlope, maxSlope);
-    }
-
     @Override
     public void loadFromNbt(NbtCompound root, BlocksNbtContext contextMetadata) throws IOException {
         super.loadFromNbt(root, contextMetadata);
@@ -715,7 +822,7 @@ public class BlocksChunk extends MapChunk<BlocksNbtContext> {
                 result = result.usedThis();
             }
             if (heightAndLightDiff) {
-                heightAndLight = other.heightAndLight;
+                heightAndLight.copyFrom(other.heightAndLight);
                 result = result.usedOther();
             } else {
                 result = result.usedThis();
@@ -792,151 +899,47 @@ public class BlocksChunk extends MapChunk<BlocksNbtContext> {
         }
     }
 
-    // NOTE: This uses hard-coded index values instead of
-    // getBlockIndex(int, int).
-    public static class HeightLightCache {
-        private final int[] center;
-        /* Contents: {NW, N, NE, SW, S, SE, W, E} */
-        private final int[] edge;
+    /**
+     * Where column updates read blocks, light, and biomes from, so chunks
+     * loaded in the world and chunks read from elsewhere, ex. imported region
+     * files, are mapped the same way.
+     */
+    public interface ColumnSource {
+        /**
+         * @return the block at the position, or air outside the source's
+         * height range.
+         */
+        BlockState getBlockState(BlockPos pos);
 
-        public HeightLightCache(BlocksChunk centerChunk, BlocksChunk nw, BlocksChunk n, BlocksChunk ne, BlocksChunk w, BlocksChunk e, BlocksChunk sw, BlocksChunk s, BlocksChunk se) {
-            center = new int[256 * 3];
-            centerChunk.heightAndLight.get(0, 256 * 3, center, 0);
-            edge = new int[68 * 3];
-            if (nw != null) {
-                edge[0] = nw.heightAndLight.get(255);
-                edge[68] = nw.heightAndLight.get(255 + BlockType.TRANSPARENT.offset);
-                edge[136] = nw.heightAndLight.get(255 + BlockType.LIQUID.offset);
-            }
-            if (n != null) {
-                n.heightAndLight.get(240, 256, edge, 1);
-                n.heightAndLight.get(240 + BlockType.TRANSPARENT.offset, 256 + BlockType.TRANSPARENT.offset, edge, 1 + 68);
-                n.heightAndLight.get(240 + BlockType.LIQUID.offset, 256 + BlockType.LIQUID.offset, edge, 1 + 136);
-            }
-            if (ne != null) {
-                edge[17] = ne.heightAndLight.get(240);
-                edge[17 + 68] = ne.heightAndLight.get(240 + BlockType.TRANSPARENT.offset);
-                edge[17 + 136] = ne.heightAndLight.get(240 + BlockType.LIQUID.offset);
-            }
-            if (w != null) {
-                for (int dest = 36, src = 15; dest < 52; dest++, src += 16) {
-                    edge[dest] = w.heightAndLight.get(src);
-                    edge[dest + 68] = w.heightAndLight.get(src + BlockType.TRANSPARENT.offset);
-                    edge[dest + 136] = w.heightAndLight.get(src + BlockType.LIQUID.offset);
-                }
-            }
-            if (e != null) {
-                for (int dest = 52, src = 0; dest < 68; dest++, src += 16) {
-                    edge[dest] = e.heightAndLight.get(src);
-                    edge[dest + 68] = e.heightAndLight.get(src + BlockType.TRANSPARENT.offset);
-                    edge[dest + 136] = e.heightAndLight.get(src + BlockType.LIQUID.offset);
-                }
-            }
-            if (sw != null) {
-                edge[18] = sw.heightAndLight.get(15);
-                edge[18 + 68] = sw.heightAndLight.get(15 + BlockType.TRANSPARENT.offset);
-                edge[18 + 136] = sw.heightAndLight.get(15 + BlockType.LIQUID.offset);
-            }
-            if (s != null) {
-                s.heightAndLight.get(0, 16, edge, 19);
-                s.heightAndLight.get(BlockType.TRANSPARENT.offset, 16 + BlockType.TRANSPARENT.offset, edge, 19 + 68);
-                s.heightAndLight.get(BlockType.LIQUID.offset, 16 + BlockType.LIQUID.offset, edge, 19 + 136);
-            }
-            if (se != null) {
-                edge[35] = se.heightAndLight.get(0);
-                edge[35 + 68] = se.heightAndLight.get(BlockType.TRANSPARENT.offset);
-                edge[35 + 136] = se.heightAndLight.get(BlockType.LIQUID.offset);
-            }
-            // TODO remove these 2 loops and refactor to allow lighting
-            for (int i = 0; i < center.length; i++) {
-                center[i] = (center[i] & HEIGHT_MASK) + HEIGHT_OFFSET;
-            }
-            for (int i = 0; i < edge.length; i++) {
-                edge[i] = (edge[i] & HEIGHT_MASK) + HEIGHT_OFFSET;
-            }
-        }
+        int getBlockLight(BlockPos pos);
 
-        public int getHeight(BlockType blockType, int relativeX, int relativeZ) {
-            if (relativeX >= 0 && relativeZ >= 0 && relativeX < 16 && relativeZ < 16) {
-                return center[getBlockIndex(relativeX, relativeZ) + blockType.offset];
-            }
-            int offset = switch (blockType) {
-                case OPAQUE -> 0;
-                case TRANSPARENT -> 68;
-                case LIQUID -> 136;
-            };
-            if (relativeZ == -1) {
-                offset += relativeX + 1;
-            } else if (relativeZ == 16) {
-                offset += relativeX + 19;
-            } else if (relativeX == -1) {
-                offset += relativeZ + 36;
-            } else if (relativeX == 16) {
-                offset += relativeZ + 52;
-            }
-            return edge[offset];
+        /**
+         * @return true if {@link #getBiome(BlockPos)} can be called.
+         */
+        boolean canProvideBiomes();
+
+        Biome getBiome(BlockPos pos);
+    }
+
+    private record LiveColumnSource(World world, Chunk chunk, ChunkCache chunkCache) implements ColumnSource {
+        @Override
+        public BlockState getBlockState(BlockPos pos) {
+            return chunk.getBlockState(pos);
         }
 
-        public int getHighest(int relativeX, int relativeZ) {
-            if (relativeX >= 0 && relativeZ >= 0 && relativeX < 16 && relativeZ < 16) {
-                int index = getBlockIndex(relativeX, relativeZ);
-                int a = center[index];
-                int b = center[index + BlockType.TRANSPARENT.offset];
-                int c = center[index + BlockType.LIQUID.offset];
-                return Math.max(Math.max(a, b), c);
-            }
-            int offset = 0;
-            if (relativeZ == -1) {
-                offset = relativeX + 1;
-            } else if (relativeZ == 16) {
-                offset = relativeX + 19;
-            } else if (relativeX == -1) {
-                offset = relativeZ + 36;
-            } else if (relativeX == 16) {
-                offset = relativeZ + 52;
-            }
-            int a = edge[offset];
-            int b = edge[offset + 68];
-            int c = edge[offset + 136];
-            return Math.max(Math.max(a, b), c);
+        @Override
+        public int getBlockLight(BlockPos pos) {
+            return world.getLightLevel(LightType.BLOCK, pos);
         }
 
-        public int getHighest(int relativeX, int relativeZ, BlocksChunk.BlockType blockType) {
-            if (relativeX >= 0 && relativeZ >= 0 && relativeX < 16 && relativeZ < 16) {
-                int index = getBlockIndex(relativeX, relativeZ);
-                if (blockType == BlockType.OPAQUE) {
-                    return center[getBlockIndex(relativeX, relativeZ)];
-                }
-                int a = center[index];
-                int b = center[index + blockType.offset];
-                return Math.max(a, b);
-            }
-            int offset = 0;
-            if (relativeZ == -1) {
-                offset = relativeX + 1;
-            } else if (relativeZ == 16) {
-                offset = relativeX + 19;
-            } else if (relativeX == -1) {
-                offset = relativeZ + 36;
-            } else if (relativeX == 16) {
-                offset = relativeZ + 52;
-            }
-            return switch (blockType) {
-                case OPAQUE -> edge[offset];
-                case LIQUID -> Math.max(edge[offset], edge[offset + 136]);
-                case TRANSPARENT -> Math.max(edge[offset], edge[offset + 68]);
-            };
+        @Override
+        public boolean canProvideBiomes() {
+            return chunkCache.canProvideBiomes();
         }
 
-        /**
-         * Gets light from within this chunk only (Since blocks are at most one
-         * pixel, light is not interpolated and thus needs no neighbor data.)
-         */
-        public int getLight(BlockType blockType, int blockX, int blockZ) {
-            if (blockX >= 0 && blockZ >= 0 && blockX < 16 && blockZ < 16) {
-                return (center[getBlockIndex(blockX, blockZ) + blockType.offset] & LIGHT_MASK) >>> HEIGHT_BITS;
-            }
-            return 0;
+        @Override
+        public Biome getBiome(BlockPos pos) {
+            return chunkCache.getBiome(pos);
         }
     }
 }
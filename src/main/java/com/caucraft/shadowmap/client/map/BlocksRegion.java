@@ -2,32 +2,162 @@ package com.caucraft.shadowmap.client.map;
 
 import com.caucraft.shadowmap.api.map.MapRegion;
 import com.caucraft.shadowmap.api.map.RegionContainer;
+import com.caucraft.shadowmap.api.util.MemorySizes;
+import com.caucraft.shadowmap.api.util.MergeResult;
+import com.caucraft.shadowmap.client.ShadowMap;
+import com.caucraft.shadowmap.client.config.PerformanceConfig;
+import com.caucraft.shadowmap.client.util.data.DirectShortArena;
+import com.caucraft.shadowmap.client.util.data.IdPalette;
+import com.caucraft.shadowmap.client.util.data.RegistryIdPalette;
+import com.caucraft.shadowmap.client.util.data.SharedPalette;
+import net.minecraft.block.Block;
+import net.minecraft.block.BlockState;
 import net.minecraft.nbt.NbtCompound;
+import net.minecraft.world.biome.Biome;
 
 import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class BlocksRegion extends MapRegion<BlocksChunk, BlocksNbtContext> {
 
+    private static final RegistryIdPalette<BlockState> STATE_ID_PALETTE = new RegistryIdPalette<>(Block.STATE_IDS);
+
+    private final IdPalette<BlockState> blockPalette;
+    private final IdPalette<Biome> biomePalette;
+    private final DirectShortArena columns;
+    /** One reference held by the region itself plus one per retaining reader. */
+    private final AtomicInteger columnRefs;
+    private final AtomicBoolean columnsReleased;
+
     public BlocksRegion(RegionContainerImpl region) {
         super(region);
+        PerformanceConfig config = ShadowMap.getInstance().getConfig().performanceConfig;
+        this.columns = config.offHeapColumns.get() ? new DirectShortArena(256 * 3, 32) : null;
+        if (config.stateIdStorage.get()) {
+            this.blockPalette = STATE_ID_PALETTE;
+        } else if (config.regionPalette.get()) {
+            this.blockPalette = new SharedPalette<>(BlockState.class);
+        } else {
+            this.blockPalette = null;
+        }
+        this.biomePalette = config.regionPalette.get() ? new SharedPalette<>(Biome.class) : null;
+        this.columnRefs = new AtomicInteger(1);
+        this.columnsReleased = new AtomicBoolean();
+    }
+
+    @Override
+    public int estimateMemoryUsage() {
+        int usage = super.estimateMemoryUsage() + 3 * MemorySizes.REFERENCE;
+        if (blockPalette != null) {
+            usage += blockPalette.estimateMemoryUsage();
+        }
+        if (biomePalette != null) {
+            usage += biomePalette.estimateMemoryUsage();
+        }
+        if (columns != null) {
+            usage += columns.estimateMemoryUsage();
+        }
+        return usage;
+    }
+
+    /**
+     * Frees the off-heap height and light data of every chunk in this region.
+     * Must only be called once the region is no longer reachable from its
+     * container, e.g. when unloaded or after being merged into another region.
+     * Readers that retained the columns with {@link #retainColumns()} keep
+     * them valid until they let go.
+     */
+    public void releaseColumns() {
+        if (columnsReleased.compareAndSet(false, true)) {
+            dropColumnRef();
+        }
+    }
+
+    /**
+     * Keeps this region's columns from being freed while they are read
+     * without the region's lock, ex. from the render or UI threads. Each
+     * successful call must be paired with {@link #releaseRetainedColumns()}.
+     * @return true if the columns were retained, false if they were already
+     * freed and must not be read.
+     */
+    public boolean retainColumns() {
+        int refs;
+        do {
+            refs = columnRefs.get();
+            if (refs <= 0) {
+                return false;
+            }
+        } while (!columnRefs.compareAndSet(refs, refs + 1));
+        return true;
+    }
+
+    /**
+     * Lets go of columns retained by {@link #retainColumns()}.
+     */
+    public void releaseRetainedColumns() {
+        dropColumnRef();
+    }
+
+    private void dropColumnRef() {
+        int refs = columnRefs.decrementAndGet();
+        if (columns == null) {
+            return;
+        }
+        if (refs == 0) {
+            columns.release();
+        } else if (refs == 1 && !columnsReleased.get()) {
+            // Only the region is left, nothing can still see removed chunks
+            columns.reclaimDeferred();
+        }
+    }
+
+    @Override
+    protected void onChunkRemoved(BlocksChunk chunk) {
+        chunk.freeColumns(columns, columnRefs.get() > 1);
+    }
+
+    @Override
+    public MergeResult mergeFrom(MapRegion<BlocksChunk, BlocksNbtContext> other) {
+        MergeResult result = super.mergeFrom(other);
+        if (result.isUsedOther()) {
+            // Chunks and storages adopted from the other region still point
+            // into its palettes and column arena.
+            for (int i = nextChunkIndex(0); i != -1; i = nextChunkIndex(i + 1)) {
+                BlocksChunk chunk = getChunkAt(i);
+                chunk.usePalettes(blockPalette, biomePalette);
+                chunk.useColumns(columns);
+            }
+        }
+        return result;
     }
 
     public BlocksChunk getChunkInWorld(int regionChunkX, int regionChunkZ) {
-        int rx = regionChunkX >> 5;
-        int rz = regionChunkZ >> 5;
-        if (rx == 0 && rz == 0) {
-            return getChunk(regionChunkX, regionChunkZ, false);
+        BlocksRegion layer = getLayerInWorld(regionChunkX >> 5, regionChunkZ >> 5);
+        return layer == null ? null : layer.getChunk(regionChunkX, regionChunkZ, false);
+    }
+
+    /**
+     * @param relativeX region X relative to this region
+     * @param relativeZ region Z relative to this region
+     * @return this layer, or the blocks layer of another region if it is
+     * loaded, or null.
+     */
+    public BlocksRegion getLayerInWorld(int relativeX, int relativeZ) {
+        if (relativeX == 0 && relativeZ == 0) {
+            return this;
         }
         RegionContainer myRegion = regionContainer;
-        RegionContainer otherRegion = myRegion.getWorld().getRegion(myRegion.getRegionX() + rx, myRegion.getRegionZ() + rz, false, false);
+        RegionContainer otherRegion = myRegion.getWorld().getRegion(myRegion.getRegionX() + relativeX, myRegion.getRegionZ() + relativeZ, false, false);
         if (otherRegion == null) {
             return null;
         }
-        BlocksRegion otherLayer = ((RegionContainerImpl) otherRegion).getBlocks();
-        if (otherLayer == null) {
-            return null;
-        }
-        return otherLayer.getChunk(regionChunkX, regionChunkZ, false);
+        return ((RegionContainerImpl) otherRegion).getBlocks();
+    }
+
+    @Override
+    protected boolean useCompactChunks() {
+        return true;
     }
 
     @Override
@@ -37,7 +167,7 @@ public class BlocksRegion extends MapRegion<BlocksChunk, BlocksNbtContext> {
 
     @Override
     protected BlocksChunk supplyChunk() {
-        return new BlocksChunk();
+        return new BlocksChunk(blockPalette, biomePalette, columns);
     }
 
     @Override
@@ -0,0 +1,180 @@
+package com.caucraft.shadowmap.client.map;
+
+import com.caucraft.shadowmap.client.ShadowMap;
+import com.caucraft.shadowmap.client.util.MapUtils;
+import com.caucraft.shadowmap.client.util.io.ByteBufferInputStream;
+import com.caucraft.shadowmap.client.util.io.ByteBufferOutputStream;
+import net.minecraft.nbt.NbtCompound;
+import net.minecraft.util.crash.CrashException;
+import net.minecraft.util.math.ChunkPos;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps the blocks layers of recently evicted regions as compressed NBT in
+ * direct buffers, so zooming back in on them can inflate the layer again
+ * without locking and reading its file. Only layers that match their file
+ * are kept, and a region's entry is dropped when its file is written, so an
+ * entry always holds what was last saved. Entries are dropped least recently
+ * stored first to stay within a memory budget.
+ */
+public class BlocksRegionCache {
+    private final Map<Owner, Entry> entries;
+    private final AtomicLong hitCount;
+    private final AtomicLong missCount;
+    private long budgetBytes;
+    private long usedBytes;
+
+    public BlocksRegionCache() {
+        this.entries = new LinkedHashMap<>(256, 0.75F, true);
+        this.hitCount = new AtomicLong();
+        this.missCount = new AtomicLong();
+    }
+
+    /**
+     * @return the number of loads that found their region's layer here.
+     */
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    /**
+     * @return the number of loads that had to read their region's file.
+     */
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    public synchronized int getEntryCount() {
+        return entries.size();
+    }
+
+    /**
+     * @return bytes of compressed layers currently held.
+     */
+    public synchronized long getUsedBytes() {
+        return usedBytes;
+    }
+
+    /**
+     * Sets how many bytes of compressed layers to keep, dropping the least
+     * recently used entries if already over.
+     * @param budgetBytes bytes of compressed layers to keep
+     */
+    public synchronized void setBudget(long budgetBytes) {
+        this.budgetBytes = budgetBytes;
+        trim();
+    }
+
+    /**
+     * Compresses and keeps a region's blocks layer that is being evicted. The
+     * layer must not have been modified since it was last saved or loaded.
+     * @param world the world the region belongs to
+     * @param regionKey the region's coordinates packed into a long
+     * @param blocks the layer being evicted
+     */
+    void store(MapWorldImpl world, long regionKey, BlocksRegion blocks) {
+        synchronized (this) {
+            if (budgetBytes <= 0) {
+                return;
+            }
+        }
+        ByteBuffer data;
+        try {
+            ByteBufferOutputStream bufferOutput = new ByteBufferOutputStream();
+            MapUtils.writeCompressedNbt("region", blocks.saveToNbt(), bufferOutput);
+            ByteBuffer buffer = bufferOutput.getBuffer().flip();
+            data = ByteBuffer.allocateDirect(buffer.remaining());
+            data.put(buffer).flip();
+        } catch (IOException | CrashException ex) {
+            ShadowMap.getLogger().warn("Couldn't compress blocks for region cache", ex);
+            return;
+        }
+        Entry entry = new Entry(data, blocks.getLastSaved());
+        synchronized (this) {
+            Entry old = entries.put(new Owner(world, regionKey), entry);
+            if (old != null) {
+                usedBytes -= old.data.capacity();
+            }
+            usedBytes += data.capacity();
+            trim();
+        }
+    }
+
+    /**
+     * Removes a region's cached layer and inflates it.
+     * @param region the region to load the layer for
+     * @return the region's blocks layer with its last saved time restored, or
+     * null if it isn't cached.
+     */
+    BlocksRegion take(RegionContainerImpl region) {
+        Entry entry;
+        synchronized (this) {
+            entry = entries.remove(new Owner(region.getWorld(), ChunkPos.toLong(region.getRegionX(), region.getRegionZ())));
+            if (entry != null) {
+                usedBytes -= entry.data.capacity();
+            }
+        }
+        if (entry == null) {
+            missCount.incrementAndGet();
+            return null;
+        }
+        try {
+            NbtCompound blocksNbt = MapUtils.readCompressedNbt(new ByteBufferInputStream(entry.data));
+            BlocksRegion blocks = new BlocksRegion(region);
+            blocks.loadFromNbt(blocksNbt);
+            blocks.setLastSaved(entry.lastSaved);
+            hitCount.incrementAndGet();
+            return blocks;
+        } catch (IOException | CrashException ex) {
+            ShadowMap.getLogger().warn("Couldn't inflate cached blocks for region " + region.getRegionX() + " " + region.getRegionZ(), ex);
+            missCount.incrementAndGet();
+            return null;
+        }
+    }
+
+    /**
+     * Drops a region's cached layer, ex. because its file was just written.
+     * @param world the world the region belongs to
+     * @param regionKey the region's coordinates packed into a long
+     */
+    synchronized void invalidate(MapWorldImpl world, long regionKey) {
+        Entry old = entries.remove(new Owner(world, regionKey));
+        if (old != null) {
+            usedBytes -= old.data.capacity();
+        }
+    }
+
+    /**
+     * Drops every cached layer from a world, so the cache doesn't keep the
+     * world reachable.
+     * @param world the world being unloaded
+     */
+    public synchronized void forgetWorld(MapWorldImpl world) {
+        Iterator<Map.Entry<Owner, Entry>> iterator = entries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Owner, Entry> next = iterator.next();
+            if (next.getKey().world == world) {
+                usedBytes -= next.getValue().data.capacity();
+                iterator.remove();
+            }
+        }
+    }
+
+    private void trim() {
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (usedBytes > budgetBytes && iterator.hasNext()) {
+            usedBytes -= iterator.next().data.capacity();
+            iterator.remove();
+        }
+    }
+
+    private record Owner(MapWorldImpl world, long regionKey) {}
+
+    private record Entry(ByteBuffer data, long lastSaved) {}
+}
@@ -0,0 +1,133 @@
+package com.caucraft.shadowmap.client.map;
+
+import com.caucraft.shadowmap.client.ShadowMap;
+
+import javax.management.ListenerNotFoundException;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import java.io.Closeable;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryNotificationInfo;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Watches the JVM's heap pools for usage thresholds so the map can give
+ * memory back when the game itself needs it, ex. while loading a world.
+ * Pressure starts when a pool's usage or usage after collection crosses its
+ * threshold, and ends once both are back under {@link #RELEASE_FRACTION} of
+ * every pool's maximum.
+ */
+public class HeapPressureMonitor implements NotificationListener, Closeable {
+    private static final double USAGE_FRACTION = 0.9;
+    private static final double COLLECTION_USAGE_FRACTION = 0.75;
+    private static final double RELEASE_FRACTION = 0.6;
+    /** Share of the configured budgets kept while under pressure. */
+    private static final double PRESSURE_BUDGET_SCALE = 0.5;
+
+    private final Runnable onPressure;
+    private final List<WatchedPool> pools;
+    private final NotificationEmitter emitter;
+    private volatile boolean underPressure;
+
+    /**
+     * @param onPressure called on a JMX notification thread whenever pressure
+     * starts. Should only schedule work, not do it.
+     */
+    public HeapPressureMonitor(Runnable onPressure) {
+        this.onPressure = onPressure;
+        this.pools = new ArrayList<>();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            long max = pool.getUsage().getMax();
+            if (pool.getType() != MemoryType.HEAP || max <= 0
+                    || !pool.isUsageThresholdSupported() || !pool.isCollectionUsageThresholdSupported()) {
+                continue;
+            }
+            // Remembered so closing gives the pools back as they were found
+            pools.add(new WatchedPool(pool, pool.getUsageThreshold(), pool.getCollectionUsageThreshold()));
+            pool.setUsageThreshold((long) (max * USAGE_FRACTION));
+            pool.setCollectionUsageThreshold((long) (max * COLLECTION_USAGE_FRACTION));
+        }
+        if (ManagementFactory.getMemoryMXBean() instanceof NotificationEmitter emitter && !pools.isEmpty()) {
+            this.emitter = emitter;
+            emitter.addNotificationListener(this, null, null);
+        } else {
+            this.emitter = null;
+            ShadowMap.getLogger().info("Heap usage thresholds not supported, map memory only limited by budgets");
+        }
+    }
+
+    @Override
+    public void handleNotification(Notification notification, Object handback) {
+        String type = notification.getType();
+        if (!MemoryNotificationInfo.MEMORY_THRESHOLD_EXCEEDED.equals(type)
+                && !MemoryNotificationInfo.MEMORY_COLLECTION_THRESHOLD_EXCEEDED.equals(type)) {
+            return;
+        }
+        if (!underPressure) {
+            underPressure = true;
+            ShadowMap.getLogger().info("Heap usage high, shrinking map memory budgets");
+        }
+        // Every crossing gets a pass, pressure may still be building.
+        onPressure.run();
+    }
+
+    /**
+     * Ends pressure once every watched pool is back under the release
+     * threshold, both now and after its last collection. Called
+     * periodically.
+     * @return the share of the configured memory budgets to use right now.
+     */
+    public double updateBudgetScale() {
+        if (!underPressure) {
+            return 1.0;
+        }
+        for (WatchedPool watched : pools) {
+            MemoryPoolMXBean pool = watched.pool;
+            MemoryUsage usage = pool.getUsage();
+            MemoryUsage collectionUsage = pool.getCollectionUsage();
+            long releaseBytes = (long) (usage.getMax() * RELEASE_FRACTION);
+            if (usage.getUsed() > releaseBytes || collectionUsage != null && collectionUsage.getUsed() > releaseBytes) {
+                return PRESSURE_BUDGET_SCALE;
+            }
+        }
+        underPressure = false;
+        ShadowMap.getLogger().info("Heap usage back to normal, restoring map memory budgets");
+        return 1.0;
+    }
+
+    /**
+     * @return true if heap usage is currently considered high.
+     */
+    public boolean isUnderPressure() {
+        return underPressure;
+    }
+
+    /**
+     * Stops listening and restores every watched pool's thresholds to what
+     * they were before this monitor set them.
+     */
+    @Override
+    public void close() {
+        if (emitter != null) {
+            try {
+                emitter.removeNotificationListener(this);
+            } catch (ListenerNotFoundException ignore) {}
+        }
+        for (WatchedPool watched : pools) {
+            try {
+                watched.pool.setUsageThreshold(watched.previousUsageThreshold);
+                watched.pool.setCollectionUsageThreshold(watched.previousCollectionUsageThreshold);
+            } catch (IllegalArgumentException | UnsupportedOperationException ex) {
+                ShadowMap.getLogger().warn("Could not restore heap usage thresholds for " + watched.pool.getName(), ex);
+            }
+        }
+        pools.clear();
+    }
+
+    private record WatchedPool(MemoryPoolMXBean pool, long previousUsageThreshold, long previousCollectionUsageThreshold) {}
+}
@@ -3,19 +3,18 @@ package com.caucraft.shadowmap.client.map;
 import com.caucraft.shadowmap.api.map.MapManager;
 import com.caucraft.shadowmap.api.map.RegionFlags;
 import com.caucraft.shadowmap.api.util.ChunkCache;
-import com.caucraft.shadowmap.api.util.RenderArea;
 import com.caucraft.shadowmap.api.util.ServerKey;
 import com.caucraft.shadowmap.api.util.WorldKey;
 import com.caucraft.shadowmap.client.ShadowMap;
 import com.caucraft.shadowmap.client.config.MinimapConfig;
 import com.caucraft.shadowmap.client.config.PerformanceConfig;
 import com.caucraft.shadowmap.client.importer.ImportManager;
+import com.caucraft.shadowmap.client.render.RegionMipChain;
+import com.caucraft.shadowmap.client.render.RegionTextureAtlas;
 import com.caucraft.shadowmap.client.util.ApiUser;
 import com.caucraft.shadowmap.client.util.MapBlockStateMutable;
 import com.caucraft.shadowmap.client.util.MapUtils;
 import com.caucraft.shadowmap.client.util.data.ResourcePool;
-import com.caucraft.shadowmap.client.util.task.CleanupCounter;
-import com.caucraft.shadowmap.client.util.task.CleanupHelper;
 import com.google.common.collect.ImmutableList;
 import com.google.common.util.concurrent.Striped;
 import it.unimi.dsi.fastutil.objects.Object2ObjectLinkedOpenHashMap;
@@ -28,7 +27,6 @@ import net.minecraft.client.MinecraftClient;
 import net.minecraft.client.render.block.BlockRenderManager;
 import net.minecraft.client.render.model.BakedQuad;
 import net.minecraft.client.texture.Sprite;
-import net.minecraft.client.texture.SpriteContents;
 import net.minecraft.client.texture.TextureManager;
 import net.minecraft.registry.DynamicRegistryManager;
 import net.minecraft.registry.Registries;
@@ -44,22 +42,13 @@ import net.minecraft.world.biome.Biome;
 import net.minecraft.world.chunk.Chunk;
 import net.minecraft.world.chunk.WorldChunk;
 import org.jetbrains.annotations.NotNull;
-import org.lwjgl.BufferUtils;
-import org.lwjgl.opengl.GL11;
-import org.lwjgl.opengl.GL12;
 
-import java.awt.image.BufferedImage;
 import java.io.Closeable;
 import java.io.File;
 import java.nio.ByteBuffer;
-import java.nio.IntBuffer;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
-import java.util.Set;
-import java.util.TreeSet;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Executors;
@@ -99,6 +88,14 @@ public class MapManagerImpl implements MapManager, Closeable, SimpleSynchronousR
     private final Object2ObjectLinkedOpenHashMap<WorldKey, MapWorldImpl> loadedWorlds;
     private final ResourcePool<ByteBuffer> ioBufferPool;
     private final ResourcePool<int[]> renderBufferPool;
+    private final RegionTextureAtlas highResAtlas;
+    private final RegionTextureAtlas lowResAtlas;
+    private final BlockColorCache blockColorCache;
+    private final RegionEvictor regionEvictor;
+    private final BlocksRegionCache blocksRegionCache;
+    private final HeapPressureMonitor heapPressureMonitor;
+    private final AtomicBoolean heapPressureCleanupPending;
+    private final AtomicInteger pendingLoadCount;
     private final PriorityBlockingQueue<PriorityContainer<Void>> ioQueue;
     private final PriorityBlockingQueue<PriorityContainer<Void>> renderQueue;
     private final ScheduledFuture<?> cleanupFuture;
@@ -106,6 +103,7 @@ public class MapManagerImpl implements MapManager, Closeable, SimpleSynchronousR
     private ApiUser<StorageKeyImpl<?, ?, ?>>[] storageKeys;
 
     private MapWorldImpl currentWorldMap;
+    private volatile BlockTintTable tintTable = BlockTintTable.EMPTY;
     long lastTickTime;
 
     public MapManagerImpl(ShadowMap shadowMap, File mapsDirectory) {
@@ -145,12 +143,24 @@ public class MapManagerImpl implements MapManager, Closeable, SimpleSynchronousR
                 () -> ByteBuffer.allocate(MapUtils.DEFAULT_BUFFER_SIZE),
                 ByteBuffer::clear, 4, 12);
         this.renderBufferPool = new ResourcePool<>(() -> new int[512 * 512], (tess) -> {}, 16, 32);
+        // 2048 x 2048 pages of 16 high-res regions, 1024 x 1024 pages of 64
+        // low-res regions with their mip levels.
+        this.highResAtlas = new RegionTextureAtlas(512, 4, 0);
+        this.lowResAtlas = new RegionTextureAtlas(RegionMipChain.BASE_SIZE, 8, RegionMipChain.MAX_LEVEL);
+        this.blockColorCache = new BlockColorCache(mapsDirectory);
+        this.regionEvictor = new RegionEvictor();
+        this.blocksRegionCache = new BlocksRegionCache();
+        updateCacheBudgets(shadowMap.getConfig().performanceConfig);
         this.ioQueue = new PriorityBlockingQueue<>();
+        this.pendingLoadCount = new AtomicInteger();
         this.renderQueue = new PriorityBlockingQueue<>();
 
         this.importManager = new ImportManager(this);
         scheduleSaveScan();
-        cleanupFuture = this.modifyExecutor.scheduleWithFixedDelay(new ErrorReportingTask<>(this::cleanupRegions), 15, 15, TimeUnit.SECONDS);
+        // Small eviction slices often rather than a full pass now and then
+        this.heapPressureCleanupPending = new AtomicBoolean();
+        this.heapPressureMonitor = new HeapPressureMonitor(this::scheduleHeapPressureCleanup);
+        cleanupFuture = this.modifyExecutor.scheduleWithFixedDelay(new ErrorReportingTask<>(this::cleanupRegions), 1000, 250, TimeUnit.MILLISECONDS);
     }
 
     public void setStorageKeys(ApiUser<StorageKeyImpl<?, ?, ?>>[] storageKeys) {
@@ -170,6 +180,7 @@ public class MapManagerImpl implements MapManager, Closeable, SimpleSynchronousR
         shutdown.set(true);
         saveScanFuture.cancel(false);
         cleanupFuture.cancel(false);
+        heapPressureMonitor.close();
         ShadowMap.getLogger().info("Shutting down map");
 
         importManager.close();
@@ -233,6 +244,23 @@ public class MapManagerImpl implements MapManager, Closeable, SimpleSynchronousR
         return shutdown.get();
     }
 
+    /**
+     * @return the number of region loads scheduled that haven't finished yet,
+     * for background work that should stay out of their way.
+     */
+    public int getPendingLoadCount() {
+        return pendingLoadCount.get();
+    }
+
+    /**
+     * Counts a region load as pending until it finishes.
+     * @param loadFuture the load's future
+     */
+    void trackPendingLoad(CompletableFuture<?> loadFuture) {
+        pendingLoadCount.incrementAndGet();
+        loadFuture.whenComplete((val, ex) -> pendingLoadCount.decrementAndGet());
+    }
+
     @Override
     public void reload(ResourceManager manager) {
         MinecraftClient mcClient = MinecraftClient.getInstance();
@@ -255,8 +283,12 @@ public class MapManagerImpl implements MapManager, Closeable, SimpleSynchronousR
         }
 
         Random random = Random.create(0);
-        Map<Identifier, BufferedImage> loadedAtlasMap = new HashMap<>();
+        List<BlockState> states = new ArrayList<>();
+        List<Sprite> sprites = new ArrayList<>();
+        List<BlockState> tintedStates = new ArrayList<>();
 
+        // Models aren't safe to query from several threads, so sprites are
+        // picked here and only the color averaging is done in parallel.
         while (stateIterator.hasNext()) {
             BlockState state = stateIterator.next();
             MapBlockStateMutable mapData = (MapBlockStateMutable) state;
@@ -277,56 +309,24 @@ public class MapManagerImpl implements MapManager, Closeable, SimpleSynchronousR
                     hasTint = topSurface.hasColor();
                 }
             }
-            SpriteContents stateSpriteContents = stateSprite.getContents();
-            BufferedImage texAtlas = loadTextureAtlas(textureManager, loadedAtlasMap, stateSprite.getAtlasId());
-
-            int minx = stateSprite.getX();
-            int miny = stateSprite.getY();
-            int maxx = minx + stateSpriteContents.getWidth();
-            int maxy = miny + stateSpriteContents.getHeight();
-            int minTexX = maxx;
-            int minTexY = maxy;
-            int maxTexX = minx;
-            int maxTexY = miny;
-            int r = 0;
-            int g = 0;
-            int b = 0;
-            int a = 0;
-            int count = 0;
-            for (int x = minx; x < maxx; x++) {
-                for (int y = miny; y < maxy; y++) {
-                    int argb = texAtlas.getRGB(x, y);
-                    int nextA = (argb >>> 24 & 0xFF);
-                    if (nextA > 8) {
-                        a += nextA;
-                        r += (argb >>> 16 & 0xFF);
-                        g += (argb >>> 8 & 0xFF);
-                        b += (argb & 0xFF);
-                        count++;
-                        minTexX = Math.min(minTexX, x);
-                        minTexY = Math.min(minTexY, y);
-                        maxTexX = Math.max(maxTexX, x);
-                        maxTexY = Math.max(maxTexY, y);
-                    }
-                }
-            }
+            states.add(state);
+            sprites.add(stateSprite);
 
             MapUtils.updateOpacity(state);
             mapData.shadowMap$setTinted(hasTint);
-            if (minTexX <= maxTexX & minTexY <= maxTexY) {
-                r /= count;
-                g /= count;
-                b /= count;
-                a /= (maxTexX - minTexX + 1) * (maxTexY - minTexY + 1);
-                if (r > 255 | g > 255 | b > 255 | a > 255) {
-                    ShadowMap.getLogger().error(String.format("Invalid ARGB for block %s: %d %d %d %d (c: %d, tex: %d %d %d %d)", state, a, r, g, b, count, minTexX, minTexY, maxTexX, maxTexY));
-                }
-                a = Math.min(a, mapData.shadowMap$getMaxOpacity());
-                mapData.shadowMap$setColorARGB(a << 24 | r << 16 | g << 8 | b);
-            } else {
-                mapData.shadowMap$setColorARGB(0);
+            mapData.shadowMap$setTintIndex(-1);
+            if (hasTint || state.getBlock() == Blocks.WATER) {
+                tintedStates.add(state);
             }
         }
+
+        int[] colors = blockColorCache.getColors(textureManager, manager, states, sprites.toArray(new Sprite[0]));
+        for (int i = 0; i < colors.length; i++) {
+            MapBlockStateMutable mapData = (MapBlockStateMutable) states.get(i);
+            int argb = colors[i];
+            int a = Math.min(argb >>> 24, mapData.shadowMap$getMaxOpacity());
+            mapData.shadowMap$setColorARGB(a << 24 | argb & 0xFFFFFF);
+        }
         MapBlockStateMutable mapData = (MapBlockStateMutable) Blocks.AIR.getDefaultState();
         mapData.shadowMap$setColorARGB(0);
         mapData.shadowMap$setTinted(false);
@@ -344,6 +344,9 @@ public class MapManagerImpl implements MapManager, Closeable, SimpleSynchronousR
         mapData.shadowMap$setTinted(false);
         mapData.shadowMap$setOpacity(false, 64);
 
+        tintTable = BlockTintTable.build(tintedStates,
+                getTintBiomes(world == null ? null : world.getRegistryManager().get(RegistryKeys.BIOME)));
+
         synchronized (this) {
             for (MapWorldImpl loadedWorld : new ArrayList<>(loadedWorlds.values())) {
                 for (RegionContainerImpl loadedRegion : loadedWorld.getRegions()) {
@@ -373,6 +376,37 @@ public class MapManagerImpl implements MapManager, Closeable, SimpleSynchronousR
         return mapsDirectory;
     }
 
+    /**
+     * @return the biome tint table built at the last resource reload.
+     */
+    public BlockTintTable getTintTable() {
+        return tintTable;
+    }
+
+    /**
+     * @param worldBiomes the current world's biome registry, may be null
+     * @return the biomes the tint table covers: the default registry's and the
+     * current world's, never those of registries from worlds left since.
+     */
+    private List<Biome> getTintBiomes(Registry<Biome> worldBiomes) {
+        List<Biome> biomes = new ArrayList<>();
+        Registry<Biome> defaultBiomes = shadowMap.getDefaultBiomeRegistry();
+        if (defaultBiomes != null) {
+            defaultBiomes.forEach(biomes::add);
+        }
+        if (worldBiomes != null && worldBiomes != defaultBiomes) {
+            worldBiomes.forEach(biomes::add);
+        }
+        return biomes;
+    }
+
+    /**
+     * @return a snapshot of every loaded world.
+     */
+    public synchronized List<MapWorldImpl> getLoadedWorlds() {
+        return ImmutableList.copyOf(loadedWorlds.values());
+    }
+
     @Override
     public MapWorldImpl getWorld(WorldKey key) {
         return loadedWorlds.get(key);
@@ -403,6 +437,40 @@ public class MapManagerImpl implements MapManager, Closeable, SimpleSynchronousR
         return this.renderBufferPool;
     }
 
+    public RegionTextureAtlas getHighResAtlas() {
+        return this.highResAtlas;
+    }
+
+    public RegionTextureAtlas getLowResAtlas() {
+        return this.lowResAtlas;
+    }
+
+    public RegionEvictor getRegionEvictor() {
+        return regionEvictor;
+    }
+
+    public BlocksRegionCache getBlocksRegionCache() {
+        return blocksRegionCache;
+    }
+
+    /**
+     * Sizes the region texture pools by the texture memory setting, half for
+     * each resolution like the texture cleanup limits, and the compressed
+     * blocks cache by its own setting.
+     */
+    private void updateCacheBudgets(PerformanceConfig config) {
+        long bytesPerLevel = (long) config.textureMemoryMB.get() << 19; // memMB * 1MB / 2
+        highResAtlas.setBudget(bytesPerLevel);
+        lowResAtlas.setBudget(bytesPerLevel);
+        blocksRegionCache.setBudget((long) config.blockCacheMemoryMB.get() << 20);
+    }
+
+    private void forgetCaches(MapWorldImpl world) {
+        highResAtlas.forgetWorld(world);
+        lowResAtlas.forgetWorld(world);
+        blocksRegionCache.forgetWorld(world);
+    }
+
     /**
      * Changes the current world loaded by the map manager. This is a shortcut
      * for {@link #onWorldChanged(WorldKey, World, Registry, Registry)}.
@@ -438,6 +506,7 @@ public class MapManagerImpl implements MapManager, Closeable, SimpleSynchronousR
     }
 
     private synchronized void onWorldChanged(WorldKey worldKey, World world, Registry<Block> blockRegistry, Registry<Biome> biomeRegistry) {
+        tintTable = tintTable.withBiomes(getTintBiomes(biomeRegistry));
         if (currentWorldMap != null) {
             if (worldKey.equals(currentWorldMap.getWorldKey())) {
                 currentWorldMap.updateWorldAndRegistries(world, blockRegistry, biomeRegistry);
@@ -508,6 +577,13 @@ public class MapManagerImpl implements MapManager, Closeable, SimpleSynchronousR
         }
     }
 
+    public void setPlayerVelocity(int blockX, int blockZ, double velocityX, double velocityZ) {
+        MapWorldImpl currentWorld = currentWorldMap;
+        if (currentWorld != null) {
+            currentWorld.setPlayerVelocity(blockX, blockZ, velocityX, velocityZ);
+        }
+    }
+
     public void setCameraPosition(MinimapConfig config, int blockX, int blockZ) {
         MapWorldImpl currentWorld = currentWorldMap;
         if (currentWorld != null) {
@@ -587,6 +663,7 @@ public class MapManagerImpl implements MapManager, Closeable, SimpleSynchronousR
                 }
                 ShadowMap.getLogger().info("Removing empty world " + world.getWorldKey());
                 loadedWorlds.remove(world.getWorldKey(), world);
+                forgetCaches(world);
             }
         });
     }
@@ -752,9 +829,32 @@ public class MapManagerImpl implements MapManager, Closeable, SimpleSynchronousR
         return lockingTask;
     }
 
+    /**
+     * Schedules a task to run on the IO threads after every other queued
+     * priority-sorted IO task, such as region loads, regardless of where its
+     * region is. For bulk work like imports that shouldn't hold up what the
+     * player is looking at. If the map manager is being shut down and the
+     * task cannot be registered with the phaser, it will execute immediately
+     * on the calling thread.
+     * @param world the world corresponding to the task.
+     * @param regionX x coordinate of the region corresponding to the task.
+     * @param regionZ z coordinate of the region corresponding to the task.
+     * @param task the task to run.
+     */
+    CompletableFuture<Void> executeBackgroundIOTask(MapWorldImpl world, int regionX, int regionZ, Callable<Void> task) {
+        PriorityContainer<Void> container = new PriorityContainer<>(world, regionX, regionZ, task);
+        container.background = true;
+        container.priority = Long.MAX_VALUE;
+        return executePrioritySortedIOTask(container);
+    }
+
     private CompletableFuture<Void> executePrioritySortedIOTask(MapWorldImpl world, int regionX, int regionZ, Callable<Void> task) {
+        return executePrioritySortedIOTask(new PriorityContainer<>(world, regionX, regionZ, task));
+    }
+
+    private CompletableFuture<Void> executePrioritySortedIOTask(PriorityContainer<Void> container) {
         PriorityLockingTask<Void> prioTask = new PriorityLockingTask<>(ioQueue, true);
-        ioQueue.add(new PriorityContainer<>(world, regionX, regionZ, task));
+        ioQueue.add(container);
         if (shutdownPhaser.register() < 0) {
             prioTask.run();
             return prioTask;
@@ -841,6 +941,10 @@ public class MapManagerImpl implements MapManager, Closeable, SimpleSynchronousR
         ArrayList<PriorityContainer<Void>> containers = new ArrayList<>(ioQueue.size() + 10);
         ioQueue.drainTo(containers);
         for (PriorityContainer<Void> container : containers) {
+            if (container.background) {
+                ioQueue.add(container);
+                continue;
+            }
             int regionX = container.regionX;
             int regionZ = container.regionZ;
             long priority = container.world.getRenderPriority(regionX, regionZ);
@@ -890,68 +994,57 @@ public class MapManagerImpl implements MapManager, Closeable, SimpleSynchronousR
 
     private Void cleanupRegions() {
         long curTime = ShadowMap.getLastTickTimeS();
-        Set<CleanupSorter> cleanupRegions = new TreeSet<>();
         List<MapWorldImpl> worldList = ImmutableList.copyOf(loadedWorlds.values());
         synchronized (this) {
-            int i = 0;
             for (MapWorldImpl world : worldList) {
                 if (world.isEmpty() && world != currentWorldMap) {
                     ShadowMap.getLogger().info("Removing empty world " + world.getWorldKey());
                     loadedWorlds.remove(world.getWorldKey(), world);
-                    continue;
-                }
-                RenderArea[] priorityArray = world.getRenderAreas();
-                for (RegionContainerImpl region : world.getRegions()) {
-                    int maxFlags = region.getMaxFlags();
-                    long lastRead = region.getLastRead();
-                    cleanupRegions.add(new CleanupSorter(i++, region, maxFlags, RenderArea.getRenderPriority(priorityArray, region.getRegionX(), region.getRegionZ()), lastRead));
+                    forgetCaches(world);
                 }
             }
         }
-        if (cleanupRegions.size() <= 64) {
-            return null;
-        }
         PerformanceConfig config = shadowMap.getConfig().performanceConfig;
-        CleanupCounter counter = new CleanupCounter();
-        for (CleanupSorter sorter : cleanupRegions) {
-            RegionContainerImpl region = sorter.region;
-            CleanupHelper helper = region.isCleanupNeeded(counter, config, curTime);
-            if (region.getFlags(~RegionFlags.IO_FAILED.flag) != 0) {
-                continue;
-            }
-            if (helper.isAnyTrue() || region.isEmpty()) {
-                region.getWorld().scheduleRegionCleanup(region, helper, null);
-            }
-            region.reduceMaxFlags();
-        }
+        updateCacheBudgets(config);
+        regionEvictor.runSlice(config, curTime, heapPressureMonitor.updateBudgetScale());
+        regionEvictor.publishMemoryReports(worldList);
         return null;
     }
 
-    // </editor-fold>
-
-    private static BufferedImage loadTextureAtlas(TextureManager textureManager, Map<Identifier, BufferedImage> loadedMap, Identifier textureId) {
-        BufferedImage texAtlas = loadedMap.get(textureId);
-        if (texAtlas != null) {
-            return texAtlas;
+    /**
+     * Queues a full eviction pass against the shrunk budgets, rather than
+     * waiting for the slices to work through every region. Crossings while a
+     * pass is still queued don't queue another.
+     */
+    private void scheduleHeapPressureCleanup() {
+        if (shutdown.get() || !heapPressureCleanupPending.compareAndSet(false, true)) {
+            return;
         }
+        try {
+            modifyExecutor.execute(new ErrorReportingTask<>(() -> {
+                // Cleared first, so a crossing during the pass gets another
+                heapPressureCleanupPending.set(false);
+                double budgetScale = heapPressureMonitor.updateBudgetScale();
+                if (budgetScale < 1.0) {
+                    regionEvictor.runPass(shadowMap.getConfig().performanceConfig, ShadowMap.getLastTickTimeS(), budgetScale);
+                }
+                return null;
+            }));
+        } catch (RejectedExecutionException ignore) {
+            heapPressureCleanupPending.set(false);
+        }
+    }
 
-        textureManager.bindTexture(textureId);
-        int texWidth = GL11.glGetTexLevelParameteri(GL11.GL_TEXTURE_2D, 0, GL11.GL_TEXTURE_WIDTH);
-        int texHeight = GL11.glGetTexLevelParameteri(GL11.GL_TEXTURE_2D, 0, GL11.GL_TEXTURE_HEIGHT);
-        IntBuffer pixelBuffer = BufferUtils.createIntBuffer(texWidth * texHeight);
-        int[] pixelArray = new int[texWidth * texHeight];
-        texAtlas = new BufferedImage(texWidth, texHeight, BufferedImage.TYPE_INT_ARGB);
-        loadedMap.put(textureId, texAtlas);
-
-        pixelBuffer.position(0);
-
-        GL11.glGetTexImage(GL11.GL_TEXTURE_2D, 0, GL12.GL_BGRA, GL12.GL_UNSIGNED_INT_8_8_8_8_REV, pixelBuffer);
-        pixelBuffer.get(pixelArray);
-        texAtlas.setRGB(0, 0, texWidth, texHeight, pixelArray, 0, texWidth);
-
-        return texAtlas;
+    /**
+     * @return true if the map's memory budgets are currently shrunk because
+     * heap usage is high.
+     */
+    public boolean isUnderHeapPressure() {
+        return heapPressureMonitor.isUnderPressure();
     }
 
+    // </editor-fold>
+
     private static class ErrorReportingTask<T> extends CompletableFuture<T> implements Runnable {
         private final Callable<T> task;
 
@@ -1019,6 +1112,8 @@ public class MapManagerImpl implements MapManager, Closeable, SimpleSynchronousR
         private final int regionX, regionZ;
         private final Callable<T> task;
         private long priority;
+        /** Whether this stays behind every other task when resorting. */
+        private boolean background;
 
         private PriorityContainer(MapWorldImpl world, int regionX, int regionZ, Callable<T> task) {
             this.world = world;
@@ -1082,23 +1177,4 @@ public class MapManagerImpl implements MapManager, Closeable, SimpleSynchronousR
             return shutdown.get();
         }
     }
-
-    private record CleanupSorter(int index, RegionContainerImpl region, int maxLoad, long renderPrio, long lastRead) implements Comparable<CleanupSorter> {
-        @Override
-        public int compareTo(@NotNull MapManagerImpl.CleanupSorter o) {
-            int c = -Integer.compare(maxLoad, o.maxLoad);
-            if (c != 0) {
-                return c;
-            }
-            c = Long.compare(renderPrio, o.renderPrio);
-            if (c != 0) {
-                return c;
-            }
-            c = Long.compare(lastRead, o.lastRead);
-            if (c != 0) {
-                return c;
-            }
-            return index - o.index;
-        }
-    }
 }
@@ -16,6 +16,7 @@ import com.caucraft.shadowmap.client.util.task.CleanupHelper;
 import com.caucraft.shadowmap.client.util.io.ByteBufferInputStream;
 import com.caucraft.shadowmap.client.util.io.ByteBufferOutputStream;
 import com.caucraft.shadowmap.client.util.MapUtils;
+import com.caucraft.shadowmap.client.util.data.RegionSet;
 import com.caucraft.shadowmap.api.util.RegistryWrapper;
 import com.caucraft.shadowmap.api.util.WorldKey;
 import com.caucraft.shadowmap.client.waypoint.WorldWaypointManager;
@@ -39,7 +40,9 @@ import java.io.IOException;
 import java.lang.ref.WeakReference;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
 import java.util.Arrays;
@@ -61,6 +64,13 @@ public class MapWorldImpl implements MapWorld {
     private RegistryWrapper<Biome> biomeRegistry;
     private final Long2ObjectLinkedOpenHashMap<RegionContainerImpl> regionMap; // Should only be accessed/modified from client thread
     private RenderArea[] priorityAreas;
+    private final RegionPrefetcher prefetcher;
+    private final Object diskIndexLock;
+    private volatile DiskIndex diskIndex;
+    private volatile MemoryReport memoryReport = MemoryReport.EMPTY;
+    /** Per-layer usage, guarded by the map manager's region evictor. */
+    private final long[] memoryUsage = new long[RegionEvictor.Layer.values().length];
+    private int regionCount;
     private CeilingType ceilingType;
     private WorldWaypointManager waypointManager;
     private final BlockingQueue<WeakReference<Object>> forceLoaders;
@@ -81,6 +91,8 @@ public class MapWorldImpl implements MapWorld {
             this.ceilingType = CeilingType.OPEN;
         }
         Arrays.fill(this.priorityAreas, RenderArea.EMPTY_AREA);
+        this.prefetcher = new RegionPrefetcher(this, ShadowMap.getInstance().getConfig().performanceConfig);
+        this.diskIndexLock = new Object();
         this.waypointManager = new WorldWaypointManager();
         this.forceLoaders = new LinkedBlockingQueue<>();
         this.loadFuture = scheduleWaypointLoad();
@@ -246,6 +258,7 @@ public class MapWorldImpl implements MapWorld {
                     }
                 }
                 regionMap.put(regionKey, region);
+                mapManager.getRegionEvictor().add(region);
             }
             if (load) {
                 scheduleRegionLoad(region);
@@ -257,7 +270,7 @@ public class MapWorldImpl implements MapWorld {
         return region;
     }
 
-    private boolean removeRegion(RegionContainerImpl region) {
+    boolean removeRegion(RegionContainerImpl region) {
         if (region == null) {
             return false;
         }
@@ -265,6 +278,9 @@ public class MapWorldImpl implements MapWorld {
         synchronized (mapManager) {
             boolean empty = region.isEmpty();
             boolean removed = empty && regionMap.remove(regionKey, region);
+            if (removed) {
+                mapManager.getRegionEvictor().remove(region);
+            }
             return removed;
         }
     }
@@ -315,6 +331,9 @@ public class MapWorldImpl implements MapWorld {
             for (int z = newArea.minZ(); z <= newArea.maxZ(); z++) {
                 for (int x = newArea.minX(); x <= newArea.maxX(); x++) {
                     if (!oldArea.containsRegion(x, z)) {
+                        if (!isInRenderArea(oldAreas, x, z)) {
+                            prefetcher.recordDemand(getRegion(x, z, false, false), x, z);
+                        }
                         RegionContainerImpl region = getRegion(x, z, false, true);
                         if (region != null) {
                             region.setFlag(loadLevel.loadFlag);
@@ -335,7 +354,67 @@ public class MapWorldImpl implements MapWorld {
      * this world's load levels (lower value = higher priority)
      */
     public long getRenderPriority(int regionX, int regionZ) {
-        return RenderArea.getRenderPriority(this.priorityAreas, regionX, regionZ);
+        return Math.min(RenderArea.getRenderPriority(this.priorityAreas, regionX, regionZ),
+                prefetcher.getRenderPriority(regionX, regionZ));
+    }
+
+    /**
+     * @param regionX x coordinate of the region
+     * @param regionZ z coordinate of the region
+     * @return true if the region is inside any of this world's load level
+     * areas.
+     */
+    boolean isInRenderArea(int regionX, int regionZ) {
+        return isInRenderArea(this.priorityAreas, regionX, regionZ);
+    }
+
+    private static boolean isInRenderArea(RenderArea[] areas, int regionX, int regionZ) {
+        for (RenderArea area : areas) {
+            if (area.containsRegion(regionX, regionZ)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public RegionPrefetcher getPrefetcher() {
+        return prefetcher;
+    }
+
+    /**
+     * @return per-layer memory totals for this world as last published by the
+     * region evictor.
+     */
+    public MemoryReport getMemoryReport() {
+        return memoryReport;
+    }
+
+    /**
+     * Adds to a layer's memory usage as measured by the region evictor. Only
+     * called by the evictor.
+     */
+    void adjustMemoryUsage(RegionEvictor.Layer layer, long delta) {
+        memoryUsage[layer.ordinal()] += delta;
+    }
+
+    /**
+     * Adds to the number of regions tracked by the region evictor. Only called
+     * by the evictor.
+     */
+    void adjustRegionCount(int delta) {
+        regionCount += delta;
+    }
+
+    /**
+     * Publishes the current memory usage as this world's report. Only called
+     * by the region evictor.
+     */
+    void publishMemoryReport() {
+        memoryReport = new MemoryReport(regionCount,
+                memoryUsage[RegionEvictor.Layer.BLOCKS.ordinal()],
+                memoryUsage[RegionEvictor.Layer.META.ordinal()],
+                memoryUsage[RegionEvictor.Layer.HIGH_RES_TEXTURE.ordinal()],
+                memoryUsage[RegionEvictor.Layer.LOW_RES_TEXTURE.ordinal()]);
     }
 
     public RenderArea getRenderArea(LoadLevel loadLevel) {
@@ -358,6 +437,17 @@ public class MapWorldImpl implements MapWorld {
         }
     }
 
+    /**
+     * Updates the predicted path of the player used to prefetch regions.
+     * @param blockX the player's block x coordinate
+     * @param blockZ the player's block z coordinate
+     * @param velocityX the player's x velocity in blocks per second
+     * @param velocityZ the player's z velocity in blocks per second
+     */
+    public void setPlayerVelocity(int blockX, int blockZ, double velocityX, double velocityZ) {
+        prefetcher.updatePlayer(blockX, blockZ, velocityX, velocityZ);
+    }
+
     public void setCameraPosition(MinimapConfig config, int blockX, int blockZ) {
         int regionX = blockX >> 9;
         int regionZ = blockZ >> 9;
@@ -374,6 +464,7 @@ public class MapWorldImpl implements MapWorld {
     }
 
     public void clearFullmapFocus() {
+        prefetcher.clearFullmap();
         setRenderPriorityArea(LoadLevel.FULL_MAP_ZOOM_IN, null);
         setRenderPriorityArea(LoadLevel.FULL_MAP_ZOOM_OUT, null);
     }
@@ -390,6 +481,7 @@ public class MapWorldImpl implements MapWorld {
             setRenderPriorityArea(LoadLevel.FULL_MAP_ZOOM_IN, new RenderArea(regionMinX, regionMinZ, regionMaxX, regionMaxZ));
             setRenderPriorityArea(LoadLevel.FULL_MAP_ZOOM_OUT, null);
         }
+        prefetcher.updateFullmap(blockCenterX, blockCenterZ, screenWidth, screenHeight, zoom);
     }
 
     /**
@@ -437,7 +529,25 @@ public class MapWorldImpl implements MapWorld {
         }
         int regionX = region.getRegionX();
         int regionZ = region.getRegionZ();
-        return mapManager.executeIOTask(this, regionX, regionZ, new RegionLoadTask(regionX, regionZ), true);
+        CompletableFuture<Void> loadFuture = mapManager.executeIOTask(this, regionX, regionZ, new RegionLoadTask(regionX, regionZ), true);
+        mapManager.trackPendingLoad(loadFuture);
+        return loadFuture;
+    }
+
+    /**
+     * Merges imported blocks straight into a region's file on the IO threads,
+     * behind any queued region loads, for regions that aren't loaded, so importing doesn't load, render, or
+     * keep textures for regions nobody is looking at. Cached blocks and
+     * images of the region are dropped afterwards, and if the region was
+     * loaded in the meantime it loads the merged file again.
+     * @param imported the imported blocks, in a region container that isn't
+     * part of this world
+     * @return a future completed once the file has been written.
+     */
+    public CompletableFuture<Void> scheduleImportMerge(BlocksRegion imported) {
+        RegionContainerImpl container = imported.getRegionContainer();
+        return mapManager.executeBackgroundIOTask(this, container.getRegionX(), container.getRegionZ(),
+                new ImportMergeTask(imported));
     }
 
     /**
@@ -463,6 +573,115 @@ public class MapWorldImpl implements MapWorld {
         return regionX + "," + regionZ + ".dat";
     }
 
+    // <editor-fold desc="Disk index">
+
+    /**
+     * Gets the set of regions known to have files on disk, listing the
+     * world's region directories the first time it is needed. Files written
+     * since by another game instance sharing the map directory aren't in it,
+     * so a region missing from the index must still be checked on disk, see
+     * {@link #regionFileExists(RegionSet, Path, int, int)}.
+     */
+    private DiskIndex getDiskIndex() {
+        DiskIndex index = diskIndex;
+        if (index != null) {
+            return index;
+        }
+        synchronized (diskIndexLock) {
+            index = diskIndex;
+            if (index == null) {
+                diskIndex = index = new DiskIndex(
+                        indexRegionFiles(worldDirectory.resolve("chunks")),
+                        indexRegionFiles(worldDirectory.resolve("meta")));
+            }
+            return index;
+        }
+    }
+
+    /**
+     * Checks the index for a region's file, falling back to the filesystem
+     * if the index doesn't have it and remembering the file if it turns out
+     * to exist.
+     * @param indexed regions indexed for the file's directory, may be null
+     * @param path the region's file
+     * @return true if the region's file exists.
+     */
+    private boolean regionFileExists(RegionSet indexed, Path path, int regionX, int regionZ) {
+        if (indexed != null) {
+            synchronized (diskIndexLock) {
+                if (indexed.contains(regionX, regionZ)) {
+                    return true;
+                }
+            }
+        }
+        if (!Files.exists(path)) {
+            return false;
+        }
+        if (indexed != null) {
+            synchronized (diskIndexLock) {
+                indexed.add(regionX, regionZ);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Records that a region's files have been created on disk.
+     * @param blocks whether the region's blocks file was written
+     * @param meta whether the region's metadata file was written
+     */
+    private void markRegionOnDisk(int regionX, int regionZ, boolean blocks, boolean meta) {
+        synchronized (diskIndexLock) {
+            DiskIndex index = diskIndex;
+            if (index != null) {
+                if (blocks && index.blocks != null) {
+                    index.blocks.add(regionX, regionZ);
+                }
+                if (meta && index.meta != null) {
+                    index.meta.add(regionX, regionZ);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the set of regions with a file in the directory, or null if the
+     * directory could not be listed.
+     */
+    private RegionSet indexRegionFiles(Path directory) {
+        RegionSet regions = new RegionSet();
+        if (!Files.isDirectory(directory)) {
+            return regions;
+        }
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*.dat")) {
+            for (Path path : stream) {
+                String name = path.getFileName().toString();
+                int comma = name.indexOf(',');
+                if (comma == -1) {
+                    continue;
+                }
+                try {
+                    int regionX = Integer.parseInt(name, 0, comma, 10);
+                    int regionZ = Integer.parseInt(name, comma + 1, name.length() - 4, 10);
+                    regions.add(regionX, regionZ);
+                } catch (NumberFormatException ignore) {}
+            }
+        } catch (IOException ex) {
+            ShadowMap.getLogger().warn("Couldn't index region files in " + directory + " for world " + worldKey, ex);
+            return null;
+        }
+        return regions;
+    }
+
+    /**
+     * Regions with block and metadata files on disk. Either set is null if
+     * its directory couldn't be listed, in which case files are checked
+     * individually.
+     */
+    private record DiskIndex(RegionSet blocks, RegionSet meta) {}
+
+    // </editor-fold>
+
     private class RegionCleanupTask implements Callable<Void> {
         private final RegionContainerImpl region;
         private final CleanupHelper cleanupHelper;
@@ -518,40 +737,44 @@ public class MapWorldImpl implements MapWorld {
         }
     }
 
+    /**
+     * Re-renders a region and the edge columns of its neighbors, which are
+     * shaded by its heights.
+     */
     void rerenderSurrounding(RegionContainerImpl region) {
         region.scheduleRerenderAll(false);
         RegionContainerImpl neighbor;
         if ((neighbor = getRegion(region.getRegionX(), region.getRegionZ() - 1, false, false)) != null) {
             for (int i = 0; i < 32; i++) {
-                neighbor.scheduleRerenderChunk(i, 31, false);
+                neighbor.scheduleRerenderColumns(i, 31, 0, 15, 15, 15, false);
             }
         }
         if ((neighbor = getRegion(region.getRegionX() + 1, region.getRegionZ(), false, false)) != null) {
             for (int i = 0; i < 32; i++) {
-                neighbor.scheduleRerenderChunk(0, i, false);
+                neighbor.scheduleRerenderColumns(0, i, 0, 0, 0, 15, false);
             }
         }
         if ((neighbor = getRegion(region.getRegionX(), region.getRegionZ() + 1, false, false)) != null) {
             for (int i = 0; i < 32; i++) {
-                neighbor.scheduleRerenderChunk(i, 0, false);
+                neighbor.scheduleRerenderColumns(i, 0, 0, 0, 15, 0, false);
             }
         }
         if ((neighbor = getRegion(region.getRegionX() - 1, region.getRegionZ(), false, false)) != null) {
             for (int i = 0; i < 32; i++) {
-                neighbor.scheduleRerenderChunk(31, i, false);
+                neighbor.scheduleRerenderColumns(31, i, 15, 0, 15, 15, false);
             }
         }
         if ((neighbor = getRegion(region.getRegionX() - 1, region.getRegionZ() - 1, false, false)) != null) {
-            neighbor.scheduleRerenderChunk(31, 31, false);
+            neighbor.scheduleRerenderColumns(31, 31, 15, 15, 15, 15, false);
         }
         if ((neighbor = getRegion(region.getRegionX() - 1, region.getRegionZ() + 1, false, false)) != null) {
-            neighbor.scheduleRerenderChunk(31, 0, false);
+            neighbor.scheduleRerenderColumns(31, 0, 15, 0, 15, 0, false);
         }
         if ((neighbor = getRegion(region.getRegionX() + 1, region.getRegionZ() - 1, false, false)) != null) {
-            neighbor.scheduleRerenderChunk(0, 31, false);
+            neighbor.scheduleRerenderColumns(0, 31, 0, 15, 0, 15, false);
         }
         if ((neighbor = getRegion(region.getRegionX() + 1, region.getRegionZ() + 1, false, false)) != null) {
-            neighbor.scheduleRerenderChunk(0, 0, false);
+            neighbor.scheduleRerenderColumns(0, 0, 0, 0, 0, 0, false);
         }
     }
 
@@ -725,6 +948,9 @@ public class MapWorldImpl implements MapWorld {
                 return null;
             }
             RegionContainerImpl region = getRegion(regionX, regionZ, true, false);
+            if (prefetcher.cancelIfStale(region)) {
+                return null;
+            }
             String name = getRegionFileName(region.getRegionX(), region.getRegionZ());
             ByteBuffer[] buffers = new ByteBuffer[2];
             FileChannel blocksChannel = null;
@@ -736,22 +962,49 @@ public class MapWorldImpl implements MapWorld {
 
                 Path blocksPath = worldDirectory.resolve("chunks/" + name);
                 Path metaPath = worldDirectory.resolve("meta/" + name);
-                boolean blocksExists = Files.exists(blocksPath);
-                boolean metaExists = Files.exists(metaPath);
+                DiskIndex index = getDiskIndex();
+                boolean blocksExists = regionFileExists(index.blocks, blocksPath, regionX, regionZ);
+                boolean metaExists = regionFileExists(index.meta, metaPath, regionX, regionZ);
                 long blocksModified = 0;
                 long metaModified = 0;
                 long blocksSize = 0;
                 long metaSize = 0;
 
-                // Check files, get channels, acquire locks, etc.
+                // Blocks evicted recently are still held compressed in memory
+                // as they were last saved, no need to read the file unless
+                // something else wrote it since.
+                BlocksRegion cachedBlocks = blocksExists ? mapManager.getBlocksRegionCache().take(region) : null;
+                if (cachedBlocks != null) {
+                    long fileModified;
+                    try {
+                        fileModified = Files.getLastModifiedTime(blocksPath).toMillis();
+                    } catch (NoSuchFileException ex) {
+                        fileModified = 0;
+                    }
+                    if (fileModified > cachedBlocks.getLastSaved()) {
+                        cachedBlocks.releaseColumns();
+                        cachedBlocks = null;
+                    } else {
+                        blocksExists = false;
+                    }
+                }
+
+                // Check files, get channels, acquire locks, etc. Files may
+                // have been removed since the index was built.
+                if (blocksExists) {
+                    blocksChannel = openIfExists(blocksPath);
+                    blocksExists = blocksChannel != null;
+                }
+                if (metaExists) {
+                    metaChannel = openIfExists(metaPath);
+                    metaExists = metaChannel != null;
+                }
                 if (blocksExists) {
-                    blocksChannel = FileChannel.open(blocksPath, StandardOpenOption.READ);
                     blocksChannel.lock(0, Long.MAX_VALUE, true);
                     blocksModified = Files.getLastModifiedTime(blocksPath).toMillis();
                     blocksSize = blocksChannel.size();
                 }
                 if (metaExists) {
-                    metaChannel = FileChannel.open(metaPath, StandardOpenOption.READ);
                     metaChannel.lock(0, Long.MAX_VALUE, true);
                     metaModified = Files.getLastModifiedTime(metaPath).toMillis();
                     metaSize = metaChannel.size();
@@ -781,16 +1034,20 @@ public class MapWorldImpl implements MapWorld {
                 }
 
                 // Decompress and parse buffer contents, merge into loaded.
+                BlocksRegion newBlocks = cachedBlocks;
                 if (blocksExists && buffers[0].hasRemaining()) {
                     NbtCompound blocksNbt = MapUtils.readCompressedNbt(new ByteBufferInputStream(buffers[0]));
-                    BlocksRegion newBlocks = new BlocksRegion(region);
+                    newBlocks = new BlocksRegion(region);
                     newBlocks.loadFromNbt(blocksNbt);
                     newBlocks.setLastSaved(blocksModified);
+                }
+                if (newBlocks != null) {
                     BlocksRegion oldBlocks = region.getOrUseBlocks(newBlocks);
                     if (oldBlocks == newBlocks) {
                         mergeResult = mergeResult.usedOther().renderNeeded();
                     } else {
                         mergeResult = mergeResult.includeResult(oldBlocks.mergeFrom(newBlocks));
+                        newBlocks.releaseColumns();
                     }
                 }
                 if (metaExists && buffers[1].hasRemaining()) {
@@ -830,6 +1087,7 @@ public class MapWorldImpl implements MapWorld {
 
                 mapManager.getIOBufferPool().bulkRelease(buffers);
                 region.clearFlag(RegionFlags.LOAD_NEEDED);
+                prefetcher.loadFinished(region);
 
                 if (mergeResult.isRenderNeeded() || mergeResult.isUsedOther()) {
                     rerenderSurrounding(region);
@@ -837,6 +1095,17 @@ public class MapWorldImpl implements MapWorld {
             }
             return null;
         }
+
+        /**
+         * @return a read channel for the file, or null if it doesn't exist.
+         */
+        private FileChannel openIfExists(Path path) throws IOException {
+            try {
+                return FileChannel.open(path, StandardOpenOption.READ);
+            } catch (NoSuchFileException ex) {
+                return null;
+            }
+        }
     }
 
     private class RegionSaveTask implements Callable<Void> {
@@ -883,6 +1152,8 @@ public class MapWorldImpl implements MapWorld {
                 metaChannel.lock(0, Long.MAX_VALUE, false);
                 metaModified = Files.getLastModifiedTime(metaPath).toMillis();
                 metaSize = metaChannel.size();
+                // Both files are created above, even if nothing is written
+                markRegionOnDisk(region.getRegionX(), region.getRegionZ(), true, true);
 
                 // If files on disk have been modified since they were last
                 // loaded, load and merge before overwriting. This must be
@@ -897,6 +1168,7 @@ public class MapWorldImpl implements MapWorld {
                     newBlocks.loadFromNbt(blocksNbt);
                     newBlocks.setLastSaved(blocksModified);
                     mergeResult = mergeResult.includeResult(loadedBlocks.mergeFrom(newBlocks));
+                    newBlocks.releaseColumns();
                     buffer.clear();
                 }
                 ApiUser<StorageKeyImpl<?, ?, ?>>[] storageKeys = mapManager.getStorageKeys();
@@ -972,6 +1244,8 @@ public class MapWorldImpl implements MapWorld {
                 if (loadedBlocks != null && buffer.hasRemaining()) {
                     MapUtils.writeFileFromBuffer(blocksChannel, buffer);
                     loadedBlocks.setLastSaved(Files.getLastModifiedTime(blocksPath).toMillis());
+                    mapManager.getBlocksRegionCache().invalidate(MapWorldImpl.this,
+                            ChunkPos.toLong(region.getRegionX(), region.getRegionZ()));
                 }
                 buffer = buffers[1].flip();
                 if (buffer.hasRemaining()) {
@@ -1027,4 +1301,75 @@ public class MapWorldImpl implements MapWorld {
             return null;
         }
     }
+
+    private class ImportMergeTask implements Callable<Void> {
+        private final BlocksRegion imported;
+
+        ImportMergeTask(BlocksRegion imported) {
+            this.imported = imported;
+        }
+
+        @Override
+        public Void call() throws IOException, InterruptedException {
+            RegionContainerImpl container = imported.getRegionContainer();
+            int regionX = container.getRegionX();
+            int regionZ = container.getRegionZ();
+            ByteBuffer buffer = null;
+            FileChannel blocksChannel = null;
+            BlocksRegion onDisk = null;
+
+            try {
+                buffer = mapManager.getIOBufferPool().take();
+                Path blocksPath = worldDirectory.resolve("chunks/" + getRegionFileName(regionX, regionZ));
+                Files.createDirectories(blocksPath.getParent());
+                blocksChannel = FileChannel.open(blocksPath, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                        StandardOpenOption.WRITE, StandardOpenOption.SYNC);
+                blocksChannel.lock(0, Long.MAX_VALUE, false);
+                long blocksSize = blocksChannel.size();
+
+                BlocksRegion merged = imported;
+                if (blocksSize > 0) {
+                    buffer = MapUtils.readFileToBuffer(blocksChannel, buffer, blocksSize);
+                    buffer.flip();
+                    NbtCompound blocksNbt = MapUtils.readCompressedNbt(new ByteBufferInputStream(buffer));
+                    onDisk = new BlocksRegion(container);
+                    onDisk.loadFromNbt(blocksNbt);
+                    if (!onDisk.mergeFrom(imported).isUsedOther()) {
+                        // Nothing imported is newer than what's on disk.
+                        return null;
+                    }
+                    merged = onDisk;
+                    buffer.clear();
+                }
+
+                ByteBufferOutputStream bufferOutput = new ByteBufferOutputStream(buffer);
+                MapUtils.writeCompressedNbt("region", merged.saveToNbt(), bufferOutput);
+                buffer = bufferOutput.getBuffer();
+                buffer.flip();
+                MapUtils.writeFileFromBuffer(blocksChannel, buffer);
+                markRegionOnDisk(regionX, regionZ, true, false);
+            } finally {
+                if (blocksChannel != null) {
+                    blocksChannel.close();
+                }
+                if (buffer != null) {
+                    mapManager.getIOBufferPool().release(buffer);
+                }
+                if (onDisk != null) {
+                    onDisk.releaseColumns();
+                }
+            }
+
+            long regionKey = ChunkPos.toLong(regionX, regionZ);
+            mapManager.getBlocksRegionCache().invalidate(MapWorldImpl.this, regionKey);
+            mapManager.getHighResAtlas().forget(MapWorldImpl.this, regionKey);
+            mapManager.getLowResAtlas().forget(MapWorldImpl.this, regionKey);
+            RegionContainerImpl loaded = getRegion(regionX, regionZ, false, false);
+            if (loaded != null) {
+                // Loaded while the file was locked, merge in what was imported
+                scheduleRegionLoad(loaded);
+            }
+            return null;
+        }
+    }
 }
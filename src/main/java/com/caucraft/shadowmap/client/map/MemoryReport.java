@@ -0,0 +1,14 @@
+package com.caucraft.shadowmap.client.map;
+
+/**
+ * Memory used by the regions of one world, summed per layer as last measured
+ * by the region evictor.
+ * @param regions number of loaded regions
+ * @param blockBytes heap and off-heap memory used by block layers
+ * @param metaBytes heap memory used by API storage layers
+ * @param highResTextureBytes GPU memory used by full-resolution textures
+ * @param lowResTextureBytes GPU memory used by low-resolution textures
+ */
+public record MemoryReport(int regions, long blockBytes, long metaBytes, long highResTextureBytes, long lowResTextureBytes) {
+    public static final MemoryReport EMPTY = new MemoryReport(0, 0, 0, 0, 0);
+}
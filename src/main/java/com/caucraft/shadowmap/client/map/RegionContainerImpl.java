@@ -8,28 +8,22 @@ import com.caucraft.shadowmap.api.map.RegionFlags;
 import com.caucraft.shadowmap.api.storage.StorageKey;
 import com.caucraft.shadowmap.api.util.ChunkCache;
 import com.caucraft.shadowmap.client.ShadowMap;
-import com.caucraft.shadowmap.client.config.PerformanceConfig;
+import com.caucraft.shadowmap.client.render.PixelUploadRing;
+import com.caucraft.shadowmap.client.render.RegionMipChain;
 import com.caucraft.shadowmap.client.render.RegionRenderContextImpl;
-import com.caucraft.shadowmap.client.util.MapFramebuffer;
-import com.caucraft.shadowmap.client.util.MapUtils;
-import com.caucraft.shadowmap.client.util.task.CleanupCounter;
+import com.caucraft.shadowmap.client.render.RegionTextureAtlas;
 import com.caucraft.shadowmap.client.util.task.CleanupHelper;
-import com.mojang.blaze3d.platform.GlConst;
-import com.mojang.blaze3d.platform.GlStateManager;
 import com.mojang.blaze3d.systems.RenderSystem;
 import it.unimi.dsi.fastutil.ints.IntArrayList;
 import it.unimi.dsi.fastutil.ints.IntList;
 import net.minecraft.block.BlockState;
-import net.minecraft.client.MinecraftClient;
 import net.minecraft.nbt.NbtCompound;
 import net.minecraft.util.math.BlockPos;
 import net.minecraft.util.math.ChunkPos;
 import net.minecraft.world.World;
 import net.minecraft.world.chunk.Chunk;
 import org.apache.logging.log4j.Level;
-import org.lwjgl.BufferUtils;
 
-import java.nio.IntBuffer;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -38,8 +32,10 @@ import java.util.concurrent.atomic.AtomicReference;
 
 public class RegionContainerImpl implements RegionContainer {
 
-    private static final IntBuffer UPLOAD_INTBUFFER = BufferUtils.createIntBuffer(512 * 512);
-    private static final MapFramebuffer UPLOAD_FRAMEBUFFER = new MapFramebuffer(512, 512);
+    /** Four full regions of upload buffers. */
+    private static final PixelUploadRing UPLOAD_RING = new PixelUploadRing(4, 512 * 512);
+    /** Set in {@link #columnRenderAreas} entries that have columns marked. */
+    private static final int COLUMNS_MARKED = 1 << 16;
 
     private final transient MapWorldImpl world;
     private final transient int regionX;
@@ -52,13 +48,28 @@ public class RegionContainerImpl implements RegionContainer {
     private final transient AtomicInteger maxFlags;
     /** Determines which chunks need to be re-rendered. */
     private final transient AtomicIntegerArray chunkRenderFlags;
+    /**
+     * Rectangle of columns needing to be re-rendered in each chunk not marked
+     * in {@link #chunkRenderFlags}, see {@link #scheduleRerenderColumns}.
+     */
+    private final transient AtomicIntegerArray columnRenderAreas;
     private final transient ConcurrentLinkedQueue<Runnable> regionModifications;
     private transient volatile long lastRead;
+    /** Layers read since the region evictor last visited, one bit each. */
+    final transient AtomicInteger evictionRefs;
+    /** Position in the region evictor's ring, -1 if not in it. Guarded by the evictor. */
+    transient int evictionIndex;
+    /** Layer usage last measured by the region evictor. Guarded by the evictor. */
+    final transient long[] evictionUsage;
+    /** When the region evictor last reduced the max flags. Guarded by the evictor. */
+    transient long lastFlagDecay;
 
     private BlocksRegion layerBlocks;
     private MapRegion<?, ?>[] metaRegionArray;
-    private final AtomicReference<MapFramebuffer> highResTexture;
-    private final AtomicReference<MapFramebuffer> lowResTexture;
+    private final AtomicReference<RegionTextureAtlas.Slot> highResTexture;
+    private final AtomicReference<RegionTextureAtlas.Slot> lowResTexture;
+    /** CPU copy of the low-res texture, kept and released along with it. */
+    private volatile RegionMipChain mipChain;
     private NbtCompound retainedMeta;
 
     public RegionContainerImpl(MapWorldImpl world, int regionX, int regionZ) {
@@ -68,7 +79,12 @@ public class RegionContainerImpl implements RegionContainer {
         this.curFlags = new AtomicInteger();
         this.maxFlags = new AtomicInteger();
         this.chunkRenderFlags = new AtomicIntegerArray(32);
+        this.columnRenderAreas = new AtomicIntegerArray(1024);
         this.regionModifications = new ConcurrentLinkedQueue<>();
+        this.evictionRefs = new AtomicInteger(RegionEvictor.ALL_LAYERS_REFERENCED);
+        this.evictionIndex = -1;
+        this.evictionUsage = new long[RegionEvictor.Layer.values().length];
+        this.lastFlagDecay = ShadowMap.getLastTickTimeS();
         this.metaRegionArray = new MapRegion[world.getMapManager().getStorageKeys().length];
         this.highResTexture = new AtomicReference<>();
         this.lowResTexture = new AtomicReference<>();
@@ -121,11 +137,11 @@ public class RegionContainerImpl implements RegionContainer {
         return layerBlocks;
     }
 
-    public MapFramebuffer getHighResTexture() {
+    public RegionTextureAtlas.Slot getHighResTexture() {
         return highResTexture.get();
     }
 
-    public MapFramebuffer getLowResTexture() {
+    public RegionTextureAtlas.Slot getLowResTexture() {
         return lowResTexture.get();
     }
 
@@ -159,6 +175,9 @@ public class RegionContainerImpl implements RegionContainer {
 
     public void setLastRead(long lastReadTimeMs) {
         this.lastRead = lastReadTimeMs;
+        if (evictionRefs.get() != RegionEvictor.ALL_LAYERS_REFERENCED) {
+            evictionRefs.set(RegionEvictor.ALL_LAYERS_REFERENCED);
+        }
     }
 
     public long getLastRead() {
@@ -249,43 +268,40 @@ public class RegionContainerImpl implements RegionContainer {
         }
     }
 
-    CleanupHelper isCleanupNeeded(CleanupCounter counter, PerformanceConfig config, long curTimeMs) {
-        long timeDiff = curTimeMs - lastRead;
-        int maxLoad = getMaxFlags();
-
-        boolean cleanBlockLayer = layerBlocks != null
-                && (counter.addBlockMemory(layerBlocks.estimateMemoryUsage()) >> 20 > config.blockMemoryMB.get()
-                        || timeDiff > config.blockTimeoutS.get())
-                && maxLoad < RegionFlags.FULLMAP_ZOOM_IN.flag;
-
-        boolean metaExists = false;
-        int metaUsage = 0;
-        MapRegion<?, ?>[] metaArray = this.metaRegionArray;
-        if (metaArray != null) {
-            for (int i = 0; i < metaArray.length; i++) {
-                MapRegion<?, ?> meta = metaArray[i];
-                if (metaArray[i] != null) {
-                    metaExists = true;
-                    metaUsage += meta.estimateMemoryUsage();
+    /**
+     * Estimates the memory one of the region's layers uses.
+     * @param layer the layer to measure
+     * @return the layer's estimated usage in bytes, 0 if it isn't loaded
+     */
+    long estimateLayerUsage(RegionEvictor.Layer layer) {
+        return switch (layer) {
+            case BLOCKS -> {
+                BlocksRegion blocks = layerBlocks;
+                yield blocks == null ? 0 : blocks.estimateMemoryUsage();
+            }
+            case META -> {
+                long metaUsage = 0;
+                MapRegion<?, ?>[] metaArray = this.metaRegionArray;
+                if (metaArray != null) {
+                    for (int i = 0; i < metaArray.length; i++) {
+                        MapRegion<?, ?> meta = metaArray[i];
+                        if (meta != null) {
+                            metaUsage += meta.estimateMemoryUsage();
+                        }
+                    }
                 }
+                yield metaUsage;
             }
-        }
-        boolean cleanMetaLayer = metaExists
-                && (counter.addMetaMemory(metaUsage) > config.metaMemoryMB.get()
-                        || timeDiff > config.metaTimeoutS.get())
-                && maxLoad < RegionFlags.FULLMAP_ZOOM_OUT.flag;
-
-        int pixelsPerLevel = config.textureMemoryMB.get() * 131072; // memMB * 1MB / 4BpP / 2
-        boolean cleanHighResTexture = highResTexture.get() != null
-                && (counter.incHighResTextures() << 18 > pixelsPerLevel
-                        || timeDiff > config.textureTimeoutS.get())
-                && maxLoad < RegionFlags.FULLMAP_ZOOM_IN.flag;
-        boolean cleanLowResTexture = lowResTexture.get() != null
-                && (counter.incLowResTextures() << 12 > pixelsPerLevel
-                        || timeDiff > config.textureTimeoutS.get())
-                && maxLoad < RegionFlags.MINIMAP_ZOOM.flag;
-
-        return new CleanupHelper(maxLoad, cleanBlockLayer, cleanMetaLayer, cleanHighResTexture, cleanLowResTexture);
+            case HIGH_RES_TEXTURE -> {
+                RegionTextureAtlas.Slot highRes = highResTexture.get();
+                yield highRes == null ? 0 : highRes.atlas.getSlotBytes();
+            }
+            case LOW_RES_TEXTURE -> {
+                RegionTextureAtlas.Slot lowRes = lowResTexture.get();
+                RegionMipChain mipChain = this.mipChain;
+                yield (lowRes == null ? 0 : lowRes.atlas.getSlotBytes()) + (mipChain == null ? 0 : mipChain.estimateMemoryUsage());
+            }
+        };
     }
 
     public NbtCompound getRetainedMeta() {
@@ -342,6 +358,71 @@ public class RegionContainerImpl implements RegionContainer {
         world.scheduleRegionRender(this, force);
     }
 
+    /**
+     * Marks a rectangle of columns in the chunk at the provided relative
+     * coordinates for rendering, then schedules the region to be rendered. The
+     * rectangle is merged with any columns already marked in the chunk.
+     * @param chunkX relative chunk X (only the low 5 bits are considered)
+     * @param chunkZ relative chunk Z (only the low 5 bits are considered)
+     * @param minX the first column's chunk-relative X, inclusive
+     * @param minZ the first column's chunk-relative Z, inclusive
+     * @param maxX the last column's chunk-relative X, inclusive
+     * @param maxZ the last column's chunk-relative Z, inclusive
+     */
+    public void scheduleRerenderColumns(int chunkX, int chunkZ, int minX, int minZ, int maxX, int maxZ, boolean force) {
+        int index = (chunkZ & 0x1F) << 5 | chunkX & 0x1F;
+        int value, newValue;
+        do {
+            value = columnRenderAreas.get(index);
+            if (value == 0) {
+                newValue = COLUMNS_MARKED | maxZ << 12 | maxX << 8 | minZ << 4 | minX;
+            } else {
+                newValue = COLUMNS_MARKED
+                        | Math.max(value >> 12 & 0xF, maxZ) << 12
+                        | Math.max(value >> 8 & 0xF, maxX) << 8
+                        | Math.min(value >> 4 & 0xF, minZ) << 4
+                        | Math.min(value & 0xF, minX);
+            }
+        } while (value != newValue && !columnRenderAreas.compareAndSet(index, value, newValue));
+        world.scheduleRegionRender(this, force);
+    }
+
+    /**
+     * Marks a rectangle of blocks in world coordinates for rendering in
+     * whichever loaded regions it overlaps. Chunks it fully covers are marked
+     * whole, the rest only have the overlapping columns marked.
+     * @param minBlockX the first block's X, inclusive
+     * @param minBlockZ the first block's Z, inclusive
+     * @param maxBlockX the last block's X, inclusive
+     * @param maxBlockZ the last block's Z, inclusive
+     */
+    private void scheduleRerenderBlocks(int minBlockX, int minBlockZ, int maxBlockX, int maxBlockZ) {
+        for (int chunkZ = minBlockZ >> 4; chunkZ <= maxBlockZ >> 4; chunkZ++) {
+            int minZ = Math.max(minBlockZ - (chunkZ << 4), 0);
+            int maxZ = Math.min(maxBlockZ - (chunkZ << 4), 15);
+            for (int chunkX = minBlockX >> 4; chunkX <= maxBlockX >> 4; chunkX++) {
+                int minX = Math.max(minBlockX - (chunkX << 4), 0);
+                int maxX = Math.min(maxBlockX - (chunkX << 4), 15);
+                int regionX = chunkX >> 5;
+                int regionZ = chunkZ >> 5;
+                RegionContainerImpl region;
+                if (regionX == this.regionX && regionZ == this.regionZ) {
+                    region = this;
+                } else {
+                    region = this.world.getRegion(regionX, regionZ, false, false);
+                    if (region == null) {
+                        continue;
+                    }
+                }
+                if (minX == 0 && minZ == 0 && maxX == 15 && maxZ == 15) {
+                    region.scheduleRerenderChunk(chunkX, chunkZ, false);
+                } else {
+                    region.scheduleRerenderColumns(chunkX, chunkZ, minX, minZ, maxX, maxZ, false);
+                }
+            }
+        }
+    }
+
     /**
      * Marks all chunks as needing to be re-rendered, then schedules the region
      * to be rendered.
@@ -368,23 +449,24 @@ public class RegionContainerImpl implements RegionContainer {
 
     /**
      * If the region has been modified and should be re-rendered, ensure the
-     * framebuffers are valid/have not been closed and nulled.
+     * region has texture slots to upload to.
      */
-    private void ensureValidFramebuffers() {
-        MapFramebuffer fbuffer;
-        while ((fbuffer = highResTexture.get()) == null || fbuffer.isClosed()) {
-            MapFramebuffer newBuffer = new MapFramebuffer(512, 512);
-            if (highResTexture.compareAndSet(fbuffer, newBuffer)) {
-                break;
+    private void ensureValidTextures() {
+        MapManagerImpl mapManager = world.getMapManager();
+        long regionKey = ChunkPos.toLong(regionX, regionZ);
+        if (highResTexture.get() == null) {
+            RegionTextureAtlas atlas = mapManager.getHighResAtlas();
+            RegionTextureAtlas.Slot newSlot = atlas.allocate(world, regionKey);
+            if (!highResTexture.compareAndSet(null, newSlot)) {
+                atlas.release(newSlot, true);
             }
-            newBuffer.close();
         }
-        while ((fbuffer = lowResTexture.get()) == null || fbuffer.isClosed()) {
-            MapFramebuffer newBuffer = new MapFramebuffer(64, 64);
-            if (lowResTexture.compareAndSet(fbuffer, newBuffer)) {
-                break;
+        if (lowResTexture.get() == null) {
+            RegionTextureAtlas atlas = mapManager.getLowResAtlas();
+            RegionTextureAtlas.Slot newSlot = atlas.allocate(world, regionKey);
+            if (!lowResTexture.compareAndSet(null, newSlot)) {
+                atlas.release(newSlot, true);
             }
-            newBuffer.close();
         }
     }
 
@@ -395,8 +477,17 @@ public class RegionContainerImpl implements RegionContainer {
         }
         reduceMaxFlags();
         boolean ioFailed = isFlagsSet(RegionFlags.IO_FAILED.flag);
-        if ((helper == null || helper.blockLayer() && layerBlocks != null && (ioFailed || !layerBlocks.isModified())) && maxLoad < RegionFlags.FULLMAP_ZOOM_IN.flag) {
+        BlocksRegion blocks = layerBlocks;
+        if ((helper == null || helper.blockLayer() && blocks != null && (ioFailed || !blocks.isModified())) && maxLoad < RegionFlags.FULLMAP_ZOOM_IN.flag) {
             layerBlocks = null;
+            if (blocks != null) {
+                // Blocks being evicted match their file, keep them compressed
+                // so coming back to the region doesn't need to read it.
+                if (helper != null && !ioFailed) {
+                    world.getMapManager().getBlocksRegionCache().store(world, ChunkPos.toLong(regionX, regionZ), blocks);
+                }
+                blocks.releaseColumns();
+            }
         }
         boolean metaExists = false;
         MapRegion<?, ?>[] metaArray = this.metaRegionArray;
@@ -406,23 +497,16 @@ public class RegionContainerImpl implements RegionContainer {
                 metaArray[i] = null;
             }
         }
-        MapFramebuffer fbuffer;
-        if ((helper == null || helper.highResTexture()) && (fbuffer = highResTexture.get()) != null && maxLoad < RegionFlags.FULLMAP_ZOOM_IN.flag) {
-            while (fbuffer != null && !highResTexture.compareAndSet(fbuffer, null)) {
-                fbuffer = highResTexture.get();
-            }
-            highResTexture.set(null);
-            if (fbuffer != null) {
-                fbuffer.close();
+        RegionTextureAtlas.Slot slot;
+        if ((helper == null || helper.highResTexture()) && highResTexture.get() != null && maxLoad < RegionFlags.FULLMAP_ZOOM_IN.flag) {
+            if ((slot = highResTexture.getAndSet(null)) != null) {
+                slot.atlas.release(slot, helper != null);
             }
         }
-        if ((helper == null || helper.lowResTexture()) && (fbuffer = lowResTexture.get()) != null && maxLoad < RegionFlags.MINIMAP_ZOOM.flag) {
-            while (fbuffer != null && !lowResTexture.compareAndSet(fbuffer, null)) {
-                fbuffer = lowResTexture.get();
-            }
-            lowResTexture.set(null);
-            if (fbuffer != null) {
-                fbuffer.close();
+        if ((helper == null || helper.lowResTexture()) && lowResTexture.get() != null && maxLoad < RegionFlags.MINIMAP_ZOOM.flag) {
+            mipChain = null;
+            if ((slot = lowResTexture.getAndSet(null)) != null) {
+                slot.atlas.release(slot, helper != null);
             }
         }
     }
@@ -451,42 +535,41 @@ public class RegionContainerImpl implements RegionContainer {
 
         MapRegion<?, ?>[] metaArray = metaRegionArray;
         for (int i = 0; i < metaArray.length; i++) {
+            // Storages and chunks created for this update are only kept if
+            // the update actually wrote something to them.
             MapRegion<?, ?> metaRegion = metaArray[i];
-            if (metaRegion == null) {
-                metaArray[i] = metaRegion = this.world.getMapManager().getStorageKeys()[i].user.createStorage(this);
+            boolean newRegion = metaRegion == null;
+            if (newRegion) {
+                metaRegion = this.world.getMapManager().getStorageKeys()[i].user.createStorage(this);
             }
             changed = false;
-            MapChunk<?> mapChunk = metaRegion.getChunk(chunkPos.x, chunkPos.z, true);
+            MapChunk<?> mapChunk = metaRegion.getChunk(chunkPos.x, chunkPos.z, false);
+            boolean newChunk = mapChunk == null;
+            if (newChunk) {
+                mapChunk = metaRegion.getChunk(chunkPos.x, chunkPos.z, true);
+            }
             if (mapChunk != null) {
                 changed = mapChunk.updateChunk(world, chunk, chunkCache, ceilingType, curTimeMs);
                 if (changed) {
                     mapChunk.setLastModified(curTimeMs);
+                } else if (newChunk) {
+                    metaRegion.removeChunk(chunkPos.x, chunkPos.z);
                 }
             }
             changed |= metaRegion.updateChunk(world, chunk, chunkCache, ceilingType, curTimeMs);
             if (changed) {
                 metaRegion.setLastModified(curTimeMs);
+                if (newRegion) {
+                    metaArray[i] = metaRegion;
+                }
             }
             rerender |= changed;
         }
 
         if (rerender) {
-            for (int chunkZOffset = -1; chunkZOffset <= 1; chunkZOffset++) {
-                for (int chunkXOffset = -1; chunkXOffset <= 1; chunkXOffset++) {
-                    int chunkX = chunkPos.x + chunkXOffset;
-                    int chunkZ = chunkPos.z + chunkZOffset;
-                    int regionX = chunkX >> 5;
-                    int regionZ = chunkZ >> 5;
-                    if (regionX == this.regionX && regionZ == this.regionZ) {
-                        scheduleRerenderChunk(chunkX, chunkZ, false);
-                    } else {
-                        RegionContainerImpl otherRegion = this.world.getRegion(regionX, regionZ, false, false);
-                        if (otherRegion != null) {
-                            otherRegion.scheduleRerenderChunk(chunkX, chunkZ, false);
-                        }
-                    }
-                }
-            }
+            // Slope shading reaches one block into neighboring chunks.
+            scheduleRerenderBlocks(chunkPos.getStartX() - 1, chunkPos.getStartZ() - 1,
+                    chunkPos.getEndX() + 1, chunkPos.getEndZ() + 1);
         }
     }
 
@@ -515,21 +598,33 @@ public class RegionContainerImpl implements RegionContainer {
 
         MapRegion<?, ?>[] metaArray = metaRegionArray;
         for (int i = 0; i < metaArray.length; i++) {
+            // Storages and chunks created for this update are only kept if
+            // the update actually wrote something to them.
             MapRegion<?, ?> metaRegion = metaArray[i];
-            if (metaRegion == null) {
-                metaArray[i] = metaRegion = this.world.getMapManager().getStorageKeys()[i].user.createStorage(this);
+            boolean newRegion = metaRegion == null;
+            if (newRegion) {
+                metaRegion = this.world.getMapManager().getStorageKeys()[i].user.createStorage(this);
             }
             changed = false;
-            MapChunk<?> mapChunk = metaRegion.getChunk(chunkPos.x, chunkPos.z, true);
+            MapChunk<?> mapChunk = metaRegion.getChunk(chunkPos.x, chunkPos.z, false);
+            boolean newChunk = mapChunk == null;
+            if (newChunk) {
+                mapChunk = metaRegion.getChunk(chunkPos.x, chunkPos.z, true);
+            }
             if (mapChunk != null) {
                 changed = mapChunk.updateSurroundedChunk(world, chunk, chunkCache, ceilingType, curTimeMs);
                 if (changed) {
                     mapChunk.setLastModified(curTimeMs);
+                } else if (newChunk) {
+                    metaRegion.removeChunk(chunkPos.x, chunkPos.z);
                 }
             }
             changed |= metaRegion.updateSurroundedChunk(world, chunk, chunkCache, ceilingType, curTimeMs);
             if (changed) {
                 metaRegion.setLastModified(curTimeMs);
+                if (newRegion) {
+                    metaArray[i] = metaRegion;
+                }
             }
             rerender |= changed;
         }
@@ -566,47 +661,40 @@ public class RegionContainerImpl implements RegionContainer {
 
         MapRegion<?, ?>[] metaArray = metaRegionArray;
         for (int i = 0; i < metaArray.length; i++) {
+            // Storages and chunks created for this update are only kept if
+            // the update actually wrote something to them.
             MapRegion<?, ?> metaRegion = metaArray[i];
-            if (metaRegion == null) {
-                metaArray[i] = metaRegion = this.world.getMapManager().getStorageKeys()[i].user.createStorage(this);
+            boolean newRegion = metaRegion == null;
+            if (newRegion) {
+                metaRegion = this.world.getMapManager().getStorageKeys()[i].user.createStorage(this);
             }
             changed = false;
-            MapChunk<?> mapChunk = metaRegion.getChunk(chunkPos.x, chunkPos.z, true);
+            MapChunk<?> mapChunk = metaRegion.getChunk(chunkPos.x, chunkPos.z, false);
+            boolean newChunk = mapChunk == null;
+            if (newChunk) {
+                mapChunk = metaRegion.getChunk(chunkPos.x, chunkPos.z, true);
+            }
             if (mapChunk != null) {
                 changed = mapChunk.updateBlock(world, chunk, chunkCache, ceilingType, pos, state, curTimeMs);
                 if (changed) {
                     mapChunk.setLastModified(curTimeMs);
+                } else if (newChunk) {
+                    metaRegion.removeChunk(chunkPos.x, chunkPos.z);
                 }
             }
             changed |= metaRegion.updateBlock(world, chunk, chunkCache, ceilingType, pos, state, curTimeMs);
             if (changed) {
                 metaRegion.setLastModified(curTimeMs);
+                if (newRegion) {
+                    metaArray[i] = metaRegion;
+                }
             }
             rerender |= changed;
         }
 
         if (rerender) {
-            scheduleRerenderChunk(chunkPos.x, chunkPos.z, false);
-
-            for (int blockZOffset = -1; blockZOffset <= 1; blockZOffset += 2) {
-                for (int blockXOffset = -1; blockXOffset <= 1; blockXOffset += 2) {
-                    int chunkX = (pos.getX() + blockXOffset) >> 4;
-                    int chunkZ = (pos.getZ() + blockZOffset) >> 4;
-                    if (chunkX == chunkPos.x && chunkZ == chunkPos.z) {
-                        continue;
-                    }
-                    int regionX = chunkX >> 5;
-                    int regionZ = chunkZ >> 5;
-                    if (regionX == this.regionX && regionZ == this.regionZ) {
-                        scheduleRerenderChunk(chunkX, chunkZ, false);
-                    } else {
-                        RegionContainerImpl otherRegion = this.world.getRegion(regionX, regionZ, false, false);
-                        if (otherRegion != null) {
-                            otherRegion.scheduleRerenderChunk(chunkX, chunkZ, false);
-                        }
-                    }
-                }
-            }
+            // Only the block's column and the ones shaded by its height.
+            scheduleRerenderBlocks(pos.getX() - 1, pos.getZ() - 1, pos.getX() + 1, pos.getZ() + 1);
         }
     }
 
@@ -638,7 +726,12 @@ public class RegionContainerImpl implements RegionContainer {
         if (layerBlocks == null) {
             return;
         }
-        ensureValidFramebuffers();
+        ensureValidTextures();
+        RegionMipChain mipChain = this.mipChain;
+        boolean newMipChain = mipChain == null;
+        if (newMipChain) {
+            this.mipChain = mipChain = new RegionMipChain();
+        }
         RegionRenderContextImpl renderContext;
         try {
             renderContext = new RegionRenderContextImpl(world, this, layerBlocks,
@@ -651,31 +744,44 @@ public class RegionContainerImpl implements RegionContainer {
         IntList list = new IntArrayList();
         boolean isFullRender = true;
         try {
-            int[] argbBuffer = new int[4];
             for (int z = 0; z < 32; z++) {
                 int chunkRowFlags = chunkRenderFlags.get(z);
-                if (chunkRowFlags == 0) {
-                    isFullRender = false;
-                    continue;
-                }
-                chunkRow:
                 for (int x = 0; x < 32; x++) {
                     int chunkMask = 1 << x;
-                    if ((chunkRowFlags & chunkMask) == 0) {
-                        isFullRender = false;
-                        continue;
+                    boolean fullChunk = false;
+                    if ((chunkRowFlags & chunkMask) != 0) {
+                        while (!chunkRenderFlags.compareAndSet(z, chunkRowFlags, chunkRowFlags & ~chunkMask)) {
+                            chunkRowFlags = chunkRenderFlags.get(z);
+                            if ((chunkRowFlags & chunkMask) == 0) {
+                                break;
+                            }
+                        }
+                        fullChunk = (chunkRowFlags & chunkMask) != 0;
+                        chunkRowFlags &= ~chunkMask;
                     }
-                    while (!chunkRenderFlags.compareAndSet(z, chunkRowFlags, chunkRowFlags &= ~chunkMask)) {
-                        chunkRowFlags = chunkRenderFlags.get(z);
-                        if ((chunkRowFlags & chunkMask) == 0) {
-                            isFullRender = false;
-                            continue chunkRow;
+                    int areaIndex = z << 5 | x;
+                    int columns = columnRenderAreas.get(areaIndex) == 0 ? 0 : columnRenderAreas.getAndSet(areaIndex, 0);
+                    int minX = 0, minZ = 0, maxX = 16, maxZ = 16;
+                    if (!fullChunk) {
+                        isFullRender = false;
+                        if (columns == 0) {
+                            continue;
                         }
+                        // Widen to whole low-res texels so the mip chain
+                        // only averages freshly rendered pixels.
+                        minX = columns & 0xC;
+                        minZ = columns >> 4 & 0xC;
+                        maxX = (columns >> 8 & 0xF | 3) + 1;
+                        maxZ = (columns >> 12 & 0xF | 3) + 1;
                     }
-                    list.add(x << 20 | z << 4);
+                    int pixelX = x << 4;
+                    int pixelZ = z << 4;
+                    list.add((pixelX + minX) << 16 | (pixelZ + minZ));
+                    list.add((pixelX + maxX) << 16 | (pixelZ + maxZ));
                     if (renderContext.beginChunk(x, z)) {
-                        renderContext.chunk().render(renderContext);
+                        renderContext.chunk().render(renderContext, minX, minZ, maxX, maxZ);
                     }
+                    mipChain.updateArea(renderContext.imageBuffer, pixelX + minX, pixelZ + minZ, pixelX + maxX, pixelZ + maxZ);
                 }
             }
         } catch (Throwable thrown) {
@@ -683,8 +789,13 @@ public class RegionContainerImpl implements RegionContainer {
             world.getMapManager().getRenderBufferPool().release(renderContext.imageBuffer);
             throw thrown;
         }
+        if (newMipChain && !isFullRender) {
+            // The rest of a new mip chain is blank until every chunk renders.
+            scheduleRerenderAll(false);
+        }
         boolean wasFullRender = isFullRender;
-        RenderSystem.recordRenderCall(() -> renderAndReleaseBuffer(renderContext.imageBuffer, list, wasFullRender));
+        RegionMipChain renderedMipChain = mipChain;
+        RenderSystem.recordRenderCall(() -> renderAndReleaseBuffer(renderContext.imageBuffer, list, wasFullRender, renderedMipChain));
     }
 
     // </editor-fold>
@@ -692,70 +803,64 @@ public class RegionContainerImpl implements RegionContainer {
     ////////////////////////////////////////////////////////////////////////////
     // <editor-fold desc="Render Upload Methods (schedule on render thread)">
 
-    private void renderAndReleaseBuffer(int[] imageBuffer, IntList chunkCoordList, boolean wasFullRender) {
+    private void renderAndReleaseBuffer(int[] imageBuffer, IntList areaList, boolean wasFullRender, RegionMipChain mipChain) {
         try {
-            IntBuffer uploadIntBuffer = UPLOAD_INTBUFFER;
-            MapFramebuffer uploadFramebuffer = UPLOAD_FRAMEBUFFER;
-            if (!uploadFramebuffer.isInitialized()) {
-                uploadFramebuffer.resize(512, 512, MinecraftClient.IS_SYSTEM_MAC);
-            }
-
-            MapFramebuffer highRes = highResTexture.get();
-            if (highRes == null || highRes.isClosed()) {
+            RegionTextureAtlas.Slot highRes = highResTexture.get();
+            if (highRes == null) {
                 return;
             }
-            if (!highRes.isInitialized()) {
-                highRes.resize(highRes.getWidth(), highRes.getHeight(), true);
-                if (!wasFullRender) {
-                    scheduleRerenderAll(false);
-                }
+            if (!highRes.isUploaded() && !wasFullRender) {
+                // Parts of a new slot not rendered yet are undefined
+                scheduleRerenderAll(false);
             }
+            if (!highRes.prepareUpload()) {
+                return;
+            }
+            int textureId = highRes.textureId();
 
             // Render high-res map
-            if (wasFullRender && !chunkCoordList.isEmpty()) {
+            PixelUploadRing uploadRing = UPLOAD_RING;
+            if (wasFullRender && !areaList.isEmpty()) {
                 // Upload modified directly to highres texture
-                uploadIntBuffer.clear();
-                uploadIntBuffer.put(imageBuffer);
-                uploadIntBuffer.flip();
-                MapUtils.uploadTexture(highRes.getColorAttachment(), uploadIntBuffer, 512, 512);
+                uploadRing.upload(textureId, 0, highRes.x, highRes.y, 512, 512, imageBuffer, 0, 512);
+                highRes.markUploaded();
             } else {
-                // Upload modified to intermediate texture
-                uploadIntBuffer.clear();
-                uploadIntBuffer.put(imageBuffer);
-                uploadIntBuffer.flip();
-                MapUtils.uploadTexture(uploadFramebuffer.getColorAttachment(), uploadIntBuffer, 512, 512);
-
-                // Blit texture to region buffer
-                GlStateManager._glBindFramebuffer(GlConst.GL_READ_FRAMEBUFFER, uploadFramebuffer.fbo);
-                GlStateManager._glBindFramebuffer(GlConst.GL_DRAW_FRAMEBUFFER, highRes.fbo);
-                for (int i = chunkCoordList.size() - 1; i >= 0; i--) {
-                    int combined = chunkCoordList.getInt(i);
-                    int x1 = combined >>> 16 & 0xFFFF;
-                    int z1 = combined & 0xFFFF;
-                    int x2 = x1 + 16;
-                    int z2 = z1 + 16;
-                    GlStateManager._glBlitFrameBuffer(x1, z1, x2, z2, x1, z1, x2, z2, GlConst.GL_COLOR_BUFFER_BIT, GlConst.GL_NEAREST);
+                // Upload each run of modified areas in a row straight out of
+                // the region image.
+                for (int i = 0, size = areaList.size(); i < size; ) {
+                    int min = areaList.getInt(i);
+                    int max = areaList.getInt(i + 1);
+                    int x1 = min >>> 16;
+                    int z1 = min & 0xFFFF;
+                    int x2 = max >>> 16;
+                    int z2 = max & 0xFFFF;
+                    for (i += 2; i < size && areaList.getInt(i) == (x2 << 16 | z1)
+                            && (areaList.getInt(i + 1) & 0xFFFF) == z2; i += 2) {
+                        x2 = areaList.getInt(i + 1) >>> 16;
+                    }
+                    uploadRing.upload(textureId, 0, highRes.x + x1, highRes.y + z1, x2 - x1, z2 - z1, imageBuffer, z1 << 9 | x1, 512);
                 }
+                highRes.markChanged();
             }
-            GlStateManager._glBindFramebuffer(GlConst.GL_FRAMEBUFFER, 0);
 
-            MapFramebuffer lowRes = lowResTexture.get();
-            if (lowRes == null || lowRes.isClosed()) {
+            RegionTextureAtlas.Slot lowRes = lowResTexture.get();
+            if (lowRes == null || mipChain != this.mipChain) {
                 return;
             }
-            if (!lowRes.isInitialized()) {
-                lowRes.resize(lowRes.getWidth(), lowRes.getHeight(), true);
+            if (!lowRes.isUploaded()) {
+                mipChain.markAllDirty();
+            }
+            if (!lowRes.prepareUpload()) {
+                return;
             }
 
-            // Blit to low res map
-            lowRes.beginWrite(true);
-            RenderSystem.clear(GlConst.GL_COLOR_BUFFER_BIT, true);
-            lowRes.endWrite();
-            GlStateManager._glBindFramebuffer(GlConst.GL_READ_FRAMEBUFFER, highRes.fbo);
-            GlStateManager._glBindFramebuffer(GlConst.GL_DRAW_FRAMEBUFFER, lowRes.fbo);
-            GlStateManager._glBlitFrameBuffer(0, 0, highRes.textureWidth, highRes.textureHeight, 0, 0, lowRes.textureWidth, lowRes.textureHeight, GlConst.GL_COLOR_BUFFER_BIT, GlConst.GL_LINEAR);
-            GlStateManager._glBindFramebuffer(GlConst.GL_FRAMEBUFFER, 0);
+            // Upload changed texels of each low res mip level
+            mipChain.upload(uploadRing, lowRes.textureId(), lowRes.x, lowRes.y);
+            lowRes.markUploaded();
         } finally {
+            // Pixels are copied into the ring as they're queued, so the
+            // buffer can go back to the pool once they're flushed.
+            UPLOAD_RING.flush();
             world.getMapManager().getRenderBufferPool().release(imageBuffer);
         }
     }
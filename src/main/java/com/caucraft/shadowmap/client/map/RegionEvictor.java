@@ -0,0 +1,214 @@
+package com.caucraft.shadowmap.client.map;
+
+import com.caucraft.shadowmap.api.map.RegionFlags;
+import com.caucraft.shadowmap.client.config.PerformanceConfig;
+import com.caucraft.shadowmap.client.util.task.CleanupHelper;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Incremental eviction of region layers. Every loaded region sits in one
+ * CLOCK ring with a separate hand per layer. Reading a region sets a
+ * reference bit per layer, so it is spared the next time each hand reaches it.
+ * Each slice advances every hand a fixed number of regions. Visiting a region
+ * re-measures the layer, keeping a running per-layer total, and evicts the
+ * layer if it is unreferenced and the total is over budget or the region has
+ * timed out. Work per slice doesn't depend on how many regions are loaded.
+ */
+public class RegionEvictor {
+    /** Regions each hand visits per slice. */
+    private static final int SLICE_VISITS = 64;
+    /** Regions are only evicted once there are enough of them to bother. */
+    private static final int MIN_REGIONS = 64;
+    /**
+     * How long a region's max flags are kept before being reduced to its
+     * current flags, so a layer recently needed at a closer zoom isn't
+     * evicted the moment the map zooms out.
+     */
+    private static final long FLAG_DECAY_MS = 15_000;
+    static final int ALL_LAYERS_REFERENCED = (1 << Layer.values().length) - 1;
+
+    private final List<RegionContainerImpl> ring;
+    private final int[] hands;
+    private final long[] totals;
+
+    public RegionEvictor() {
+        this.ring = new ArrayList<>();
+        this.hands = new int[Layer.values().length];
+        this.totals = new long[Layer.values().length];
+    }
+
+    synchronized void add(RegionContainerImpl region) {
+        if (region.evictionIndex >= 0) {
+            return;
+        }
+        region.evictionIndex = ring.size();
+        ring.add(region);
+        region.getWorld().adjustRegionCount(1);
+    }
+
+    synchronized void remove(RegionContainerImpl region) {
+        int index = region.evictionIndex;
+        if (index < 0) {
+            return;
+        }
+        for (Layer layer : Layer.values()) {
+            setUsage(region, layer, 0);
+        }
+        region.getWorld().adjustRegionCount(-1);
+        RegionContainerImpl last = ring.remove(ring.size() - 1);
+        if (last != region) {
+            ring.set(index, last);
+            last.evictionIndex = index;
+        }
+        region.evictionIndex = -1;
+    }
+
+    /**
+     * @param layer the layer to get the total of
+     * @return the layer's memory usage across every region, as last measured.
+     */
+    public synchronized long getTotal(Layer layer) {
+        return totals[layer.ordinal()];
+    }
+
+    /**
+     * Publishes the memory usage of each world as last measured.
+     * @param worlds the worlds to publish reports for
+     */
+    synchronized void publishMemoryReports(List<MapWorldImpl> worlds) {
+        for (MapWorldImpl world : worlds) {
+            world.publishMemoryReport();
+        }
+    }
+
+    /**
+     * Advances every layer's hand by one slice, evicting layers as needed.
+     * @param config the budgets and timeouts to evict against
+     * @param curTime the current time, in the units of
+     * {@link RegionContainerImpl#getLastRead()}
+     * @param budgetScale the share of the configured budgets to keep under
+     */
+    void runSlice(PerformanceConfig config, long curTime, double budgetScale) {
+        run(config, curTime, budgetScale, SLICE_VISITS);
+    }
+
+    /**
+     * Sweeps every layer's hand once around the whole ring, ex. to free memory
+     * right away when the heap is running low.
+     * @param config the budgets and timeouts to evict against
+     * @param curTime the current time, in the units of
+     * {@link RegionContainerImpl#getLastRead()}
+     * @param budgetScale the share of the configured budgets to keep under
+     */
+    void runPass(PerformanceConfig config, long curTime, double budgetScale) {
+        run(config, curTime, budgetScale, Integer.MAX_VALUE);
+    }
+
+    private void run(PerformanceConfig config, long curTime, double budgetScale, int maxVisits) {
+        List<Eviction> evictions = new ArrayList<>();
+        synchronized (this) {
+            boolean evictionAllowed = ring.size() > MIN_REGIONS;
+            for (Layer layer : Layer.values()) {
+                long budget = (long) (layer.getBudget(config) * budgetScale);
+                int visits = Math.min(maxVisits, ring.size());
+                for (int i = 0; i < visits; i++) {
+                    int hand = hands[layer.ordinal()];
+                    if (hand >= ring.size()) {
+                        hand = 0;
+                    }
+                    hands[layer.ordinal()] = hand + 1;
+                    visit(ring.get(hand), layer, config, budget, curTime, evictionAllowed, evictions);
+                }
+            }
+        }
+        // Scheduled outside the lock, cleanups may run right away during
+        // shutdown and remove regions from the ring.
+        for (Eviction eviction : evictions) {
+            eviction.region.getWorld().scheduleRegionCleanup(eviction.region, eviction.helper, null);
+        }
+    }
+
+    private void visit(RegionContainerImpl region, Layer layer, PerformanceConfig config, long budget, long curTime,
+            boolean evictionAllowed, List<Eviction> evictions) {
+        long usage = region.estimateLayerUsage(layer);
+        setUsage(region, layer, usage);
+        int layerBit = 1 << layer.ordinal();
+        boolean referenced = (region.evictionRefs.getAndUpdate((refs) -> refs & ~layerBit) & layerBit) != 0;
+        boolean pinned = !evictionAllowed || region.getFlags(~RegionFlags.IO_FAILED.flag) != 0;
+
+        if (layer == Layer.BLOCKS && !pinned) {
+            if (region.isEmpty()) {
+                evictions.add(new Eviction(region, new CleanupHelper(region.getMaxFlags(), false, false, false, false)));
+            }
+            if (curTime - region.lastFlagDecay >= FLAG_DECAY_MS) {
+                region.lastFlagDecay = curTime;
+                region.reduceMaxFlags();
+            }
+        }
+        if (usage == 0 || pinned) {
+            return;
+        }
+        int maxLoad = region.getMaxFlags();
+        if (maxLoad >= layer.pinFlag.flag) {
+            return;
+        }
+        boolean timedOut = curTime - region.getLastRead() > layer.getTimeout(config);
+        boolean overBudget = totals[layer.ordinal()] > budget;
+        if (timedOut || overBudget && !referenced) {
+            evictions.add(new Eviction(region, new CleanupHelper(maxLoad,
+                    layer == Layer.BLOCKS, layer == Layer.META,
+                    layer == Layer.HIGH_RES_TEXTURE, layer == Layer.LOW_RES_TEXTURE)));
+            // Assume the cleanup goes through so the rest of the slice doesn't
+            // evict on its account. It is measured again next time around.
+            setUsage(region, layer, 0);
+        }
+    }
+
+    private void setUsage(RegionContainerImpl region, Layer layer, long usage) {
+        long delta = usage - region.evictionUsage[layer.ordinal()];
+        if (delta == 0) {
+            return;
+        }
+        region.evictionUsage[layer.ordinal()] = usage;
+        totals[layer.ordinal()] += delta;
+        region.getWorld().adjustMemoryUsage(layer, delta);
+    }
+
+    private record Eviction(RegionContainerImpl region, CleanupHelper helper) {}
+
+    /**
+     * Region layers evicted separately, each with its own budget, timeout, and
+     * the load flag that keeps it loaded.
+     */
+    public enum Layer {
+        BLOCKS(RegionFlags.FULLMAP_ZOOM_IN),
+        META(RegionFlags.FULLMAP_ZOOM_OUT),
+        HIGH_RES_TEXTURE(RegionFlags.FULLMAP_ZOOM_IN),
+        LOW_RES_TEXTURE(RegionFlags.MINIMAP_ZOOM);
+
+        final RegionFlags pinFlag;
+
+        Layer(RegionFlags pinFlag) {
+            this.pinFlag = pinFlag;
+        }
+
+        long getBudget(PerformanceConfig config) {
+            return switch (this) {
+                case BLOCKS -> (long) config.blockMemoryMB.get() << 20;
+                case META -> (long) config.metaMemoryMB.get() << 20;
+                // Half the texture memory for each resolution
+                case HIGH_RES_TEXTURE, LOW_RES_TEXTURE -> (long) config.textureMemoryMB.get() << 19;
+            };
+        }
+
+        long getTimeout(PerformanceConfig config) {
+            return switch (this) {
+                case BLOCKS -> config.blockTimeoutS.get();
+                case META -> config.metaTimeoutS.get();
+                case HIGH_RES_TEXTURE, LOW_RES_TEXTURE -> config.textureTimeoutS.get();
+            };
+        }
+    }
+}
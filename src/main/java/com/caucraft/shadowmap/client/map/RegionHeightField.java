@@ -0,0 +1,171 @@
+package com.caucraft.shadowmap.client.map;
+
+import com.caucraft.shadowmap.client.map.BlocksChunk.BlockType;
+import net.minecraft.util.math.MathHelper;
+
+import java.util.Arrays;
+
+/**
+ * Heights for one region plus a one block border from neighboring regions,
+ * laid out as a padded 514 x 514 grid per block layer so slope shading reads
+ * neighbors at fixed offsets instead of checking chunk and region edges. Each
+ * layer's grid holds the highest of that layer and the opaque layer, which is
+ * what a column's slope is measured against. Chunks are copied in the first
+ * time a render needs them, so partial renders only copy what they touch.
+ */
+public class RegionHeightField {
+    public static final int SIZE = 514;
+    private static final int CHUNKS = 34;
+    // About 3 MB per render thread, reused for every region it renders.
+    private static final ThreadLocal<RegionHeightField> THREAD_FIELDS = ThreadLocal.withInitial(RegionHeightField::new);
+
+    private final int[][] heights;
+    private final boolean[] copiedChunks;
+    private BlocksRegion blockLayer;
+
+    private RegionHeightField() {
+        this.heights = new int[BlockType.values().length][SIZE * SIZE];
+        this.copiedChunks = new boolean[CHUNKS * CHUNKS];
+    }
+
+    /**
+     * Gets the current thread's height field, cleared for rendering a new
+     * region. The field must not be used after the render finishes.
+     * @param blockLayer the block layer of the region being rendered
+     * @return the current thread's height field
+     */
+    public static RegionHeightField forRegion(BlocksRegion blockLayer) {
+        RegionHeightField field = THREAD_FIELDS.get();
+        field.blockLayer = blockLayer;
+        Arrays.fill(field.copiedChunks, false);
+        return field;
+    }
+
+    /**
+     * Copies the heights of a chunk and its eight neighbors into the field if
+     * they have not been already.
+     * @param chunkX the region-relative chunk X
+     * @param chunkZ the region-relative chunk Z
+     */
+    public void prepareChunk(int chunkX, int chunkZ) {
+        for (int z = chunkZ - 1; z <= chunkZ + 1; z++) {
+            for (int x = chunkX - 1; x <= chunkX + 1; x++) {
+                copyChunk(x, z);
+            }
+        }
+    }
+
+    private void copyChunk(int chunkX, int chunkZ) {
+        int slot = (chunkZ + 1) * CHUNKS + chunkX + 1;
+        if (copiedChunks[slot]) {
+            return;
+        }
+        copiedChunks[slot] = true;
+        // Neighbors are read without their lock, so keep their columns from
+        // being freed while copying.
+        BlocksRegion layer = blockLayer.getLayerInWorld(chunkX >> 5, chunkZ >> 5);
+        boolean neighbor = layer != null && layer != blockLayer;
+        if (neighbor && !layer.retainColumns()) {
+            layer = null;
+            neighbor = false;
+        }
+        try {
+            copyHeights(layer == null ? null : layer.getChunk(chunkX, chunkZ, false), chunkX, chunkZ);
+        } finally {
+            if (neighbor) {
+                layer.releaseRetainedColumns();
+            }
+        }
+    }
+
+    private void copyHeights(BlocksChunk chunk, int chunkX, int chunkZ) {
+        int[] opaque = heights[BlockType.OPAQUE.ordinal()];
+        int[] transparent = heights[BlockType.TRANSPARENT.ordinal()];
+        int[] liquid = heights[BlockType.LIQUID.ordinal()];
+
+        // Chunks outside the region only contribute the row or column
+        // bordering it.
+        int minX = chunkX < 0 ? 15 : 0;
+        int maxX = chunkX > 31 ? 0 : 15;
+        int minZ = chunkZ < 0 ? 15 : 0;
+        int maxZ = chunkZ > 31 ? 0 : 15;
+        int fieldX = (chunkX << 4) + 1;
+        int fieldZ = (chunkZ << 4) + 1;
+        for (int z = minZ; z <= maxZ; z++) {
+            int row = (fieldZ + z) * SIZE + fieldX;
+            if (chunk == null) {
+                Arrays.fill(opaque, row + minX, row + maxX + 1, BlocksChunk.HEIGHT_OFFSET);
+                Arrays.fill(transparent, row + minX, row + maxX + 1, BlocksChunk.HEIGHT_OFFSET);
+                Arrays.fill(liquid, row + minX, row + maxX + 1, BlocksChunk.HEIGHT_OFFSET);
+                continue;
+            }
+            for (int x = minX, index = z << 4 | minX; x <= maxX; x++, index++) {
+                int opaqueHeight = chunk.getHeight(index);
+                opaque[row + x] = opaqueHeight;
+                transparent[row + x] = Math.max(opaqueHeight, chunk.getHeight(index + BlocksChunk.OFF_TRANSPARENT));
+                liquid[row + x] = Math.max(opaqueHeight, chunk.getHeight(index + BlocksChunk.OFF_LIQUID));
+            }
+        }
+    }
+
+    /**
+     * Computes the slope shade of a column from the heights of the points
+     * around it in the column's layer.
+     * @param blockType the layer being shaded
+     * @param regionBlockX the region-relative block X, in [0, 511]
+     * @param regionBlockZ the region-relative block Z, in [0, 511]
+     * @param height the height of the block being shaded
+     * @param kernel the slope points to sample
+     * @return the slope shade, in [-kernel.max, kernel.max]
+     */
+    public int getSlope(BlockType blockType, int regionBlockX, int regionBlockZ, int height, SlopeKernel kernel) {
+        int[] layer = heights[blockType.ordinal()];
+        int center = (regionBlockZ + 1) * SIZE + regionBlockX + 1;
+        int[] offsets = kernel.offsets;
+        int[] weightsX = kernel.weightsX;
+        int[] weightsZ = kernel.weightsZ;
+        int ax = 0, az = 0, bx = 0, bz = 0;
+        for (int i = 0; i < offsets.length; i++) {
+            int relativeHeight = layer[center + offsets[i]] - height;
+            int above = Math.max(relativeHeight, 0);
+            int below = Math.min(relativeHeight, 0);
+            ax += weightsX[i] * above;
+            az += weightsZ[i] * above;
+            bx += weightsX[i] * below;
+            bz += weightsZ[i] * below;
+        }
+        int x = ax + bx / 32;
+        int z = az + bz / 32;
+        return MathHelper.clamp((x + x + z) * 2 / 3, -kernel.max, kernel.max);
+    }
+
+    /**
+     * Slope points flattened to field offsets and per-axis weights.
+     * @param offsets offset of each point from the center in the field
+     * @param weightsX weight times X direction of each point
+     * @param weightsZ weight times Z direction of each point
+     * @param max the largest shade magnitude
+     */
+    public record SlopeKernel(int[] offsets, int[] weightsX, int[] weightsZ, int max) {
+        /**
+         * @param points slope points as {@code {weight, dx, dz}}, see
+         * {@link BlocksChunk#SURFACE_SLOPE_POINTS}
+         * @param max the largest shade magnitude
+         */
+        public static SlopeKernel of(int[][] points, int max) {
+            int[] offsets = new int[points.length];
+            int[] weightsX = new int[points.length];
+            int[] weightsZ = new int[points.length];
+            for (int i = 0; i < points.length; i++) {
+                int[] point = points[i];
+                // Only direct neighbors fall inside the field's border.
+                int dx = MathHelper.clamp(point[1], -1, 1);
+                int dz = MathHelper.clamp(point[2], -1, 1);
+                offsets[i] = dz * SIZE + dx;
+                weightsX[i] = point[0] * dx;
+                weightsZ[i] = point[0] * dz;
+            }
+            return new SlopeKernel(offsets, weightsX, weightsZ, max);
+        }
+    }
+}
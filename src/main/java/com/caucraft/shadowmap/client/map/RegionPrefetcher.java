@@ -0,0 +1,369 @@
+package com.caucraft.shadowmap.client.map;
+
+import com.caucraft.shadowmap.api.map.RegionFlags;
+import com.caucraft.shadowmap.client.config.PerformanceConfig;
+import it.unimi.dsi.fastutil.longs.Long2IntMap;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongIterator;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import net.minecraft.util.math.MathHelper;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Predicts which regions will be needed soon based on player velocity and the
+ * pan direction of the fullscreen map, and schedules those regions to be
+ * loaded and rendered at a priority below every {@link MapWorldImpl.LoadLevel}
+ * area. Loads for regions that drop off the predicted path before they start
+ * are cancelled by the load task.
+ */
+public class RegionPrefetcher {
+    /**
+     * Priority given to prefetched regions. Sorts after any region inside a
+     * render area, but before regions outside of every area.
+     */
+    public static final long PRIORITY_PREFETCH = 0x2000_0000_0000_0000L;
+    /** Player speed (blocks/s) under which the player path is not predicted. Sprinting is ~5.6 */
+    private static final double MIN_PLAYER_SPEED = 8.0;
+    /** Distance (blocks) between samples along the predicted player path. */
+    private static final int PATH_STEP = 256;
+    /** Half-width (regions) of the predicted path, matches the forced render distance area. */
+    private static final int PATH_HALF_WIDTH = 2;
+    /** How far ahead (s) the fullscreen map view is extrapolated. */
+    private static final double PAN_LOOKAHEAD_S = 1.0;
+    /** Pan samples further apart than this (ms) reset the pan velocity. */
+    private static final long PAN_RESET_MS = 500;
+    /** Upper bound on the number of regions targeted by each predictor. */
+    private static final int MAX_TARGETS = 64;
+
+    private final MapWorldImpl world;
+    private final PerformanceConfig config;
+    private final LongSet scheduled;
+    private Long2IntMap playerTargets;
+    private Long2IntMap panTargets;
+    private volatile Long2IntMap targets;
+
+    private long playerPathKey;
+    private double panVelocityX, panVelocityZ;
+    private int lastPanX, lastPanZ;
+    private float lastPanZoom;
+    private long lastPanTime;
+
+    private final AtomicLong scheduledCount;
+    private final AtomicLong hitCount;
+    private final AtomicLong missCount;
+    private final AtomicLong cancelledCount;
+
+    RegionPrefetcher(MapWorldImpl world, PerformanceConfig config) {
+        this.world = world;
+        this.config = config;
+        this.scheduled = new LongOpenHashSet();
+        this.playerTargets = new Long2IntOpenHashMap();
+        this.panTargets = new Long2IntOpenHashMap();
+        this.targets = new Long2IntOpenHashMap();
+        this.playerPathKey = Long.MIN_VALUE;
+        this.scheduledCount = new AtomicLong();
+        this.hitCount = new AtomicLong();
+        this.missCount = new AtomicLong();
+        this.cancelledCount = new AtomicLong();
+    }
+
+    // <editor-fold desc="Stats">
+
+    /**
+     * @return the number of region loads scheduled by the prefetcher.
+     */
+    public long getScheduledCount() {
+        return scheduledCount.get();
+    }
+
+    /**
+     * @return the number of times a render area reached a region the
+     * prefetcher had already finished loading.
+     */
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    /**
+     * @return the number of times a render area reached a region that had to
+     * be loaded for it, or that the prefetcher was still loading. Counted once
+     * per load, regions already loaded or loading for other reasons aren't
+     * counted again.
+     */
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    /**
+     * @return the number of prefetched loads dropped because the region fell
+     * off of the predicted path before its load started.
+     */
+    public long getCancelledCount() {
+        return cancelledCount.get();
+    }
+
+    // </editor-fold>
+
+    /**
+     * Predicts the player's path from its current position and velocity.
+     * @param blockX the player's block x coordinate
+     * @param blockZ the player's block z coordinate
+     * @param velocityX the player's x velocity in blocks per second
+     * @param velocityZ the player's z velocity in blocks per second
+     */
+    void updatePlayer(int blockX, int blockZ, double velocityX, double velocityZ) {
+        int lookaheadS = config.prefetchLookaheadS.get();
+        double speed = Math.sqrt(velocityX * velocityX + velocityZ * velocityZ);
+        if (lookaheadS <= 0 || speed < MIN_PLAYER_SPEED) {
+            if (playerPathKey != Long.MIN_VALUE) {
+                playerPathKey = Long.MIN_VALUE;
+                playerTargets = new Long2IntOpenHashMap();
+                updateTargets();
+            }
+            return;
+        }
+
+        // Only rebuild the path when it would change meaningfully: new region,
+        // new direction (16 buckets), or new path length (PATH_STEP buckets).
+        int steps = Math.min(MAX_TARGETS, (int) (speed * lookaheadS / PATH_STEP));
+        int direction = (int) Math.floorMod(Math.round(MathHelper.atan2(velocityZ, velocityX) * 8 / Math.PI), 16);
+        long pathKey = (long) (blockX >> 9) << 40 ^ (long) (blockZ >> 9) << 16 ^ (long) direction << 8 ^ steps;
+        if (pathKey == playerPathKey) {
+            return;
+        }
+        playerPathKey = pathKey;
+
+        double dirX = velocityX / speed;
+        double dirZ = velocityZ / speed;
+        Long2IntOpenHashMap newTargets = new Long2IntOpenHashMap();
+        for (int i = 1; i <= steps && newTargets.size() < MAX_TARGETS; i++) {
+            double sampleX = blockX + dirX * i * PATH_STEP;
+            double sampleZ = blockZ + dirZ * i * PATH_STEP;
+            for (int w = -PATH_HALF_WIDTH; w <= PATH_HALF_WIDTH; w++) {
+                // perpendicular offset: (-dirZ, dirX)
+                int regionX = MathHelper.floor(sampleX - dirZ * w * 512) >> 9;
+                int regionZ = MathHelper.floor(sampleZ + dirX * w * 512) >> 9;
+                newTargets.putIfAbsent(getKey(regionX, regionZ), i * (PATH_HALF_WIDTH + 1) + Math.abs(w));
+            }
+        }
+        playerTargets = newTargets;
+        updateTargets();
+    }
+
+    /**
+     * Tracks fullscreen map panning and predicts where the view will be soon.
+     * @param blockCenterX block x coordinate at the center of the view
+     * @param blockCenterZ block z coordinate at the center of the view
+     * @param screenWidth width of the map view in pixels
+     * @param screenHeight height of the map view in pixels
+     * @param zoom map zoom
+     */
+    void updateFullmap(int blockCenterX, int blockCenterZ, int screenWidth, int screenHeight, float zoom) {
+        long curTime = System.currentTimeMillis();
+        long timeDiff = curTime - lastPanTime;
+        if (zoom != lastPanZoom || timeDiff > PAN_RESET_MS) {
+            panVelocityX = 0;
+            panVelocityZ = 0;
+        } else if (timeDiff > 0) {
+            double instantX = (blockCenterX - lastPanX) * 1000.0 / timeDiff;
+            double instantZ = (blockCenterZ - lastPanZ) * 1000.0 / timeDiff;
+            panVelocityX = panVelocityX * 0.7 + instantX * 0.3;
+            panVelocityZ = panVelocityZ * 0.7 + instantZ * 0.3;
+        }
+        lastPanX = blockCenterX;
+        lastPanZ = blockCenterZ;
+        lastPanZoom = zoom;
+        lastPanTime = curTime;
+
+        double shiftX = panVelocityX * PAN_LOOKAHEAD_S;
+        double shiftZ = panVelocityZ * PAN_LOOKAHEAD_S;
+        if (config.prefetchLookaheadS.get() <= 0 || Math.abs(shiftX) < 16 && Math.abs(shiftZ) < 16) {
+            if (!panTargets.isEmpty()) {
+                panTargets = new Long2IntOpenHashMap();
+                updateTargets();
+            }
+            return;
+        }
+
+        double halfWidth = screenWidth * 0.5 / zoom;
+        double halfHeight = screenHeight * 0.5 / zoom;
+        int curMinX = MathHelper.floor(blockCenterX - halfWidth) >> 9;
+        int curMinZ = MathHelper.floor(blockCenterZ - halfHeight) >> 9;
+        int curMaxX = MathHelper.ceil(blockCenterX + halfWidth) >> 9;
+        int curMaxZ = MathHelper.ceil(blockCenterZ + halfHeight) >> 9;
+        int minX = MathHelper.floor(blockCenterX + shiftX - halfWidth) >> 9;
+        int minZ = MathHelper.floor(blockCenterZ + shiftZ - halfHeight) >> 9;
+        int maxX = MathHelper.ceil(blockCenterX + shiftX + halfWidth) >> 9;
+        int maxZ = MathHelper.ceil(blockCenterZ + shiftZ + halfHeight) >> 9;
+        int centerX = (blockCenterX + (int) shiftX) >> 9;
+        int centerZ = (blockCenterZ + (int) shiftZ) >> 9;
+        Long2IntOpenHashMap newTargets = new Long2IntOpenHashMap();
+        for (int z = minZ; z <= maxZ; z++) {
+            for (int x = minX; x <= maxX; x++) {
+                if (x >= curMinX && x <= curMaxX && z >= curMinZ && z <= curMaxZ) {
+                    continue;
+                }
+                int dx = x - centerX;
+                int dz = z - centerZ;
+                newTargets.put(getKey(x, z), dx * dx + dz * dz);
+            }
+        }
+        if (newTargets.size() > MAX_TARGETS || newTargets.equals(panTargets)) {
+            return;
+        }
+        panTargets = newTargets;
+        updateTargets();
+    }
+
+    void clearFullmap() {
+        lastPanTime = 0;
+        if (!panTargets.isEmpty()) {
+            panTargets = new Long2IntOpenHashMap();
+            updateTargets();
+        }
+    }
+
+    /**
+     * Merges the predicted paths and schedules loads for any new targeted
+     * regions that are not already loaded or covered by a render area.
+     */
+    private void updateTargets() {
+        Long2IntOpenHashMap newTargets = new Long2IntOpenHashMap(playerTargets);
+        for (Long2IntMap.Entry entry : panTargets.long2IntEntrySet()) {
+            newTargets.mergeInt(entry.getLongKey(), entry.getIntValue(), Math::min);
+        }
+        synchronized (world.getMapManager()) {
+            Long2IntMap oldTargets = this.targets;
+            this.targets = newTargets;
+            world.getMapManager().scheduleResortPriority();
+            for (long key : newTargets.keySet()) {
+                if (oldTargets.containsKey(key)) {
+                    continue;
+                }
+                int regionX = (int) key;
+                int regionZ = (int) (key >> 32);
+                if (world.isInRenderArea(regionX, regionZ) || world.getRegion(regionX, regionZ, false, false) != null) {
+                    continue;
+                }
+                synchronized (this) {
+                    scheduled.add(key);
+                }
+                scheduledCount.incrementAndGet();
+                world.getRegion(regionX, regionZ, true, true);
+            }
+
+            // Forget prefetched regions that left the window, except those
+            // whose load hasn't run yet so it can still be cancelled.
+            synchronized (this) {
+                LongIterator iterator = scheduled.iterator();
+                while (iterator.hasNext()) {
+                    long key = iterator.nextLong();
+                    if (newTargets.containsKey(key)) {
+                        continue;
+                    }
+                    RegionContainerImpl region = world.getRegion((int) key, (int) (key >> 32), false, false);
+                    if (region == null || !region.isFlagSet(RegionFlags.LOAD_NEEDED)) {
+                        iterator.remove();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @param regionX x coordinate of the region
+     * @param regionZ z coordinate of the region
+     * @return {@link #PRIORITY_PREFETCH} combined with the region's position
+     * along the predicted path if it is targeted, or {@link Long#MAX_VALUE}
+     * otherwise.
+     */
+    long getRenderPriority(int regionX, int regionZ) {
+        Long2IntMap localTargets = this.targets;
+        long key = getKey(regionX, regionZ);
+        if (!localTargets.containsKey(key)) {
+            return Long.MAX_VALUE;
+        }
+        return PRIORITY_PREFETCH | localTargets.get(key);
+    }
+
+    /**
+     * Checks whether the region's pending load was scheduled by the prefetcher
+     * and the region has since dropped off of the predicted path. If so, and
+     * nothing else has claimed the region, it is removed from the world and
+     * the caller should skip the load.
+     * @param region the region about to be loaded
+     * @return true if the load should be skipped.
+     */
+    boolean cancelIfStale(RegionContainerImpl region) {
+        long key = getKey(region.getRegionX(), region.getRegionZ());
+        if (targets.containsKey(key)) {
+            return false;
+        }
+        synchronized (this) {
+            if (!scheduled.contains(key)) {
+                return false;
+            }
+        }
+        synchronized (world.getMapManager()) {
+            if (region.getFlags(MapWorldImpl.LoadLevel.LOAD_FLAGS_MASK | RegionFlags.MODIFY_SCHEDULED.flag) != 0
+                    || !world.removeRegion(region)) {
+                return false;
+            }
+            region.clearFlag(RegionFlags.LOAD_NEEDED);
+        }
+        synchronized (this) {
+            scheduled.remove(key);
+        }
+        cancelledCount.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Forgets a prefetched region once its load has run if it is no longer
+     * targeted, since it can't be cancelled or counted as a hit anymore.
+     * @param region the region that finished loading
+     */
+    void loadFinished(RegionContainerImpl region) {
+        long key = getKey(region.getRegionX(), region.getRegionZ());
+        if (targets.containsKey(key)) {
+            return;
+        }
+        synchronized (this) {
+            scheduled.remove(key);
+        }
+    }
+
+    /**
+     * Records whether a region newly covered by a render area was already
+     * loaded by the prefetcher. A region that wasn't prefetched only counts
+     * as a miss if it doesn't exist yet, since its load is about to be
+     * scheduled; one that exists was already counted when its load was.
+     * @param region the region, or null if it has not been created
+     * @param regionX x coordinate of the region
+     * @param regionZ z coordinate of the region
+     */
+    void recordDemand(RegionContainerImpl region, int regionX, int regionZ) {
+        if (config.prefetchLookaheadS.get() <= 0) {
+            return;
+        }
+        boolean wasScheduled;
+        synchronized (this) {
+            wasScheduled = scheduled.remove(getKey(regionX, regionZ));
+        }
+        if (wasScheduled) {
+            if (region != null && !region.isFlagSet(RegionFlags.LOAD_NEEDED)) {
+                hitCount.incrementAndGet();
+            } else {
+                missCount.incrementAndGet();
+            }
+        } else if (region == null) {
+            missCount.incrementAndGet();
+        }
+    }
+
+    private static long getKey(int regionX, int regionZ) {
+        return ((long) regionZ << 32) | ((long) regionX & 0xFFFF_FFFFL);
+    }
+}
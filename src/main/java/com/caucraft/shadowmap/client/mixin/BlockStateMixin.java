@@ -18,6 +18,8 @@ public class BlockStateMixin implements MapBlockStateMutable {
     private boolean scmapOpaque;
     @Unique
     private int scmapMaxOpacity;
+    @Unique
+    private int scmapTintIndex;
 
     @Override @Unique
     public void shadowMap$setTinted(boolean tinted) {
@@ -60,4 +62,15 @@ public class BlockStateMixin implements MapBlockStateMutable {
     public int shadowMap$getMaxOpacity() {
         return scmapMaxOpacity;
     }
+
+    @Override @Unique
+    public void shadowMap$setTintIndex(int tintIndex) {
+        // Stored off by one so states never given an index read as -1
+        this.scmapTintIndex = tintIndex + 1;
+    }
+
+    @Override @Unique
+    public int shadowMap$getTintIndex() {
+        return scmapTintIndex - 1;
+    }
 }
@@ -0,0 +1,11 @@
+package com.caucraft.shadowmap.client.mixin;
+
+import net.minecraft.client.texture.NativeImage;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.gen.Accessor;
+
+@Mixin(NativeImage.class)
+public interface NativeImageAccess {
+    @Accessor("pointer") long shadowMap$getPointer();
+    @Accessor("sizeBytes") long shadowMap$getSizeBytes();
+}
@@ -0,0 +1,11 @@
+package com.caucraft.shadowmap.client.mixin;
+
+import net.minecraft.client.texture.NativeImage;
+import net.minecraft.client.texture.SpriteContents;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.gen.Accessor;
+
+@Mixin(SpriteContents.class)
+public interface SpriteContentsAccess {
+    @Accessor("image") NativeImage shadowMap$getImage();
+}
@@ -0,0 +1,148 @@
+package com.caucraft.shadowmap.client.render;
+
+import com.mojang.blaze3d.platform.GlConst;
+import com.mojang.blaze3d.platform.GlStateManager;
+import com.mojang.blaze3d.systems.RenderSystem;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL12;
+import org.lwjgl.opengl.GL15;
+import org.lwjgl.opengl.GL21;
+import org.lwjgl.opengl.GL30;
+import org.lwjgl.opengl.GL32;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+
+/**
+ * A ring of pixel unpack buffers for uploading ARGB rectangles to textures.
+ * Rectangles are copied row by row into the current buffer, and on
+ * {@link #flush()} the buffer is unmapped and every queued rectangle is
+ * uploaded from it, so the driver copies to the texture asynchronously
+ * instead of stalling the render thread. Each buffer is fenced after its
+ * uploads and only written again once the fence has passed, or orphaned if
+ * the GPU hasn't caught up. Must only be used on the render thread.
+ */
+public class PixelUploadRing {
+    private static final int COMMAND_SIZE = 7;
+
+    private final int bufferCount;
+    private final int bufferInts;
+    private final IntArrayList commands;
+    private int[] bufferIds;
+    private long[] fences;
+    private int current;
+    private IntBuffer mapped;
+
+    /**
+     * @param bufferCount number of buffers in the ring
+     * @param bufferInts size of each buffer in pixels, at least as large as
+     * the largest rectangle uploaded
+     */
+    public PixelUploadRing(int bufferCount, int bufferInts) {
+        this.bufferCount = bufferCount;
+        this.bufferInts = bufferInts;
+        this.commands = new IntArrayList();
+    }
+
+    /**
+     * Queues a rectangle of pixels to upload on the next {@link #flush()}.
+     * @param textureId the texture to upload to
+     * @param level the mip level to upload to
+     * @param x the x offset in the texture to upload to
+     * @param y the y offset in the texture to upload to
+     * @param width the width of the rectangle
+     * @param height the height of the rectangle
+     * @param src the source pixels, ARGB
+     * @param srcOffset the index of the rectangle's first pixel in the source
+     * @param srcRowLength the width of a row in the source
+     */
+    public void upload(int textureId, int level, int x, int y, int width, int height, int[] src, int srcOffset, int srcRowLength) {
+        RenderSystem.assertOnRenderThread();
+        int size = width * height;
+        if (size > bufferInts) {
+            throw new IllegalArgumentException("Rectangle is larger than upload buffers: " + width + "x" + height);
+        }
+        if (mapped != null && mapped.remaining() < size) {
+            flush();
+        }
+        if (mapped == null) {
+            map();
+        }
+        int offset = mapped.position();
+        for (int row = 0, srcIndex = srcOffset; row < height; row++, srcIndex += srcRowLength) {
+            mapped.put(src, srcIndex, width);
+        }
+        commands.add(textureId);
+        commands.add(level);
+        commands.add(x);
+        commands.add(y);
+        commands.add(width);
+        commands.add(height);
+        commands.add(offset);
+    }
+
+    /**
+     * Uploads every queued rectangle from the current buffer and moves on to
+     * the next one.
+     */
+    public void flush() {
+        RenderSystem.assertOnRenderThread();
+        if (mapped == null) {
+            return;
+        }
+        mapped = null;
+        int bufferId = bufferIds[current];
+        GL15.glBindBuffer(GL21.GL_PIXEL_UNPACK_BUFFER, bufferId);
+        GL15.glUnmapBuffer(GL21.GL_PIXEL_UNPACK_BUFFER);
+        GlStateManager._pixelStore(GlConst.GL_UNPACK_ROW_LENGTH, 0);
+        GlStateManager._pixelStore(GlConst.GL_UNPACK_SKIP_ROWS, 0);
+        GlStateManager._pixelStore(GlConst.GL_UNPACK_SKIP_PIXELS, 0);
+        GlStateManager._pixelStore(GlConst.GL_UNPACK_ALIGNMENT, 4);
+        RenderSystem.activeTexture(GlConst.GL_TEXTURE0);
+        for (int i = 0; i < commands.size(); i += COMMAND_SIZE) {
+            RenderSystem.bindTextureForSetup(commands.getInt(i));
+            GL11.glTexSubImage2D(GlConst.GL_TEXTURE_2D, commands.getInt(i + 1),
+                    commands.getInt(i + 2), commands.getInt(i + 3), commands.getInt(i + 4), commands.getInt(i + 5),
+                    GL12.GL_BGRA, GL12.GL_UNSIGNED_INT_8_8_8_8_REV, (long) commands.getInt(i + 6) << 2);
+        }
+        GL15.glBindBuffer(GL21.GL_PIXEL_UNPACK_BUFFER, 0);
+        commands.clear();
+        fences[current] = GL32.glFenceSync(GL32.GL_SYNC_GPU_COMMANDS_COMPLETE, 0);
+        current = (current + 1) % bufferCount;
+    }
+
+    private void map() {
+        if (bufferIds == null) {
+            bufferIds = new int[bufferCount];
+            fences = new long[bufferCount];
+            for (int i = 0; i < bufferCount; i++) {
+                bufferIds[i] = GL15.glGenBuffers();
+                GL15.glBindBuffer(GL21.GL_PIXEL_UNPACK_BUFFER, bufferIds[i]);
+                GL15.glBufferData(GL21.GL_PIXEL_UNPACK_BUFFER, (long) bufferInts << 2, GL15.GL_STREAM_DRAW);
+            }
+        }
+        GL15.glBindBuffer(GL21.GL_PIXEL_UNPACK_BUFFER, bufferIds[current]);
+        int access = GL30.GL_MAP_WRITE_BIT | GL30.GL_MAP_INVALIDATE_BUFFER_BIT;
+        long fence = fences[current];
+        if (fence != 0) {
+            fences[current] = 0;
+            int status = GL32.glClientWaitSync(fence, 0, 0);
+            GL32.glDeleteSync(fence);
+            if (status == GL32.GL_ALREADY_SIGNALED || status == GL32.GL_CONDITION_SATISFIED) {
+                // The GPU is done reading the buffer, skip the driver's sync.
+                access |= GL30.GL_MAP_UNSYNCHRONIZED_BIT;
+            } else {
+                // Still in use, orphan the old storage instead of waiting.
+                GL15.glBufferData(GL21.GL_PIXEL_UNPACK_BUFFER, (long) bufferInts << 2, GL15.GL_STREAM_DRAW);
+            }
+        }
+        ByteBuffer bytes = GL30.glMapBufferRange(GL21.GL_PIXEL_UNPACK_BUFFER, 0, (long) bufferInts << 2, access);
+        GL15.glBindBuffer(GL21.GL_PIXEL_UNPACK_BUFFER, 0);
+        if (bytes == null) {
+            throw new IllegalStateException("Could not map pixel upload buffer");
+        }
+        mapped = bytes.order(ByteOrder.nativeOrder()).asIntBuffer();
+    }
+}
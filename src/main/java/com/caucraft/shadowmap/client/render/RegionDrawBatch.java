@@ -0,0 +1,244 @@
+package com.caucraft.shadowmap.client.render;
+
+import com.caucraft.shadowmap.api.ui.MapRenderContext;
+import com.caucraft.shadowmap.client.map.MapWorldImpl;
+import com.caucraft.shadowmap.client.map.RegionContainerImpl;
+import com.mojang.blaze3d.systems.RenderSystem;
+import it.unimi.dsi.fastutil.HashCommon;
+import net.minecraft.client.render.BufferBuilder;
+import net.minecraft.client.render.VertexFormat;
+import net.minecraft.client.render.VertexFormats;
+
+import java.util.Arrays;
+
+/**
+ * Visible region textures for one map frame, grouped by texture page so each
+ * page is drawn with one texture bind and one draw call. Collecting and
+ * grouping only touch plain arrays; only {@link #draw(MapRenderContext)} needs
+ * a GL context. Instances are reused between frames.
+ */
+public class RegionDrawBatch {
+    private int size;
+    private long stamp;
+    private int[] textureIds;
+    private int[] regionCoords;
+    private float[] uvs;
+
+    public RegionDrawBatch() {
+        this.textureIds = new int[64];
+        this.regionCoords = new int[128];
+        this.uvs = new float[256];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        size = 0;
+        stamp = 0;
+    }
+
+    /**
+     * @return a hash of the regions collected and the versions of their
+     * textures, which changes whenever the batch would draw a different image.
+     */
+    public long getStamp() {
+        return stamp;
+    }
+
+    /**
+     * Replaces the batch's contents with the textures of every loaded region
+     * within the bounds.
+     * @param world the world to draw
+     * @param regionBounds region coordinates to draw, inclusive
+     * @param preferLowRes whether low-res textures should be drawn for regions
+     * with both, ex. when zoomed out
+     */
+    public void collect(MapWorldImpl world, MapRenderContext.RectangleI regionBounds, boolean preferLowRes) {
+        collect((regionX, regionZ, lowRes) -> {
+            RegionContainerImpl region = world.getRegion(regionX, regionZ, false, false);
+            if (region == null) {
+                return null;
+            }
+            return lowRes ? region.getLowResTexture() : region.getHighResTexture();
+        }, regionBounds, preferLowRes);
+    }
+
+    /**
+     * Replaces the batch's contents with the drawable textures provided for
+     * each region within the bounds.
+     * @param slots the texture slots to draw
+     * @param regionBounds region coordinates to draw, inclusive
+     * @param preferLowRes whether low-res textures should be drawn for regions
+     * with both, ex. when zoomed out
+     */
+    public void collect(SlotSource slots, MapRenderContext.RectangleI regionBounds, boolean preferLowRes) {
+        clear();
+        for (int rz = regionBounds.z1; rz <= regionBounds.z2; rz++) {
+            for (int rx = regionBounds.x1; rx <= regionBounds.x2; rx++) {
+                if (!add(rx, rz, slots.getSlot(rx, rz, preferLowRes))) {
+                    add(rx, rz, slots.getSlot(rx, rz, !preferLowRes));
+                }
+            }
+        }
+        sortByTexture();
+    }
+
+    private boolean add(int regionX, int regionZ, DrawSlot slot) {
+        if (slot == null || !slot.isDrawable()) {
+            return false;
+        }
+        float u1 = slot.u1(), v1 = slot.v1();
+        add(regionX, regionZ, slot.textureId(), u1, v1, slot.u2(), slot.v2());
+        long entry = (long) regionX << 32 | regionZ & 0xFFFFFFFFL;
+        entry ^= HashCommon.mix((long) slot.getVersion() << 32 | slot.textureId())
+                ^ HashCommon.mix((long) Float.floatToIntBits(u1) << 32 | Float.floatToIntBits(v1));
+        stamp = HashCommon.mix(stamp + entry);
+        return true;
+    }
+
+    /**
+     * Adds a region's texture to the batch.
+     * @param regionX the region's X coordinate
+     * @param regionZ the region's Z coordinate
+     * @param textureId the texture holding the region's image
+     * @param u1 the left edge of the region's image in the texture
+     * @param v1 the top edge of the region's image in the texture
+     * @param u2 the right edge of the region's image in the texture
+     * @param v2 the bottom edge of the region's image in the texture
+     */
+    public void add(int regionX, int regionZ, int textureId, float u1, float v1, float u2, float v2) {
+        if (size == textureIds.length) {
+            textureIds = Arrays.copyOf(textureIds, size << 1);
+            regionCoords = Arrays.copyOf(regionCoords, size << 2);
+            uvs = Arrays.copyOf(uvs, size << 3);
+        }
+        textureIds[size] = textureId;
+        regionCoords[size << 1] = regionX;
+        regionCoords[size << 1 | 1] = regionZ;
+        int uv = size << 2;
+        uvs[uv] = u1;
+        uvs[uv + 1] = v1;
+        uvs[uv + 2] = u2;
+        uvs[uv + 3] = v2;
+        size++;
+    }
+
+    /**
+     * Orders the batch so regions sharing a texture are next to each other.
+     */
+    public void sortByTexture() {
+        it.unimi.dsi.fastutil.Arrays.quickSort(0, size, (a, b) -> Integer.compare(textureIds[a], textureIds[b]), this::swap);
+    }
+
+    private void swap(int a, int b) {
+        int tempId = textureIds[a];
+        textureIds[a] = textureIds[b];
+        textureIds[b] = tempId;
+        for (int i = 0; i < 2; i++) {
+            int tempCoord = regionCoords[a << 1 | i];
+            regionCoords[a << 1 | i] = regionCoords[b << 1 | i];
+            regionCoords[b << 1 | i] = tempCoord;
+        }
+        for (int i = 0; i < 4; i++) {
+            float tempUv = uvs[a << 2 | i];
+            uvs[a << 2 | i] = uvs[b << 2 | i];
+            uvs[b << 2 | i] = tempUv;
+        }
+    }
+
+    /**
+     * @param start index of the first entry of a run
+     * @return the index after the last entry sharing the start's texture
+     */
+    public int runEnd(int start) {
+        int textureId = textureIds[start];
+        int end = start + 1;
+        while (end < size && textureIds[end] == textureId) {
+            end++;
+        }
+        return end;
+    }
+
+    public int getTextureId(int index) {
+        return textureIds[index];
+    }
+
+    public int getRegionX(int index) {
+        return regionCoords[index << 1];
+    }
+
+    public int getRegionZ(int index) {
+        return regionCoords[index << 1 | 1];
+    }
+
+    /**
+     * A region texture that can be batched.
+     */
+    public interface DrawSlot {
+        /**
+         * @return true if the texture has been uploaded and can be drawn.
+         */
+        boolean isDrawable();
+
+        int textureId();
+
+        /**
+         * @return a number that changes whenever the texture's image changes.
+         */
+        int getVersion();
+
+        float u1();
+
+        float v1();
+
+        float u2();
+
+        float v2();
+    }
+
+    /**
+     * Looks up region textures to collect, without needing loaded regions or
+     * a GL context.
+     */
+    @FunctionalInterface
+    public interface SlotSource {
+        /**
+         * @param regionX the region's X coordinate
+         * @param regionZ the region's Z coordinate
+         * @param lowRes whether to get the low-res texture or high-res one
+         * @return the region's texture, or null if it has none.
+         */
+        DrawSlot getSlot(int regionX, int regionZ, boolean lowRes);
+    }
+
+    /**
+     * Draws the batch, one draw call per texture. The position-texture shader
+     * and blending must already be set up.
+     * @param context the map's render context
+     * @return the number of draw calls made
+     */
+    public int draw(MapRenderContext context) {
+        BufferBuilder buffer = context.buffer;
+        int draws = 0;
+        for (int start = 0, end; start < size; start = end) {
+            end = runEnd(start);
+            RenderSystem.setShaderTexture(0, textureIds[start]);
+            buffer.begin(VertexFormat.DrawMode.QUADS, VertexFormats.POSITION_TEXTURE);
+            for (int i = start; i < end; i++) {
+                double drawX = regionCoords[i << 1] << 9;
+                double drawZ = regionCoords[i << 1 | 1] << 9;
+                int uv = i << 2;
+                float u1 = uvs[uv], v1 = uvs[uv + 1], u2 = uvs[uv + 2], v2 = uvs[uv + 3];
+                context.worldVertex(drawX, drawZ + 512, 0).texture(u1, v2).next();
+                context.worldVertex(drawX + 512, drawZ + 512, 0).texture(u2, v2).next();
+                context.worldVertex(drawX + 512, drawZ, 0).texture(u2, v1).next();
+                context.worldVertex(drawX, drawZ, 0).texture(u1, v1).next();
+            }
+            context.tessellator.draw();
+            draws++;
+        }
+        return draws;
+    }
+}
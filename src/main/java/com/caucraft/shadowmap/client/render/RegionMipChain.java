@@ -0,0 +1,158 @@
+package com.caucraft.shadowmap.client.render;
+
+import com.caucraft.shadowmap.api.util.MemorySizes;
+import com.mojang.blaze3d.systems.RenderSystem;
+
+/**
+ * CPU copy of a region's low-res texture and its mip levels, 128 x 128 down to
+ * 8 x 8. Rendering part of a region recomputes only the texels under it in
+ * each level, and uploading sends only the rectangle of each level changed
+ * since the last upload, so partial renders don't rebuild the whole low-res
+ * texture.
+ */
+public class RegionMipChain {
+    public static final int BASE_SIZE = 128;
+    public static final int MAX_LEVEL = 4;
+    private static final int BASE_SHIFT = 2; // 512 / 128 = 1 << 2
+
+    private final int[][] levels;
+    /** Dirty rectangle per level as {@code minX, minY, maxX, maxY}, exclusive max. */
+    private final int[] dirty;
+
+    public RegionMipChain() {
+        this.levels = new int[MAX_LEVEL + 1][];
+        for (int level = 0; level <= MAX_LEVEL; level++) {
+            int size = BASE_SIZE >> level;
+            levels[level] = new int[size * size];
+        }
+        this.dirty = new int[(MAX_LEVEL + 1) * 4];
+        clearDirty();
+    }
+
+    /**
+     * Recomputes every level's texels under an area of the rendered region
+     * image. The area must cover whole base level texels, so its bounds must
+     * be multiples of 4.
+     * @param imageBuffer the region's 512 x 512 ARGB image, see
+     * {@link RegionRenderContextImpl#imageBuffer}
+     * @param x1 the area's first pixel X, inclusive
+     * @param z1 the area's first pixel Z, inclusive
+     * @param x2 the area's last pixel X, exclusive
+     * @param z2 the area's last pixel Z, exclusive
+     */
+    public synchronized void updateArea(int[] imageBuffer, int x1, int z1, int x2, int z2) {
+        // Base level, each texel averaging 4 x 4 pixels.
+        int[] base = levels[0];
+        int minX = x1 >> BASE_SHIFT;
+        int minY = z1 >> BASE_SHIFT;
+        int maxX = x2 >> BASE_SHIFT;
+        int maxY = z2 >> BASE_SHIFT;
+        for (int y = minY; y < maxY; y++) {
+            for (int x = minX; x < maxX; x++) {
+                int a = 0, r = 0, g = 0, b = 0;
+                for (int pz = 0, row = (y << BASE_SHIFT) << 9 | x << BASE_SHIFT; pz < 4; pz++, row += 512) {
+                    for (int px = 0; px < 4; px++) {
+                        int argb = imageBuffer[row + px];
+                        a += argb >>> 24;
+                        r += argb >>> 16 & 0xFF;
+                        g += argb >>> 8 & 0xFF;
+                        b += argb & 0xFF;
+                    }
+                }
+                base[y * BASE_SIZE + x] = (a >> 4) << 24 | (r >> 4) << 16 | (g >> 4) << 8 | (b >> 4);
+            }
+        }
+        markDirty(0, minX, minY, maxX, maxY);
+
+        // Each following level averages 2 x 2 texels of the one before it.
+        for (int level = 1; level <= MAX_LEVEL; level++) {
+            int[] src = levels[level - 1];
+            int[] dest = levels[level];
+            int srcSize = BASE_SIZE >> (level - 1);
+            int destSize = srcSize >> 1;
+            minX >>= 1;
+            minY >>= 1;
+            maxX = (maxX + 1) >> 1;
+            maxY = (maxY + 1) >> 1;
+            for (int y = minY; y < maxY; y++) {
+                for (int x = minX; x < maxX; x++) {
+                    int srcIndex = (y << 1) * srcSize + (x << 1);
+                    dest[y * destSize + x] = average(src[srcIndex], src[srcIndex + 1], src[srcIndex + srcSize], src[srcIndex + srcSize + 1]);
+                }
+            }
+            markDirty(level, minX, minY, maxX, maxY);
+        }
+    }
+
+    private static int average(int argb1, int argb2, int argb3, int argb4) {
+        int a = (argb1 >>> 24) + (argb2 >>> 24) + (argb3 >>> 24) + (argb4 >>> 24);
+        int r = (argb1 >>> 16 & 0xFF) + (argb2 >>> 16 & 0xFF) + (argb3 >>> 16 & 0xFF) + (argb4 >>> 16 & 0xFF);
+        int g = (argb1 >>> 8 & 0xFF) + (argb2 >>> 8 & 0xFF) + (argb3 >>> 8 & 0xFF) + (argb4 >>> 8 & 0xFF);
+        int b = (argb1 & 0xFF) + (argb2 & 0xFF) + (argb3 & 0xFF) + (argb4 & 0xFF);
+        return (a >> 2) << 24 | (r >> 2) << 16 | (g >> 2) << 8 | (b >> 2);
+    }
+
+    private void markDirty(int level, int minX, int minY, int maxX, int maxY) {
+        int i = level << 2;
+        dirty[i] = Math.min(dirty[i], minX);
+        dirty[i + 1] = Math.min(dirty[i + 1], minY);
+        dirty[i + 2] = Math.max(dirty[i + 2], maxX);
+        dirty[i + 3] = Math.max(dirty[i + 3], maxY);
+    }
+
+    private void clearDirty() {
+        for (int i = 0; i < dirty.length; i += 4) {
+            dirty[i] = Integer.MAX_VALUE;
+            dirty[i + 1] = Integer.MAX_VALUE;
+            dirty[i + 2] = 0;
+            dirty[i + 3] = 0;
+        }
+    }
+
+    /**
+     * Marks every level as changed, ex. when the texture it is uploaded to
+     * has been recreated.
+     */
+    public synchronized void markAllDirty() {
+        for (int level = 0; level <= MAX_LEVEL; level++) {
+            int size = BASE_SIZE >> level;
+            markDirty(level, 0, 0, size, size);
+        }
+    }
+
+    /**
+     * Uploads the changed part of each level to a texture with mip levels
+     * allocated up to {@link #MAX_LEVEL}. Must be called on the render thread.
+     * @param uploadRing the ring to queue the uploads on
+     * @param textureId the texture to upload to
+     * @param offsetX the x offset of the chain's base level in the texture,
+     * a multiple of {@link #BASE_SIZE}
+     * @param offsetY the y offset of the chain's base level in the texture,
+     * a multiple of {@link #BASE_SIZE}
+     */
+    public synchronized void upload(PixelUploadRing uploadRing, int textureId, int offsetX, int offsetY) {
+        RenderSystem.assertOnRenderThread();
+        for (int level = 0; level <= MAX_LEVEL; level++) {
+            int i = level << 2;
+            int minX = dirty[i], minY = dirty[i + 1], maxX = dirty[i + 2], maxY = dirty[i + 3];
+            if (minX >= maxX || minY >= maxY) {
+                continue;
+            }
+            int size = BASE_SIZE >> level;
+            uploadRing.upload(textureId, level, (offsetX >> level) + minX, (offsetY >> level) + minY,
+                    maxX - minX, maxY - minY, levels[level], minY * size + minX, size);
+        }
+        clearDirty();
+    }
+
+    /**
+     * @return estimated memory used by this chain's levels.
+     */
+    public long estimateMemoryUsage() {
+        long usage = MemorySizes.object(2, 0) + MemorySizes.objectArray(levels.length) + MemorySizes.intArray(dirty.length);
+        for (int[] level : levels) {
+            usage += MemorySizes.intArray(level.length);
+        }
+        return usage;
+    }
+}
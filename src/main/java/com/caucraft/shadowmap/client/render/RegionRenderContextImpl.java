@@ -1,9 +1,12 @@
 package com.caucraft.shadowmap.client.render;
 
+import com.caucraft.shadowmap.api.map.CeilingType;
+import com.caucraft.shadowmap.client.map.BlockTintTable;
 import com.caucraft.shadowmap.client.map.BlocksChunk;
 import com.caucraft.shadowmap.client.map.BlocksRegion;
 import com.caucraft.shadowmap.client.map.MapWorldImpl;
 import com.caucraft.shadowmap.client.map.RegionContainerImpl;
+import com.caucraft.shadowmap.client.map.RegionHeightField;
 
 public class RegionRenderContextImpl {
     public final MapWorldImpl world;
@@ -22,8 +25,20 @@ public class RegionRenderContextImpl {
      */
     public final int[] argbBuffer;
 
+    /**
+     * Biome tints for the render, taken when the context is created so one
+     * render never sees two different tables.
+     */
+    public final BlockTintTable tintTable;
+
+    /**
+     * Slope points for the world's ceiling type, taken when the context is
+     * created.
+     */
+    public final RegionHeightField.SlopeKernel slopeKernel;
+
     private int chunkX, chunkZ, chunkBlockX, chunkBlockZ;
-    private BlocksChunk.HeightLightCache heightLightCache;
+    private final RegionHeightField heightField;
     private final BlocksRegion blockLayer;
     private BlocksChunk chunk;
 
@@ -32,8 +47,15 @@ public class RegionRenderContextImpl {
         this.region = region;
         this.imageBuffer = imageBuffer;
         this.argbBuffer = argbBuffer;
+        this.tintTable = world.getMapManager().getTintTable();
+        if (world.getCeilingType() == CeilingType.OPEN) {
+            this.slopeKernel = RegionHeightField.SlopeKernel.of(BlocksChunk.SURFACE_SLOPE_POINTS, BlocksChunk.SURFACE_SLOPE_MAX);
+        } else {
+            this.slopeKernel = RegionHeightField.SlopeKernel.of(BlocksChunk.CAVE_SLOPE_POINTS, BlocksChunk.CAVE_SLOPE_MAX);
+        }
 
         this.blockLayer = blockLayer;
+        this.heightField = RegionHeightField.forRegion(blockLayer);
     }
 
     /**
@@ -60,17 +82,7 @@ public class RegionRenderContextImpl {
             }
             return false;
         }
-        heightLightCache = new BlocksChunk.HeightLightCache(
-                chunk,
-                blockLayer.getChunkInWorld(chunkX - 1, chunkZ - 1),
-                blockLayer.getChunkInWorld(chunkX, chunkZ - 1),
-                blockLayer.getChunkInWorld(chunkX + 1, chunkZ - 1),
-                blockLayer.getChunkInWorld(chunkX - 1, chunkZ),
-                blockLayer.getChunkInWorld(chunkX + 1, chunkZ),
-                blockLayer.getChunkInWorld(chunkX - 1, chunkZ + 1),
-                blockLayer.getChunkInWorld(chunkX, chunkZ + 1),
-                blockLayer.getChunkInWorld(chunkX + 1, chunkZ + 1)
-        );
+        heightField.prepareChunk(chunkX, chunkZ);
         return true;
     }
 
@@ -78,8 +90,20 @@ public class RegionRenderContextImpl {
         return chunk;
     }
 
-    public BlocksChunk.HeightLightCache heightLightCache() {
-        return heightLightCache;
+    /**
+     * @return the region's height field, with the current chunk and its
+     * neighbors copied in.
+     */
+    public RegionHeightField heightField() {
+        return heightField;
+    }
+
+    public int regionBlockX(int chunkBlockX) {
+        return this.chunkBlockX | chunkBlockX;
+    }
+
+    public int regionBlockZ(int chunkBlockZ) {
+        return this.chunkBlockZ | chunkBlockZ;
     }
 
     public void setColor(int chunkBlockX, int chunkBlockZ, int color) {
@@ -0,0 +1,419 @@
+package com.caucraft.shadowmap.client.render;
+
+import com.mojang.blaze3d.platform.GlConst;
+import com.mojang.blaze3d.platform.GlStateManager;
+import com.mojang.blaze3d.systems.RenderSystem;
+import it.unimi.dsi.fastutil.objects.Object2ObjectOpenHashMap;
+import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL12;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A pool of square texture pages split into equal slots, one per region
+ * texture, so every region on the same page can be drawn with a single
+ * texture bind and draw call.
+ * <p>
+ * Released slots keep their image and stay assigned to their region until
+ * the slot is needed again, least recently released first, so a region that
+ * comes back into view soon after being cleaned up gets its old texture back.
+ * Pages are kept while the pool is within its memory budget and only deleted
+ * once it is over budget and none of their slots are in use, rather than
+ * being created and deleted as regions come and go.
+ * <p>
+ * Slots can be allocated and released from any thread. A page's texture is
+ * created on the render thread the first time one of its slots is uploaded
+ * to, and deleted on the render thread.
+ */
+public class RegionTextureAtlas {
+    private static final AtomicLong TOTAL_GL_BYTES = new AtomicLong();
+
+    public final int slotSize;
+    public final int slotsPerSide;
+    public final int maxLevel;
+    private final int pageSize;
+    private final long slotBytes;
+    private final List<Page> pages;
+    private final Object2ObjectOpenHashMap<Owner, Slot> cachedSlots;
+    /** Sentinel of the slots not in use, least recently released first. */
+    private final Slot lruHead;
+    private final AtomicLong hitCount;
+    private final AtomicLong missCount;
+    private int capacitySlots;
+    private int usedSlots;
+
+    /**
+     * @param slotSize width and height of each slot in texels
+     * @param slotsPerSide number of slots along each side of a page
+     * @param maxLevel the last mip level to allocate for each page, 0 for none
+     */
+    public RegionTextureAtlas(int slotSize, int slotsPerSide, int maxLevel) {
+        this.slotSize = slotSize;
+        this.slotsPerSide = slotsPerSide;
+        this.maxLevel = maxLevel;
+        this.pageSize = slotSize * slotsPerSide;
+        long bytes = 0;
+        for (int level = 0; level <= maxLevel; level++) {
+            int size = Math.max(1, slotSize >> level);
+            bytes += (long) size * size * 4;
+        }
+        this.slotBytes = bytes;
+        this.pages = new ArrayList<>();
+        this.cachedSlots = new Object2ObjectOpenHashMap<>();
+        this.lruHead = new Slot(this, null, 0, 0);
+        lruHead.prev = lruHead;
+        lruHead.next = lruHead;
+        this.hitCount = new AtomicLong();
+        this.missCount = new AtomicLong();
+    }
+
+    /**
+     * @return bytes of texture memory currently allocated on the GPU by every
+     * region texture page.
+     */
+    public static long getTotalGlBytes() {
+        return TOTAL_GL_BYTES.get();
+    }
+
+    /**
+     * @return bytes of texture memory one slot covers, including mip levels.
+     */
+    public long getSlotBytes() {
+        return slotBytes;
+    }
+
+    /**
+     * @return the number of allocations that got back their region's old
+     * slot and image.
+     */
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    /**
+     * @return the number of allocations that needed a different slot.
+     */
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    public synchronized int getUsedSlots() {
+        return usedSlots;
+    }
+
+    public synchronized int getTotalSlots() {
+        return pages.size() * slotsPerSide * slotsPerSide;
+    }
+
+    /**
+     * Sets how much texture memory the pool keeps pages for while they are
+     * idle. The pool still grows past the budget if more slots are in use at
+     * once.
+     * @param budgetBytes bytes of texture memory to keep pages for
+     */
+    public synchronized void setBudget(long budgetBytes) {
+        this.capacitySlots = (int) Math.min(Integer.MAX_VALUE, budgetBytes / slotBytes);
+        trimPages();
+    }
+
+    /**
+     * Takes a slot for a region: the one it last released if no other region
+     * has taken it since, otherwise the least recently released slot, adding
+     * a page if none are free.
+     * @param world the world the region belongs to
+     * @param regionKey the region's coordinates packed into a long
+     * @return the allocated slot. {@link Slot#isUploaded()} is true if it
+     * still holds the region's previous image.
+     */
+    public synchronized Slot allocate(Object world, long regionKey) {
+        Owner owner = new Owner(world, regionKey);
+        Slot slot = cachedSlots.remove(owner);
+        if (slot != null) {
+            hitCount.incrementAndGet();
+        } else {
+            missCount.incrementAndGet();
+            if (lruHead.next == lruHead) {
+                addPage();
+            }
+            slot = lruHead.next;
+            if (slot.owner != null) {
+                cachedSlots.remove(slot.owner);
+            }
+            slot.owner = owner;
+            slot.uploaded = false;
+        }
+        slot.unlink();
+        slot.inUse = true;
+        slot.page.usedCount++;
+        usedSlots++;
+        return slot;
+    }
+
+    /**
+     * Returns a slot to the pool.
+     * @param slot the slot to release
+     * @param keepImage whether the slot should stay assigned to its region
+     * until another region needs it, false if the region won't be back, ex.
+     * when its world is unloaded
+     */
+    public synchronized void release(Slot slot, boolean keepImage) {
+        if (!slot.inUse) {
+            return;
+        }
+        slot.inUse = false;
+        slot.page.usedCount--;
+        usedSlots--;
+        if (keepImage) {
+            cachedSlots.put(slot.owner, slot);
+            slot.linkBefore(lruHead);
+        } else {
+            slot.owner = null;
+            slot.uploaded = false;
+            slot.linkBefore(lruHead.next);
+        }
+        trimPages();
+    }
+
+    /**
+     * Unassigns a region's released slot if it still holds the region's
+     * image, ex. because the region's file was changed while it wasn't loaded
+     * and the image is out of date.
+     * @param world the world the region belongs to
+     * @param regionKey the region's coordinates packed into a long
+     */
+    public synchronized void forget(Object world, long regionKey) {
+        Slot slot = cachedSlots.remove(new Owner(world, regionKey));
+        if (slot != null) {
+            slot.owner = null;
+            slot.uploaded = false;
+            slot.unlink();
+            slot.linkBefore(lruHead.next);
+        }
+    }
+
+    /**
+     * Unassigns every released slot still holding an image from a world, so
+     * the pool doesn't keep the world reachable.
+     * @param world the world being unloaded
+     */
+    public synchronized void forgetWorld(Object world) {
+        for (Page page : pages) {
+            for (Slot slot : page.slots) {
+                if (!slot.inUse && slot.owner != null && slot.owner.world == world) {
+                    cachedSlots.remove(slot.owner);
+                    slot.owner = null;
+                    slot.uploaded = false;
+                    slot.unlink();
+                    slot.linkBefore(lruHead.next);
+                }
+            }
+        }
+    }
+
+    private void addPage() {
+        Page page = new Page(slotsPerSide * slotsPerSide);
+        for (int i = 0; i < page.slots.length; i++) {
+            Slot slot = new Slot(this, page, i % slotsPerSide * slotSize, i / slotsPerSide * slotSize);
+            page.slots[i] = slot;
+            slot.linkBefore(lruHead.next);
+        }
+        pages.add(page);
+    }
+
+    /**
+     * Deletes idle pages, most recently added first, while the pool is over
+     * its budget.
+     */
+    private void trimPages() {
+        int slotsPerPage = slotsPerSide * slotsPerSide;
+        for (int i = pages.size() - 1; i >= 0 && pages.size() * slotsPerPage > capacitySlots; i--) {
+            Page page = pages.get(i);
+            if (page.usedCount != 0) {
+                continue;
+            }
+            pages.remove(i);
+            for (Slot slot : page.slots) {
+                if (slot.owner != null) {
+                    cachedSlots.remove(slot.owner);
+                    slot.owner = null;
+                }
+                slot.unlink();
+            }
+            page.released = true;
+            if (RenderSystem.isOnRenderThreadOrInit()) {
+                deletePage(page);
+            } else {
+                RenderSystem.recordRenderCall(() -> deletePage(page));
+            }
+        }
+    }
+
+    private void createPage(Page page) {
+        int textureId = GlStateManager._genTexture();
+        GlStateManager._bindTexture(textureId);
+        for (int level = 0; level <= maxLevel; level++) {
+            int size = Math.max(1, pageSize >> level);
+            GlStateManager._texImage2D(GlConst.GL_TEXTURE_2D, level, GL11.GL_RGBA8, size, size, 0, GlConst.GL_RGBA, GlConst.GL_UNSIGNED_BYTE, null);
+        }
+        GlStateManager._texParameter(GlConst.GL_TEXTURE_2D, GL12.GL_TEXTURE_MAX_LEVEL, maxLevel);
+        GlStateManager._texParameter(GlConst.GL_TEXTURE_2D, GlConst.GL_TEXTURE_MIN_FILTER, maxLevel == 0 ? GlConst.GL_NEAREST : GL11.GL_NEAREST_MIPMAP_NEAREST);
+        GlStateManager._texParameter(GlConst.GL_TEXTURE_2D, GlConst.GL_TEXTURE_MAG_FILTER, GlConst.GL_NEAREST);
+        GlStateManager._texParameter(GlConst.GL_TEXTURE_2D, GL11.GL_TEXTURE_WRAP_S, GL12.GL_CLAMP_TO_EDGE);
+        GlStateManager._texParameter(GlConst.GL_TEXTURE_2D, GL11.GL_TEXTURE_WRAP_T, GL12.GL_CLAMP_TO_EDGE);
+        GlStateManager._bindTexture(0);
+        TOTAL_GL_BYTES.addAndGet(slotBytes * page.slots.length);
+        page.textureId = textureId;
+    }
+
+    private void deletePage(Page page) {
+        if (page.textureId > 0) {
+            GlStateManager._deleteTexture(page.textureId);
+            TOTAL_GL_BYTES.addAndGet(-slotBytes * page.slots.length);
+            page.textureId = -1;
+        }
+    }
+
+    private record Owner(Object world, long regionKey) {}
+
+    private static class Page {
+        private final Slot[] slots;
+        private int usedCount;
+        /** Only changed on the render thread, -1 until created. */
+        private volatile int textureId;
+        private volatile boolean released;
+
+        private Page(int slotCount) {
+            this.slots = new Slot[slotCount];
+            this.textureId = -1;
+        }
+    }
+
+    /**
+     * A region's square of a texture page. Pool bookkeeping fields are
+     * guarded by the atlas.
+     */
+    public static final class Slot implements RegionDrawBatch.DrawSlot {
+        public final RegionTextureAtlas atlas;
+        private final Page page;
+        /** The slot's left edge in the page, in texels. */
+        public final int x;
+        /** The slot's top edge in the page, in texels. */
+        public final int y;
+        private Owner owner;
+        private boolean inUse;
+        private Slot prev, next;
+        private volatile boolean uploaded;
+        /** Only changed on the render thread. */
+        private volatile int version;
+
+        private Slot(RegionTextureAtlas atlas, Page page, int x, int y) {
+            this.atlas = atlas;
+            this.page = page;
+            this.x = x;
+            this.y = y;
+        }
+
+        private void linkBefore(Slot other) {
+            prev = other.prev;
+            next = other;
+            prev.next = this;
+            other.prev = this;
+        }
+
+        private void unlink() {
+            if (prev != null) {
+                prev.next = next;
+                next.prev = prev;
+                prev = null;
+                next = null;
+            }
+        }
+
+        /**
+         * @return the page's texture, or -1 if it has not been created yet or
+         * has been deleted.
+         */
+        @Override
+        public int textureId() {
+            return page.textureId;
+        }
+
+        /**
+         * @return true if the slot's whole image has been uploaded and its
+         * page texture exists, so it can be drawn.
+         */
+        @Override
+        public boolean isDrawable() {
+            return uploaded && page.textureId > 0;
+        }
+
+        /**
+         * @return true if the slot's whole image has been uploaded.
+         */
+        public boolean isUploaded() {
+            return uploaded;
+        }
+
+        /**
+         * Marks the slot's whole image as uploaded, so it can be drawn. Must
+         * be called on the render thread.
+         */
+        public void markUploaded() {
+            uploaded = true;
+            version++;
+        }
+
+        /**
+         * Marks part of the slot's image as changed by an upload. Must be
+         * called on the render thread.
+         */
+        public void markChanged() {
+            version++;
+        }
+
+        /**
+         * @return a number that changes whenever the slot's image is uploaded
+         * to.
+         */
+        @Override
+        public int getVersion() {
+            return version;
+        }
+
+        /**
+         * Creates the slot's page texture if needed. Must be called on the
+         * render thread before uploading.
+         * @return true if the page texture exists and can be uploaded to,
+         * false if the page has already been deleted.
+         */
+        public boolean prepareUpload() {
+            RenderSystem.assertOnRenderThread();
+            if (page.textureId <= 0 && !page.released) {
+                atlas.createPage(page);
+            }
+            return page.textureId > 0;
+        }
+
+        @Override
+        public float u1() {
+            return (float) x / atlas.pageSize;
+        }
+
+        @Override
+        public float v1() {
+            return (float) y / atlas.pageSize;
+        }
+
+        @Override
+        public float u2() {
+            return (float) (x + atlas.slotSize) / atlas.pageSize;
+        }
+
+        @Override
+        public float v2() {
+            return (float) (y + atlas.slotSize) / atlas.pageSize;
+        }
+    }
+}
@@ -7,4 +7,12 @@ public interface MapBlockStateMutable extends MapBlockState {
     void shadowMap$setColorARGB(int argb);
     boolean shadowMap$isOpacitySet();
     void shadowMap$setOpacity(boolean opaque, int maxOpacity);
+
+    /**
+     * Sets this state's row in the current
+     * {@link com.caucraft.shadowmap.client.map.BlockTintTable}, or -1 if it
+     * isn't tinted.
+     */
+    void shadowMap$setTintIndex(int tintIndex);
+    int shadowMap$getTintIndex();
 }
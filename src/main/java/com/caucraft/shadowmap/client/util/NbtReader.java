@@ -6,7 +6,7 @@ import net.minecraft.nbt.NbtElement;
 import java.io.DataInputStream;
 import java.io.IOException;
 
-// A streaming nbt reader for RegionBitSet
+// A streaming nbt reader
 // TODO extend for general purpose in the future
 public class NbtReader {
 
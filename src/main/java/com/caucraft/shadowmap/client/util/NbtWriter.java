@@ -6,7 +6,7 @@ import net.minecraft.nbt.NbtElement;
 import java.io.DataOutputStream;
 import java.io.IOException;
 
-// A streaming nbt writer for RegionBitSet
+// A streaming nbt writer
 // TODO extend for general purpose in the future
 public class NbtWriter implements AutoCloseable {
     private IntArrayList typeStack;
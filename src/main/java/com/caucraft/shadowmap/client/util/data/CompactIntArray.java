@@ -1,5 +1,6 @@
 package com.caucraft.shadowmap.client.util.data;
 
+import com.caucraft.shadowmap.api.util.MemorySizes;
 import net.minecraft.nbt.NbtByte;
 import net.minecraft.nbt.NbtCompound;
 import net.minecraft.nbt.NbtInt;
@@ -138,7 +139,7 @@ public class CompactIntArray {
     }
 
     public int estimateMemoryUsage() {
-        return 40 + 8 * array.length;
+        return MemorySizes.object(1, 16) + MemorySizes.longArray(array.length);
     }
 
     public NbtCompound toNbt() {
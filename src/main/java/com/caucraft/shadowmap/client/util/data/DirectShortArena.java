@@ -0,0 +1,188 @@
+package com.caucraft.shadowmap.client.util.data;
+
+import com.caucraft.shadowmap.api.util.MemorySizes;
+import com.caucraft.shadowmap.client.ShadowMap;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import sun.misc.Unsafe;
+
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Allocates fixed-length {@link DirectShortArray}s out of large direct
+ * (off-heap) pages, so a region's per-column data lives in a handful of
+ * contiguous segments instead of one heap array per chunk. Pages are never
+ * moved or resized once allocated, so arrays handed out stay valid until
+ * {@link #release()} is called, which returns the pages to a shared pool and
+ * frees pages the pool has no room for. Arrays freed with
+ * {@link #free(DirectShortArray, boolean)} have their slots reused by later
+ * allocations. Arrays must not be used after they are freed or their arena is
+ * released.
+ */
+public class DirectShortArena {
+    private static final int MAX_POOLED_BYTES = 16 << 20;
+    private static final ConcurrentLinkedDeque<ByteBuffer> PAGE_POOL = new ConcurrentLinkedDeque<>();
+    private static final AtomicInteger POOLED_BYTES = new AtomicInteger();
+    private static final Unsafe UNSAFE = getUnsafe();
+
+    private final int arrayBytes;
+    private final int arraysPerPage;
+    private final List<ByteBuffer> pages;
+    /** Freed slots ready to be reused. */
+    private final IntArrayList freeSlots;
+    /** Freed slots that readers may still be looking at. */
+    private final IntArrayList deferredSlots;
+    private int nextSlot;
+    private boolean released;
+
+    /**
+     * @param arrayLength the number of elements in each array allocated from
+     * this arena.
+     * @param arraysPerPage number of arrays to fit in each off-heap page.
+     */
+    public DirectShortArena(int arrayLength, int arraysPerPage) {
+        this.arrayBytes = arrayLength << 1;
+        this.arraysPerPage = arraysPerPage;
+        this.pages = new ArrayList<>(4);
+        this.freeSlots = new IntArrayList();
+        this.deferredSlots = new IntArrayList();
+    }
+
+    /**
+     * Allocates a zeroed array from this arena. If the arena has already been
+     * released, the array is backed by its own heap buffer instead.
+     * @return a new array
+     */
+    public synchronized DirectShortArray allocate() {
+        if (released) {
+            return new DirectShortArray(arrayBytes >> 1);
+        }
+        if (!freeSlots.isEmpty()) {
+            int slot = freeSlots.popInt();
+            ByteBuffer buffer = getSlotBuffer(slot);
+            zero(buffer);
+            return new DirectShortArray(this, buffer, slot);
+        }
+        int slot = nextSlot;
+        if (slot % arraysPerPage == 0) {
+            pages.add(takePage(arrayBytes * arraysPerPage));
+        }
+        nextSlot++;
+        return new DirectShortArray(this, getSlotBuffer(slot), slot);
+    }
+
+    private ByteBuffer getSlotBuffer(int slot) {
+        return pages.get(slot / arraysPerPage).slice(slot % arraysPerPage * arrayBytes, arrayBytes);
+    }
+
+    /**
+     * Gives an array's slot back to this arena so a later allocation can
+     * reuse it. Does nothing if the array isn't from this arena or the arena
+     * has been released.
+     * @param array the array to free, which must no longer be used
+     * @param deferred whether readers may still be using the array, in which
+     * case the slot is only reused after {@link #reclaimDeferred()}
+     */
+    public synchronized void free(DirectShortArray array, boolean deferred) {
+        if (released || array.getArena() != this) {
+            return;
+        }
+        (deferred ? deferredSlots : freeSlots).add(array.slot);
+    }
+
+    /**
+     * Makes slots freed while readers were using them available for reuse.
+     * Must only be called once those readers are done.
+     */
+    public synchronized void reclaimDeferred() {
+        if (!deferredSlots.isEmpty()) {
+            freeSlots.addAll(deferredSlots);
+            deferredSlots.clear();
+        }
+    }
+
+    /**
+     * Returns every page held by this arena to the shared pool. Arrays
+     * allocated from this arena must no longer be used.
+     */
+    public synchronized void release() {
+        released = true;
+        for (ByteBuffer page : pages) {
+            releasePage(page);
+        }
+        pages.clear();
+        freeSlots.clear();
+        deferredSlots.clear();
+    }
+
+    /**
+     * @return memory used by this arena, including the off-heap pages.
+     */
+    public synchronized int estimateMemoryUsage() {
+        return MemorySizes.object(3, 13) + MemorySizes.object(1, 8) + MemorySizes.objectArray(pages.size())
+                + 2 * MemorySizes.object(1, 4) + MemorySizes.intArray(freeSlots.elements().length)
+                + MemorySizes.intArray(deferredSlots.elements().length)
+                + pages.size() * (MemorySizes.object(4, 32) + arrayBytes * arraysPerPage);
+    }
+
+    private static ByteBuffer takePage(int pageBytes) {
+        ByteBuffer page;
+        while ((page = PAGE_POOL.pollFirst()) != null) {
+            POOLED_BYTES.addAndGet(-page.capacity());
+            if (page.capacity() == pageBytes) {
+                return page;
+            }
+        }
+        return ByteBuffer.allocateDirect(pageBytes);
+    }
+
+    private static void releasePage(ByteBuffer page) {
+        if (POOLED_BYTES.addAndGet(page.capacity()) > MAX_POOLED_BYTES) {
+            POOLED_BYTES.addAndGet(-page.capacity());
+            freePage(page);
+            return;
+        }
+        zero(page);
+        PAGE_POOL.addFirst(page);
+    }
+
+    private static void zero(ByteBuffer buffer) {
+        for (int i = 0, end = buffer.capacity() & ~7; i < end; i += 8) {
+            buffer.putLong(i, 0L);
+        }
+        for (int i = buffer.capacity() & ~7; i < buffer.capacity(); i++) {
+            buffer.put(i, (byte) 0);
+        }
+    }
+
+    /**
+     * Frees a page's off-heap memory right away instead of waiting for the
+     * garbage collector to notice the buffer is unreachable, if the JVM
+     * allows it.
+     */
+    private static void freePage(ByteBuffer page) {
+        if (UNSAFE == null) {
+            return;
+        }
+        try {
+            UNSAFE.invokeCleaner(page);
+        } catch (IllegalArgumentException ex) {
+            ShadowMap.getLogger().warn("Couldn't free column page", ex);
+        }
+    }
+
+    private static Unsafe getUnsafe() {
+        try {
+            Field field = Unsafe.class.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            return (Unsafe) field.get(null);
+        } catch (ReflectiveOperationException | RuntimeException ex) {
+            ShadowMap.getLogger().warn("Column pages can't be freed explicitly, leaving them to the garbage collector", ex);
+            return null;
+        }
+    }
+}
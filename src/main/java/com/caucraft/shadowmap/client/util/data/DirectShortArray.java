@@ -0,0 +1,144 @@
+package com.caucraft.shadowmap.client.util.data;
+
+import com.caucraft.shadowmap.api.util.MemorySizes;
+import net.minecraft.nbt.NbtByte;
+import net.minecraft.nbt.NbtCompound;
+import net.minecraft.nbt.NbtInt;
+import net.minecraft.nbt.NbtLongArray;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * A flyweight over a fixed-length run of unsigned 16-bit values in a
+ * {@link ByteBuffer}, usually a slice of a page owned by a
+ * {@link DirectShortArena}. Values are stored little-endian so the backing
+ * bytes have the same layout as a {@link CompactIntArray} with 16 bits per
+ * element, and the NBT format is interchangeable with it.
+ */
+public class DirectShortArray {
+    public static final int BITS_PER_ELEMENT = 16;
+    private static final String BITS_PER_ELEMENT_KEY = "bpe";
+    private static final String LENGTH_KEY = "len";
+    private static final String DATA_KEY = "data";
+
+    private final DirectShortArena arena;
+    /** The array's slot in its arena, or -1 if it has its own buffer. */
+    final int slot;
+    private final ByteBuffer buffer;
+    public final int length;
+
+    /**
+     * Creates an array backed by its own heap buffer.
+     * @param length number of elements in the array
+     */
+    public DirectShortArray(int length) {
+        this(null, ByteBuffer.allocate(length << 1), -1);
+    }
+
+    DirectShortArray(DirectShortArena arena, ByteBuffer buffer, int slot) {
+        this.arena = arena;
+        this.slot = slot;
+        this.buffer = buffer.order(ByteOrder.LITTLE_ENDIAN);
+        this.length = buffer.capacity() >> 1;
+    }
+
+    /**
+     * @return the arena this array's memory belongs to, or null if it has its
+     * own buffer.
+     */
+    public DirectShortArena getArena() {
+        return arena;
+    }
+
+    public int get(int index) {
+        return buffer.getShort(index << 1) & 0xFFFF;
+    }
+
+    /**
+     * Gets multiple values, placing them in the provided destination array.
+     * @param startIndex the first index to copy to the destination array
+     * @param endIndex the index to stop copying to the destination array
+     * @param dest the destination array
+     * @param destStart the start position in the destination array
+     */
+    public void get(int startIndex, int endIndex, int[] dest, int destStart) {
+        ByteBuffer local = buffer;
+        for (int i = startIndex << 1, end = endIndex << 1, d = destStart; i < end; i += 2, d++) {
+            dest[d] = local.getShort(i) & 0xFFFF;
+        }
+    }
+
+    public void set(int index, int newValue) {
+        buffer.putShort(index << 1, (short) newValue);
+    }
+
+    /**
+     * Copies every value from another array of the same length into this one.
+     * @param other the array to copy from
+     */
+    public void copyFrom(DirectShortArray other) {
+        if (other.length != length) {
+            throw new IllegalArgumentException("Passed array has a different length: " + other.length + " != " + length);
+        }
+        buffer.put(0, other.buffer, 0, length << 1);
+    }
+
+    /**
+     * @return estimated memory used by this array. Memory for arrays allocated
+     * from an arena is counted by the arena's pages instead.
+     */
+    public int estimateMemoryUsage() {
+        // ByteBuffer views carry about a dozen fields of their own.
+        int usage = MemorySizes.object(2, 8) + MemorySizes.object(4, 32);
+        if (arena == null) {
+            usage += MemorySizes.byteArray(length << 1);
+        }
+        return usage;
+    }
+
+    public NbtCompound toNbt() {
+        long[] data = new long[(length + 3) >> 2];
+        buffer.asLongBuffer().get(0, data, 0, length >> 2);
+        for (int i = length & ~3; i < length; i++) {
+            data[i >> 2] |= (long) get(i) << ((i & 3) << 4);
+        }
+        NbtCompound root = new NbtCompound();
+        root.put(BITS_PER_ELEMENT_KEY, NbtByte.of((byte) BITS_PER_ELEMENT));
+        root.put(LENGTH_KEY, NbtInt.of(length));
+        root.put(DATA_KEY, new NbtLongArray(data));
+        return root;
+    }
+
+    public void loadNbt(NbtCompound root) {
+        int bitsPerElementNbt = root.getByte(BITS_PER_ELEMENT_KEY);
+        int lengthNbt = root.getInt(LENGTH_KEY);
+        long[] arrayNbt = root.getLongArray(DATA_KEY);
+        if (bitsPerElementNbt != BITS_PER_ELEMENT) {
+            throw new IllegalArgumentException("Passed compound has a different bitsPerElement: " + bitsPerElementNbt + " != " + BITS_PER_ELEMENT);
+        }
+        if (length != lengthNbt) {
+            throw new IllegalArgumentException("Passed compound has a different length: " + lengthNbt + " != " + length);
+        }
+        if (arrayNbt.length != (length + 3) >> 2) {
+            throw new IllegalArgumentException("Passed compound has a different data length: " + arrayNbt.length + " != " + ((length + 3) >> 2));
+        }
+        buffer.asLongBuffer().put(0, arrayNbt, 0, length >> 2);
+        for (int i = length & ~3; i < length; i++) {
+            set(i, (int) (arrayNbt[i >> 2] >>> ((i & 3) << 4)));
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {return true;}
+        if (o == null || getClass() != o.getClass()) {return false;}
+        DirectShortArray that = (DirectShortArray) o;
+        return length == that.length && buffer.equals(that.buffer);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * length + buffer.hashCode();
+    }
+}
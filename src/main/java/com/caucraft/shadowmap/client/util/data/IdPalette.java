@@ -0,0 +1,34 @@
+package com.caucraft.shadowmap.client.util.data;
+
+/**
+ * A palette shared between many {@link PaletteStorage}s, mapping values to
+ * stable int pointers. Pointer 0 is always {@code null}.
+ * @param <T> type of object contained in the palette.
+ */
+public interface IdPalette<T> {
+    /**
+     * @param index a pointer into the palette
+     * @return the value at the provided pointer
+     */
+    T get(int index);
+
+    /**
+     * Gets the pointer of the provided value, adding it to the palette if it
+     * is not present and the palette can grow.
+     * @param value the value to look up
+     * @return the value's pointer in this palette
+     */
+    int getOrAdd(T value);
+
+    /**
+     * @return the number of entries in the palette, including the null entry.
+     */
+    int size();
+
+    /**
+     * @return the number of bits needed to store any pointer into the palette.
+     */
+    int getBitsPerEntry();
+
+    int estimateMemoryUsage();
+}
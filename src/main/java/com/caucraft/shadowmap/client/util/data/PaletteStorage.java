@@ -1,11 +1,14 @@
 package com.caucraft.shadowmap.client.util.data;
 
-import com.caucraft.shadowmap.client.ShadowMap;
 import com.caucraft.shadowmap.api.util.IntToObjectFunction;
-import com.caucraft.shadowmap.client.util.MapUtils;
+import com.caucraft.shadowmap.api.util.MemorySizes;
 import com.caucraft.shadowmap.api.util.ObjectToIntFunction;
+import com.caucraft.shadowmap.client.ShadowMap;
+import com.caucraft.shadowmap.client.util.MapUtils;
 import com.caucraft.shadowmap.client.util.TriFunction;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
 import it.unimi.dsi.fastutil.objects.ObjectIterators;
+import it.unimi.dsi.fastutil.objects.Reference2IntOpenHashMap;
 import it.unimi.dsi.fastutil.objects.ReferenceOpenHashSet;
 import net.minecraft.nbt.NbtByte;
 import net.minecraft.nbt.NbtByteArray;
@@ -49,12 +52,29 @@ public class PaletteStorage<T> {
 
     private int storageSize;
     private final Class<?> contentType;
+    private final IdPalette<T> sharedPalette;
     private InternalStorage<T> storage;
     private int changes;
 
     public PaletteStorage(int storageSize, Class<?> contentType) {
+        this(storageSize, contentType, null);
+    }
+
+    /**
+     * @param storageSize the number of elements in the storage
+     * @param contentType the type of T, the content in storage
+     * @param sharedPalette a region-wide palette to store pointers into once
+     * this storage holds more than one distinct value, or null to use a
+     * palette local to this storage.
+     */
+    public PaletteStorage(int storageSize, Class<?> contentType, IdPalette<T> sharedPalette) {
         this.storageSize = storageSize;
         this.contentType = contentType;
+        this.sharedPalette = sharedPalette;
+    }
+
+    public IdPalette<T> getSharedPalette() {
+        return sharedPalette;
     }
 
     public int size() {
@@ -66,11 +86,11 @@ public class PaletteStorage<T> {
     }
 
     public int estimateMemoryUsage() {
-        return 32 + (storage == null ? 0 : storage.estimateMemoryUsage());
+        return MemorySizes.object(3, 8) + (storage == null ? 0 : storage.estimateMemoryUsage());
     }
 
     public void ensurePaletteCapacity(int capacity) {
-        if (capacity <= 2 || storage != null && storage.getPaletteCapacity() >= capacity) {
+        if (sharedPalette != null || capacity <= 2 || storage != null && storage.getPaletteCapacity() >= capacity) {
             return;
         }
         if (capacity <= 4) {
@@ -101,8 +121,12 @@ public class PaletteStorage<T> {
         }
         storage = storage.compact(contentType, storageSize, false);
         changes++;
-        if (storage.getPaletteSize() == storage.getPaletteCapacity()) {
-            storage = storage.createLargerWith(contentType, storageSize, value);
+        if (storage.getPaletteSize() >= storage.getPaletteCapacity()) {
+            if (sharedPalette != null && storage.getStorageType() != StorageType.SHARED) {
+                storage = SharedPaletteStorage.copyOf(sharedPalette, storageSize, storage, value);
+            } else {
+                storage = storage.createLargerWith(contentType, storageSize, value);
+            }
             changes++;
         }
         if (storage.set(index, value)) {
@@ -126,6 +150,38 @@ public class PaletteStorage<T> {
         changes++;
     }
 
+    /**
+     * Creates a copy of this storage that uses the provided shared palette, or
+     * returns this storage if it already uses it. Used when a storage is moved
+     * between regions, e.g. when merging a region loaded from disk.
+     * @param newPalette the shared palette the copy should use
+     * @return a storage with the same contents using the provided palette.
+     */
+    public PaletteStorage<T> withSharedPalette(IdPalette<T> newPalette) {
+        if (newPalette == sharedPalette) {
+            return this;
+        }
+        PaletteStorage<T> copy = new PaletteStorage<>(storageSize, contentType, newPalette);
+        if (storage != null) {
+            for (int i = 0; i < storageSize; i++) {
+                copy.set(i, storage.get(i));
+            }
+        }
+        return copy;
+    }
+
+    /**
+     * Starts a bulk edit of this storage. Writes are collected in a scratch
+     * buffer and applied by {@link BulkWriter#commit()}, which rebuilds the
+     * storage at most once with the exact palette size needed instead of
+     * compacting and growing on every palette overflow. Like {@link #set},
+     * external locking should be used while the edit is open.
+     * @return a writer for this storage.
+     */
+    public BulkWriter beginBulk() {
+        return new BulkWriter();
+    }
+
     private void boundsCheck(int index) {
         if (index < 0 || index >= storageSize) {
             throw new IndexOutOfBoundsException("Storage index is out of bounds of storage size: " + index);
@@ -173,7 +229,21 @@ public class PaletteStorage<T> {
             return;
         }
         storageSize = root.getInt(STORAGE_SIZE_KEY);
-        storage = (InternalStorage<T>) type.storageDeserializer.apply(this.contentType, root, paletteIndexer);
+        InternalStorage<T> loaded = (InternalStorage<T>) type.storageDeserializer.apply(this.contentType, root, paletteIndexer);
+        if (sharedPalette != null && type != StorageType.SINGLE) {
+            // Pointers (and per-storage palettes) from disk don't line up with
+            // this region's palette, re-point everything into it.
+            storage = null;
+            BulkWriter writer = beginBulk();
+            for (int i = 0; i < storageSize; i++) {
+                writer.set(i, loaded.get(i));
+            }
+            writer.commit();
+        } else if (type == StorageType.SHARED) {
+            storage = loaded.compact(contentType, storageSize, true);
+        } else {
+            storage = loaded;
+        }
         changes++;
     }
 
@@ -183,9 +253,13 @@ public class PaletteStorage<T> {
             root.put(STORAGE_SIZE_KEY, NbtInt.of(storageSize));
             return root;
         }
-        NbtCompound root = storage.toNbt(paletteIndexer);
+        InternalStorage<T> saved = storage;
+        if (saved instanceof SharedPaletteStorage<T> shared) {
+            saved = shared.withLocalPalette(contentType, storageSize);
+        }
+        NbtCompound root = saved.toNbt(paletteIndexer);
         root.put(STORAGE_SIZE_KEY, NbtInt.of(storageSize));
-        root.put(STORAGE_TYPE_KEY, NbtString.of(storage.getStorageType().name()));
+        root.put(STORAGE_TYPE_KEY, NbtString.of(saved.getStorageType().name()));
         return root;
     }
 
@@ -251,19 +325,7 @@ public class PaletteStorage<T> {
             if (isPresent.size() == 1) {
                 return new SinglePaletteStorage<>(isPresent.iterator().next());
             }
-            InternalStorage<T> newStorage;
-            if (isPresent.size() == 2) {
-                Iterator<T> keyIterator = isPresent.iterator();
-                newStorage = new DoublePaletteStorage<>(length, keyIterator.next(), keyIterator.next());
-            } else if (isPresent.size() <= 4) {
-                newStorage = new QuadPaletteStorage<>(length, null);
-            } else if (isPresent.size() <= 8) {
-                newStorage = new OctoPaletteStorage<>(length, null);
-            } else if (MathHelper.ceilLog2(isPresent.size()) < MathHelper.ceilLog2(length)) {
-                newStorage = new ArrayPaletteStorage<>(contentType, MathHelper.ceilLog2(isPresent.size()), length, null);
-            } else {
-                newStorage = new ArrayRawStorage<>(contentType, length);
-            }
+            InternalStorage<T> newStorage = createSized(contentType, length, isPresent);
             for (int i = 0; i < length; i++) {
                 if (!newStorage.set(i, get(i))) {
                     throw new IllegalStateException("Resized storage could not fit known palette size");
@@ -271,6 +333,25 @@ public class PaletteStorage<T> {
             }
             return newStorage;
         }
+
+        /**
+         * Creates an empty storage with the smallest palette able to hold the
+         * provided values, which must contain at least two distinct values.
+         */
+        static <T> InternalStorage<T> createSized(Class<?> contentType, int length, ReferenceOpenHashSet<T> values) {
+            if (values.size() == 2) {
+                Iterator<T> keyIterator = values.iterator();
+                return new DoublePaletteStorage<>(length, keyIterator.next(), keyIterator.next());
+            } else if (values.size() <= 4) {
+                return new QuadPaletteStorage<>(length, null);
+            } else if (values.size() <= 8) {
+                return new OctoPaletteStorage<>(length, null);
+            } else if (MathHelper.ceilLog2(values.size()) < MathHelper.ceilLog2(length)) {
+                return new ArrayPaletteStorage<>(contentType, MathHelper.ceilLog2(values.size()), length, null);
+            } else {
+                return new ArrayRawStorage<>(contentType, length);
+            }
+        }
     }
 
     private static final class SinglePaletteStorage<T> implements InternalStorage<T> {
@@ -311,7 +392,7 @@ public class PaletteStorage<T> {
 
         @Override
         public int estimateMemoryUsage() {
-            return 20;
+            return MemorySizes.object(1, 0);
         }
 
         @Override
@@ -444,7 +525,7 @@ public class PaletteStorage<T> {
 
         @Override
         public int estimateMemoryUsage() {
-            return 24 + 8 * contentPointers.length;
+            return MemorySizes.object(1, 0) + MemorySizes.longArray(contentPointers.length);
         }
 
         @Override
@@ -574,7 +655,7 @@ public class PaletteStorage<T> {
 
         @Override
         public int estimateMemoryUsage() {
-            return super.estimateMemoryUsage() + 16;
+            return super.estimateMemoryUsage() + 2 * MemorySizes.REFERENCE;
         }
 
         @Override
@@ -721,7 +802,7 @@ public class PaletteStorage<T> {
 
         @Override
         public int estimateMemoryUsage() {
-            return super.estimateMemoryUsage() + 36;
+            return super.estimateMemoryUsage() + 4 * MemorySizes.REFERENCE + 4;
         }
 
         @Override
@@ -909,7 +990,7 @@ public class PaletteStorage<T> {
 
         @Override
         public int estimateMemoryUsage() {
-            return super.estimateMemoryUsage() + 68;
+            return super.estimateMemoryUsage() + 8 * MemorySizes.REFERENCE + 4;
         }
 
         @Override
@@ -1059,7 +1140,7 @@ public class PaletteStorage<T> {
 
         @Override
         public int estimateMemoryUsage() {
-            return super.estimateMemoryUsage() + 24 + 8 * palette.length;
+            return super.estimateMemoryUsage() + MemorySizes.REFERENCE + 8 + MemorySizes.objectArray(palette.length);
         }
 
         @Override
@@ -1128,6 +1209,189 @@ public class PaletteStorage<T> {
         }
     }
 
+    /**
+     * Pointers into an {@link IdPalette}. Only ever created by the owning
+     * PaletteStorage when a shared palette is provided. Saved in one of the
+     * other layouts with a palette of only the values it holds, so files stay
+     * readable by versions without shared palettes. Files saved as
+     * {@link StorageType#SHARED} before that are loaded back as an
+     * {@link ArrayRawStorage} of values.
+     */
+    private static class SharedPaletteStorage<T> extends CompactLongStorage<T> {
+        private final IdPalette<T> palette;
+        private final int bitsPerEntry;
+
+        SharedPaletteStorage(IdPalette<T> palette, int bitsPerEntry, int length) {
+            super(bitsPerEntry, length);
+            this.palette = palette;
+            this.bitsPerEntry = bitsPerEntry;
+        }
+
+        /**
+         * Creates a shared palette storage with the contents of another
+         * storage, registering its contents and the value about to be added
+         * with the palette before deciding on bits per entry.
+         */
+        static <T> SharedPaletteStorage<T> copyOf(IdPalette<T> palette, int length, InternalStorage<T> oldStorage, T addedPaletteEntry) {
+            int[] pointers = new int[length];
+            for (int i = 0; i < length; i++) {
+                pointers[i] = palette.getOrAdd(oldStorage.get(i));
+            }
+            palette.getOrAdd(addedPaletteEntry);
+            int bitsPerEntry = palette.getBitsPerEntry();
+            SharedPaletteStorage<T> newStorage = new SharedPaletteStorage<>(palette, bitsPerEntry, length);
+            for (int i = 0; i < length; i++) {
+                newStorage.setPointerAt(bitsPerEntry, i, pointers[i]);
+            }
+            return newStorage;
+        }
+
+        private SharedPaletteStorage(NbtCompound root) {
+            super(root);
+            this.palette = null;
+            this.bitsPerEntry = root.getByte(POINTERS_BITS_PER_ENTRY_KEY);
+        }
+
+        static <T> InternalStorage<T> loadValues(Class<?> contentType, NbtCompound root, IntToObjectFunction<T> paletteIndexer) {
+            SharedPaletteStorage<T> pointers = new SharedPaletteStorage<>(root);
+            int bitsPerEntry = pointers.bitsPerEntry;
+            int length = Math.min(root.getInt(STORAGE_SIZE_KEY), pointers.contentPointers.length * 64 / bitsPerEntry);
+            ArrayRawStorage<T> values = new ArrayRawStorage<>(contentType, length);
+            Object[] cache = new Object[1 << bitsPerEntry];
+            boolean[] cached = new boolean[1 << bitsPerEntry];
+            for (int i = 0; i < length; i++) {
+                int pointer = pointers.getPointerAt(bitsPerEntry, i);
+                if (!cached[pointer]) {
+                    cache[pointer] = paletteIndexer.apply(pointer);
+                    cached[pointer] = true;
+                }
+                values.set(i, (T) cache[pointer]);
+            }
+            return values;
+        }
+
+        @Override
+        public boolean set(int index, T value) {
+            int pointer = palette.getOrAdd(value);
+            if (pointer >>> bitsPerEntry != 0) {
+                return false;
+            }
+            setPointerAt(bitsPerEntry, index, pointer);
+            return true;
+        }
+
+        @Override
+        public T get(int index) {
+            return palette.get(getPointerAt(bitsPerEntry, index));
+        }
+
+        @Override
+        public int getPaletteSize() {
+            return palette.size();
+        }
+
+        @Override
+        public int getPaletteCapacity() {
+            return 1 << bitsPerEntry;
+        }
+
+        @Override
+        public StorageType getStorageType() {
+            return StorageType.SHARED;
+        }
+
+        @Override
+        public int estimateMemoryUsage() {
+            // The shared palette is counted once by the region that owns it.
+            return super.estimateMemoryUsage() + MemorySizes.REFERENCE + 4;
+        }
+
+        @Override
+        public InternalStorage<T> createLargerWith(Class<?> contentType, int length, T addedPaletteEntry) {
+            int newBits = Math.max(bitsPerEntry + 1, palette.getBitsPerEntry());
+            return new SharedPaletteStorage<>(palette, newBits, length).withPointers(bitsPerEntry, newBits, length, this);
+        }
+
+        @Override
+        public InternalStorage<T> compact(Class<?> contentType, int length, boolean force) {
+            if (!force) {
+                return this;
+            }
+            int first = getPointerAt(bitsPerEntry, 0);
+            for (int i = 1; i < length; i++) {
+                if (getPointerAt(bitsPerEntry, i) != first) {
+                    return this;
+                }
+            }
+            return new SinglePaletteStorage<>(palette.get(first));
+        }
+
+        @Override
+        protected T getPaletteEntry(int pointer) {
+            return palette.get(pointer);
+        }
+
+        /**
+         * Copies this storage's values into a storage with its own palette,
+         * holding only the values this storage references.
+         */
+        InternalStorage<T> withLocalPalette(Class<?> contentType, int length) {
+            ReferenceOpenHashSet<T> values = new ReferenceOpenHashSet<>();
+            for (int i = 0; i < length; i++) {
+                values.add(get(i));
+            }
+            if (values.size() == 1) {
+                return new SinglePaletteStorage<>(values.iterator().next());
+            }
+            InternalStorage<T> local = InternalStorage.createSized(contentType, length, values);
+            for (int i = 0; i < length; i++) {
+                local.set(i, get(i));
+            }
+            return local;
+        }
+
+        @Override
+        public NbtCompound toNbt(ObjectToIntFunction<T> paletteIndexer) {
+            throw new UnsupportedOperationException("Shared palette storages are saved with a local palette");
+        }
+
+        @Override
+        public Iterator<T> iterator(int startIndex) {
+            return new CompactLongIterator(startIndex, bitsPerEntry);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            SharedPaletteStorage<?> that = (SharedPaletteStorage<?>) o;
+            if (palette == that.palette && bitsPerEntry == that.bitsPerEntry) {
+                return super.equals(o);
+            }
+            int length = Math.min(contentPointers.length * 64 / bitsPerEntry, that.contentPointers.length * 64 / that.bitsPerEntry);
+            for (int i = 0; i < length; i++) {
+                if (get(i) != that.get(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public int hashCode() {
+            int length = contentPointers.length * 64 / bitsPerEntry;
+            int result = 1;
+            for (int i = 0; i < length; i++) {
+                result = 31 * result + Objects.hashCode(get(i));
+            }
+            return result;
+        }
+    }
+
     private static class ArrayRawStorage<T> implements InternalStorage<T> {
         private final T[] content;
 
@@ -1175,7 +1439,7 @@ public class PaletteStorage<T> {
 
         @Override
         public int estimateMemoryUsage() {
-            return 16 + 8 * content.length;
+            return MemorySizes.object(1, 0) + MemorySizes.objectArray(content.length);
         }
 
         @Override
@@ -1232,7 +1496,8 @@ public class PaletteStorage<T> {
         QUAD(QuadPaletteStorage::new),
         OCTO(OctoPaletteStorage::new),
         ARRAY(ArrayPaletteStorage::new),
-        RAW(ArrayRawStorage::new);
+        RAW(ArrayRawStorage::new),
+        SHARED(SharedPaletteStorage::loadValues);
 
         public final TriFunction<Class<?>, NbtCompound, IntToObjectFunction<?>, InternalStorage<?>> storageDeserializer;
 
@@ -1241,6 +1506,109 @@ public class PaletteStorage<T> {
         }
     }
 
+    /**
+     * Pending writes to a {@link PaletteStorage}, as pointers into a temporary
+     * palette. Reads through the writer see pending writes, reads through the
+     * storage see its contents before the last commit.
+     */
+    public class BulkWriter {
+        private final int[] pointers;
+        private final Reference2IntOpenHashMap<T> ids;
+        private final ObjectArrayList<T> values;
+        private int pending;
+
+        private BulkWriter() {
+            this.pointers = new int[storageSize];
+            Arrays.fill(pointers, -1);
+            this.ids = new Reference2IntOpenHashMap<>(16);
+            this.ids.defaultReturnValue(-1);
+            this.values = new ObjectArrayList<>(16);
+        }
+
+        public void set(int index, T value) {
+            boundsCheck(index);
+            int id = ids.getInt(value);
+            if (id == -1) {
+                id = values.size();
+                values.add(value);
+                ids.put(value, id);
+            }
+            if (pointers[index] == -1) {
+                pending++;
+            }
+            pointers[index] = id;
+        }
+
+        public T get(int index) {
+            boundsCheck(index);
+            int id = pointers[index];
+            if (id == -1) {
+                return PaletteStorage.this.get(index);
+            }
+            return values.get(id);
+        }
+
+        /**
+         * Applies all pending writes to the storage. If every written value
+         * already fits the storage's palette the writes are applied in place,
+         * otherwise the storage is rebuilt once with exactly the palette it
+         * needs. The writer can be reused afterwards.
+         */
+        public void commit() {
+            if (pending == 0) {
+                return;
+            }
+            int[] localPointers = pointers;
+            int length = storageSize;
+            InternalStorage<T> localStorage = storage;
+            boolean fits = localStorage != null;
+            for (int i = 0; i < length && fits; i++) {
+                int id = localPointers[i];
+                if (id != -1) {
+                    fits = localStorage.set(i, values.get(id));
+                }
+            }
+            if (!fits) {
+                // Values already applied in place match the pending writes, so
+                // the final contents can still be read as pending-or-storage.
+                T[] content = (T[]) Array.newInstance(contentType, length);
+                ReferenceOpenHashSet<T> isPresent = new ReferenceOpenHashSet<>(values.size() + 8);
+                for (int i = 0; i < length; i++) {
+                    int id = localPointers[i];
+                    T value;
+                    if (id != -1) {
+                        value = values.get(id);
+                    } else {
+                        value = localStorage == null ? null : localStorage.get(i);
+                    }
+                    content[i] = value;
+                    isPresent.add(value);
+                }
+                if (isPresent.size() == 1) {
+                    localStorage = new SinglePaletteStorage<>(content[0]);
+                } else if (sharedPalette != null) {
+                    for (T value : isPresent) {
+                        sharedPalette.getOrAdd(value);
+                    }
+                    localStorage = new SharedPaletteStorage<>(sharedPalette, sharedPalette.getBitsPerEntry(), length);
+                } else {
+                    localStorage = InternalStorage.createSized(contentType, length, isPresent);
+                }
+                for (int i = 0; i < length; i++) {
+                    if (!localStorage.set(i, content[i])) {
+                        throw new IllegalStateException("Rebuilt storage could not fit known palette size");
+                    }
+                }
+                storage = localStorage;
+            }
+            changes++;
+            Arrays.fill(localPointers, -1);
+            ids.clear();
+            values.clear();
+            pending = 0;
+        }
+    }
+
     private class LengthLimitedIterator<T> implements Iterator<T> {
         private final Iterator<T> wrapped;
         private final int changes;
@@ -0,0 +1,660 @@
+package com.caucraft.shadowmap.client.util.data;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ObjectIterator;
+import net.minecraft.nbt.NbtByteArray;
+import net.minecraft.nbt.NbtCompound;
+import net.minecraft.nbt.NbtElement;
+import net.minecraft.nbt.NbtList;
+import net.minecraft.nbt.NbtLongArray;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * A sparse set of region coordinates. Coordinates are grouped into 64x64
+ * blocks of regions, each stored as either a sorted array of the regions
+ * present or a 4096-bit bitmap once that is smaller, similar to a roaring
+ * bitmap. Reads may happen concurrently, writes are exclusive.
+ */
+public class RegionSet {
+    private static final int BLOCK_SHIFT = 6;
+    private static final int BLOCK_MASK = (1 << BLOCK_SHIFT) - 1;
+    private static final int BLOCK_BITS = 1 << BLOCK_SHIFT * 2;
+    /** Largest array container, past which a bitmap takes less memory. */
+    private static final int ARRAY_MAX = BLOCK_BITS / 16;
+    private static final String DATA_KEY = "set";
+
+    private final ReadWriteLock lock;
+    private final Long2ObjectOpenHashMap<Container> containers;
+    private int size;
+
+    public RegionSet() {
+        this.lock = new ReentrantReadWriteLock();
+        this.containers = new Long2ObjectOpenHashMap<>();
+    }
+
+    private static long getBlockKey(int regionX, int regionZ) {
+        return (long) (regionZ >> BLOCK_SHIFT) << 32 | (regionX >> BLOCK_SHIFT) & 0xFFFF_FFFFL;
+    }
+
+    private static int getBlockIndex(int regionX, int regionZ) {
+        return (regionZ & BLOCK_MASK) << BLOCK_SHIFT | regionX & BLOCK_MASK;
+    }
+
+    public boolean contains(int regionX, int regionZ) {
+        Lock readLock = lock.readLock();
+        try {
+            readLock.lock();
+            Container container = containers.get(getBlockKey(regionX, regionZ));
+            return container != null && container.contains(getBlockIndex(regionX, regionZ));
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * @return true if the region was not already in the set.
+     */
+    public boolean add(int regionX, int regionZ) {
+        Lock writeLock = lock.writeLock();
+        try {
+            writeLock.lock();
+            long key = getBlockKey(regionX, regionZ);
+            int index = getBlockIndex(regionX, regionZ);
+            Container container = containers.get(key);
+            if (container == null) {
+                containers.put(key, new ArrayContainer(index));
+            } else if (container.contains(index)) {
+                return false;
+            } else {
+                Container newContainer = container.add(index);
+                if (newContainer != container) {
+                    containers.put(key, newContainer);
+                }
+            }
+            size++;
+            return true;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * @return true if the region was in the set.
+     */
+    public boolean remove(int regionX, int regionZ) {
+        Lock writeLock = lock.writeLock();
+        try {
+            writeLock.lock();
+            long key = getBlockKey(regionX, regionZ);
+            int index = getBlockIndex(regionX, regionZ);
+            Container container = containers.get(key);
+            if (container == null || !container.contains(index)) {
+                return false;
+            }
+            Container newContainer = container.remove(index);
+            if (newContainer == null) {
+                containers.remove(key);
+            } else if (newContainer != container) {
+                containers.put(key, newContainer);
+            }
+            size--;
+            return true;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    public int size() {
+        Lock readLock = lock.readLock();
+        try {
+            readLock.lock();
+            return size;
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    public void clear() {
+        Lock writeLock = lock.writeLock();
+        try {
+            writeLock.lock();
+            containers.clear();
+            size = 0;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Adds every region in the other set to this one.
+     */
+    public void addAll(RegionSet other) {
+        if (other == this) {
+            return;
+        }
+        Long2ObjectOpenHashMap<Container> theirs = other.snapshot();
+        Lock writeLock = lock.writeLock();
+        try {
+            writeLock.lock();
+            for (Long2ObjectMap.Entry<Container> entry : theirs.long2ObjectEntrySet()) {
+                long key = entry.getLongKey();
+                Container mine = containers.get(key);
+                Container union = mine == null ? entry.getValue() : mine.or(entry.getValue());
+                size += union.cardinality() - (mine == null ? 0 : mine.cardinality());
+                containers.put(key, union);
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Removes every region from this set that is not in the other set.
+     */
+    public void retainAll(RegionSet other) {
+        if (other == this) {
+            return;
+        }
+        Long2ObjectOpenHashMap<Container> theirs = other.snapshot();
+        Lock writeLock = lock.writeLock();
+        try {
+            writeLock.lock();
+            ObjectIterator<Long2ObjectMap.Entry<Container>> iterator = containers.long2ObjectEntrySet().fastIterator();
+            while (iterator.hasNext()) {
+                Long2ObjectMap.Entry<Container> entry = iterator.next();
+                Container mine = entry.getValue();
+                Container their = theirs.get(entry.getLongKey());
+                Container intersection = their == null ? null : mine.and(their);
+                size -= mine.cardinality() - (intersection == null ? 0 : intersection.cardinality());
+                if (intersection == null) {
+                    iterator.remove();
+                } else {
+                    entry.setValue(intersection);
+                }
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Passes every region in the set to the consumer, grouped by 64x64 block
+     * of regions. The set must not be modified by the consumer.
+     */
+    public void forEach(RegionConsumer consumer) {
+        Lock readLock = lock.readLock();
+        try {
+            readLock.lock();
+            for (Long2ObjectMap.Entry<Container> entry : containers.long2ObjectEntrySet()) {
+                long key = entry.getLongKey();
+                int baseX = (int) key << BLOCK_SHIFT;
+                int baseZ = (int) (key >> 32) << BLOCK_SHIFT;
+                entry.getValue().forEach(baseX, baseZ, consumer);
+            }
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    private Long2ObjectOpenHashMap<Container> snapshot() {
+        Lock readLock = lock.readLock();
+        try {
+            readLock.lock();
+            Long2ObjectOpenHashMap<Container> copy = new Long2ObjectOpenHashMap<>(containers.size());
+            for (Long2ObjectMap.Entry<Container> entry : containers.long2ObjectEntrySet()) {
+                copy.put(entry.getLongKey(), entry.getValue().copy());
+            }
+            return copy;
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    // <editor-fold desc="Serialization">
+
+    /**
+     * Writes the set in its compact binary form: the number of blocks, then
+     * for each block its key, cardinality, and either its sorted indices or
+     * its bitmap words.
+     */
+    public void write(DataOutput out) throws IOException {
+        Lock readLock = lock.readLock();
+        try {
+            readLock.lock();
+            out.writeInt(containers.size());
+            for (Long2ObjectMap.Entry<Container> entry : containers.long2ObjectEntrySet()) {
+                Container container = entry.getValue();
+                out.writeLong(entry.getLongKey());
+                out.writeShort(container.cardinality() - 1);
+                container.write(out);
+            }
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * Replaces the contents of this set with those read from the provided
+     * input, as written by {@link #write(DataOutput)}.
+     */
+    public void read(DataInput in) throws IOException {
+        int count = in.readInt();
+        if (count < 0) {
+            throw new IOException("Negative block count: " + count);
+        }
+        Long2ObjectOpenHashMap<Container> newContainers = new Long2ObjectOpenHashMap<>(count);
+        int newSize = 0;
+        for (int i = 0; i < count; i++) {
+            long key = in.readLong();
+            int cardinality = in.readUnsignedShort() + 1;
+            if (cardinality > BLOCK_BITS) {
+                throw new IOException("Block cardinality out of range: " + cardinality);
+            }
+            Container container = cardinality > ARRAY_MAX
+                    ? BitmapContainer.read(in, cardinality)
+                    : ArrayContainer.read(in, cardinality);
+            newContainers.put(key, container);
+            newSize += cardinality;
+        }
+        Lock writeLock = lock.writeLock();
+        try {
+            writeLock.lock();
+            containers.clear();
+            containers.putAll(newContainers);
+            size = newSize;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    public NbtCompound toNbt() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            write(out);
+        } catch (IOException ex) {
+            // ByteArrayOutputStream doesn't throw
+            throw new IllegalStateException(ex);
+        }
+        NbtCompound root = new NbtCompound();
+        root.put(DATA_KEY, new NbtByteArray(bytes.toByteArray()));
+        return root;
+    }
+
+    public void loadNbt(NbtCompound root) throws IOException {
+        if (root.contains(DATA_KEY, NbtElement.BYTE_ARRAY_TYPE)) {
+            read(new DataInputStream(new ByteArrayInputStream(root.getByteArray(DATA_KEY))));
+            return;
+        }
+        clear();
+        loadLegacyNbt(root);
+    }
+
+    /**
+     * Reads the format previously used for import progress, a tree split by
+     * the sign of each coordinate then by interleaved 4-bit groups of the low
+     * 16 bits of each coordinate.
+     */
+    private void loadLegacyNbt(NbtCompound root) throws IOException {
+        if (!root.contains("0", NbtElement.LIST_TYPE) || !root.contains("p", NbtElement.BYTE_TYPE)) {
+            throw new IOException("Region set data missing");
+        }
+        byte signPresence = root.getByte("p");
+        NbtList signList = root.getList("0", NbtElement.COMPOUND_TYPE);
+        for (int sign = 0, signIndex = 0; sign < 4; sign++) {
+            if ((signPresence & 1 << sign) == 0) {
+                continue;
+            }
+            NbtCompound level1 = signList.getCompound(signIndex++);
+            long[] presence1 = level1.getLongArray("p");
+            NbtList list1 = level1.getList("1", NbtElement.COMPOUND_TYPE);
+            if (presence1.length != 4) {
+                throw new IOException("Presence flags length not 256");
+            }
+            for (int j = 0, index1 = 0; j < 256; j++) {
+                if ((presence1[j >> 6] & 1L << j) == 0) {
+                    continue;
+                }
+                NbtCompound level2 = list1.getCompound(index1++);
+                long[] presence2 = level2.getLongArray("p");
+                NbtList list2 = level2.getList("2", NbtElement.LONG_ARRAY_TYPE);
+                if (presence2.length != 4) {
+                    throw new IOException("Presence flags length not 256");
+                }
+                for (int k = 0, index2 = 0; k < 256; k++) {
+                    if ((presence2[k >> 6] & 1L << k) == 0) {
+                        continue;
+                    }
+                    long[] words = ((NbtLongArray) list2.get(index2++)).getLongArray();
+                    for (int l = 0; l < words.length && l < 1024; l++) {
+                        long word = words[l];
+                        while (word != 0) {
+                            int bit = Long.numberOfTrailingZeros(word);
+                            word &= word - 1;
+                            int key = j << 24 | k << 16 | l << 6 | bit;
+                            int x = key & 0xF | key >>> 4 & 0xF0 | key >>> 8 & 0xF00 | key >>> 12 & 0xF000;
+                            int z = key >>> 4 & 0xF | key >>> 8 & 0xF0 | key >>> 12 & 0xF00 | key >>> 16 & 0xF000;
+                            add((sign & 1) != 0 ? x : x - 0x10000, (sign & 2) != 0 ? z : z - 0x10000);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    // </editor-fold>
+
+    @FunctionalInterface
+    public interface RegionConsumer {
+        void accept(int regionX, int regionZ);
+    }
+
+    // <editor-fold desc="Containers">
+
+    /**
+     * Regions present in one 64x64 block of regions, indexed by
+     * {@link #getBlockIndex(int, int)}. Never empty.
+     */
+    private static abstract class Container {
+        abstract boolean contains(int index);
+
+        /**
+         * @return this container or its replacement with the index added.
+         */
+        abstract Container add(int index);
+
+        /**
+         * @return this container or its replacement with the index removed,
+         * or null if it is now empty.
+         */
+        abstract Container remove(int index);
+
+        abstract int cardinality();
+
+        abstract Container copy();
+
+        abstract BitmapContainer toBitmap();
+
+        abstract void forEach(int baseX, int baseZ, RegionConsumer consumer);
+
+        abstract void write(DataOutput out) throws IOException;
+
+        /**
+         * @return a new container with the union of both containers.
+         */
+        Container or(Container other) {
+            BitmapContainer result = toBitmap();
+            long[] words = result.words;
+            long[] otherWords = other.toBitmap().words;
+            int cardinality = 0;
+            for (int i = 0; i < words.length; i++) {
+                cardinality += Long.bitCount(words[i] |= otherWords[i]);
+            }
+            result.cardinality = cardinality;
+            return cardinality > ARRAY_MAX ? result : result.toArray();
+        }
+
+        /**
+         * @return a new container with the intersection of both containers,
+         * or null if it is empty.
+         */
+        Container and(Container other) {
+            BitmapContainer result = toBitmap();
+            long[] words = result.words;
+            long[] otherWords = other.toBitmap().words;
+            int cardinality = 0;
+            for (int i = 0; i < words.length; i++) {
+                cardinality += Long.bitCount(words[i] &= otherWords[i]);
+            }
+            result.cardinality = cardinality;
+            if (cardinality == 0) {
+                return null;
+            }
+            return cardinality > ARRAY_MAX ? result : result.toArray();
+        }
+    }
+
+    private static final class ArrayContainer extends Container {
+        private short[] values;
+        private int size;
+
+        ArrayContainer(int index) {
+            this.values = new short[4];
+            this.values[0] = (short) index;
+            this.size = 1;
+        }
+
+        ArrayContainer(short[] values, int size) {
+            this.values = values;
+            this.size = size;
+        }
+
+        static ArrayContainer read(DataInput in, int cardinality) throws IOException {
+            short[] values = new short[cardinality];
+            int last = -1;
+            for (int i = 0; i < cardinality; i++) {
+                int value = in.readUnsignedShort();
+                if (value <= last || value >= BLOCK_BITS) {
+                    throw new IOException("Region indices out of order or range");
+                }
+                values[i] = (short) (last = value);
+            }
+            return new ArrayContainer(values, cardinality);
+        }
+
+        private int search(int index) {
+            int low = 0;
+            int high = size - 1;
+            while (low <= high) {
+                int mid = low + high >>> 1;
+                int value = values[mid];
+                if (value < index) {
+                    low = mid + 1;
+                } else if (value > index) {
+                    high = mid - 1;
+                } else {
+                    return mid;
+                }
+            }
+            return -(low + 1);
+        }
+
+        @Override
+        boolean contains(int index) {
+            return search(index) >= 0;
+        }
+
+        @Override
+        Container add(int index) {
+            int position = search(index);
+            if (position >= 0) {
+                return this;
+            }
+            if (size == ARRAY_MAX) {
+                return toBitmap().add(index);
+            }
+            position = -position - 1;
+            if (size == values.length) {
+                short[] newValues = new short[Math.min(ARRAY_MAX, size << 1)];
+                System.arraycopy(values, 0, newValues, 0, size);
+                values = newValues;
+            }
+            System.arraycopy(values, position, values, position + 1, size - position);
+            values[position] = (short) index;
+            size++;
+            return this;
+        }
+
+        @Override
+        Container remove(int index) {
+            int position = search(index);
+            if (position < 0) {
+                return this;
+            }
+            if (size == 1) {
+                return null;
+            }
+            System.arraycopy(values, position + 1, values, position, size - position - 1);
+            size--;
+            return this;
+        }
+
+        @Override
+        int cardinality() {
+            return size;
+        }
+
+        @Override
+        Container copy() {
+            return new ArrayContainer(values.clone(), size);
+        }
+
+        @Override
+        BitmapContainer toBitmap() {
+            long[] words = new long[BLOCK_BITS >> 6];
+            for (int i = 0; i < size; i++) {
+                int value = values[i];
+                words[value >> 6] |= 1L << value;
+            }
+            return new BitmapContainer(words, size);
+        }
+
+        @Override
+        Container and(Container other) {
+            short[] result = new short[size];
+            int resultSize = 0;
+            for (int i = 0; i < size; i++) {
+                if (other.contains(values[i])) {
+                    result[resultSize++] = values[i];
+                }
+            }
+            return resultSize == 0 ? null : new ArrayContainer(result, resultSize);
+        }
+
+        @Override
+        void forEach(int baseX, int baseZ, RegionConsumer consumer) {
+            for (int i = 0; i < size; i++) {
+                int value = values[i];
+                consumer.accept(baseX | value & BLOCK_MASK, baseZ | value >> BLOCK_SHIFT);
+            }
+        }
+
+        @Override
+        void write(DataOutput out) throws IOException {
+            for (int i = 0; i < size; i++) {
+                out.writeShort(values[i]);
+            }
+        }
+    }
+
+    private static final class BitmapContainer extends Container {
+        private final long[] words;
+        private int cardinality;
+
+        BitmapContainer(long[] words, int cardinality) {
+            this.words = words;
+            this.cardinality = cardinality;
+        }
+
+        static BitmapContainer read(DataInput in, int cardinality) throws IOException {
+            long[] words = new long[BLOCK_BITS >> 6];
+            int actual = 0;
+            for (int i = 0; i < words.length; i++) {
+                actual += Long.bitCount(words[i] = in.readLong());
+            }
+            if (actual != cardinality) {
+                throw new IOException("Block cardinality mismatch: " + actual + " != " + cardinality);
+            }
+            return new BitmapContainer(words, cardinality);
+        }
+
+        @Override
+        boolean contains(int index) {
+            return (words[index >> 6] & 1L << index) != 0;
+        }
+
+        @Override
+        Container add(int index) {
+            long bit = 1L << index;
+            if ((words[index >> 6] & bit) == 0) {
+                words[index >> 6] |= bit;
+                cardinality++;
+            }
+            return this;
+        }
+
+        @Override
+        Container remove(int index) {
+            long bit = 1L << index;
+            if ((words[index >> 6] & bit) == 0) {
+                return this;
+            }
+            words[index >> 6] &= ~bit;
+            cardinality--;
+            return cardinality > ARRAY_MAX ? this : toArray();
+        }
+
+        @Override
+        int cardinality() {
+            return cardinality;
+        }
+
+        @Override
+        Container copy() {
+            return new BitmapContainer(words.clone(), cardinality);
+        }
+
+        @Override
+        BitmapContainer toBitmap() {
+            return (BitmapContainer) copy();
+        }
+
+        ArrayContainer toArray() {
+            short[] values = new short[Math.max(cardinality, 1)];
+            int size = 0;
+            for (int i = 0; i < words.length; i++) {
+                long word = words[i];
+                while (word != 0) {
+                    values[size++] = (short) (i << 6 | Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                }
+            }
+            return new ArrayContainer(values, size);
+        }
+
+        @Override
+        void forEach(int baseX, int baseZ, RegionConsumer consumer) {
+            for (int i = 0; i < words.length; i++) {
+                long word = words[i];
+                while (word != 0) {
+                    int value = i << 6 | Long.numberOfTrailingZeros(word);
+                    word &= word - 1;
+                    consumer.accept(baseX | value & BLOCK_MASK, baseZ | value >> BLOCK_SHIFT);
+                }
+            }
+        }
+
+        @Override
+        void write(DataOutput out) throws IOException {
+            for (long word : words) {
+                out.writeLong(word);
+            }
+        }
+    }
+
+    // </editor-fold>
+}
@@ -0,0 +1,55 @@
+package com.caucraft.shadowmap.client.util.data;
+
+import net.minecraft.util.collection.IndexedIterable;
+import net.minecraft.util.math.MathHelper;
+
+/**
+ * A fixed palette backed by a game id list such as {@code Block.STATE_IDS},
+ * where each value's pointer is its raw id plus one. Storages using it hold
+ * raw ids directly, so comparing two of them is a plain comparison of packed
+ * ints and no per-region palette has to be kept or grown. The id list is
+ * expected not to change while storages using it are loaded.
+ * @param <T> type of object contained in the palette.
+ */
+public class RegistryIdPalette<T> implements IdPalette<T> {
+    private final IndexedIterable<T> idList;
+
+    public RegistryIdPalette(IndexedIterable<T> idList) {
+        this.idList = idList;
+    }
+
+    @Override
+    public T get(int index) {
+        return index == 0 ? null : idList.get(index - 1);
+    }
+
+    @Override
+    public int getOrAdd(T value) {
+        if (value == null) {
+            return 0;
+        }
+        int rawId = idList.getRawId(value);
+        if (rawId == -1) {
+            throw new IllegalArgumentException("Value is not registered: " + value);
+        }
+        return rawId + 1;
+    }
+
+    @Override
+    public int size() {
+        return idList.size() + 1;
+    }
+
+    @Override
+    public int getBitsPerEntry() {
+        return Math.max(1, MathHelper.ceilLog2(idList.size() + 1));
+    }
+
+    /**
+     * @return 0, the id list is global and not owned by any region.
+     */
+    @Override
+    public int estimateMemoryUsage() {
+        return 0;
+    }
+}
@@ -0,0 +1,83 @@
+package com.caucraft.shadowmap.client.util.data;
+
+import com.caucraft.shadowmap.api.util.MemorySizes;
+import it.unimi.dsi.fastutil.Hash;
+import it.unimi.dsi.fastutil.HashCommon;
+import it.unimi.dsi.fastutil.objects.Reference2IntOpenHashMap;
+import net.minecraft.util.math.MathHelper;
+
+import java.lang.reflect.Array;
+
+/**
+ * An append-only palette shared by every {@link PaletteStorage} in a region.
+ * Storages using a shared palette only keep bit-packed pointers into it, and
+ * the bits needed per pointer grow region-wide as the palette grows. Index 0
+ * is always {@code null}. Reads are thread-safe, writes are synchronized.
+ * @param <T> type of object contained in the palette.
+ */
+public class SharedPalette<T> implements IdPalette<T> {
+    private final Class<?> contentType;
+    private final Reference2IntOpenHashMap<T> ids;
+    private volatile T[] entries;
+    private volatile int size;
+
+    public SharedPalette(Class<?> contentType) {
+        this.contentType = contentType;
+        this.ids = new Reference2IntOpenHashMap<>(64);
+        this.ids.defaultReturnValue(-1);
+        this.entries = (T[]) Array.newInstance(contentType, 16);
+        this.size = 1;
+    }
+
+    @Override
+    public T get(int index) {
+        return entries[index];
+    }
+
+    @Override
+    public int getOrAdd(T value) {
+        if (value == null) {
+            return 0;
+        }
+        synchronized (this) {
+            int id = ids.getInt(value);
+            if (id != -1) {
+                return id;
+            }
+            id = size;
+            T[] localEntries = entries;
+            if (id == localEntries.length) {
+                T[] newEntries = (T[]) Array.newInstance(contentType, id << 1);
+                System.arraycopy(localEntries, 0, newEntries, 0, id);
+                localEntries = newEntries;
+            }
+            localEntries[id] = value;
+            entries = localEntries;
+            ids.put(value, id);
+            size = id + 1;
+            return id;
+        }
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public int getBitsPerEntry() {
+        return Math.max(1, MathHelper.ceilLog2(size));
+    }
+
+    @Override
+    public int estimateMemoryUsage() {
+        // Reference2IntOpenHashMap keeps a key array and a value array sized
+        // to the next power of two above size / load factor, plus one.
+        int tableSize = HashCommon.arraySize(Math.max(ids.size(), 64), Hash.DEFAULT_LOAD_FACTOR) + 1;
+        return MemorySizes.object(3, 4)
+                + MemorySizes.objectArray(entries.length)
+                + MemorySizes.object(2, 24)
+                + MemorySizes.objectArray(tableSize)
+                + MemorySizes.intArray(tableSize);
+    }
+}
@@ -718,14 +718,25 @@ public class WaypointRenderer implements MapDecorator, FullscreenMapEventHandler
             int mouseBlockZ = MathHelper.floor(pos.y);
             RegionContainerImpl region = world.getRegion(mouseBlockX >> 9, mouseBlockZ >> 9, false, false);
             BlocksRegion regionBlocks = region == null ? null : region.getBlocks();
-            BlocksChunk chunkBlocks = regionBlocks == null ? null : regionBlocks.getChunk(mouseBlockX >> 4, mouseBlockZ >> 4, false);
-            int wpY = chunkBlocks == null ? -64 : Math.max(
-                    Math.max(
-                            chunkBlocks.getHeight(BlocksChunk.BlockType.OPAQUE, mouseBlockX, mouseBlockZ),
-                            chunkBlocks.getHeight(BlocksChunk.BlockType.TRANSPARENT, mouseBlockX, mouseBlockZ)),
-                    chunkBlocks.getHeight(BlocksChunk.BlockType.LIQUID, mouseBlockX, mouseBlockZ)
-            );
-            client.send(() -> client.setScreen(new EditWaypointScreen(screen, world.getWaypointManager(), new Vector3d(mouseBlockX + 0.5, wpY + 1, mouseBlockZ + 0.5), null, false)));
+            int wpY = -64;
+            // Read without the region's lock, keep its columns from being freed.
+            if (regionBlocks != null && regionBlocks.retainColumns()) {
+                try {
+                    BlocksChunk chunkBlocks = regionBlocks.getChunk(mouseBlockX >> 4, mouseBlockZ >> 4, false);
+                    if (chunkBlocks != null) {
+                        wpY = Math.max(
+                                Math.max(
+                                        chunkBlocks.getHeight(BlocksChunk.BlockType.OPAQUE, mouseBlockX, mouseBlockZ),
+                                        chunkBlocks.getHeight(BlocksChunk.BlockType.TRANSPARENT, mouseBlockX, mouseBlockZ)),
+                                chunkBlocks.getHeight(BlocksChunk.BlockType.LIQUID, mouseBlockX, mouseBlockZ)
+                        );
+                    }
+                } finally {
+                    regionBlocks.releaseRetainedColumns();
+                }
+            }
+            int finalWpY = wpY;
+            client.send(() -> client.setScreen(new EditWaypointScreen(screen, world.getWaypointManager(), new Vector3d(mouseBlockX + 0.5, finalWpY + 1, mouseBlockZ + 0.5), null, false)));
         }
         return EventResult.CONSUME;
     }
@@ -0,0 +1,90 @@
+package com.caucraft.shadowmap.client.render;
+
+import com.caucraft.shadowmap.api.ui.MapRenderContext;
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RegionDrawBatchTest {
+
+    private static TestSlot slot(int textureId) {
+        return new TestSlot(true, textureId, 1, 0.0F, 0.0F, 0.5F, 0.5F);
+    }
+
+    @Test
+    void groupsRegionsByTexture() {
+        RegionDrawBatch batch = new RegionDrawBatch();
+        // Textures alternate between neighboring regions: 1 2 3 1 / 2 3 1 2
+        batch.collect((regionX, regionZ, lowRes) -> slot(1 + Math.floorMod(regionX + regionZ * 4, 3)),
+                new MapRenderContext.RectangleI(0, 0, 3, 1), false);
+
+        assertEquals(8, batch.size());
+        IntOpenHashSet seenTextures = new IntOpenHashSet();
+        int runs = 0;
+        for (int start = 0, end; start < batch.size(); start = end) {
+            end = batch.runEnd(start);
+            int textureId = batch.getTextureId(start);
+            assertTrue(seenTextures.add(textureId), "texture " + textureId + " split across runs");
+            for (int i = start; i < end; i++) {
+                assertEquals(textureId, batch.getTextureId(i));
+            }
+            runs++;
+        }
+        assertEquals(3, runs);
+    }
+
+    @Test
+    void onlyCollectsRegionsInView() {
+        RegionDrawBatch batch = new RegionDrawBatch();
+        MapRenderContext.RectangleI bounds = new MapRenderContext.RectangleI(-2, -1, 1, 0);
+        batch.collect((regionX, regionZ, lowRes) -> slot(7), bounds, false);
+
+        assertEquals(bounds.w * bounds.h, batch.size());
+        for (int i = 0; i < batch.size(); i++) {
+            int regionX = batch.getRegionX(i);
+            int regionZ = batch.getRegionZ(i);
+            assertTrue(regionX >= bounds.x1 && regionX <= bounds.x2, "region x " + regionX + " out of view");
+            assertTrue(regionZ >= bounds.z1 && regionZ <= bounds.z2, "region z " + regionZ + " out of view");
+        }
+    }
+
+    @Test
+    void skipsRegionsWithoutDrawableTextures() {
+        RegionDrawBatch batch = new RegionDrawBatch();
+        TestSlot notUploaded = new TestSlot(false, 5, 0, 0.0F, 0.0F, 0.5F, 0.5F);
+        batch.collect((regionX, regionZ, lowRes) -> {
+            if (regionX == 0) {
+                return null;
+            }
+            if (regionX == 1) {
+                return notUploaded;
+            }
+            // Only the low-res texture is ready, drawn instead of high-res
+            return lowRes ? slot(2) : notUploaded;
+        }, new MapRenderContext.RectangleI(0, 0, 2, 0), false);
+
+        assertEquals(1, batch.size());
+        assertEquals(2, batch.getRegionX(0));
+        assertEquals(2, batch.getTextureId(0));
+    }
+
+    @Test
+    void stampChangesWithTextureVersion() {
+        RegionDrawBatch batch = new RegionDrawBatch();
+        MapRenderContext.RectangleI bounds = new MapRenderContext.RectangleI(0, 0, 1, 1);
+        batch.collect((regionX, regionZ, lowRes) -> slot(1), bounds, false);
+        long stamp = batch.getStamp();
+        batch.collect((regionX, regionZ, lowRes) -> slot(1), bounds, false);
+        assertEquals(stamp, batch.getStamp());
+        batch.collect((regionX, regionZ, lowRes) -> regionX == 1 && regionZ == 1
+                ? new TestSlot(true, 1, 2, 0.0F, 0.0F, 0.5F, 0.5F)
+                : slot(1), bounds, false);
+        assertNotEquals(stamp, batch.getStamp());
+    }
+
+    private record TestSlot(boolean isDrawable, int textureId, int getVersion, float u1, float v1, float u2, float v2)
+            implements RegionDrawBatch.DrawSlot {}
+}